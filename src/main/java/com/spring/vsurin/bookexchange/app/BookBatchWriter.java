@@ -0,0 +1,21 @@
+package com.spring.vsurin.bookexchange.app;
+
+import com.spring.vsurin.bookexchange.domain.Book;
+
+import java.util.List;
+
+/**
+ * Интерфейс пакетной записи новых книг в базу в обход сессии JPA.
+ */
+public interface BookBatchWriter {
+
+    /**
+     * Добавляет книги одним пакетом запросов.
+     * Если хотя бы одна книга нарушает ограничение базы (например, дублирует существующую), не добавляется ни одна.
+     *
+     * @param books новые книги с заполненным ключом для поиска дубликатов
+     * @return идентификаторы добавленных книг в том же порядке
+     * @throws org.springframework.dao.DataIntegrityViolationException если книга нарушает ограничение базы
+     */
+    List<Long> insert(List<Book> books);
+}
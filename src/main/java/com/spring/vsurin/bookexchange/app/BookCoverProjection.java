@@ -1,5 +1,5 @@
 package com.spring.vsurin.bookexchange.app;
 
 public interface BookCoverProjection {
-    byte[] getCoverImage();
+    String getCoverHash();
 }
@@ -0,0 +1,65 @@
+package com.spring.vsurin.bookexchange.app;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Позиция в списке книг для постраничной выдачи по ключу (keyset pagination).
+ * Хранит рейтинг и id последней выданной книги; клиенту передаётся в виде непрозрачной строки.
+ *
+ * @param rating рейтинг последней выданной книги (не используется, если список упорядочен только по id)
+ * @param id     идентификатор последней выданной книги
+ */
+public record BookCursor(double rating, long id) {
+
+    private static final String SEPARATOR = ":";
+
+    /**
+     * Кодирует позицию в строку для передачи клиенту.
+     *
+     * @return закодированная позиция
+     */
+    public String encode() {
+        String raw = rating + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Восстанавливает позицию из строки, полученной от клиента.
+     *
+     * @param token закодированная позиция
+     * @return позиция или null, если строка пустая (первая страница)
+     * @throws IllegalArgumentException если строка не является корректной позицией
+     */
+    public static BookCursor decode(String token) {
+        if (token == null || token.isBlank()) {
+            return null;
+        }
+
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split(SEPARATOR);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Некорректная позиция списка: " + token);
+            }
+            return new BookCursor(Double.parseDouble(parts[0]), Long.parseLong(parts[1]));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Некорректная позиция списка: " + token, e);
+        }
+    }
+
+    /**
+     * Проверяет, можно ли восстановить позицию из строки.
+     *
+     * @param token закодированная позиция
+     * @return true, если строка пустая или является корректной позицией
+     */
+    public static boolean isValid(String token) {
+        try {
+            decode(token);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.spring.vsurin.bookexchange.app;
+
+public interface BookDedupProjection {
+    long getId();
+    String getTitle();
+    String getAuthor();
+    String getIsbn();
+}
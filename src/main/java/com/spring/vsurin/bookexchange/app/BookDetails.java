@@ -0,0 +1,16 @@
+package com.spring.vsurin.bookexchange.app;
+
+import com.spring.vsurin.bookexchange.domain.Book;
+
+import java.util.List;
+
+/**
+ * Карточка книги: сама книга и идентификаторы связанных с ней пользователей, прочитанные без загрузки коллекций.
+ *
+ * @param book                       книга
+ * @param ownerIds                   пользователи, у которых книга в библиотеке
+ * @param userIdsOfferingForExchange пользователи, предлагающие книгу для обмена
+ * @param userIdsHaveInWishlist      пользователи, у которых книга в списке желаний
+ */
+public record BookDetails(Book book, List<Long> ownerIds, List<Long> userIdsOfferingForExchange, List<Long> userIdsHaveInWishlist) {
+}
@@ -0,0 +1,19 @@
+package com.spring.vsurin.bookexchange.app;
+
+import com.spring.vsurin.bookexchange.domain.BookGenre;
+
+import java.time.Year;
+
+public interface BookExportProjection {
+    long getId();
+    String getTitle();
+    String getAuthor();
+    Year getPublicationYear();
+    String getIsbn();
+    BookGenre getGenre();
+    String getDescription();
+    double getRating();
+    int getMarksCount();
+    int getOfferCount();
+    String getCoverHash();
+}
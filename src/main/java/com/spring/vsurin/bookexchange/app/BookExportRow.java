@@ -0,0 +1,21 @@
+package com.spring.vsurin.bookexchange.app;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.spring.vsurin.bookexchange.domain.BookGenre;
+
+import java.time.Year;
+import java.util.List;
+
+/**
+ * Книга в выгрузке каталога. Поля, не запрошенные при выгрузке, равны null и не выводятся.
+ *
+ * @param coverHash                  хеш обложки, только при выгрузке с {@link BookExportService.Include#COVER}
+ * @param ownerIds                   пользователи, у которых книга в библиотеке, только с {@link BookExportService.Include#USERS}
+ * @param userIdsOfferingForExchange пользователи, предлагающие книгу для обмена, только с {@link BookExportService.Include#USERS}
+ * @param userIdsHaveInWishlist      пользователи, у которых книга в списке желаний, только с {@link BookExportService.Include#USERS}
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record BookExportRow(long id, String title, String author, Year publicationYear, String isbn, BookGenre genre,
+                            String description, double rating, int marksCount, int offerCount, String coverHash,
+                            List<Long> ownerIds, List<Long> userIdsOfferingForExchange, List<Long> userIdsHaveInWishlist) {
+}
@@ -0,0 +1,120 @@
+package com.spring.vsurin.bookexchange.app;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Сервис выгрузки каталога книг.
+ * Книги читаются из базы одним запросом с курсором, без загрузки сущностей и их коллекций, и передаются получателю по одной,
+ * поэтому объём памяти не зависит от размера каталога.
+ */
+@Slf4j
+@Component
+public class BookExportService {
+
+    /**
+     * Дополнительные данные, которые можно включить в выгрузку.
+     */
+    public enum Include {
+        /**
+         * Хеш обложки книги.
+         */
+        COVER,
+
+        /**
+         * Идентификаторы пользователей, у которых книга в библиотеке, предложена для обмена или в списке желаний.
+         */
+        USERS
+    }
+
+    private final BookRepository bookRepository;
+
+    /**
+     * Количество книг, для которых связанные пользователи загружаются одним запросом.
+     */
+    private final int usersChunkSize;
+
+    public BookExportService(BookRepository bookRepository, @Value("${bookexchange.books.export-users-chunk-size:500}") int usersChunkSize) {
+        this.bookRepository = bookRepository;
+        this.usersChunkSize = usersChunkSize;
+    }
+
+    /**
+     * Выгружает все книги каталога в порядке возрастания id.
+     *
+     * @param include дополнительные данные, которые нужно включить в выгрузку
+     * @param rows    получатель книг
+     */
+    @Transactional(readOnly = true)
+    public void exportBooks(Set<Include> include, Consumer<BookExportRow> rows) {
+        boolean withCover = include.contains(Include.COVER);
+        boolean withUsers = include.contains(Include.USERS);
+        long exported = 0;
+
+        try (Stream<BookExportProjection> books = bookRepository.streamAllForExport()) {
+            List<BookExportProjection> chunk = new ArrayList<>(usersChunkSize);
+            for (BookExportProjection book : (Iterable<BookExportProjection>) books::iterator) {
+                if (!withUsers) {
+                    rows.accept(toRow(book, withCover, null, null, null));
+                    exported++;
+                    continue;
+                }
+
+                chunk.add(book);
+                if (chunk.size() == usersChunkSize) {
+                    exportWithUsers(chunk, withCover, rows);
+                    exported += chunk.size();
+                    chunk.clear();
+                }
+            }
+            exportWithUsers(chunk, withCover, rows);
+            exported += chunk.size();
+        }
+
+        log.info("Выгружен каталог книг, книг: {}", exported);
+    }
+
+    private void exportWithUsers(List<BookExportProjection> chunk, boolean withCover, Consumer<BookExportRow> rows) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+
+        List<Long> bookIds = chunk.stream().map(BookExportProjection::getId).toList();
+        Map<Long, List<Long>> owners = groupByBook(bookIds, bookRepository::findOwnerLinks);
+        Map<Long, List<Long>> offering = groupByBook(bookIds, bookRepository::findOfferingUserLinks);
+        Map<Long, List<Long>> wishlist = groupByBook(bookIds, bookRepository::findWishlistUserLinks);
+
+        for (BookExportProjection book : chunk) {
+            rows.accept(toRow(book, withCover,
+                    owners.getOrDefault(book.getId(), List.of()),
+                    offering.getOrDefault(book.getId(), List.of()),
+                    wishlist.getOrDefault(book.getId(), List.of())));
+        }
+    }
+
+    private static Map<Long, List<Long>> groupByBook(List<Long> bookIds, Function<List<Long>, List<BookUserLinkProjection>> query) {
+        Map<Long, List<Long>> usersByBook = new HashMap<>();
+        for (BookUserLinkProjection link : query.apply(bookIds)) {
+            usersByBook.computeIfAbsent(link.getBookId(), id -> new ArrayList<>()).add(link.getUserId());
+        }
+        return usersByBook;
+    }
+
+    private static BookExportRow toRow(BookExportProjection book, boolean withCover,
+                                       List<Long> ownerIds, List<Long> offeringUserIds, List<Long> wishlistUserIds) {
+        return new BookExportRow(book.getId(), book.getTitle(), book.getAuthor(), book.getPublicationYear(), book.getIsbn(),
+                book.getGenre(), book.getDescription(), book.getRating(), book.getMarksCount(), book.getOfferCount(),
+                withCover ? book.getCoverHash() : null, ownerIds, offeringUserIds, wishlistUserIds);
+    }
+}
@@ -0,0 +1,236 @@
+package com.spring.vsurin.bookexchange.app;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Построчное чтение файла импорта книг в формате CSV (с заголовком) или NDJSON (объект JSON на строку).
+ * Поля книги: title, author, publicationYear, isbn, genre, description; в CSV это названия колонок заголовка
+ * (без учёта регистра), в NDJSON - ключи объекта.
+ * Файл читается из потока по одной записи, поэтому объём памяти не зависит от размера файла.
+ * Ошибки разбора не прерывают чтение: запись с ошибкой возвращается как {@link BookImportRow#invalid}.
+ */
+public final class BookImportReader implements Closeable {
+
+    /**
+     * Формат файла импорта.
+     */
+    public enum Format {
+        CSV,
+        NDJSON
+    }
+
+    /**
+     * Максимальная длина записи в символах. Более длинные записи пропускаются с ошибкой, не загружаясь в память целиком.
+     */
+    private static final int MAX_RECORD_LENGTH = 16_384;
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final BufferedReader reader;
+    private final Format format;
+    private final StringBuilder buffer = new StringBuilder();
+
+    private Map<String, Integer> columns;
+    private long line;
+
+    public BookImportReader(InputStream content, Format format) {
+        this.reader = new BufferedReader(new InputStreamReader(content, StandardCharsets.UTF_8));
+        this.format = format;
+    }
+
+    /**
+     * Читает следующую запись файла. Пустые строки пропускаются.
+     *
+     * @return прочитанная строка или null, если файл закончился
+     * @throws IOException если поток не удалось прочитать
+     */
+    public BookImportRow next() throws IOException {
+        return format == Format.CSV ? nextCsv() : nextNdjson();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private BookImportRow nextNdjson() throws IOException {
+        while (true) {
+            RecordStatus status = readNdjsonLine();
+            if (status == RecordStatus.END) {
+                return null;
+            }
+            line++;
+            if (status == RecordStatus.TOO_LONG) {
+                return BookImportRow.invalid(line, "Строка длиннее " + MAX_RECORD_LENGTH + " символов");
+            }
+            if (buffer.toString().isBlank()) {
+                continue;
+            }
+
+            try {
+                JsonNode node = OBJECT_MAPPER.readTree(buffer.toString());
+                if (!node.isObject()) {
+                    return BookImportRow.invalid(line, "Строка не является объектом JSON");
+                }
+                return new BookImportRow(line, text(node, "title"), text(node, "author"), text(node, "publicationYear"),
+                        text(node, "isbn"), text(node, "genre"), text(node, "description"), null);
+            } catch (JsonProcessingException e) {
+                return BookImportRow.invalid(line, "Некорректный JSON: " + e.getOriginalMessage());
+            }
+        }
+    }
+
+    private BookImportRow nextCsv() throws IOException {
+        if (columns == null) {
+            List<String> header = new ArrayList<>();
+            if (readCsvRecord(header) == RecordStatus.END) {
+                return null;
+            }
+            line++;
+            columns = new HashMap<>();
+            for (int i = 0; i < header.size(); i++) {
+                columns.put(header.get(i).trim().toLowerCase(Locale.ROOT), i);
+            }
+        }
+
+        List<String> values = new ArrayList<>();
+        while (true) {
+            values.clear();
+            RecordStatus status = readCsvRecord(values);
+            if (status == RecordStatus.END) {
+                return null;
+            }
+            line++;
+            if (status == RecordStatus.TOO_LONG) {
+                return BookImportRow.invalid(line, "Запись длиннее " + MAX_RECORD_LENGTH + " символов");
+            }
+            if (status == RecordStatus.UNCLOSED_QUOTE) {
+                return BookImportRow.invalid(line, "Не закрыта кавычка");
+            }
+            if (values.size() == 1 && values.get(0).isBlank()) {
+                continue;
+            }
+
+            return new BookImportRow(line, column(values, "title"), column(values, "author"), column(values, "publicationYear"),
+                    column(values, "isbn"), column(values, "genre"), column(values, "description"), null);
+        }
+    }
+
+    /**
+     * Читает одну запись CSV по RFC 4180: поля через запятую, значения в двойных кавычках
+     * могут содержать запятые, переводы строк и удвоенные кавычки.
+     */
+    private RecordStatus readCsvRecord(List<String> values) throws IOException {
+        buffer.setLength(0);
+        boolean quoted = false;
+        boolean empty = true;
+        int length = 0;
+
+        int c;
+        while ((c = reader.read()) != -1) {
+            empty = false;
+            if (quoted) {
+                if (c == '"') {
+                    reader.mark(1);
+                    int next = reader.read();
+                    if (next == '"') {
+                        length = append('"', length);
+                    } else {
+                        quoted = false;
+                        if (next != -1) {
+                            reader.reset();
+                        }
+                    }
+                } else {
+                    length = append((char) c, length);
+                }
+            } else if (c == '"' && buffer.isEmpty()) {
+                quoted = true;
+            } else if (c == ',') {
+                if (length++ < MAX_RECORD_LENGTH) {
+                    values.add(buffer.toString());
+                }
+                buffer.setLength(0);
+            } else if (c == '\n') {
+                break;
+            } else if (c != '\r') {
+                length = append((char) c, length);
+            }
+        }
+
+        if (empty) {
+            return RecordStatus.END;
+        }
+        values.add(buffer.toString());
+        if (length > MAX_RECORD_LENGTH) {
+            return RecordStatus.TOO_LONG;
+        }
+        return quoted ? RecordStatus.UNCLOSED_QUOTE : RecordStatus.READ;
+    }
+
+    private RecordStatus readNdjsonLine() throws IOException {
+        buffer.setLength(0);
+        boolean empty = true;
+        int length = 0;
+
+        int c;
+        while ((c = reader.read()) != -1) {
+            empty = false;
+            if (c == '\n') {
+                break;
+            }
+            if (c != '\r' && length++ < MAX_RECORD_LENGTH) {
+                buffer.append((char) c);
+            }
+        }
+
+        if (empty) {
+            return RecordStatus.END;
+        }
+        return length > MAX_RECORD_LENGTH ? RecordStatus.TOO_LONG : RecordStatus.READ;
+    }
+
+    /**
+     * Добавляет символ к текущему полю, пока запись не превысила допустимую длину, и возвращает новую длину записи.
+     */
+    private int append(char c, int length) {
+        if (length < MAX_RECORD_LENGTH) {
+            buffer.append(c);
+        }
+        return length + 1;
+    }
+
+    private String column(List<String> values, String field) {
+        Integer index = columns.get(field.toLowerCase(Locale.ROOT));
+        if (index == null || index >= values.size()) {
+            return null;
+        }
+        return values.get(index);
+    }
+
+    private static String text(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+
+    private enum RecordStatus {
+        READ,
+        TOO_LONG,
+        UNCLOSED_QUOTE,
+        END
+    }
+}
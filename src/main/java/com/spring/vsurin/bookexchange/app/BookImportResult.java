@@ -0,0 +1,29 @@
+package com.spring.vsurin.bookexchange.app;
+
+/**
+ * Результат импорта одной строки файла с книгами.
+ *
+ * @param line    номер строки
+ * @param status  результат импорта
+ * @param bookId  идентификатор добавленной книги или null, если книга не добавлена
+ * @param message описание ошибки или null
+ */
+public record BookImportResult(long line, Status status, Long bookId, String message) {
+
+    public enum Status {
+        /**
+         * Книга добавлена.
+         */
+        IMPORTED,
+
+        /**
+         * Такая книга уже есть в базе или выше в том же файле.
+         */
+        DUPLICATE,
+
+        /**
+         * Строка содержит ошибку, книга не добавлена.
+         */
+        INVALID
+    }
+}
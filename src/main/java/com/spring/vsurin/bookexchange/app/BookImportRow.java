@@ -0,0 +1,21 @@
+package com.spring.vsurin.bookexchange.app;
+
+/**
+ * Строка файла импорта книг в том виде, в каком она прочитана, до проверки значений.
+ *
+ * @param line            номер строки (для CSV - номер записи, считая заголовок)
+ * @param title           название книги
+ * @param author          автор книги
+ * @param publicationYear год издания
+ * @param isbn            код ISBN
+ * @param genre           жанр книги
+ * @param description     описание книги
+ * @param error           описание ошибки разбора строки или null, если строка прочитана
+ */
+public record BookImportRow(long line, String title, String author, String publicationYear,
+                            String isbn, String genre, String description, String error) {
+
+    public static BookImportRow invalid(long line, String error) {
+        return new BookImportRow(line, null, null, null, null, null, null, error);
+    }
+}
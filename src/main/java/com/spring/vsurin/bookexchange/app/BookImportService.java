@@ -0,0 +1,230 @@
+package com.spring.vsurin.bookexchange.app;
+
+import com.spring.vsurin.bookexchange.domain.Book;
+import com.spring.vsurin.bookexchange.domain.BookGenre;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.DateTimeException;
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Сервис массового импорта книг из каталогов издательств.
+ * Файл читается потоком и обрабатывается пачками по {@code bookexchange.books.import-batch-size} строк:
+ * для каждой пачки одним запросом ищутся уже существующие книги, а новые добавляются пакетной вставкой JDBC.
+ * Результат по каждой строке передаётся вызывающему сразу после обработки пачки, поэтому в памяти
+ * одновременно находится не больше одной пачки.
+ */
+@Slf4j
+@Component
+public class BookImportService {
+
+    private static final int MAX_TITLE_LENGTH = 300;
+    private static final int MAX_ISBN_LENGTH = 20;
+    private static final int MAX_DESCRIPTION_LENGTH = 1000;
+
+    private final BookRepository bookRepository;
+    private final BookBatchWriter bookBatchWriter;
+    private final BookSearchIndex bookSearchIndex;
+    private final int batchSize;
+
+    public BookImportService(BookRepository bookRepository, BookBatchWriter bookBatchWriter, BookSearchIndex bookSearchIndex,
+                             @Value("${bookexchange.books.import-batch-size:1000}") int batchSize) {
+        this.bookRepository = bookRepository;
+        this.bookBatchWriter = bookBatchWriter;
+        this.bookSearchIndex = bookSearchIndex;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Импортирует книги из файла. Строки с ошибками и дубликаты пропускаются, остальные книги добавляются.
+     *
+     * @param content поток с файлом
+     * @param format  формат файла
+     * @param results получатель результатов по строкам, в порядке строк файла
+     * @throws IOException если файл не удалось прочитать
+     */
+    public void importBooks(InputStream content, BookImportReader.Format format, Consumer<BookImportResult> results) throws IOException {
+        Map<BookImportResult.Status, Integer> totals = new EnumMap<>(BookImportResult.Status.class);
+        Consumer<BookImportResult> counting = result -> {
+            totals.merge(result.status(), 1, Integer::sum);
+            results.accept(result);
+        };
+
+        try (BookImportReader reader = new BookImportReader(content, format)) {
+            List<BookImportRow> batch = new ArrayList<>(batchSize);
+            BookImportRow row;
+            while ((row = reader.next()) != null) {
+                batch.add(row);
+                if (batch.size() == batchSize) {
+                    importBatch(batch, counting);
+                    batch.clear();
+                }
+            }
+            importBatch(batch, counting);
+        }
+
+        log.info("Импорт книг завершён: добавлено {}, дубликатов {}, с ошибками {}",
+                totals.getOrDefault(BookImportResult.Status.IMPORTED, 0),
+                totals.getOrDefault(BookImportResult.Status.DUPLICATE, 0),
+                totals.getOrDefault(BookImportResult.Status.INVALID, 0));
+    }
+
+    private void importBatch(List<BookImportRow> rows, Consumer<BookImportResult> results) {
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        BookImportResult[] batchResults = new BookImportResult[rows.size()];
+        Book[] books = new Book[rows.size()];
+        Set<String> keys = new HashSet<>();
+        for (int i = 0; i < rows.size(); i++) {
+            BookImportRow row = rows.get(i);
+            String error = row.error() != null ? row.error() : validate(row);
+            if (error != null) {
+                batchResults[i] = new BookImportResult(row.line(), BookImportResult.Status.INVALID, null, error);
+                continue;
+            }
+
+            Book book = toBook(row);
+            if (!keys.add(book.getDedupKey())) {
+                batchResults[i] = new BookImportResult(row.line(), BookImportResult.Status.DUPLICATE, null, null);
+                continue;
+            }
+            books[i] = book;
+        }
+
+        Set<String> existingKeys = keys.isEmpty() ? Set.of() : bookRepository.findExistingDedupKeys(keys);
+        List<Integer> newIndexes = new ArrayList<>();
+        for (int i = 0; i < books.length; i++) {
+            if (books[i] == null) {
+                continue;
+            }
+            if (existingKeys.contains(books[i].getDedupKey())) {
+                batchResults[i] = new BookImportResult(rows.get(i).line(), BookImportResult.Status.DUPLICATE, null, null);
+            } else {
+                newIndexes.add(i);
+            }
+        }
+
+        insert(rows, books, newIndexes, batchResults);
+
+        for (BookImportResult result : batchResults) {
+            results.accept(result);
+        }
+    }
+
+    /**
+     * Добавляет новые книги пачки одной пакетной вставкой. Если вставка нарушила ограничение базы
+     * (например, ту же книгу одновременно добавили другим запросом), книги пачки добавляются по одной,
+     * чтобы определить, какие именно строки не удалось добавить.
+     */
+    private void insert(List<BookImportRow> rows, Book[] books, List<Integer> indexes, BookImportResult[] results) {
+        if (indexes.isEmpty()) {
+            return;
+        }
+
+        try {
+            List<Long> ids = bookBatchWriter.insert(indexes.stream().map(i -> books[i]).toList());
+            for (int j = 0; j < indexes.size(); j++) {
+                imported(rows, books, indexes.get(j), ids.get(j), results);
+            }
+        } catch (DataIntegrityViolationException e) {
+            log.info("Пакетная вставка книг отклонена базой, книги пачки добавляются по одной");
+            for (int i : indexes) {
+                try {
+                    imported(rows, books, i, bookBatchWriter.insert(List.of(books[i])).get(0), results);
+                } catch (DuplicateKeyException duplicate) {
+                    results[i] = new BookImportResult(rows.get(i).line(), BookImportResult.Status.DUPLICATE, null, null);
+                } catch (DataIntegrityViolationException invalid) {
+                    results[i] = new BookImportResult(rows.get(i).line(), BookImportResult.Status.INVALID, null,
+                            "Книга не принята базой данных");
+                }
+            }
+        }
+    }
+
+    private void imported(List<BookImportRow> rows, Book[] books, int index, long bookId, BookImportResult[] results) {
+        Book book = books[index];
+        bookSearchIndex.add(bookId, book.getTitle(), book.getAuthor());
+        results[index] = new BookImportResult(rows.get(index).line(), BookImportResult.Status.IMPORTED, bookId, null);
+    }
+
+    /**
+     * Проверяет строку по тем же правилам, что и книгу, создаваемую через API.
+     *
+     * @return описание ошибки или null, если строка корректна
+     */
+    private static String validate(BookImportRow row) {
+        if (isBlank(row.title()) || row.title().length() > MAX_TITLE_LENGTH) {
+            return "Название должно быть непустым и не длиннее " + MAX_TITLE_LENGTH + " символов";
+        }
+        if (isBlank(row.author()) || row.author().length() > MAX_TITLE_LENGTH) {
+            return "Автор должен быть непустым и не длиннее " + MAX_TITLE_LENGTH + " символов";
+        }
+        if (isBlank(row.isbn()) || row.isbn().length() > MAX_ISBN_LENGTH) {
+            return "ISBN должен быть непустым и не длиннее " + MAX_ISBN_LENGTH + " символов";
+        }
+        if (row.description() != null && row.description().length() > MAX_DESCRIPTION_LENGTH) {
+            return "Описание должно быть не длиннее " + MAX_DESCRIPTION_LENGTH + " символов";
+        }
+        if (parseYear(row.publicationYear()) == null) {
+            return "Некорректный год издания: " + row.publicationYear();
+        }
+        if (parseGenre(row.genre()) == null) {
+            return "Некорректный жанр: " + row.genre();
+        }
+        return null;
+    }
+
+    private static Book toBook(BookImportRow row) {
+        return Book.builder()
+                .title(row.title().trim())
+                .author(row.author().trim())
+                .publicationYear(parseYear(row.publicationYear()))
+                .isbn(row.isbn().trim())
+                .genre(parseGenre(row.genre()))
+                .description(isBlank(row.description()) ? null : row.description())
+                .dedupKey(BookTextNormalizer.dedupKey(row.title(), row.author(), row.isbn()))
+                .build();
+    }
+
+    private static Year parseYear(String value) {
+        if (isBlank(value)) {
+            return null;
+        }
+        try {
+            return Year.of(Integer.parseInt(value.trim()));
+        } catch (NumberFormatException | DateTimeException e) {
+            return null;
+        }
+    }
+
+    private static BookGenre parseGenre(String value) {
+        if (isBlank(value)) {
+            return null;
+        }
+        try {
+            return BookGenre.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+}
@@ -2,25 +2,224 @@ package com.spring.vsurin.bookexchange.app;
 
 import com.spring.vsurin.bookexchange.domain.Book;
 import com.spring.vsurin.bookexchange.domain.BookGenre;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
 
 
 @Repository
 public interface BookRepository extends JpaRepository<Book, Long> {
     Book findById(long id);
     void deleteById(long id);
-    Page<Book> findByGenre(BookGenre genre, Pageable pageable);
-    List<Book> findByTitleAndAuthorIgnoreCase(String title, String author);
-    Page<Book> findByTitleContainingIgnoreCaseOrAuthorContainingIgnoreCase(String title, String author, Pageable pageable);
 
-    @Query("SELECT b FROM Book b WHERE SIZE(b.usersOfferingForExchange) > 0 ORDER BY b.rating DESC")
-    Page<Book> findBooksWithUsersOfferingForExchange(Pageable pageable);
+    /**
+     * Выборка книг для списков: только столбцы книги и количество связанных пользователей, без загрузки коллекций.
+     */
+    String SUMMARY_SELECT = "SELECT b.id AS id, b.version AS version, b.title AS title, b.author AS author, " +
+            "b.publicationYear AS publicationYear, b.isbn AS isbn, b.genre AS genre, b.rating AS rating, " +
+            "b.marksCount AS marksCount, b.offerCount AS offerCount, " +
+            "SIZE(b.owners) AS ownersCount, SIZE(b.usersHaveInWishlist) AS wishlistCount FROM Book b ";
 
-    BookCoverProjection findCoverImageById(long bookId);
+    String AVAILABLE_ORDER = "ORDER BY b.available ASC, b.rating DESC, b.id ASC";
+
+    String OFFER_COUNT_ASSIGNMENT = "book_offer_count = GREATEST(book_offer_count + :delta, 0), " +
+            "book_available = (book_offer_count + :delta > 0), book_version = book_version + 1 ";
+
+    String SEARCH_CONDITION = "WHERE LOWER(b.title) LIKE LOWER(CONCAT('%', :searchTerm, '%')) " +
+            "OR LOWER(b.author) LIKE LOWER(CONCAT('%', :searchTerm, '%'))";
+
+    String ADDED_MARKS_SUM = "(book_marks_sum + :sum)";
+
+    String ADDED_MARKS_COUNT = "(book_marks_count + :count)";
+
+    String HISTORY_MARKS_SUM = "(SELECT COALESCE(SUM(m.marks), 0) FROM book_marks m WHERE m.book_id = b.book_id)";
+
+    String HISTORY_MARKS_COUNT = "(SELECT COUNT(*) FROM book_marks m WHERE m.book_id = b.book_id)";
+
+    /**
+     * Рейтинг по новой сумме и количеству оценок. Округляется до сотых к чётному, как округлял прежний
+     * {@code DecimalFormat}: целая часть от суммы, умноженной на 100, и остаток считаются точно, без дробной арифметики базы.
+     */
+    String ADDED_MARKS_RATING = "CASE WHEN " + ADDED_MARKS_COUNT + " = 0 THEN 0 ELSE (FLOOR(" + ADDED_MARKS_SUM + " * 100 / " + ADDED_MARKS_COUNT + ") + " +
+            "CASE WHEN 2 * MOD(" + ADDED_MARKS_SUM + " * 100, " + ADDED_MARKS_COUNT + ") > " + ADDED_MARKS_COUNT + " " +
+            "OR (2 * MOD(" + ADDED_MARKS_SUM + " * 100, " + ADDED_MARKS_COUNT + ") = " + ADDED_MARKS_COUNT + " " +
+            "AND MOD(FLOOR(" + ADDED_MARKS_SUM + " * 100 / " + ADDED_MARKS_COUNT + "), 2) = 1) THEN 1 ELSE 0 END) / 100.0 END";
+
+    /**
+     * Рейтинг по истории оценок с тем же округлением, что и {@link #ADDED_MARKS_RATING}.
+     */
+    String HISTORY_MARKS_RATING = "CASE WHEN " + HISTORY_MARKS_COUNT + " = 0 THEN 0 ELSE (FLOOR(" + HISTORY_MARKS_SUM + " * 100 / " + HISTORY_MARKS_COUNT + ") + " +
+            "CASE WHEN 2 * MOD(" + HISTORY_MARKS_SUM + " * 100, " + HISTORY_MARKS_COUNT + ") > " + HISTORY_MARKS_COUNT + " " +
+            "OR (2 * MOD(" + HISTORY_MARKS_SUM + " * 100, " + HISTORY_MARKS_COUNT + ") = " + HISTORY_MARKS_COUNT + " " +
+            "AND MOD(FLOOR(" + HISTORY_MARKS_SUM + " * 100 / " + HISTORY_MARKS_COUNT + "), 2) = 1) THEN 1 ELSE 0 END) / 100.0 END";
+
+    @Query(value = SUMMARY_SELECT, countQuery = "SELECT COUNT(b) FROM Book b")
+    Page<BookSummaryProjection> findSummaries(Pageable pageable);
+
+    @Query(value = SUMMARY_SELECT + "WHERE b.genre = :genre", countQuery = "SELECT COUNT(b) FROM Book b WHERE b.genre = :genre")
+    Page<BookSummaryProjection> findSummariesByGenre(@Param("genre") BookGenre genre, Pageable pageable);
+
+    @Query(value = SUMMARY_SELECT + SEARCH_CONDITION, countQuery = "SELECT COUNT(b) FROM Book b " + SEARCH_CONDITION)
+    Page<BookSummaryProjection> findSummariesByTitleOrAuthor(@Param("searchTerm") String searchTerm, Pageable pageable);
+
+    @Query(SUMMARY_SELECT + "WHERE b.id IN :bookIds")
+    List<BookSummaryProjection> findSummariesByIds(@Param("bookIds") Collection<Long> bookIds);
+
+    /**
+     * Книги, доступные для обмена, по убыванию рейтинга. Условие по флагу доступности и порядок совпадают
+     * с индексом (book_available, book_rating DESC, book_id), поэтому страница читается из индекса без сортировки.
+     * Флаг указан и в ORDER BY: иначе H2 не считает порядок индекса подходящим, хотя флаг во всех строках одинаков.
+     */
+    @Query(value = SUMMARY_SELECT + "WHERE b.available = true " + AVAILABLE_ORDER,
+            countQuery = "SELECT COUNT(b) FROM Book b WHERE b.available = true")
+    Page<BookSummaryProjection> findSummariesOfferedForExchange(Pageable pageable);
+
+    @Query(SUMMARY_SELECT + "WHERE b.id > :id ORDER BY b.id ASC")
+    List<BookSummaryProjection> findSummariesAfter(@Param("id") long id, Limit limit);
+
+    @Query(SUMMARY_SELECT + "WHERE b.genre = :genre AND b.id > :id ORDER BY b.id ASC")
+    List<BookSummaryProjection> findSummariesByGenreAfter(@Param("genre") BookGenre genre, @Param("id") long id, Limit limit);
+
+    @Query(SUMMARY_SELECT + "WHERE b.available = true " +
+            "AND (b.rating < :rating OR (b.rating = :rating AND b.id > :id)) " + AVAILABLE_ORDER)
+    List<BookSummaryProjection> findSummariesOfferedForExchangeAfter(@Param("rating") double rating, @Param("id") long id, Limit limit);
+
+    BookCoverProjection findCoverHashById(long bookId);
+
+    List<BookSearchProjection> findTop1000ByIdGreaterThanOrderByIdAsc(long id);
+
+    List<BookDedupProjection> findTop1000ByDedupKeyIsNullAndIdGreaterThanOrderByIdAsc(long id);
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT b.id AS id, b.title AS title, b.author AS author, b.publicationYear AS publicationYear, b.isbn AS isbn, " +
+            "b.genre AS genre, b.description AS description, b.rating AS rating, b.marksCount AS marksCount, " +
+            "b.offerCount AS offerCount, b.coverHash AS coverHash FROM Book b ORDER BY b.id")
+    Stream<BookExportProjection> streamAllForExport();
+
+    @Query("SELECT b.id AS bookId, u.id AS userId FROM Book b JOIN b.owners u WHERE b.id IN :bookIds")
+    List<BookUserLinkProjection> findOwnerLinks(@Param("bookIds") Collection<Long> bookIds);
+
+    @Query("SELECT b.id AS bookId, u.id AS userId FROM Book b JOIN b.usersOfferingForExchange u WHERE b.id IN :bookIds")
+    List<BookUserLinkProjection> findOfferingUserLinks(@Param("bookIds") Collection<Long> bookIds);
+
+    @Query("SELECT b.id AS bookId, u.id AS userId FROM Book b JOIN b.usersHaveInWishlist u WHERE b.id IN :bookIds")
+    List<BookUserLinkProjection> findWishlistUserLinks(@Param("bookIds") Collection<Long> bookIds);
+
+    /**
+     * Идентификаторы всех пользователей, связанных с книгой, одним запросом для карточки книги.
+     * Вид связи: {@code OWNER}, {@code OFFERING} или {@code WISHLIST}.
+     */
+    @Query("SELECT 'OWNER' AS kind, u.id AS id FROM Book b JOIN b.owners u WHERE b.id = :bookId " +
+            "UNION ALL SELECT 'OFFERING' AS kind, u.id AS id FROM Book b JOIN b.usersOfferingForExchange u WHERE b.id = :bookId " +
+            "UNION ALL SELECT 'WISHLIST' AS kind, u.id AS id FROM Book b JOIN b.usersHaveInWishlist u WHERE b.id = :bookId")
+    List<LinkedIdProjection> findUserLinks(@Param("bookId") long bookId);
+
+    @Query("SELECT b.dedupKey FROM Book b WHERE b.dedupKey IN :keys")
+    Set<String> findExistingDedupKeys(@Param("keys") Collection<String> keys);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE Book b SET b.dedupKey = :dedupKey WHERE b.id = :bookId")
+    void updateDedupKey(@Param("bookId") long bookId, @Param("dedupKey") String dedupKey);
+
+    /**
+     * Меняет счётчик предложений книги, флаг доступности и версию. Счётчик не опускается ниже нуля.
+     * Этот и остальные запросы с пространством {@link EntityCache#QUERY_SPACE} не очищают кэш книг целиком,
+     * вызывающий код сбрасывает изменённые книги по id.
+     */
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = EntityCache.QUERY_SPACE))
+    @Query(value = "UPDATE books SET " + OFFER_COUNT_ASSIGNMENT + "WHERE book_id = :bookId", nativeQuery = true)
+    void updateOfferCount(@Param("bookId") long bookId, @Param("delta") int delta);
+
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = EntityCache.QUERY_SPACE))
+    @Query(value = "UPDATE books SET " + OFFER_COUNT_ASSIGNMENT + "WHERE book_id IN (:bookIds)", nativeQuery = true)
+    void updateOfferCounts(@Param("bookIds") Collection<Long> bookIds, @Param("delta") int delta);
+
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = EntityCache.QUERY_SPACE))
+    @Query(value = "UPDATE books SET book_marks_sum = book_marks_sum + :sum, book_marks_count = book_marks_count + :count, " +
+            "book_rating = " + ADDED_MARKS_RATING + ", book_version = book_version + 1 " +
+            "WHERE book_id = :bookId", nativeQuery = true)
+    void addMarks(@Param("bookId") long bookId, @Param("sum") long sum, @Param("count") int count);
+
+    @Transactional
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "books"))
+    @Query(value = "UPDATE books b SET " +
+            "book_marks_sum = " + HISTORY_MARKS_SUM + ", " +
+            "book_marks_count = " + HISTORY_MARKS_COUNT + ", " +
+            "book_rating = " + HISTORY_MARKS_RATING + ", " +
+            "book_version = book_version + 1 " +
+            "WHERE b.book_marks_count <> " + HISTORY_MARKS_COUNT,
+            nativeQuery = true)
+    int recalculateMarks();
+
+    /**
+     * Пересчитывает счётчик предложений и флаг доступности по таблице предлагаемых книг
+     * у тех книг, где они с ней разошлись.
+     *
+     * @return число исправленных книг
+     */
+    @Transactional
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "books"))
+    @Query(value = "UPDATE books b SET " +
+            "book_offer_count = (SELECT COUNT(*) FROM user_offered_books o WHERE o.book_id = b.book_id), " +
+            "book_available = ((SELECT COUNT(*) FROM user_offered_books o WHERE o.book_id = b.book_id) > 0), " +
+            "book_version = book_version + 1 " +
+            "WHERE b.book_offer_count <> (SELECT COUNT(*) FROM user_offered_books o WHERE o.book_id = b.book_id) " +
+            "OR b.book_available <> (b.book_offer_count > 0)",
+            nativeQuery = true)
+    int recalculateOfferCounts();
+
+    @Transactional
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "book_marks"))
+    @Query(value = "INSERT INTO book_marks (book_id, marks) VALUES (:bookId, :mark)", nativeQuery = true)
+    void insertMark(@Param("bookId") long bookId, @Param("mark") int mark);
+
+    @Query(value = "SELECT m.marks FROM book_marks m WHERE m.book_id = :bookId",
+            countQuery = "SELECT COUNT(*) FROM book_marks m WHERE m.book_id = :bookId",
+            nativeQuery = true)
+    Page<Integer> findMarksByBookId(@Param("bookId") long bookId, Pageable pageable);
+
+    @Query("SELECT b.version FROM Book b WHERE b.id = :bookId")
+    Long findVersionById(@Param("bookId") long bookId);
+
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = EntityCache.QUERY_SPACE))
+    @Query(value = "UPDATE books SET book_version = book_version + 1 WHERE book_id = :bookId", nativeQuery = true)
+    void incrementVersion(@Param("bookId") long bookId);
+
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = EntityCache.QUERY_SPACE))
+    @Query(value = "UPDATE books SET book_version = book_version + 1 WHERE book_id IN (:bookIds)", nativeQuery = true)
+    void incrementVersions(@Param("bookIds") Collection<Long> bookIds);
+
+    @Query("SELECT b.id FROM Book b WHERE b.id IN :bookIds")
+    List<Long> findExistingIds(@Param("bookIds") Collection<Long> bookIds);
 }
@@ -0,0 +1,365 @@
+package com.spring.vsurin.bookexchange.app;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Инвертированный индекс для полнотекстового поиска книг по названию и автору.
+ * Для каждого нормализованного токена хранит множество id книг, в которых он встречается,
+ * а для нечёткого поиска - индекс триграмм по словарю токенов.
+ * Индекс строится при старте приложения и обновляется при создании и удалении книг.
+ */
+@Slf4j
+@Component
+public class BookSearchIndex {
+
+    private static final int TITLE_WEIGHT = 2;
+    private static final int AUTHOR_WEIGHT = 1;
+    private static final int REBUILD_BATCH_SIZE = 1000;
+    private static final double FUZZY_SIMILARITY_THRESHOLD = 0.3;
+    private static final int FUZZY_MAX_TOKENS_PER_TERM = 20;
+    private static final int FUZZY_MAX_CANDIDATES = 1000;
+    private static final int FUZZY_MAX_BOOKS_PER_TERM = 1000;
+    private static final int PREFIX_MAX_TOKENS = 100;
+    private static final int PREFIX_MAX_BOOKS = 1000;
+
+    private final BookRepository bookRepository;
+
+    private final ConcurrentSkipListMap<String, Set<Long>> titleIndex = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<String, Set<Long>> authorIndex = new ConcurrentSkipListMap<>();
+    private final Map<String, Set<String>> trigramIndex = new ConcurrentHashMap<>();
+    private final Map<String, Integer> tokenTrigramCounts = new ConcurrentHashMap<>();
+    private final Map<Long, IndexedBook> indexedBooks = new ConcurrentHashMap<>();
+
+    private volatile boolean ready;
+
+    public BookSearchIndex(BookRepository bookRepository) {
+        this.bookRepository = bookRepository;
+    }
+
+    /**
+     * Заполняет индекс книгами из базы, постранично по возрастанию id.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        long lastId = 0;
+        List<BookSearchProjection> batch;
+        do {
+            batch = bookRepository.findTop1000ByIdGreaterThanOrderByIdAsc(lastId);
+            for (BookSearchProjection book : batch) {
+                add(book.getId(), book.getTitle(), book.getAuthor());
+                lastId = book.getId();
+            }
+        } while (batch.size() == REBUILD_BATCH_SIZE);
+
+        ready = true;
+        log.info("Поисковый индекс книг построен, книг в индексе: {}", indexedBooks.size());
+    }
+
+    /**
+     * Проверяет, построен ли индекс.
+     *
+     * @return true, если индекс можно использовать для поиска
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Добавляет книгу в индекс (или переиндексирует, если она уже есть).
+     *
+     * @param bookId идентификатор книги
+     * @param title  название книги
+     * @param author автор книги
+     */
+    public synchronized void add(long bookId, String title, String author) {
+        remove(bookId);
+
+        IndexedBook indexedBook = new IndexedBook(
+                new HashSet<>(BookTextNormalizer.tokenize(title)),
+                new HashSet<>(BookTextNormalizer.tokenize(author)));
+
+        indexedBook.titleTokens().forEach(token -> addPosting(titleIndex, token, bookId));
+        indexedBook.authorTokens().forEach(token -> addPosting(authorIndex, token, bookId));
+        indexedBook.allTokens().forEach(token -> {
+            Set<String> tokenTrigrams = trigrams(token);
+            tokenTrigrams.forEach(trigram -> trigramIndex.computeIfAbsent(trigram, t -> ConcurrentHashMap.newKeySet()).add(token));
+            tokenTrigramCounts.put(token, tokenTrigrams.size());
+        });
+        indexedBooks.put(bookId, indexedBook);
+    }
+
+    /**
+     * Удаляет книгу из индекса.
+     *
+     * @param bookId идентификатор книги
+     */
+    public synchronized void remove(long bookId) {
+        IndexedBook indexedBook = indexedBooks.remove(bookId);
+        if (indexedBook == null) {
+            return;
+        }
+
+        indexedBook.titleTokens().forEach(token -> removePosting(titleIndex, token, bookId));
+        indexedBook.authorTokens().forEach(token -> removePosting(authorIndex, token, bookId));
+        indexedBook.allTokens().stream()
+                .filter(token -> !titleIndex.containsKey(token) && !authorIndex.containsKey(token))
+                .forEach(token -> {
+                    trigrams(token).forEach(trigram -> trigramIndex.computeIfPresent(trigram, (t, tokens) -> {
+                        tokens.remove(token);
+                        return tokens.isEmpty() ? null : tokens;
+                    }));
+                    tokenTrigramCounts.remove(token);
+                });
+    }
+
+    /**
+     * Ищет книги, в названии или авторе которых встречаются все слова запроса.
+     * Последнее слово запроса ищется по префиксу, остальные - целиком.
+     * Результат упорядочен по релевантности: совпадение в названии весит больше, чем в авторе,
+     * точное совпадение слова - больше, чем по префиксу. Сортировка из pageable не учитывается.
+     * Если последнее слово - единственное, по префиксу просматривается не больше {@value PREFIX_MAX_TOKENS} слов словаря
+     * и набирается не больше {@value PREFIX_MAX_BOOKS} книг, так что короткий префикс не обходит весь индекс.
+     * Иначе префикс проверяется только у книг, найденных по остальным словам.
+     *
+     * @param searchTerm строка запроса
+     * @param pageable   параметры страницы
+     * @return страница идентификаторов найденных книг в порядке релевантности
+     */
+    public Page<Long> search(String searchTerm, Pageable pageable) {
+        List<String> terms = BookTextNormalizer.tokenize(searchTerm);
+        if (terms.isEmpty()) {
+            return Page.empty(pageable);
+        }
+
+        Map<Long, Integer> scores = null;
+        for (int i = 0; i < terms.size(); i++) {
+            boolean prefix = i == terms.size() - 1;
+            if (prefix && scores != null) {
+                retainByPrefix(scores, terms.get(i));
+                break;
+            }
+
+            Map<Long, Integer> termScores = new HashMap<>();
+            collect(titleIndex, terms.get(i), prefix, TITLE_WEIGHT, termScores);
+            collect(authorIndex, terms.get(i), prefix, AUTHOR_WEIGHT, termScores);
+
+            if (scores == null) {
+                scores = termScores;
+            } else {
+                scores.keySet().retainAll(termScores.keySet());
+                scores.replaceAll((bookId, score) -> score + termScores.get(bookId));
+            }
+
+            if (scores.isEmpty()) {
+                return Page.empty(pageable);
+            }
+        }
+
+        return toPage(scores, pageable);
+    }
+
+    /**
+     * Нечёткий поиск книг по названию и автору, устойчивый к опечаткам.
+     * Для каждого слова запроса по индексу триграмм подбирается не более {@value FUZZY_MAX_TOKENS_PER_TERM}
+     * похожих слов из словаря (сходство по Жаккару не ниже {@value FUZZY_SIMILARITY_THRESHOLD}).
+     * Оценка книги - сумма сходств найденных слов с учётом веса поля; достаточно совпадения хотя бы одного слова.
+     * На каждое слово запроса учитывается не более {@value FUZZY_MAX_BOOKS_PER_TERM} книг, начиная с самых похожих слов.
+     *
+     * @param searchTerm строка запроса
+     * @param pageable   параметры страницы
+     * @return страница идентификаторов найденных книг в порядке убывания сходства
+     */
+    public Page<Long> fuzzySearch(String searchTerm, Pageable pageable) {
+        Map<Long, Double> scores = new HashMap<>();
+
+        for (String term : BookTextNormalizer.tokenize(searchTerm)) {
+            Map<Long, Double> termScores = new HashMap<>();
+            for (Map.Entry<String, Double> similarToken : findSimilarTokens(term)) {
+                collectFuzzy(titleIndex, similarToken, TITLE_WEIGHT, termScores);
+                collectFuzzy(authorIndex, similarToken, AUTHOR_WEIGHT, termScores);
+                if (termScores.size() >= FUZZY_MAX_BOOKS_PER_TERM) {
+                    break;
+                }
+            }
+            termScores.forEach((bookId, score) -> scores.merge(bookId, score, Double::sum));
+        }
+
+        return toPage(scores, pageable);
+    }
+
+    /**
+     * Подбирает слова из словаря индекса, похожие на указанное, по общим триграммам.
+     * У слова со сходством не ниже порога общих триграмм с запросом не меньше {@code ceil(порог * n)},
+     * где n - число триграмм запроса, поэтому кандидаты собираются только по {@code n - ceil(порог * n) + 1}
+     * самым редким триграммам запроса: частые триграммы (например, края слова) не просматриваются целиком.
+     * Кандидатов не больше {@value FUZZY_MAX_CANDIDATES}; число общих триграмм для каждого из них
+     * считается проверкой вхождения в списки триграмм, а не их обходом.
+     *
+     * @param term нормализованное слово запроса
+     * @return похожие слова и их сходство с запросом по убыванию сходства, не больше {@value FUZZY_MAX_TOKENS_PER_TERM}
+     */
+    private List<Map.Entry<String, Double>> findSimilarTokens(String term) {
+        List<Set<String>> postings = trigrams(term).stream()
+                .map(trigram -> trigramIndex.getOrDefault(trigram, Set.of()))
+                .sorted(Comparator.comparingInt(Set::size))
+                .toList();
+        int termTrigramCount = postings.size();
+        int candidateTrigrams = termTrigramCount - (int) Math.ceil(FUZZY_SIMILARITY_THRESHOLD * termTrigramCount) + 1;
+
+        Set<String> candidates = new HashSet<>();
+        for (Set<String> posting : postings.subList(0, Math.min(candidateTrigrams, termTrigramCount))) {
+            Iterator<String> tokens = posting.iterator();
+            while (tokens.hasNext() && candidates.size() < FUZZY_MAX_CANDIDATES) {
+                candidates.add(tokens.next());
+            }
+        }
+
+        List<Map.Entry<String, Double>> similarTokens = new ArrayList<>();
+        for (String candidate : candidates) {
+            Integer candidateTrigramCount = tokenTrigramCounts.get(candidate);
+            if (candidateTrigramCount == null) {
+                continue;
+            }
+
+            int shared = 0;
+            for (Set<String> posting : postings) {
+                if (posting.contains(candidate)) {
+                    shared++;
+                }
+            }
+            double similarity = (double) shared / (termTrigramCount + candidateTrigramCount - shared);
+            if (similarity >= FUZZY_SIMILARITY_THRESHOLD) {
+                similarTokens.add(Map.entry(candidate, similarity));
+            }
+        }
+
+        return similarTokens.stream()
+                .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
+                .limit(FUZZY_MAX_TOKENS_PER_TERM)
+                .toList();
+    }
+
+    /**
+     * Разбивает слово на триграммы, дополняя его пробелами в начале и в конце, чтобы учесть края слова.
+     *
+     * @param token нормализованное слово
+     * @return множество триграмм
+     */
+    private static Set<String> trigrams(String token) {
+        String padded = "  " + token + " ";
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            result.add(padded.substring(i, i + 3));
+        }
+        return result;
+    }
+
+    /**
+     * Упорядочивает книги по убыванию оценки (при равенстве - по id) и вырезает запрошенную страницу.
+     *
+     * @param scores   оценки книг по их идентификаторам
+     * @param pageable параметры страницы
+     * @return страница идентификаторов книг
+     */
+    private <T extends Comparable<T>> Page<Long> toPage(Map<Long, T> scores, Pageable pageable) {
+        List<Long> rankedIds = scores.entrySet().stream()
+                .sorted(Map.Entry.<Long, T>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .map(Map.Entry::getKey)
+                .toList();
+
+        if (pageable.isUnpaged()) {
+            return new PageImpl<>(rankedIds, pageable, rankedIds.size());
+        }
+
+        int from = (int) Math.min(pageable.getOffset(), rankedIds.size());
+        int to = Math.min(from + pageable.getPageSize(), rankedIds.size());
+        return new PageImpl<>(rankedIds.subList(from, to), pageable, rankedIds.size());
+    }
+
+    private void collect(ConcurrentSkipListMap<String, Set<Long>> index, String term, boolean prefix, int weight, Map<Long, Integer> termScores) {
+        index.getOrDefault(term, Set.of()).forEach(bookId -> termScores.merge(bookId, weight * 2, Math::max));
+        if (!prefix) {
+            return;
+        }
+
+        Iterator<Set<Long>> matches = index.subMap(term, false, term + Character.MAX_VALUE, false).values().iterator();
+        for (int tokens = 0; matches.hasNext() && tokens < PREFIX_MAX_TOKENS && termScores.size() < PREFIX_MAX_BOOKS; tokens++) {
+            Iterator<Long> bookIds = matches.next().iterator();
+            while (bookIds.hasNext() && termScores.size() < PREFIX_MAX_BOOKS) {
+                termScores.merge(bookIds.next(), weight, Math::max);
+            }
+        }
+    }
+
+    /**
+     * Оставляет только книги, в названии или авторе которых есть слово с указанным префиксом, и добавляет к их оценке
+     * оценку этого слова. Проверяются слова самих книг, поэтому время не зависит от числа слов с этим префиксом в словаре.
+     */
+    private void retainByPrefix(Map<Long, Integer> scores, String term) {
+        Iterator<Map.Entry<Long, Integer>> entries = scores.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Long, Integer> entry = entries.next();
+            IndexedBook indexedBook = indexedBooks.get(entry.getKey());
+            int termScore = indexedBook == null ? 0 : Math.max(
+                    prefixScore(indexedBook.titleTokens(), term, TITLE_WEIGHT),
+                    prefixScore(indexedBook.authorTokens(), term, AUTHOR_WEIGHT));
+            if (termScore == 0) {
+                entries.remove();
+            } else {
+                entry.setValue(entry.getValue() + termScore);
+            }
+        }
+    }
+
+    private static int prefixScore(Set<String> tokens, String term, int weight) {
+        if (tokens.contains(term)) {
+            return weight * 2;
+        }
+        for (String token : tokens) {
+            if (token.startsWith(term)) {
+                return weight;
+            }
+        }
+        return 0;
+    }
+
+    private void collectFuzzy(Map<String, Set<Long>> index, Map.Entry<String, Double> similarToken, int weight, Map<Long, Double> termScores) {
+        Iterator<Long> bookIds = index.getOrDefault(similarToken.getKey(), Set.of()).iterator();
+        while (bookIds.hasNext() && termScores.size() < FUZZY_MAX_BOOKS_PER_TERM) {
+            termScores.merge(bookIds.next(), similarToken.getValue() * weight, Math::max);
+        }
+    }
+
+    private void addPosting(ConcurrentSkipListMap<String, Set<Long>> index, String token, long bookId) {
+        index.compute(token, (t, bookIds) -> {
+            Set<Long> result = bookIds == null ? ConcurrentHashMap.newKeySet() : bookIds;
+            result.add(bookId);
+            return result;
+        });
+    }
+
+    private void removePosting(ConcurrentSkipListMap<String, Set<Long>> index, String token, long bookId) {
+        index.computeIfPresent(token, (t, bookIds) -> {
+            bookIds.remove(bookId);
+            return bookIds.isEmpty() ? null : bookIds;
+        });
+    }
+
+    private record IndexedBook(Set<String> titleTokens, Set<String> authorTokens) {
+        Set<String> allTokens() {
+            Set<String> tokens = new HashSet<>(titleTokens);
+            tokens.addAll(authorTokens);
+            return tokens;
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package com.spring.vsurin.bookexchange.app;
+
+public interface BookSearchProjection {
+    long getId();
+    String getTitle();
+    String getAuthor();
+}
@@ -2,13 +2,26 @@ package com.spring.vsurin.bookexchange.app;
 
 import com.spring.vsurin.bookexchange.domain.Book;
 import com.spring.vsurin.bookexchange.domain.BookGenre;
-import com.spring.vsurin.bookexchange.domain.User;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.Resource;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * Сервисный класс для работы с книгами.
@@ -17,20 +30,40 @@ import java.util.List;
 @Component
 public class BookService {
 
+    private static final int DEDUP_KEY_BATCH_SIZE = 1000;
+
     private final BookRepository bookRepository;
 
     private final UserRepository userRepository;
 
     private final SecurityContextService securityContextService;
 
-    public BookService(BookRepository bookRepository, UserRepository userRepository, SecurityContextService securityContextService) {
+    private final BookSearchIndex bookSearchIndex;
+
+    private final RatingAccumulator ratingAccumulator;
+
+    private final CoverStorage coverStorage;
+
+    private final CoverThumbnailService coverThumbnailService;
+
+    private final EntityCache entityCache;
+
+    public BookService(BookRepository bookRepository, UserRepository userRepository, SecurityContextService securityContextService, BookSearchIndex bookSearchIndex, RatingAccumulator ratingAccumulator, CoverStorage coverStorage, CoverThumbnailService coverThumbnailService, EntityCache entityCache) {
         this.bookRepository = bookRepository;
         this.userRepository = userRepository;
         this.securityContextService = securityContextService;
+        this.bookSearchIndex = bookSearchIndex;
+        this.ratingAccumulator = ratingAccumulator;
+        this.coverStorage = coverStorage;
+        this.coverThumbnailService = coverThumbnailService;
+        this.entityCache = entityCache;
     }
 
     /**
      * Создает новую книгу и, если не null, сохраняет её в базе данных, проверяя, нет ли ещё такой книги.
+     * Дубликаты отсекает уникальный индекс по ключу книги (см. {@link BookTextNormalizer#dedupKey}),
+     * поэтому проверка верна и при одновременном добавлении одной книги.
+     * Дубликатом считается только нарушение, после которого книга с тем же ключом есть в базе; остальные ошибки не скрываются.
      * @param book объект книги для создания
      * @return сохраненная книга
      * @throws IllegalStateException если книга равна null
@@ -41,12 +74,17 @@ public class BookService {
         }
 
         try {
-            List<Book> existingBooks = bookRepository.findByTitleAndAuthorIgnoreCase(book.getTitle(), book.getAuthor());
-            if (!existingBooks.isEmpty()) {
+            book.setDedupKey(BookTextNormalizer.dedupKey(book.getTitle(), book.getAuthor(), book.getIsbn()));
+            try {
+                bookRepository.save(book);
+            } catch (DataIntegrityViolationException e) {
+                if (!bookRepository.findExistingDedupKeys(Set.of(book.getDedupKey())).contains(book.getDedupKey())) {
+                    throw e;
+                }
                 log.error("Книга с названием {} и автором {} уже есть в базе, добавление не выполнено", book.getTitle(), book.getAuthor());
                 return book;
             }
-            bookRepository.save(book);
+            bookSearchIndex.add(book.getId(), book.getTitle(), book.getAuthor());
             log.info("Создана книга с id {}", book.getId());
             return book;
         } catch (Exception e) {
@@ -55,12 +93,50 @@ public class BookService {
     }
 
     /**
-     * Получает книгу по её идентификатору.
+     * Заполняет ключ для поиска дубликатов у книг, добавленных до его появления, постранично по возрастанию id.
+     * Книги, ключ которых совпал с ключом другой книги, остаются без ключа и попадают в лог.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void fillMissingDedupKeys() {
+        long lastId = 0;
+        int filled = 0;
+        List<BookDedupProjection> batch;
+        do {
+            batch = bookRepository.findTop1000ByDedupKeyIsNullAndIdGreaterThanOrderByIdAsc(lastId);
+            for (BookDedupProjection book : batch) {
+                lastId = book.getId();
+                try {
+                    bookRepository.updateDedupKey(book.getId(), BookTextNormalizer.dedupKey(book.getTitle(), book.getAuthor(), book.getIsbn()));
+                    filled++;
+                } catch (DataIntegrityViolationException e) {
+                    log.error("Книга с id {} дублирует другую книгу, ключ не заполнен", book.getId());
+                }
+            }
+        } while (batch.size() == DEDUP_KEY_BATCH_SIZE);
+
+        if (filled > 0) {
+            log.info("Заполнены ключи для поиска дубликатов, книг: {}", filled);
+        }
+    }
+
+    /**
+     * Сверяет счётчики предложений книг и флаги доступности с таблицей предлагаемых к обмену книг,
+     * чтобы исправить расхождения, оставшиеся после сбоев или изменений в обход приложения.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconcileOfferCounts() {
+        int updatedBooks = bookRepository.recalculateOfferCounts();
+        log.info("Счётчики предложений книг сверены со списками пользователей, обновлено книг: {}", updatedBooks);
+    }
+
+    /**
+     * Получает книгу по её идентификатору. Книга читается через кэш второго уровня
+     * ({@code findById(Long)} выполняет {@code EntityManager.find}, а не запрос).
      * @param bookId идентификатор книги
      * @return найденная книга
      */
     public Book getBookById(long bookId) {
-        Book foundBook = bookRepository.findById(bookId);
+        Book foundBook = bookRepository.findById(Long.valueOf(bookId)).orElse(null);
         if (foundBook == null) {
             throw new IllegalArgumentException("Книга с id " + bookId + " не найдена");
         }
@@ -70,6 +146,69 @@ public class BookService {
         }
     }
 
+    /**
+     * Получает карточку книги: книгу и идентификаторы связанных с ней пользователей одним запросом, не загружая коллекции.
+     * @param bookId идентификатор книги
+     * @return карточка книги
+     */
+    public BookDetails getBookDetails(long bookId) {
+        Book book = getBookById(bookId);
+        Map<String, List<Long>> links = bookRepository.findUserLinks(bookId).stream()
+                .collect(Collectors.groupingBy(LinkedIdProjection::getKind,
+                        Collectors.mapping(LinkedIdProjection::getId, Collectors.toList())));
+
+        return new BookDetails(book,
+                links.getOrDefault("OWNER", List.of()),
+                links.getOrDefault("OFFERING", List.of()),
+                links.getOrDefault("WISHLIST", List.of()));
+    }
+
+    /**
+     * Получает версию книги, не загружая саму книгу.
+     * @param bookId идентификатор книги
+     * @return версия книги или null, если книга не найдена
+     */
+    public Long getBookVersion(long bookId) {
+        return bookRepository.findVersionById(bookId);
+    }
+
+    /**
+     * Увеличивает версию книги, когда меняются связанные с ней данные, которые хранятся не в ней самой
+     * (владельцы, списки желаний).
+     * @param bookId идентификатор книги
+     */
+    public void touchBook(long bookId) {
+        bookRepository.incrementVersion(bookId);
+        entityCache.evictBook(bookId);
+    }
+
+    /**
+     * Увеличивает версии нескольких книг одним запросом.
+     * @param bookIds идентификаторы книг
+     */
+    public void touchBooks(Collection<Long> bookIds) {
+        bookRepository.incrementVersions(bookIds);
+        bookIds.forEach(entityCache::evictBook);
+    }
+
+    /**
+     * Проверяет, есть ли книга в базе, не загружая её.
+     * @param bookId идентификатор книги
+     * @return true, если книга есть в базе
+     */
+    public boolean existsBook(long bookId) {
+        return bookRepository.existsById(bookId);
+    }
+
+    /**
+     * Получает идентификаторы существующих книг из указанных.
+     * @param bookIds идентификаторы книг
+     * @return идентификаторы книг, которые есть в базе
+     */
+    public List<Long> getExistingBookIds(Collection<Long> bookIds) {
+        return bookRepository.findExistingIds(bookIds);
+    }
+
     /**
      * Удаляет книгу из базы данных по её идентификатору.
      * @param bookId идентификатор книги для удаления
@@ -80,71 +219,207 @@ public class BookService {
             throw new IllegalArgumentException("Книга с id " + bookId + " не найдена");
         } else {
             bookRepository.deleteById(bookId);
+            entityCache.evictBook(bookId);
+            bookSearchIndex.remove(bookId);
             log.info("Удалена книга с id {}", bookId);
         }
     }
 
     /**
      * Возвращает все книги, которые есть в базе, с пагинацией.
-     * @return все книги, по страницам
+     * Книги выбираются без коллекций пользователей и оценок, одним запросом на страницу (и запросом количества).
+     * @return краткие сведения о книгах, по страницам
+     */
+    public Page<BookSummaryProjection> getAllBooksInBase(Pageable pageable) {
+        return bookRepository.findSummaries(pageable);
+    }
+
+    /**
+     * Возвращает книги, которые есть в базе, постранично по ключу, в порядке возрастания id.
+     * Стоимость запроса не зависит от глубины страницы, а добавление новых книг не сдвигает страницы.
+     *
+     * @param cursor позиция, полученная с предыдущей страницей, или null для первой страницы
+     * @param size   количество книг на странице
+     * @return страница книг и позиция следующей страницы
+     */
+    public CursorPage<BookSummaryProjection> getAllBooksInBase(BookCursor cursor, int size) {
+        long lastId = cursor == null ? 0 : cursor.id();
+        return toCursorPage(bookRepository.findSummariesAfter(lastId, Limit.of(size + 1)), size);
+    }
+
+    /**
+     * Ищет книги по указанному жанру постранично по ключу, в порядке возрастания id.
+     *
+     * @param genre  жанр книги, по которому нужно выполнить поиск
+     * @param cursor позиция, полученная с предыдущей страницей, или null для первой страницы
+     * @param size   количество книг на странице
+     * @return страница книг указанного жанра и позиция следующей страницы
      */
-    public Page<Book> getAllBooksInBase(Pageable pageable) {
-        return bookRepository.findAll(pageable);
+    public CursorPage<BookSummaryProjection> searchByGenre(BookGenre genre, BookCursor cursor, int size) {
+        long lastId = cursor == null ? 0 : cursor.id();
+        return toCursorPage(bookRepository.findSummariesByGenreAfter(genre, lastId, Limit.of(size + 1)), size);
     }
 
     /**
      * Ищет книги по указанному жанру, с пагинацией.
      *
      * @param genre жанр книги, по которому нужно выполнить поиск
-     * @return список книг, соответствующих указанному жанру, по страницам
+     * @return краткие сведения о книгах указанного жанра, по страницам
      */
-    public Page<Book> searchByGenre(BookGenre genre, Pageable pageable) {
-        return bookRepository.findByGenre(genre, pageable);
+    public Page<BookSummaryProjection> searchByGenre(BookGenre genre, Pageable pageable) {
+        return bookRepository.findSummariesByGenre(genre, pageable);
     }
 
     /**
      * Ищет книги по заданной строке, которая может быть как названием книги, так и именем автора.
+     * Поиск выполняется по инвертированному индексу, результаты упорядочены по релевантности.
+     * Пока индекс не построен, поиск выполняется запросом к базе по вхождению подстроки.
      *
      * @param searchTerm строка, по которой будет выполнен поиск; может быть как названием книги, так и именем автора
-     * @return список книг, у которых либо название книги, либо имя автора содержит указанную строку
+     * @return список книг, у которых название книги или имя автора содержит слова из указанной строки
      */
-    public Page<Book> searchByTitleOrAuthor(String searchTerm, Pageable pageable) {
-        return bookRepository.findByTitleContainingIgnoreCaseOrAuthorContainingIgnoreCase(searchTerm, searchTerm, pageable);
+    public Page<BookSummaryProjection> searchByTitleOrAuthor(String searchTerm, Pageable pageable) {
+        if (!bookSearchIndex.isReady()) {
+            return bookRepository.findSummariesByTitleOrAuthor(searchTerm, pageable);
+        }
+
+        Page<Long> foundIds = bookSearchIndex.search(searchTerm, pageable);
+        return new PageImpl<>(findBooksInOrder(foundIds.getContent()), pageable, foundIds.getTotalElements());
+    }
+
+    /**
+     * Нечёткий поиск книг по названию и автору, устойчивый к опечаткам (например, в фамилиях авторов).
+     * Пока индекс не построен, поиск выполняется запросом к базе по вхождению подстроки.
+     *
+     * @param searchTerm строка, по которой будет выполнен поиск
+     * @return список книг, у которых название или автор похожи на указанную строку, по убыванию сходства
+     */
+    public Page<BookSummaryProjection> fuzzySearchByTitleOrAuthor(String searchTerm, Pageable pageable) {
+        if (!bookSearchIndex.isReady()) {
+            return bookRepository.findSummariesByTitleOrAuthor(searchTerm, pageable);
+        }
+
+        Page<Long> foundIds = bookSearchIndex.fuzzySearch(searchTerm, pageable);
+        return new PageImpl<>(findBooksInOrder(foundIds.getContent()), pageable, foundIds.getTotalElements());
+    }
+
+    /**
+     * Загружает краткие сведения о книгах по списку идентификаторов одним запросом, сохраняя порядок списка.
+     * Книги, которых уже нет в базе, пропускаются.
+     *
+     * @param bookIds идентификаторы книг
+     * @return книги в порядке идентификаторов
+     */
+    private List<BookSummaryProjection> findBooksInOrder(List<Long> bookIds) {
+        Map<Long, BookSummaryProjection> booksById = new HashMap<>();
+        bookRepository.findSummariesByIds(bookIds).forEach(book -> booksById.put(book.getId(), book));
+
+        return bookIds.stream()
+                .map(booksById::get)
+                .filter(Objects::nonNull)
+                .toList();
     }
 
     /**
      * Получает список книг доступных для обмена.
-     * Запрашивает базу данных на предмет книг, у которых есть хотя бы один пользователь, предлагающий их для обмена.
+     * Запрашивает базу данных на предмет книг, у которых есть хотя бы один пользователь, предлагающий их для обмена,
+     * по убыванию рейтинга.
      *
      * @return Список книг, доступных для обмена.
      */
-    public Page<Book> getAvailableForExchangeBooks(Pageable pageable) {
-        return bookRepository.findBooksWithUsersOfferingForExchange(pageable);
+    public Page<BookSummaryProjection> getAvailableForExchangeBooks(Pageable pageable) {
+        return bookRepository.findSummariesOfferedForExchange(pageable);
+    }
+
+    /**
+     * Получает книги, доступные для обмена, постранично по ключу: по убыванию рейтинга, при равном рейтинге - по возрастанию id.
+     *
+     * @param cursor позиция, полученная с предыдущей страницей, или null для первой страницы
+     * @param size   количество книг на странице
+     * @return страница книг, доступных для обмена, и позиция следующей страницы
+     */
+    public CursorPage<BookSummaryProjection> getAvailableForExchangeBooks(BookCursor cursor, int size) {
+        List<BookSummaryProjection> books = cursor == null
+                ? bookRepository.findSummariesOfferedForExchangeAfter(Double.MAX_VALUE, 0, Limit.of(size + 1))
+                : bookRepository.findSummariesOfferedForExchangeAfter(cursor.rating(), cursor.id(), Limit.of(size + 1));
+        return toCursorPage(books, size);
+    }
+
+    /**
+     * Формирует страницу из выборки, запрошенной с одним лишним элементом:
+     * если он есть, следующая страница существует и начинается после последней книги страницы.
+     *
+     * @param books книги, выбранные с запасом в один элемент
+     * @param size  количество книг на странице
+     * @return страница книг и позиция следующей страницы
+     */
+    private CursorPage<BookSummaryProjection> toCursorPage(List<BookSummaryProjection> books, int size) {
+        if (books.size() <= size) {
+            return new CursorPage<>(books, null);
+        }
+
+        List<BookSummaryProjection> content = books.subList(0, size);
+        BookSummaryProjection last = content.get(size - 1);
+        return new CursorPage<>(content, new BookCursor(last.getRating(), last.getId()).encode());
+    }
+
+    /**
+     * Изменяет счётчик пользователей, предлагающих книгу для обмена.
+     * Выполняется одним запросом к базе в транзакции вызывающего метода.
+     *
+     * @param bookId идентификатор книги
+     * @param delta  на сколько изменить счётчик
+     */
+    public void updateOfferCount(long bookId, int delta) {
+        bookRepository.updateOfferCount(bookId, delta);
+        entityCache.evictBook(bookId);
+    }
+
+    /**
+     * Изменяет число предложений к обмену у нескольких книг одним запросом.
+     * @param bookIds идентификаторы книг
+     * @param delta   изменение числа предложений
+     */
+    public void updateOfferCounts(Collection<Long> bookIds, int delta) {
+        bookRepository.updateOfferCounts(bookIds, delta);
+        bookIds.forEach(entityCache::evictBook);
     }
 
     /**
      * Добавляет оценку книге с указанным идентификатором, проверяя, подходит ли оценка под условия.
+     * Книга не загружается: проверяется только её наличие. Оценка сразу записывается в историю, а сумма,
+     * количество оценок и рейтинг книги обновляются пакетно через {@link RatingAccumulator},
+     * поэтому рейтинг в базе может отставать на интервал сброса.
      *
      * @param bookId идентификатор книги
      * @param mark   оценка, которую нужно добавить
+     * @throws IllegalArgumentException если книга не найдена
      */
     public void addMarkToBook(long bookId, int mark) {
-        Book book = getBookById(bookId);
+        if (!existsBook(bookId)) {
+            throw new IllegalArgumentException("Книга с id " + bookId + " не найдена");
+        }
         long userId = securityContextService.getCurrentAuthId();
-        User user = userRepository.findById(userId);
-
-        if (user != null && book != null) {
-            if (user.getLibrary().contains(book)) {
-                if (mark >= 1 && mark <= 10) {
-                    book.addMarkToBook(mark);
-                    bookRepository.save(book);
-                    log.info("Оценка {} добавлена в список оценок книги с id {}", mark, bookId);
-                } else
-                    log.error("Оценка {} не добавлена в список оценок книги с id {} - она должна быть от 1 до 10", mark, bookId);
+
+        if (userRepository.existsInLibrary(userId, bookId)) {
+            if (mark >= 1 && mark <= 10) {
+                bookRepository.insertMark(bookId, mark);
+                ratingAccumulator.add(bookId, mark);
+                log.info("Оценка {} добавлена в список оценок книги с id {}", mark, bookId);
             } else
-                log.error("Оценка {} не добавлена в список оценок книги с id {}, так как пользователь {} не явл. её владельцем", mark, bookId, userId);
+                log.error("Оценка {} не добавлена в список оценок книги с id {} - она должна быть от 1 до 10", mark, bookId);
         } else
-            log.error("Оценка {} не добавлена в список оценок книги с id {} - книга и её владелец не должны быть null", mark, bookId);
+            log.error("Оценка {} не добавлена в список оценок книги с id {}, так как пользователь {} не явл. её владельцем", mark, bookId, userId);
+    }
+
+    /**
+     * Получает историю оценок книги с пагинацией.
+     *
+     * @param bookId идентификатор книги
+     * @return оценки книги, по страницам
+     */
+    public Page<Integer> getBookMarks(long bookId, Pageable pageable) {
+        return bookRepository.findMarksByBookId(bookId, pageable);
     }
 
     /**
@@ -158,37 +433,68 @@ public class BookService {
         if (book != null) {
             book.setDescription(desc);
             bookRepository.save(book);
+            entityCache.evictBook(bookId);
             log.info("Описание добавлено для книги с id {}", bookId);
         }
     }
 
     /**
-     * Получает изображение обложки книги по её идентификатору.
+     * Получает хеш изображения обложки книги по её идентификатору, не загружая саму книгу.
      *
      * @param bookId идентификатор книги
-     * @return изображение обложки книги в виде массива байтов
+     * @return хеш изображения обложки или null, если у книги нет обложки
      */
-    public byte[] getBookCover(long bookId) {
-        BookCoverProjection bookCoverProjection = bookRepository.findCoverImageById(bookId);
+    public String getBookCoverHash(long bookId) {
+        BookCoverProjection bookCoverProjection = bookRepository.findCoverHashById(bookId);
         if (bookCoverProjection == null) {
             return null;
         } else {
-            return bookCoverProjection.getCoverImage();
+            return bookCoverProjection.getCoverHash();
         }
     }
 
+    /**
+     * Получает изображение обложки из хранилища обложек.
+     *
+     * @param coverHash хеш изображения обложки
+     * @return изображение обложки в виде ресурса, который можно отдавать по частям, или null, если его нет в хранилище
+     */
+    public Resource getBookCover(String coverHash) {
+        return coverStorage.load(coverHash);
+    }
+
+    /**
+     * Получает уменьшенную копию изображения обложки.
+     *
+     * @param coverHash хеш изображения обложки
+     * @param size      размер копии, один из {@link CoverThumbnailService#THUMBNAIL_SIZES}
+     * @return уменьшенная копия обложки или null, если она ещё не построена
+     */
+    public Resource getBookCoverThumbnail(String coverHash, int size) {
+        return coverThumbnailService.getThumbnail(coverHash, size);
+    }
+
     /**
      * Обновляет изображение обложки книги по её идентификатору.
+     * Изображение сохраняется в хранилище обложек потоком, в книге остаётся только его хеш.
+     * Уменьшенные копии обложки строятся асинхронно.
      *
      * @param bookId идентификатор книги
-     * @param image новое изображение обложки книги в виде массива байтов
+     * @param image поток с новым изображением обложки книги
+     * @throws CoverTooLargeException если изображение больше допустимого размера
      */
-    public void updateBookCover(long bookId, byte[] image) {
+    public void updateBookCover(long bookId, InputStream image) {
         Book book = getBookById(bookId);
         if (book != null) {
-            book.setCoverImage(image);
+            try {
+                book.setCoverHash(coverStorage.store(image));
+            } catch (IOException e) {
+                throw new RuntimeException("Ошибка при сохранении обложки книги", e);
+            }
             bookRepository.save(book);
+            entityCache.evictBook(bookId);
+            coverThumbnailService.generateThumbnails(book.getCoverHash());
             log.info("Обложка добавлена/обновлена для книги с id {}", bookId);
         }
     }
-}
\ No newline at end of file
+}
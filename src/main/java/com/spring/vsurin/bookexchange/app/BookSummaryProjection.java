@@ -0,0 +1,18 @@
+package com.spring.vsurin.bookexchange.app;
+
+import com.spring.vsurin.bookexchange.domain.BookGenre;
+
+import java.time.Year;
+
+public interface BookSummaryProjection extends BookVersionProjection {
+    String getTitle();
+    String getAuthor();
+    Year getPublicationYear();
+    String getIsbn();
+    BookGenre getGenre();
+    double getRating();
+    int getMarksCount();
+    int getOfferCount();
+    int getOwnersCount();
+    int getWishlistCount();
+}
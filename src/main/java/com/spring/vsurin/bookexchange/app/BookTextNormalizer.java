@@ -0,0 +1,74 @@
+package com.spring.vsurin.bookexchange.app;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Нормализация названий и авторов книг для поиска и сравнения.
+ * Приводит текст к нижнему регистру, заменяет "ё" на "е" и убирает знаки препинания.
+ */
+public final class BookTextNormalizer {
+
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{Nd}]+");
+    private static final Pattern NON_ISBN = Pattern.compile("[^0-9X]");
+    private static final char KEY_SEPARATOR = '|';
+
+    private BookTextNormalizer() {
+    }
+
+    /**
+     * Нормализует строку: NFKC, нижний регистр, "ё" -> "е", знаки препинания и лишние пробелы заменяются одним пробелом.
+     *
+     * @param text исходная строка
+     * @return нормализованная строка или пустая строка, если text равен null
+     */
+    public static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+
+        String result = Normalizer.normalize(text, Normalizer.Form.NFKC)
+                .toLowerCase(Locale.ROOT)
+                .replace('ё', 'е');
+
+        return NON_WORD.matcher(result).replaceAll(" ").trim();
+    }
+
+    /**
+     * Строит ключ для поиска дубликатов книги: нормализованные название и автор и, если указан, ISBN без дефисов и пробелов.
+     * Книги с одинаковым ключом считаются одной и той же книгой.
+     *
+     * @param title  название книги
+     * @param author автор книги
+     * @param isbn   код ISBN, может быть null
+     * @return ключ книги
+     */
+    public static String dedupKey(String title, String author, String isbn) {
+        String normalizedIsbn = isbn == null ? "" : NON_ISBN.matcher(isbn.toUpperCase(Locale.ROOT)).replaceAll("");
+        return normalize(title) + KEY_SEPARATOR + normalize(author) + KEY_SEPARATOR + normalizedIsbn;
+    }
+
+    /**
+     * Разбивает строку на нормализованные токены.
+     *
+     * @param text исходная строка
+     * @return список токенов в порядке следования
+     */
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        String normalized = normalize(text);
+        if (normalized.isEmpty()) {
+            return tokens;
+        }
+
+        for (String token : normalized.split(" ")) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,6 @@
+package com.spring.vsurin.bookexchange.app;
+
+public interface BookUserLinkProjection {
+    long getBookId();
+    long getUserId();
+}
@@ -2,7 +2,6 @@ package com.spring.vsurin.bookexchange.app;
 
 import com.spring.vsurin.bookexchange.domain.ComplaintSubject;
 import com.spring.vsurin.bookexchange.domain.EmailData;
-import com.spring.vsurin.bookexchange.domain.User;
 import com.spring.vsurin.bookexchange.domain.UserRole;
 import org.springframework.stereotype.Component;
 
@@ -25,15 +24,13 @@ public class ComplaintService {
     }
 
     /**
-     * Отправляет жалобу с указанными данными администраторам.
+     * Отправляет жалобу с указанными данными администраторам. Письма всем администраторам ставятся в очередь одним пакетом.
      *
      * @param complaintSubject объект жалобы (BOOK, USER или EXCHANGE)
      * @param subjectId         идентификатор объекта жалобы
      * @param complaint        текст жалобы
      */
     public void sendComplaint(ComplaintSubject complaintSubject, long subjectId, String complaint) {
-        List<User> adminList = userRepository.findByRole(UserRole.ROLE_ADMIN);
-
         String stringComplaintSubject = null;
 
         switch (complaintSubject) {
@@ -49,9 +46,9 @@ public class ComplaintService {
         }
 
         String finalStringComplaintSubject = stringComplaintSubject;
-        adminList.forEach(admin -> {
-            EmailData emailData = mailBuilder.buildSendComplaintMessage(admin.getEmail(), subjectId, finalStringComplaintSubject, complaint);
-            emailService.sendEmail(emailData);
-        });
+        List<EmailData> emails = userRepository.findEmailsByRole(UserRole.ROLE_ADMIN).stream()
+                .map(adminEmail -> mailBuilder.buildSendComplaintMessage(adminEmail, subjectId, finalStringComplaintSubject, complaint))
+                .toList();
+        emailService.sendEmails(emails);
     }
 }
@@ -0,0 +1,22 @@
+package com.spring.vsurin.bookexchange.app;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Интерфейс построения уменьшенных копий изображений обложек.
+ */
+public interface CoverRenderer {
+
+    /**
+     * Строит уменьшенные копии изображения заданных размеров.
+     *
+     * @param image поток с изображением
+     * @param sizes размеры копий в пикселях по большей стороне
+     * @return копии в том же порядке, что и размеры, или null, если изображение не удалось декодировать
+     * или оно больше допустимого размера; повторять построение для такого изображения бессмысленно
+     * @throws IOException если изображение не удалось прочитать
+     */
+    List<byte[]> renderThumbnails(InputStream image, List<Integer> sizes) throws IOException;
+}
@@ -0,0 +1,50 @@
+package com.spring.vsurin.bookexchange.app;
+
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Интерфейс хранилища обложек книг, адресуемого по содержимому.
+ */
+public interface CoverStorage {
+
+    /**
+     * Сохраняет изображение, читая его из потока без полной загрузки в память.
+     * Одинаковые изображения хранятся в одном экземпляре.
+     *
+     * @param content поток с изображением
+     * @return SHA-256 хеш содержимого в шестнадцатеричном виде, по которому изображение можно получить
+     * @throws IOException            если изображение не удалось сохранить
+     * @throws CoverTooLargeException если изображение больше допустимого размера
+     */
+    String store(InputStream content) throws IOException;
+
+    /**
+     * Получает изображение по хешу содержимого.
+     *
+     * @param hash хеш содержимого
+     * @return ресурс с изображением или null, если изображения с таким хешем нет
+     */
+    Resource load(String hash);
+
+    /**
+     * Сохраняет уменьшенную копию изображения рядом с оригиналом.
+     *
+     * @param hash    хеш содержимого оригинала
+     * @param size    размер уменьшенной копии в пикселях (по большей стороне)
+     * @param content поток с уменьшенной копией
+     * @throws IOException если копию не удалось сохранить
+     */
+    void storeRendition(String hash, int size, InputStream content) throws IOException;
+
+    /**
+     * Получает уменьшенную копию изображения.
+     *
+     * @param hash хеш содержимого оригинала
+     * @param size размер уменьшенной копии в пикселях
+     * @return ресурс с уменьшенной копией или null, если её нет
+     */
+    Resource loadRendition(String hash, int size);
+}
@@ -0,0 +1,193 @@
+package com.spring.vsurin.bookexchange.app;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сервис уменьшенных копий обложек книг.
+ * Копии фиксированных размеров ({@link #THUMBNAIL_SIZES}) строятся асинхронно в ограниченном пуле потоков
+ * и сохраняются в хранилище обложек рядом с оригиналом. Самые запрашиваемые копии держатся в памяти
+ * в LRU-кэше, ограниченном по суммарному размеру ({@code bookexchange.covers.cache-bytes}).
+ * Если копия запрошена, но её нет в хранилище (построение не поместилось в очередь или не завершилось),
+ * построение ставится в очередь повторно. Обложки, которые не удалось декодировать или которые больше допустимого размера,
+ * запоминаются: для них построение больше не ставится в очередь, а отдаётся оригинал.
+ * Сами копии строит {@link CoverRenderer}.
+ */
+@Slf4j
+@Component
+public class CoverThumbnailService {
+
+    /**
+     * Допустимые размеры уменьшенных копий в пикселях по большей стороне.
+     */
+    public static final List<Integer> THUMBNAIL_SIZES = List.of(64, 256, 512);
+
+    private static final int QUEUE_CAPACITY = 100;
+    private static final int MAX_FAILED_COVERS = 10_000;
+
+    private final CoverStorage coverStorage;
+    private final CoverRenderer coverRenderer;
+    private final ThreadPoolExecutor executor;
+    private final long cacheCapacityBytes;
+
+    private final Map<String, byte[]> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, CompletableFuture<Void>> inProgress = new ConcurrentHashMap<>();
+    private final Set<String> failedCovers = Collections.synchronizedSet(Collections.newSetFromMap(new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_FAILED_COVERS;
+        }
+    }));
+    private long cacheSizeBytes;
+
+    public CoverThumbnailService(CoverStorage coverStorage,
+                                 CoverRenderer coverRenderer,
+                                 @Value("${bookexchange.covers.thumbnail-threads:2}") int threads,
+                                 @Value("${bookexchange.covers.cache-bytes:33554432}") long cacheCapacityBytes) {
+        this.coverStorage = coverStorage;
+        this.coverRenderer = coverRenderer;
+        this.cacheCapacityBytes = cacheCapacityBytes;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY), new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Ставит в очередь построение уменьшенных копий обложки всех допустимых размеров.
+     * Если копии этой обложки уже строятся, повторно они в очередь не ставятся, а возвращается уже идущая задача.
+     * Если очередь переполнена, копии не строятся, а при запросе отдаётся оригинал и построение ставится в очередь снова.
+     * Для обложек, копии которых построить не удалось, построение в очередь не ставится.
+     *
+     * @param coverHash хеш изображения обложки
+     * @return задача построения копий
+     */
+    public CompletableFuture<Void> generateThumbnails(String coverHash) {
+        if (failedCovers.contains(coverHash)) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        CompletableFuture<Void> task = new CompletableFuture<>();
+        CompletableFuture<Void> running = inProgress.putIfAbsent(coverHash, task);
+        if (running != null) {
+            return running;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    buildThumbnails(coverHash);
+                } finally {
+                    inProgress.remove(coverHash);
+                    task.complete(null);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inProgress.remove(coverHash);
+            task.complete(null);
+            log.error("Очередь построения уменьшенных копий переполнена, копии обложки {} не построены", coverHash);
+        }
+        return task;
+    }
+
+    /**
+     * Получает уменьшенную копию обложки: из кэша, а если её там нет - из хранилища, с помещением в кэш.
+     *
+     * @param coverHash хеш изображения обложки
+     * @param size      размер копии, один из {@link #THUMBNAIL_SIZES}
+     * @return уменьшенная копия или null, если она ещё не построена; в этом случае её построение ставится в очередь,
+     * если только копии этой обложки уже не удалось построить
+     */
+    public Resource getThumbnail(String coverHash, int size) {
+        String key = coverHash + "-" + size;
+        byte[] cached = getCached(key);
+        if (cached != null) {
+            return new ByteArrayResource(cached);
+        }
+
+        Resource thumbnail = coverStorage.loadRendition(coverHash, size);
+        if (thumbnail == null) {
+            generateThumbnails(coverHash);
+            return null;
+        }
+
+        try {
+            byte[] content = thumbnail.getContentAsByteArray();
+            putCached(key, content);
+            return new ByteArrayResource(content);
+        } catch (IOException e) {
+            log.error("Не удалось прочитать уменьшенную копию {} обложки {}", size, coverHash, e);
+            return null;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private void buildThumbnails(String coverHash) {
+        Resource original = coverStorage.load(coverHash);
+        if (original == null) {
+            log.error("Обложка {} не найдена, уменьшенные копии не построены", coverHash);
+            return;
+        }
+
+        try (InputStream in = original.getInputStream()) {
+            List<byte[]> thumbnails = coverRenderer.renderThumbnails(in, THUMBNAIL_SIZES);
+            if (thumbnails == null) {
+                failedCovers.add(coverHash);
+                log.error("Обложку {} не удалось декодировать, уменьшенные копии не построены и не будут строиться повторно", coverHash);
+                return;
+            }
+
+            for (int i = 0; i < THUMBNAIL_SIZES.size(); i++) {
+                coverStorage.storeRendition(coverHash, THUMBNAIL_SIZES.get(i), new ByteArrayInputStream(thumbnails.get(i)));
+            }
+            log.info("Построены уменьшенные копии обложки {}", coverHash);
+        } catch (IOException e) {
+            log.error("Не удалось построить уменьшенные копии обложки {}", coverHash, e);
+        }
+    }
+
+    private synchronized byte[] getCached(String key) {
+        return cache.get(key);
+    }
+
+    private synchronized void putCached(String key, byte[] content) {
+        if (content.length > cacheCapacityBytes) {
+            return;
+        }
+
+        byte[] previous = cache.put(key, content);
+        cacheSizeBytes += content.length - (previous == null ? 0 : previous.length);
+
+        Iterator<Map.Entry<String, byte[]>> iterator = cache.entrySet().iterator();
+        while (cacheSizeBytes > cacheCapacityBytes && iterator.hasNext()) {
+            Map.Entry<String, byte[]> eldest = iterator.next();
+            if (eldest.getKey().equals(key)) {
+                continue;
+            }
+            cacheSizeBytes -= eldest.getValue().length;
+            iterator.remove();
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.spring.vsurin.bookexchange.app;
+
+/**
+ * Исключение, выбрасываемое хранилищем обложек, если изображение больше допустимого размера.
+ */
+public class CoverTooLargeException extends IllegalArgumentException {
+
+    public CoverTooLargeException(long maxBytes) {
+        super("Размер обложки превышает " + maxBytes + " байт");
+    }
+}
@@ -0,0 +1,23 @@
+package com.spring.vsurin.bookexchange.app;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Страница результатов постраничной выдачи по ключу.
+ *
+ * @param content    элементы страницы
+ * @param nextCursor позиция для запроса следующей страницы или null, если страница последняя
+ */
+public record CursorPage<T>(List<T> content, String nextCursor) {
+
+    /**
+     * Преобразует элементы страницы, сохраняя позицию следующей страницы.
+     *
+     * @param mapper функция преобразования элемента
+     * @return страница с преобразованными элементами
+     */
+    public <R> CursorPage<R> map(Function<? super T, ? extends R> mapper) {
+        return new CursorPage<>(content.stream().<R>map(mapper).toList(), nextCursor);
+    }
+}
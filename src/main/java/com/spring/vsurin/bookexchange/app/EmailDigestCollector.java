@@ -0,0 +1,99 @@
+package com.spring.vsurin.bookexchange.app;
+
+import com.spring.vsurin.bookexchange.domain.EmailData;
+import com.spring.vsurin.bookexchange.domain.OutboxEmail;
+import com.spring.vsurin.bookexchange.domain.OutboxEmailStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Сборщик сводок уведомлений.
+ * Уведомления получателей, выбравших доставку сводкой, лежат в очереди отправки в статусе BUFFERED.
+ * Раз в {@code bookexchange.mail.digest-interval} мс сборщик находит получателей, чьё самое старое уведомление ждёт
+ * дольше {@code bookexchange.mail.digest-window} мс, и заменяет их уведомления одним письмом-сводкой,
+ * которое дальше отправляется обычным порядком. Так каждый получатель получает не больше одной сводки за окно.
+ * В одну сводку попадает не больше {@code bookexchange.mail.digest-max-items} уведомлений, остальные уходят следующими сводками.
+ * Сводки каждого получателя собираются в отдельной транзакции: ошибка у одного получателя не мешает остальным.
+ */
+@Slf4j
+@Component
+public class EmailDigestCollector {
+
+    private final OutboxEmailRepository outboxEmailRepository;
+    private final MailBuilder mailBuilder;
+    private final TransactionTemplate transactionTemplate;
+    private final long windowMillis;
+    private final int batchSize;
+    private final int maxItems;
+
+    public EmailDigestCollector(OutboxEmailRepository outboxEmailRepository,
+                                MailBuilder mailBuilder,
+                                PlatformTransactionManager transactionManager,
+                                @Value("${bookexchange.mail.digest-window:3600000}") long windowMillis,
+                                @Value("${bookexchange.mail.digest-batch-size:100}") int batchSize,
+                                @Value("${bookexchange.mail.digest-max-items:50}") int maxItems) {
+        this.outboxEmailRepository = outboxEmailRepository;
+        this.mailBuilder = mailBuilder;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.windowMillis = windowMillis;
+        this.batchSize = batchSize;
+        this.maxItems = maxItems;
+    }
+
+    /**
+     * Собирает сводки для получателей, у которых истекло окно накопления.
+     * Уведомления получателя блокируются на время сборки, поэтому одно уведомление не попадёт в две сводки.
+     */
+    @Scheduled(fixedDelayString = "${bookexchange.mail.digest-interval:60000}")
+    public void collect() {
+        Instant now = Instant.now();
+        List<String> receivers = outboxEmailRepository.findReceiversWaitingSince(
+                OutboxEmailStatus.BUFFERED, now.minusMillis(windowMillis), Limit.of(batchSize));
+
+        int digests = 0;
+        for (String receiver : receivers) {
+            try {
+                digests += transactionTemplate.execute(status -> collect(receiver, now));
+            } catch (RuntimeException e) {
+                log.error("Не удалось собрать сводку уведомлений для адреса {}", receiver, e);
+            }
+        }
+
+        if (digests > 0) {
+            log.info("Собрано сводок уведомлений: {}", digests);
+        }
+    }
+
+    /**
+     * Заменяет накопленные уведомления получателя сводками не больше чем по {@code digest-max-items} уведомлений.
+     *
+     * @param receiver адрес получателя
+     * @param now      текущее время
+     * @return число поставленных в очередь писем
+     */
+    private int collect(String receiver, Instant now) {
+        List<OutboxEmail> buffered = outboxEmailRepository.findByReceiverAndStatusOrderByIdAsc(receiver, OutboxEmailStatus.BUFFERED);
+
+        int digests = 0;
+        for (int from = 0; from < buffered.size(); from += maxItems) {
+            List<EmailData> notifications = buffered.subList(from, Math.min(from + maxItems, buffered.size())).stream()
+                    .map(OutboxEmail::toEmailData)
+                    .toList();
+            EmailData emailData = notifications.size() == 1
+                    ? notifications.get(0)
+                    : mailBuilder.buildDigestMessage(receiver, notifications);
+            outboxEmailRepository.save(OutboxEmail.pending(emailData, now));
+            digests++;
+        }
+        outboxEmailRepository.deleteAllInBatch(buffered);
+        return digests;
+    }
+}
@@ -0,0 +1,25 @@
+package com.spring.vsurin.bookexchange.app;
+
+/**
+ * Показатели отправки писем из очереди (outbox).
+ * Счётчики событий считаются с момента запуска приложения, количества писем по статусам берутся из базы.
+ *
+ * @param queued          число писем в очереди пула отправки
+ * @param queueCapacity   размер очереди пула отправки
+ * @param sending         число писем, отправляемых в данный момент
+ * @param pending         число писем, ожидающих отправки
+ * @param buffered        число уведомлений, ожидающих сводки
+ * @param dead            число писем, которые не удалось отправить
+ * @param sent            число отправленных писем
+ * @param failed          число неудачных попыток отправки
+ * @param deferred        число писем, отложенных ограничителем частоты отправки на домен
+ * @param rejected        число писем, возвращённых в очередь из-за переполнения пула отправки
+ * @param deadLettered    число писем, переведённых в статус DEAD
+ * @param averageWaitMillis среднее время от постановки письма в очередь до его отправки, мс
+ * @param maxWaitMillis   наибольшее время от постановки письма в очередь до его отправки, мс
+ */
+public record EmailDispatchStatistics(int queued, int queueCapacity, int sending,
+                                      long pending, long buffered, long dead,
+                                      long sent, long failed, long deferred, long rejected, long deadLettered,
+                                      long averageWaitMillis, long maxWaitMillis) {
+}
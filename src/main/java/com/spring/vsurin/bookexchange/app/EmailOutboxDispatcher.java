@@ -0,0 +1,261 @@
+package com.spring.vsurin.bookexchange.app;
+
+import com.spring.vsurin.bookexchange.domain.OutboxEmail;
+import com.spring.vsurin.bookexchange.domain.OutboxEmailStatus;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Обработчик очереди отправки писем (outbox).
+ * Раз в {@code bookexchange.mail.dispatch-interval} мс забирает письма, которым пришло время отправки,
+ * и отправляет их в ограниченном пуле потоков. Забранное письмо арендуется на {@code bookexchange.mail.lease} мс:
+ * если обработчик не отчитался за это время, письмо отправляется повторно.
+ * После неудачной отправки следующая попытка откладывается экспоненциально, начиная с {@code bookexchange.mail.backoff-initial} мс
+ * и не больше чем на {@code bookexchange.mail.backoff-max} мс; после {@code bookexchange.mail.max-attempts} попыток
+ * письмо переводится в статус DEAD.
+ * <p>
+ * Очередь пула ограничена {@code bookexchange.mail.batch-size} письмами, и за один раз забирается не больше писем,
+ * чем в ней свободно места: остальные ждут в таблице outbox, а не отклоняются.
+ * Частота отправки на каждый почтовый домен ограничивается {@link EmailRateLimiter}: письма на домен, для которого
+ * сейчас нет разрешения, не забираются, а откладываются до появления разрешений без учёта попытки.
+ * <p>
+ * Раз в {@code bookexchange.mail.purge-interval} мс отправленные письма удаляются из таблицы, а письма в статусе DEAD
+ * удаляются, когда пролежат в ней дольше {@code bookexchange.mail.retention} мс.
+ */
+@Slf4j
+@Component
+public class EmailOutboxDispatcher {
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private final OutboxEmailRepository outboxEmailRepository;
+    private final EmailSender emailSender;
+    private final EmailRateLimiter rateLimiter;
+    private final ThreadPoolExecutor executor;
+    private final int queueCapacity;
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final long leaseMillis;
+    private final long retentionMillis;
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder deferred = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder deadLettered = new LongAdder();
+    private final LongAdder totalWaitMillis = new LongAdder();
+    private final AtomicLong maxWaitMillis = new AtomicLong();
+
+    public EmailOutboxDispatcher(OutboxEmailRepository outboxEmailRepository,
+                                 EmailSender emailSender,
+                                 EmailRateLimiter rateLimiter,
+                                 @Value("${bookexchange.mail.threads:4}") int threads,
+                                 @Value("${bookexchange.mail.batch-size:100}") int batchSize,
+                                 @Value("${bookexchange.mail.max-attempts:8}") int maxAttempts,
+                                 @Value("${bookexchange.mail.backoff-initial:30000}") long initialBackoffMillis,
+                                 @Value("${bookexchange.mail.backoff-max:3600000}") long maxBackoffMillis,
+                                 @Value("${bookexchange.mail.lease:300000}") long leaseMillis,
+                                 @Value("${bookexchange.mail.retention:604800000}") long retentionMillis) {
+        this.outboxEmailRepository = outboxEmailRepository;
+        this.emailSender = emailSender;
+        this.rateLimiter = rateLimiter;
+        this.queueCapacity = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.leaseMillis = leaseMillis;
+        this.retentionMillis = retentionMillis;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(batchSize), new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @Scheduled(fixedDelayString = "${bookexchange.mail.dispatch-interval:1000}")
+    public void poll() {
+        dispatch();
+    }
+
+    /**
+     * Забирает письма, которым пришло время отправки, столько, сколько помещается в очередь пула, и ставит их на отправку.
+     * Письма на домены, для которых ограничитель частоты не выдал разрешения, откладываются.
+     *
+     * @return задача отправки забранных писем
+     */
+    public CompletableFuture<Void> dispatch() {
+        int capacity = executor.getQueue().remainingCapacity();
+        if (capacity == 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        Instant now = Instant.now();
+        List<OutboxEmailDueProjection> due = outboxEmailRepository.findDue(OutboxEmailStatus.PENDING, now, Limit.of(capacity));
+
+        List<Long> dueIds = new ArrayList<>();
+        Map<String, List<Long>> limitedIds = new LinkedHashMap<>();
+        Map<String, Long> limitedWaits = new LinkedHashMap<>();
+        for (OutboxEmailDueProjection email : due) {
+            String domain = EmailRateLimiter.domainOf(email.getReceiver());
+            long wait = limitedIds.containsKey(domain) ? limitedWaits.get(domain) : rateLimiter.tryAcquire(email.getReceiver());
+            if (wait == 0) {
+                dueIds.add(email.getId());
+            } else {
+                limitedIds.computeIfAbsent(domain, d -> new ArrayList<>()).add(email.getId());
+                limitedWaits.putIfAbsent(domain, wait);
+            }
+        }
+        limitedIds.forEach((domain, ids) -> defer(domain, ids, now, limitedWaits.get(domain)));
+
+        if (dueIds.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        String claimToken = UUID.randomUUID().toString();
+        outboxEmailRepository.claim(dueIds, OutboxEmailStatus.PENDING, now, claimToken, now.plusMillis(leaseMillis));
+        List<OutboxEmail> claimed = outboxEmailRepository.findByClaimToken(claimToken);
+
+        return CompletableFuture.allOf(claimed.stream()
+                .map(email -> submit(email, claimToken))
+                .toArray(CompletableFuture[]::new));
+    }
+
+    /**
+     * Удаляет из очереди отправленные письма и письма в статусе DEAD старше {@code retention} мс.
+     */
+    @Scheduled(fixedDelayString = "${bookexchange.mail.purge-interval:3600000}",
+            initialDelayString = "${bookexchange.mail.purge-interval:3600000}")
+    public void purge() {
+        Instant now = Instant.now();
+        int sentPurged = outboxEmailRepository.deleteByStatusCreatedBefore(OutboxEmailStatus.SENT, now);
+        int deadPurged = outboxEmailRepository.deleteByStatusCreatedBefore(OutboxEmailStatus.DEAD, now.minusMillis(retentionMillis));
+        if (sentPurged > 0 || deadPurged > 0) {
+            log.info("Из очереди писем удалено отправленных: {}, неотправленных: {}", sentPurged, deadPurged);
+        }
+    }
+
+    /**
+     * Вычисляет задержку перед следующей попыткой отправки: начальная задержка удваивается с каждой неудачной попыткой.
+     *
+     * @param attempts количество сделанных попыток
+     * @return задержка в миллисекундах
+     */
+    public long backoff(int attempts) {
+        int doublings = Math.min(Math.max(attempts - 1, 0), Long.numberOfLeadingZeros(initialBackoffMillis) - 1);
+        return Math.min(initialBackoffMillis << doublings, maxBackoffMillis);
+    }
+
+    /**
+     * Возвращает показатели отправки писем.
+     *
+     * @return показатели
+     */
+    public EmailDispatchStatistics getStatistics() {
+        long sentCount = sent.sum();
+        return new EmailDispatchStatistics(executor.getQueue().size(), queueCapacity, executor.getActiveCount(),
+                outboxEmailRepository.countByStatus(OutboxEmailStatus.PENDING),
+                outboxEmailRepository.countByStatus(OutboxEmailStatus.BUFFERED),
+                outboxEmailRepository.countByStatus(OutboxEmailStatus.DEAD),
+                sentCount, failed.sum(), deferred.sum(), rejected.sum(), deadLettered.sum(),
+                sentCount == 0 ? 0 : totalWaitMillis.sum() / sentCount, maxWaitMillis.get());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private CompletableFuture<Void> submit(OutboxEmail email, String claimToken) {
+        try {
+            return CompletableFuture.runAsync(() -> deliver(email, claimToken), executor);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            outboxEmailRepository.release(email.getId(), claimToken, Instant.now());
+            log.warn("Очередь отправки писем переполнена, письмо {} возвращено в outbox", email.getId());
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    /**
+     * Откладывает письма на домен до появления разрешений. Письма разбиваются на части по числу разрешений в секунду,
+     * и каждая следующая часть откладывается на секунду дольше, чтобы письма на домен не забирались повторно
+     * раньше, чем их можно будет отправить.
+     */
+    private void defer(String domain, List<Long> ids, Instant now, long waitMillis) {
+        long interval = rateLimiter.getIntervalMillis();
+        int perSecond = (int) Math.max(1, 1000 / interval);
+        for (int from = 0; from < ids.size(); from += perSecond) {
+            List<Long> part = ids.subList(from, Math.min(from + perSecond, ids.size()));
+            outboxEmailRepository.defer(part, OutboxEmailStatus.PENDING, now, now.plusMillis(waitMillis + from * interval));
+        }
+        deferred.add(ids.size());
+        log.debug("Отправка {} писем на домен {} отложена ограничителем частоты", ids.size(), domain);
+    }
+
+    /**
+     * Отправляет письмо и записывает результат попытки. Если аренда истекла и письмо забрал другой обработчик,
+     * результат не записывается, чтобы не перезаписать состояние, которое ведёт новый обработчик.
+     */
+    private void deliver(OutboxEmail email, String claimToken) {
+        try {
+            emailSender.send(email.toEmailData());
+            if (outboxEmailRepository.recordAttempt(email.getId(), claimToken, OutboxEmailStatus.SENT, null, null) == 0) {
+                logLostClaim(email);
+                return;
+            }
+            recordWait(Duration.between(email.getCreatedAt(), Instant.now()).toMillis());
+            log.info("Письмо {} отправлено на адрес {}", email.getId(), email.getReceiver());
+        } catch (RuntimeException e) {
+            int attempts = email.getAttempts() + 1;
+            String error = truncate(String.valueOf(e.getMessage()));
+            failed.increment();
+
+            if (attempts >= maxAttempts) {
+                if (outboxEmailRepository.recordAttempt(email.getId(), claimToken, OutboxEmailStatus.DEAD, null, error) == 0) {
+                    logLostClaim(email);
+                    return;
+                }
+                deadLettered.increment();
+                log.error("Письмо {} на адрес {} не отправлено после {} попыток", email.getId(), email.getReceiver(), attempts, e);
+            } else {
+                Instant nextAttemptAt = Instant.now().plusMillis(backoff(attempts));
+                if (outboxEmailRepository.recordAttempt(email.getId(), claimToken, OutboxEmailStatus.PENDING, nextAttemptAt, error) == 0) {
+                    logLostClaim(email);
+                    return;
+                }
+                log.warn("Письмо {} на адрес {} не отправлено, следующая попытка в {}: {}", email.getId(), email.getReceiver(), nextAttemptAt, error);
+            }
+        }
+    }
+
+    private void logLostClaim(OutboxEmail email) {
+        log.warn("Аренда письма {} истекла, и его забрал другой обработчик: результат попытки не записан", email.getId());
+    }
+
+    private void recordWait(long waitMillis) {
+        sent.increment();
+        totalWaitMillis.add(waitMillis);
+        maxWaitMillis.accumulateAndGet(waitMillis, Math::max);
+    }
+
+    private static String truncate(String error) {
+        return error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error;
+    }
+}
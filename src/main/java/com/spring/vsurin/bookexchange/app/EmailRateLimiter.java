@@ -0,0 +1,82 @@
+package com.spring.vsurin.bookexchange.app;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ограничитель частоты отправки писем по почтовому домену получателя (token bucket).
+ * На каждый домен заводится корзина на {@code bookexchange.mail.rate.burst} писем, которая пополняется
+ * со скоростью {@code bookexchange.mail.rate.per-second} писем в секунду, так что всплеск писем на один домен
+ * не превышает порог, после которого почтовый сервер начинает отклонять письма, и не задерживает письма на другие домены.
+ */
+@Component
+public class EmailRateLimiter {
+
+    private final double permitsPerSecond;
+    private final double burst;
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    public EmailRateLimiter(@Value("${bookexchange.mail.rate.per-second:10}") double permitsPerSecond,
+                            @Value("${bookexchange.mail.rate.burst:20}") int burst) {
+        if (permitsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Скорость отправки и размер всплеска должны быть положительными");
+        }
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+    }
+
+    /**
+     * Пытается взять разрешение на отправку письма на адрес.
+     *
+     * @param receiver адрес получателя
+     * @return 0, если разрешение выдано, иначе через сколько миллисекунд появится следующее разрешение для домена адреса
+     */
+    public long tryAcquire(String receiver) {
+        return buckets.computeIfAbsent(domainOf(receiver), domain -> new Bucket(burst))
+                .tryAcquire(System.nanoTime());
+    }
+
+    /**
+     * Возвращает промежуток между разрешениями для одного домена при постоянной нагрузке.
+     *
+     * @return промежуток в миллисекундах, не меньше 1
+     */
+    public long getIntervalMillis() {
+        return Math.max(1, (long) Math.ceil(1000 / permitsPerSecond));
+    }
+
+    /**
+     * Возвращает почтовый домен адреса в нижнем регистре; адрес без @ считается доменом целиком.
+     *
+     * @param receiver адрес получателя
+     * @return домен
+     */
+    public static String domainOf(String receiver) {
+        return receiver.substring(receiver.lastIndexOf('@') + 1).toLowerCase(Locale.ROOT);
+    }
+
+    private final class Bucket {
+        private double tokens;
+        private long refilledAt;
+
+        private Bucket(double tokens) {
+            this.tokens = tokens;
+            this.refilledAt = System.nanoTime();
+        }
+
+        private synchronized long tryAcquire(long now) {
+            tokens = Math.min(burst, tokens + (now - refilledAt) * permitsPerSecond / TimeUnit.SECONDS.toNanos(1));
+            refilledAt = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return Math.max(1, (long) Math.ceil((1 - tokens) * 1000 / permitsPerSecond));
+        }
+    }
+}
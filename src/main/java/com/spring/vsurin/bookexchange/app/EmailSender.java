@@ -0,0 +1,17 @@
+package com.spring.vsurin.bookexchange.app;
+
+import com.spring.vsurin.bookexchange.domain.EmailData;
+
+/**
+ * Интерфейс непосредственной отправки электронной почты через почтовый сервер.
+ */
+public interface EmailSender {
+
+    /**
+     * Отправляет письмо и ждёт ответа почтового сервера.
+     *
+     * @param emailData данные для отправки сообщения
+     * @throws RuntimeException если письмо не удалось отправить
+     */
+    void send(EmailData emailData);
+}
@@ -2,15 +2,26 @@ package com.spring.vsurin.bookexchange.app;
 
 import com.spring.vsurin.bookexchange.domain.EmailData;
 
+import java.util.List;
+
 /**
  * Интерфейс для отправки электронной почты.
  */
 public interface EmailService {
 
     /**
-     * Отправляет электронное письмо на указанный адрес с заданной темой и сообщением.
+     * Ставит электронное письмо на указанный адрес с заданной темой и сообщением в очередь отправки.
+     * Письмо сохраняется в текущей транзакции и отправляется после её фиксации; при откате транзакции письмо не отправляется.
+     * Если получатель выбрал доставку уведомлений сводкой, письмо войдёт в ближайшую сводку.
      *
      * @param emailData данные для отправки сообщения
      */
     void sendEmail(EmailData emailData);
+
+    /**
+     * Ставит несколько писем в очередь отправки одним пакетом, так же как {@link #sendEmail(EmailData)} ставит одно.
+     *
+     * @param emails данные для отправки сообщений
+     */
+    void sendEmails(List<EmailData> emails);
 }
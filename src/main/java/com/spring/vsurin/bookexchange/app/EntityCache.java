@@ -0,0 +1,39 @@
+package com.spring.vsurin.bookexchange.app;
+
+import java.util.List;
+
+/**
+ * Кэш сущностей книг и пользователей, через который сервисы сообщают об изменениях.
+ * Все сбросы записей проходят через этот интерфейс, поэтому реализация для нескольких экземпляров
+ * приложения может рассылать их остальным экземплярам.
+ */
+public interface EntityCache {
+
+    /**
+     * Пространство запросов Hibernate для изменений книг, пользователей и их списков запросами к базе.
+     * Оно не совпадает ни с одной таблицей, поэтому после таких запросов Hibernate не очищает области кэша целиком:
+     * вызывающий код сам сбрасывает изменённые записи по id через {@link #evictBook} и {@link #evictUser}.
+     */
+    String QUERY_SPACE = "entity_cache_evicted_by_id";
+
+    /**
+     * Сбрасывает книгу и её списки пользователей. Если идёт транзакция, запись сбрасывается после её фиксации.
+     *
+     * @param bookId идентификатор книги
+     */
+    void evictBook(long bookId);
+
+    /**
+     * Сбрасывает пользователя. Если идёт транзакция, запись сбрасывается после её фиксации.
+     *
+     * @param userId идентификатор пользователя
+     */
+    void evictUser(long userId);
+
+    /**
+     * Возвращает показатели всех областей кэша.
+     *
+     * @return показатели областей
+     */
+    List<EntityCacheStatistics> getStatistics();
+}
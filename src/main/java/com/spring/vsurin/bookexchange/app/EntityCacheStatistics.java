@@ -0,0 +1,17 @@
+package com.spring.vsurin.bookexchange.app;
+
+/**
+ * Показатели одной области кэша сущностей.
+ *
+ * @param region       имя области (класс сущности или роль коллекции)
+ * @param size         число записей в области
+ * @param hits         число чтений, найденных в кэше
+ * @param misses       число чтений, не найденных в кэше
+ * @param puts         число помещений в кэш
+ * @param evictions    число записей, вытесненных из-за ограничения размера
+ * @param expirations  число записей, удалённых по истечении времени жизни
+ * @param invalidations число записей, сброшенных при изменении данных
+ */
+public record EntityCacheStatistics(String region, int size, long hits, long misses, long puts,
+                                    long evictions, long expirations, long invalidations) {
+}
@@ -2,14 +2,54 @@ package com.spring.vsurin.bookexchange.app;
 
 import com.spring.vsurin.bookexchange.domain.Exchange;
 import com.spring.vsurin.bookexchange.domain.ExchangeStatus;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface ExchangeRepository extends JpaRepository<Exchange, Long> {
+    @EntityGraph(attributePaths = {"member1", "member2", "exchangedBook1", "exchangedBook2"})
     Exchange findById(long id);
 
+    @EntityGraph(attributePaths = {"member1", "member2"})
     List<Exchange> findByStatusAndMember1IdOrStatusAndMember2Id(ExchangeStatus status, long member1Id, ExchangeStatus status2, long member2Id);
+
+    /**
+     * Условие выборки обменов пользователя с необязательным фильтром по статусу.
+     */
+    String MEMBER_CONDITION = "WHERE (e.member1.id = :userId OR e.member2.id = :userId) " +
+            "AND (:status IS NULL OR e.status = :status)";
+
+    @EntityGraph(attributePaths = {"member1", "member2", "exchangedBook1", "exchangedBook2"})
+    @Query(value = "SELECT e FROM Exchange e " + MEMBER_CONDITION,
+            countQuery = "SELECT COUNT(e) FROM Exchange e " + MEMBER_CONDITION)
+    Page<Exchange> findByMember(@Param("userId") long userId, @Param("status") ExchangeStatus status, Pageable pageable);
+
+    /**
+     * Проверяет, участвует ли книга пользователя в обмене с одним из указанных статусов.
+     * Выполняется одним запросом по индексам участников обмена, не загружая сами обмены.
+     */
+    @Query("SELECT COUNT(e) > 0 FROM Exchange e " +
+            "WHERE (e.member1.id = :userId OR e.member2.id = :userId) " +
+            "AND (e.exchangedBook1.id = :bookId OR e.exchangedBook2.id = :bookId) " +
+            "AND e.status IN :statuses")
+    boolean existsByMemberAndBook(@Param("userId") long userId, @Param("bookId") long bookId,
+                                  @Param("statuses") Collection<ExchangeStatus> statuses);
+
+    /**
+     * Выбирает из указанных книг пользователя те, что участвуют в обмене с одним из указанных статусов.
+     */
+    @Query("SELECT e.exchangedBook1.id FROM Exchange e " +
+            "WHERE (e.member1.id = :userId OR e.member2.id = :userId) AND e.status IN :statuses AND e.exchangedBook1.id IN :bookIds " +
+            "UNION SELECT e.exchangedBook2.id FROM Exchange e " +
+            "WHERE (e.member1.id = :userId OR e.member2.id = :userId) AND e.status IN :statuses AND e.exchangedBook2.id IN :bookIds")
+    List<Long> findBookIdsInExchanges(@Param("userId") long userId, @Param("bookIds") Collection<Long> bookIds,
+                                      @Param("statuses") Collection<ExchangeStatus> statuses);
 }
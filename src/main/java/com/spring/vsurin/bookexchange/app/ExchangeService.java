@@ -6,6 +6,7 @@ import com.spring.vsurin.bookexchange.domain.ExchangeStatus;
 import com.spring.vsurin.bookexchange.domain.User;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
 import java.util.List;
@@ -36,6 +37,7 @@ public class ExchangeService {
      * @return Созданный объект Exchange.
      * @throws IllegalStateException если обмен равен null
      */
+    @Transactional
     protected Exchange createExchange(Exchange exchange) {
         if (exchange == null) {
             throw new IllegalArgumentException("Обмен не может быть null");
@@ -47,6 +49,8 @@ public class ExchangeService {
             exchange.setStatus(ExchangeStatus.CONFIRMED);
             exchange.setCurrentDate();
             exchangeRepository.save(exchange);
+            userService.touchUser(exchange.getMember1().getId());
+            userService.touchUser(exchange.getMember2().getId());
             log.info("Создан обмен с id {}", exchange.getId());
             return exchange;
         } catch (Exception e) {
@@ -77,6 +81,7 @@ public class ExchangeService {
      * @param exchangeId Идентификатор обмена.
      * @param track      Номер трека.
      */
+    @Transactional
     public void updateTrackSetByUser(long userId, long exchangeId, String track) {
         Exchange exchange = getExchangeById(exchangeId);
 
@@ -108,6 +113,7 @@ public class ExchangeService {
      * @param userId     Идентификатор пользователя.
      * @param exchangeId Идентификатор обмена.
      */
+    @Transactional
     public void setNoTrack(long userId, long exchangeId) {
         Exchange exchange = getExchangeById(exchangeId);
 
@@ -172,6 +178,7 @@ public class ExchangeService {
      * @param exchangeId Идентификатор обмена.
      * @param userId Идентификатор пользователя, принимающего книгу.
      */
+    @Transactional
     public void receiveBook(long exchangeId, long userId) {
         Exchange exchange = getExchangeById(exchangeId);
 
@@ -238,6 +245,7 @@ public class ExchangeService {
      * @param exchangeId Идентификатор обмена, для которого требуется установить статус "PROBLEMS".
      * @throws IllegalStateException если не удалось установить статус "PROBLEMS", потому что не прошло 30 дней с момента создания обмена.
      */
+    @Transactional
     public void setProblemsStatus(long exchangeId) {
         Exchange exchange = getExchangeById(exchangeId);
         LocalDate currentDate = LocalDate.now();
@@ -287,6 +295,7 @@ public class ExchangeService {
      * @param exchangeId Идентификатор обмена, для которого требуется установить статус "PROBLEMS".
      * @throws IllegalStateException если не удалось установить статус "PROBLEMS", потому что не прошло 30 дней с момента создания обмена.
      */
+    @Transactional
     public void cancelExchange(long exchangeId) {
         Exchange exchange = getExchangeById(exchangeId);
 
@@ -0,0 +1,10 @@
+package com.spring.vsurin.bookexchange.app;
+
+/**
+ * Идентификатор сущности, связанной с книгой или пользователем, и вид связи (например, {@code LIBRARY}).
+ * Позволяет прочитать все списки идентификаторов для карточки одним запросом, без загрузки коллекций.
+ */
+public interface LinkedIdProjection {
+    String getKind();
+    long getId();
+}
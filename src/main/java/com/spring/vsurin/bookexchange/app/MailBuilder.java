@@ -5,6 +5,8 @@ import com.spring.vsurin.bookexchange.domain.EmailData;
 import com.spring.vsurin.bookexchange.domain.Request;
 import com.spring.vsurin.bookexchange.domain.User;
 
+import java.util.List;
+
 /**
  * Интерфейс для создания электронных сообщений.
  */
@@ -142,4 +144,24 @@ public interface MailBuilder {
      * @return Объект EmailData, представляющий электронное сообщение.
      */
     EmailData buildAvailableFromWishlistMessage(String receiver, String title, String author, String name);
+
+    /**
+     * Создаёт одно сообщение о доступности к обмену нескольких книг из списка желаний.
+     *
+     * @param receiver      Адрес электронной почты получателя.
+     * @param books    Книги в виде "автор - название".
+     * @param name    Пользователь, предлагающий для обмена.
+     * @return Объект EmailData, представляющий электронное сообщение.
+     */
+    EmailData buildAvailableFromWishlistMessage(String receiver, List<String> books, String name);
+
+    /**
+     * Создаёт сводку из нескольких уведомлений одному получателю.
+     * Уведомления с одинаковой темой объединяются под одним заголовком.
+     *
+     * @param receiver      Адрес электронной почты получателя.
+     * @param notifications    Уведомления в порядке их создания.
+     * @return Объект EmailData, представляющий электронное сообщение.
+     */
+    EmailData buildDigestMessage(String receiver, List<EmailData> notifications);
 }
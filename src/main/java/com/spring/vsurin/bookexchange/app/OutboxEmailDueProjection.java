@@ -0,0 +1,6 @@
+package com.spring.vsurin.bookexchange.app;
+
+public interface OutboxEmailDueProjection {
+    long getId();
+    String getReceiver();
+}
@@ -0,0 +1,93 @@
+package com.spring.vsurin.bookexchange.app;
+
+import com.spring.vsurin.bookexchange.domain.OutboxEmail;
+import com.spring.vsurin.bookexchange.domain.OutboxEmailStatus;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface OutboxEmailRepository extends JpaRepository<OutboxEmail, Long> {
+
+    @Query("SELECT e.id AS id, e.receiver AS receiver FROM OutboxEmail e " +
+            "WHERE e.status = :status AND e.nextAttemptAt <= :now ORDER BY e.nextAttemptAt ASC")
+    List<OutboxEmailDueProjection> findDue(@Param("status") OutboxEmailStatus status, @Param("now") Instant now, Limit limit);
+
+    /**
+     * Откладывает письма, которым пришло время отправки, без учёта попытки.
+     * Письма, которые успел забрать другой обработчик, не меняются.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE OutboxEmail e SET e.nextAttemptAt = :nextAttemptAt " +
+            "WHERE e.id IN :ids AND e.status = :status AND e.nextAttemptAt <= :now")
+    int defer(@Param("ids") Collection<Long> ids, @Param("status") OutboxEmailStatus status, @Param("now") Instant now,
+              @Param("nextAttemptAt") Instant nextAttemptAt);
+
+    /**
+     * Возвращает забранное письмо в очередь без учёта попытки.
+     * Письмо, которое после истечения аренды забрал другой обработчик, не меняется.
+     *
+     * @return 1, если письмо возвращено, или 0, если его уже забрал другой обработчик
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE OutboxEmail e SET e.nextAttemptAt = :nextAttemptAt, e.claimToken = NULL " +
+            "WHERE e.id = :id AND e.claimToken = :claimToken")
+    int release(@Param("id") long id, @Param("claimToken") String claimToken, @Param("nextAttemptAt") Instant nextAttemptAt);
+
+    /**
+     * Забирает письма на отправку: помечает их меткой обработчика и переносит следующую попытку на срок аренды.
+     * Письма, которые успел забрать другой обработчик, не меняются.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE OutboxEmail e SET e.claimToken = :claimToken, e.nextAttemptAt = :leaseUntil " +
+            "WHERE e.id IN :ids AND e.status = :status AND e.nextAttemptAt <= :now")
+    int claim(@Param("ids") Collection<Long> ids, @Param("status") OutboxEmailStatus status, @Param("now") Instant now,
+              @Param("claimToken") String claimToken, @Param("leaseUntil") Instant leaseUntil);
+
+    List<OutboxEmail> findByClaimToken(String claimToken);
+
+    /**
+     * Записывает результат попытки отправки забранного письма.
+     * Письмо, которое после истечения аренды забрал другой обработчик, не меняется: результат запишет тот обработчик.
+     *
+     * @return 1, если результат записан, или 0, если письмо уже забрал другой обработчик
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE OutboxEmail e SET e.status = :status, e.attempts = e.attempts + 1, e.nextAttemptAt = :nextAttemptAt, " +
+            "e.lastError = :lastError, e.claimToken = NULL WHERE e.id = :id AND e.claimToken = :claimToken")
+    int recordAttempt(@Param("id") long id, @Param("claimToken") String claimToken, @Param("status") OutboxEmailStatus status,
+                      @Param("nextAttemptAt") Instant nextAttemptAt, @Param("lastError") String lastError);
+
+    long countByStatus(OutboxEmailStatus status);
+
+    /**
+     * Удаляет письма в статусе status, поставленные в очередь раньше before.
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM OutboxEmail e WHERE e.status = :status AND e.createdAt < :before")
+    int deleteByStatusCreatedBefore(@Param("status") OutboxEmailStatus status, @Param("before") Instant before);
+
+    /**
+     * Выборка получателей, у которых самое старое из ожидающих сводки уведомлений создано не позже windowStart.
+     */
+    @Query("SELECT e.receiver FROM OutboxEmail e WHERE e.status = :status GROUP BY e.receiver HAVING MIN(e.createdAt) <= :windowStart")
+    List<String> findReceiversWaitingSince(@Param("status") OutboxEmailStatus status, @Param("windowStart") Instant windowStart, Limit limit);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    List<OutboxEmail> findByReceiverAndStatusOrderByIdAsc(String receiver, OutboxEmailStatus status);
+}
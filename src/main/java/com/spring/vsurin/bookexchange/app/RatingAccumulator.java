@@ -0,0 +1,116 @@
+package com.spring.vsurin.bookexchange.app;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Накопитель оценок книг с отложенной пакетной записью в базу.
+ * Оценки по каждой книге копятся в счётчике LongAdder, так что одновременные оценки одной книги не блокируют друг друга,
+ * и переносятся в сумму и количество оценок книги раз в {@code bookexchange.ratings.flush-interval} мс
+ * или когда накопится {@code bookexchange.ratings.batch-size} оценок.
+ * Сами оценки сразу пишутся в историю (book_marks), поэтому после сбоя агрегаты восстанавливаются по ней при старте.
+ */
+@Slf4j
+@Component
+public class RatingAccumulator {
+
+    /**
+     * Оценка и количество упаковываются в одно число: количество в старших 32 битах, сумма - в младших.
+     * Так одно сложение атомарно меняет обе величины, и при сбросе они не расходятся.
+     */
+    private static final int COUNT_SHIFT = 32;
+    private static final long SUM_MASK = (1L << COUNT_SHIFT) - 1;
+
+    private final BookRepository bookRepository;
+    private final EntityCache entityCache;
+    private final int batchSize;
+
+    /**
+     * Накопленные оценки по книгам. Записи не удаляются после сброса, чтобы параллельная оценка
+     * не попала в уже удалённый счётчик; их число ограничено количеством оценённых книг.
+     */
+    private final Map<Long, LongAdder> pending = new ConcurrentHashMap<>();
+    private final LongAdder pendingMarks = new LongAdder();
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    public RatingAccumulator(BookRepository bookRepository, EntityCache entityCache, @Value("${bookexchange.ratings.batch-size:1000}") int batchSize) {
+        this.bookRepository = bookRepository;
+        this.entityCache = entityCache;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Восстанавливает сумму и количество оценок книг по истории оценок,
+     * чтобы учесть оценки, не перенесённые в книги до остановки приложения.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconcile() {
+        int updatedBooks = bookRepository.recalculateMarks();
+        log.info("Рейтинги книг сверены с историей оценок, обновлено книг: {}", updatedBooks);
+    }
+
+    /**
+     * Добавляет оценку книги в накопитель. Если накопилось достаточно оценок, переносит их в базу.
+     *
+     * @param bookId идентификатор книги
+     * @param mark   оценка от 1 до 10
+     */
+    public void add(long bookId, int mark) {
+        pending.computeIfAbsent(bookId, id -> new LongAdder()).add((1L << COUNT_SHIFT) | mark);
+        pendingMarks.increment();
+
+        if (pendingMarks.sum() >= batchSize && flushLock.tryLock()) {
+            try {
+                flushPending();
+            } finally {
+                flushLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Переносит накопленные оценки в базу: по одному запросу на каждую книгу с новыми оценками,
+     * и сбрасывает в кэше только эти книги.
+     * Если запись не удалась, оценки возвращаются в накопитель и будут записаны при следующем сбросе.
+     */
+    @Scheduled(fixedDelayString = "${bookexchange.ratings.flush-interval:1000}")
+    @PreDestroy
+    public void flush() {
+        flushLock.lock();
+        try {
+            flushPending();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushPending() {
+        pending.forEach((bookId, adder) -> {
+            long packed = adder.sumThenReset();
+            if (packed == 0) {
+                return;
+            }
+
+            long count = packed >>> COUNT_SHIFT;
+            long sum = packed & SUM_MASK;
+            try {
+                bookRepository.addMarks(bookId, sum, (int) count);
+                entityCache.evictBook(bookId);
+                pendingMarks.add(-count);
+            } catch (RuntimeException e) {
+                adder.add(packed);
+                log.error("Не удалось записать {} оценок книги с id {}, запись будет повторена", count, bookId, e);
+            }
+        });
+    }
+}
@@ -0,0 +1,6 @@
+package com.spring.vsurin.bookexchange.app;
+
+public interface RejectedRequestProjection {
+    long getId();
+    String getSenderEmail();
+}
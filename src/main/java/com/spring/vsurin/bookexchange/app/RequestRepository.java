@@ -1,10 +1,20 @@
 package com.spring.vsurin.bookexchange.app;
 
 import com.spring.vsurin.bookexchange.domain.*;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 
@@ -12,7 +22,29 @@ import java.util.List;
 public interface RequestRepository extends JpaRepository<Request, Long> {
     Request findById(long id);
 
-    List<Request> findByStatusAndBookSenderWants(RequestStatus status, Book book);
+    @EntityGraph(attributePaths = {"sender", "receiver", "bookSenderWants"})
+    Request findForAcceptById(long id);
+
+    /**
+     * Блокирует до конца транзакции все актуальные заявки на книгу, кроме принятой,
+     * и возвращает их идентификаторы и адреса отправителей для уведомлений.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r.id AS id, r.sender.email AS senderEmail FROM Request r " +
+            "WHERE r.bookSenderWants.id = :bookId AND r.status = com.spring.vsurin.bookexchange.domain.RequestStatus.ACTUAL " +
+            "AND r.id <> :acceptedRequestId")
+    List<RejectedRequestProjection> findCompetingForUpdate(@Param("bookId") long bookId, @Param("acceptedRequestId") long acceptedRequestId);
+
+    /**
+     * Отклоняет одним запросом все актуальные заявки на книгу, кроме принятой.
+     */
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "requests"))
+    @Query(value = "UPDATE requests SET request_status = 'REJECTED' " +
+            "WHERE request_book_sender_wants = :bookId AND request_status = 'ACTUAL' AND request_id <> :acceptedRequestId",
+            nativeQuery = true)
+    int rejectCompeting(@Param("bookId") long bookId, @Param("acceptedRequestId") long acceptedRequestId);
 
     Page<Request> findByStatusAndSenderId(RequestStatus status, long senderId, Pageable pageable);
     Page<Request> findByStatusAndReceiverId(RequestStatus status, long receiverId, Pageable pageable);
@@ -5,6 +5,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 
@@ -40,6 +41,7 @@ public class RequestService {
      * @throws IllegalArgumentException если переданная заявка равна null или у получателя отсутствует/недоступна книга, которую хочет отправитель
      * @throws RuntimeException         если возникла ошибка при создании заявки
      */
+    @Transactional
     public Request createRequest(Request request) {
         if (request == null) {
             throw new IllegalArgumentException("Заявка не может быть null");
@@ -47,7 +49,7 @@ public class RequestService {
 
         long receiverId = request.getReceiver().getId();
         Book bookSenderWants = request.getBookSenderWants();
-        if (!userService.getUserById(receiverId).getOfferedBooks().contains(bookSenderWants))
+        if (bookSenderWants == null || !userService.isBookOfferedByUser(receiverId, bookSenderWants.getId()))
             throw new IllegalArgumentException("Заявка не может быть создана - у получателя заявки отсутствует/недоступна книга, которую хочет отправитель!");
 
         try {
@@ -71,7 +73,17 @@ public class RequestService {
      * @throws IllegalArgumentException если заявка с указанным идентификатором не найдена
      */
     public Request getRequestById(long requestId) {
-        Request foundRequest = requestRepository.findById(requestId);
+        return requireFound(requestRepository.findById(requestId), requestId);
+    }
+
+    /**
+     * Проверяет, что заявка, загруженная одним из графов репозитория, найдена.
+     *
+     * @param foundRequest загруженная заявка или null
+     * @param requestId    Идентификатор заявки
+     * @return Найденная заявка
+     */
+    private Request requireFound(Request foundRequest, long requestId) {
         if (foundRequest == null) {
             throw new IllegalArgumentException("Заявка с id " + requestId + " не найдена");
         }
@@ -88,8 +100,9 @@ public class RequestService {
      * @param bookId    Идентификатор книги, которую хочет получатель заявки
      * @throws IllegalArgumentException если заявка не может быть принята
      */
+    @Transactional
     public void acceptRequest(long requestId, long bookId) {
-        Request request = getRequestById(requestId);
+        Request request = requireFound(requestRepository.findForAcceptById(requestId), requestId);
 
         if (request != null) {
             if (request.getStatus() == RequestStatus.REJECTED) {
@@ -102,41 +115,58 @@ public class RequestService {
             User sender = request.getSender();
             User receiver = request.getReceiver();
 
-            if (!sender.getOfferedBooks().contains(bookReceiverWants)) {
+            if (!userService.isBookOfferedByUser(sender.getId(), bookId)) {
                 throw new IllegalArgumentException("Отправитель заявки не предлагает данную книгу.");
             }
 
-            List<Request> relatedRequests = requestRepository.findByStatusAndBookSenderWants(RequestStatus.ACTUAL, request.getBookSenderWants());
-
             userService.addUserWithAccessToMainAddress(sender.getId(), receiver.getId());
             userService.addUserWithAccessToMainAddress(receiver.getId(), sender.getId());
 
             Long currentAuthId = securityContextService.getCurrentAuthId();
 
-            for (Request relatedRequest : relatedRequests) {
-                if (relatedRequest.getId() == requestId) {
-                    relatedRequest.setStatus(RequestStatus.ACCEPTED);
-                    relatedRequest.setBookReceiverWants(bookReceiverWants);
-                    requestRepository.save(relatedRequest);
-                    Exchange exchange = Exchange.builder()
-                            .member1(relatedRequest.getSender())
-                            .member2(relatedRequest.getReceiver())
-                            .exchangedBook1(relatedRequest.getBookReceiverWants())
-                            .exchangedBook2(relatedRequest.getBookSenderWants())
-                            .address1(relatedRequest.getSender().getMainAddress(currentAuthId))
-                            .address2(relatedRequest.getReceiver().getMainAddress(currentAuthId))
-                            .build();
-                    exchangeService.createExchange(exchange);
-                    log.info("Заявка с id {} принята, создан обмен", requestId);
-
-                    EmailData emailData = mailBuilder.buildAcceptRequestMessage(relatedRequest.getSender().getEmail(), relatedRequest);
-                    emailService.sendEmail(emailData);
-                } else {
-                    rejectRequest(relatedRequest.getId());
-                    log.info("Заявка с id {} отклонена, так как с запрашиваемой книгой принята к обмену другая заявка", relatedRequest.getId());
-                }
+            if (request.getStatus() == RequestStatus.ACTUAL) {
+                request.setStatus(RequestStatus.ACCEPTED);
+                request.setBookReceiverWants(bookReceiverWants);
+                requestRepository.save(request);
+                Exchange exchange = Exchange.builder()
+                        .member1(sender)
+                        .member2(receiver)
+                        .exchangedBook1(request.getBookReceiverWants())
+                        .exchangedBook2(request.getBookSenderWants())
+                        .address1(sender.getMainAddress(currentAuthId))
+                        .address2(receiver.getMainAddress(currentAuthId))
+                        .build();
+                exchangeService.createExchange(exchange);
+                log.info("Заявка с id {} принята, создан обмен", requestId);
+
+                EmailData emailData = mailBuilder.buildAcceptRequestMessage(sender.getEmail(), request);
+                emailService.sendEmail(emailData);
             }
+
+            rejectCompetingRequests(request);
+        }
+    }
+
+    /**
+     * Отклоняет остальные актуальные заявки на ту же книгу и ставит уведомления их отправителям в очередь одним пакетом.
+     * Заявки и адреса отправителей читаются с блокировкой, а затем отклоняются одним запросом,
+     * так что число запросов не зависит от числа конкурирующих заявок.
+     *
+     * @param acceptedRequest принятая заявка
+     */
+    private void rejectCompetingRequests(Request acceptedRequest) {
+        long bookId = acceptedRequest.getBookSenderWants().getId();
+        List<RejectedRequestProjection> rejectedRequests = requestRepository.findCompetingForUpdate(bookId, acceptedRequest.getId());
+        if (rejectedRequests.isEmpty()) {
+            return;
         }
+        requestRepository.rejectCompeting(bookId, acceptedRequest.getId());
+
+        emailService.sendEmails(rejectedRequests.stream()
+                .map(rejected -> mailBuilder.buildRejectRequestMessage(rejected.getSenderEmail(), rejected.getId()))
+                .toList());
+        log.info("Заявки с id {} отклонены, так как с запрашиваемой книгой принята к обмену другая заявка",
+                rejectedRequests.stream().map(RejectedRequestProjection::getId).toList());
     }
 
 
@@ -145,6 +175,7 @@ public class RequestService {
      *
      * @param requestId Идентификатор заявки
      */
+    @Transactional
     public void rejectRequest(long requestId) {
         Request request = getRequestById(requestId);
         if (request != null) {
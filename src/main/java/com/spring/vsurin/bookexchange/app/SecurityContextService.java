@@ -12,5 +12,13 @@ public interface SecurityContextService {
      * @throws IllegalArgumentException если пользователь не аутентифицирован или не найден в базе данных
      */
     Long getCurrentAuthId();
+
+    /**
+     * Завершает все сеансы пользователя, чтобы при следующем запросе он прошёл аутентификацию заново.
+     * Вызывается, когда меняется роль пользователя или пользователь удаляется.
+     *
+     * @param userId идентификатор пользователя
+     */
+    void invalidateUser(long userId);
 }
 
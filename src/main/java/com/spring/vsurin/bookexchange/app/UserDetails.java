@@ -0,0 +1,23 @@
+package com.spring.vsurin.bookexchange.app;
+
+import com.spring.vsurin.bookexchange.domain.User;
+
+import java.util.List;
+
+/**
+ * Карточка пользователя: сам пользователь и идентификаторы его книг и обменов, прочитанные без загрузки коллекций.
+ *
+ * @param user                         пользователь
+ * @param libraryIds                   книги в библиотеке
+ * @param offeredBookIds               книги, предлагаемые для обмена
+ * @param wishlistIds                  книги в списке желаний
+ * @param exchangeIdsAsMember1         обмены, где пользователь - первый участник
+ * @param exchangeIdsAsMember2         обмены, где пользователь - второй участник
+ * @param usersWithAccessToMainAddress пользователи с доступом к главному адресу
+ * @param addressList                  адреса, только если это текущий пользователь, иначе null
+ * @param mainAddress                  главный адрес, если он виден текущему пользователю, иначе null
+ */
+public record UserDetails(User user, List<Long> libraryIds, List<Long> offeredBookIds, List<Long> wishlistIds,
+                          List<Long> exchangeIdsAsMember1, List<Long> exchangeIdsAsMember2,
+                          List<Long> usersWithAccessToMainAddress, List<String> addressList, String mainAddress) {
+}
@@ -1,10 +1,20 @@
 package com.spring.vsurin.bookexchange.app;
 
+import com.spring.vsurin.bookexchange.domain.NotificationMode;
 import com.spring.vsurin.bookexchange.domain.User;
 import com.spring.vsurin.bookexchange.domain.UserRole;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -13,4 +23,133 @@ public interface UserRepository extends JpaRepository<User, Long> {
     void deleteById(long id);
     User findByEmail(String email);
     List<User> findByRole(UserRole role);
+
+    @Query("SELECT u.email FROM User u WHERE u.role = :role")
+    List<String> findEmailsByRole(@Param("role") UserRole role);
+    boolean existsByEmailAndNotificationMode(String email, NotificationMode notificationMode);
+
+    @Query("SELECT u.email FROM User u WHERE u.email IN :emails AND u.notificationMode = :notificationMode")
+    List<String> findEmailsByNotificationMode(@Param("emails") Collection<String> emails, @Param("notificationMode") NotificationMode notificationMode);
+
+    @EntityGraph(User.GRAPH_OFFERED_BOOKS)
+    User findWithOfferedBooksById(long id);
+
+    @EntityGraph(User.GRAPH_ADDRESSES)
+    User findWithAddressListById(long id);
+
+    @EntityGraph(User.GRAPH_MAIN_ADDRESS_ACCESS)
+    User findWithMainAddressAccessById(long id);
+
+    @Query("SELECT u.version FROM User u WHERE u.id = :userId")
+    Long findVersionById(@Param("userId") long userId);
+
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = EntityCache.QUERY_SPACE))
+    @Query(value = "UPDATE users SET user_version = user_version + 1 WHERE user_id = :userId", nativeQuery = true)
+    void incrementVersion(@Param("userId") long userId);
+
+    /**
+     * Проверяет по индексу таблицы связи, есть ли книга в библиотеке пользователя, не загружая саму библиотеку.
+     * Так же устроены проверки и изменения списка предлагаемых к обмену книг и списка желаний ниже.
+     */
+    @Query("SELECT COUNT(b) > 0 FROM User u JOIN u.library b WHERE u.id = :userId AND b.id = :bookId")
+    boolean existsInLibrary(@Param("userId") long userId, @Param("bookId") long bookId);
+
+    @Query("SELECT COUNT(b) > 0 FROM User u JOIN u.offeredBooks b WHERE u.id = :userId AND b.id = :bookId")
+    boolean existsInOfferedBooks(@Param("userId") long userId, @Param("bookId") long bookId);
+
+    @Query("SELECT COUNT(b) > 0 FROM User u JOIN u.wishlist b WHERE u.id = :userId AND b.id = :bookId")
+    boolean existsInWishlist(@Param("userId") long userId, @Param("bookId") long bookId);
+
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = EntityCache.QUERY_SPACE))
+    @Query(value = "INSERT INTO user_books (user_id, book_id) VALUES (:userId, :bookId)", nativeQuery = true)
+    void addToLibrary(@Param("userId") long userId, @Param("bookId") long bookId);
+
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = EntityCache.QUERY_SPACE))
+    @Query(value = "DELETE FROM user_books WHERE user_id = :userId AND book_id = :bookId", nativeQuery = true)
+    void removeFromLibrary(@Param("userId") long userId, @Param("bookId") long bookId);
+
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = EntityCache.QUERY_SPACE))
+    @Query(value = "INSERT INTO user_offered_books (user_id, book_id) VALUES (:userId, :bookId)", nativeQuery = true)
+    int addToOfferedBooks(@Param("userId") long userId, @Param("bookId") long bookId);
+
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = EntityCache.QUERY_SPACE))
+    @Query(value = "DELETE FROM user_offered_books WHERE user_id = :userId AND book_id = :bookId", nativeQuery = true)
+    int removeFromOfferedBooks(@Param("userId") long userId, @Param("bookId") long bookId);
+
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = EntityCache.QUERY_SPACE))
+    @Query(value = "INSERT INTO user_wishlist (user_id, book_id) VALUES (:userId, :bookId)", nativeQuery = true)
+    void addToWishlist(@Param("userId") long userId, @Param("bookId") long bookId);
+
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = EntityCache.QUERY_SPACE))
+    @Query(value = "DELETE FROM user_wishlist WHERE user_id = :userId AND book_id = :bookId", nativeQuery = true)
+    void removeFromWishlist(@Param("userId") long userId, @Param("bookId") long bookId);
+
+    @Query("SELECT b.id FROM User u JOIN u.library b WHERE u.id = :userId AND b.id IN :bookIds")
+    List<Long> findLibraryBookIds(@Param("userId") long userId, @Param("bookIds") Collection<Long> bookIds);
+
+    @Query("SELECT b.id FROM User u JOIN u.offeredBooks b WHERE u.id = :userId AND b.id IN :bookIds")
+    List<Long> findOfferedBookIds(@Param("userId") long userId, @Param("bookIds") Collection<Long> bookIds);
+
+    @Query("SELECT b.id FROM User u JOIN u.wishlist b WHERE u.id = :userId AND b.id IN :bookIds")
+    List<Long> findWishlistBookIds(@Param("userId") long userId, @Param("bookIds") Collection<Long> bookIds);
+
+    /**
+     * Идентификаторы всех книг, обменов и пользователей с доступом к главному адресу одним запросом для карточки пользователя.
+     * Вид связи: {@code LIBRARY}, {@code OFFERED}, {@code WISHLIST}, {@code MEMBER1}, {@code MEMBER2} или {@code MAIN_ADDRESS_ACCESS}.
+     */
+    @Query("SELECT 'LIBRARY' AS kind, b.id AS id FROM User u JOIN u.library b WHERE u.id = :userId " +
+            "UNION ALL SELECT 'OFFERED' AS kind, b.id AS id FROM User u JOIN u.offeredBooks b WHERE u.id = :userId " +
+            "UNION ALL SELECT 'WISHLIST' AS kind, b.id AS id FROM User u JOIN u.wishlist b WHERE u.id = :userId " +
+            "UNION ALL SELECT 'MEMBER1' AS kind, e.id AS id FROM Exchange e WHERE e.member1.id = :userId " +
+            "UNION ALL SELECT 'MEMBER2' AS kind, e.id AS id FROM Exchange e WHERE e.member2.id = :userId " +
+            "UNION ALL SELECT 'MAIN_ADDRESS_ACCESS' AS kind, a AS id FROM User u JOIN u.usersWithAccessToMainAddress a WHERE u.id = :userId")
+    List<LinkedIdProjection> findLinks(@Param("userId") long userId);
+
+    @Query("SELECT a FROM User u JOIN u.addressList a WHERE u.id = :userId")
+    List<String> findAddresses(@Param("userId") long userId);
+
+    @Query("SELECT b.id FROM User u JOIN u.library b WHERE u.id = :userId")
+    List<Long> findLibraryBookIds(@Param("userId") long userId);
+
+    @Query("SELECT b.id FROM User u JOIN u.wishlist b WHERE u.id = :userId")
+    List<Long> findWishlistBookIds(@Param("userId") long userId);
+
+    /**
+     * Добавляет пачку книг в таблицу связи одним запросом INSERT ... SELECT.
+     * Книги должны существовать и ещё не быть в списке пользователя.
+     */
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = EntityCache.QUERY_SPACE))
+    @Query(value = "INSERT INTO user_books (user_id, book_id) SELECT :userId, book_id FROM books WHERE book_id IN (:bookIds)", nativeQuery = true)
+    void addAllToLibrary(@Param("userId") long userId, @Param("bookIds") Collection<Long> bookIds);
+
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = EntityCache.QUERY_SPACE))
+    @Query(value = "INSERT INTO user_offered_books (user_id, book_id) SELECT :userId, book_id FROM books WHERE book_id IN (:bookIds)", nativeQuery = true)
+    void addAllToOfferedBooks(@Param("userId") long userId, @Param("bookIds") Collection<Long> bookIds);
+
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = EntityCache.QUERY_SPACE))
+    @Query(value = "INSERT INTO user_wishlist (user_id, book_id) SELECT :userId, book_id FROM books WHERE book_id IN (:bookIds)", nativeQuery = true)
+    void addAllToWishlist(@Param("userId") long userId, @Param("bookIds") Collection<Long> bookIds);
+
+    @Query("SELECT u.email AS email, b.title AS title, b.author AS author FROM User u JOIN u.wishlist b WHERE b.id IN :bookIds ORDER BY u.email")
+    List<WishlistEntryProjection> findWishlistEntriesByBookIds(@Param("bookIds") Collection<Long> bookIds);
 }
@@ -2,10 +2,19 @@ package com.spring.vsurin.bookexchange.app;
 
 import com.spring.vsurin.bookexchange.domain.*;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * Сервисный класс для работы с пользователями.
@@ -13,29 +22,85 @@ import java.util.List;
 @Slf4j
 @Component
 public class UserService {
+    /**
+     * Статусы обменов, во время которых книгу нельзя убрать из библиотеки или снова предложить для обмена.
+     */
+    private static final Set<ExchangeStatus> ACTIVE_EXCHANGE_STATUSES = EnumSet.of(ExchangeStatus.CONFIRMED, ExchangeStatus.IN_PROGRESS, ExchangeStatus.PROBLEMS);
+
     private final UserRepository userRepository;
+    private final ExchangeRepository exchangeRepository;
     private final BookService bookService;
     private final MailBuilder mailBuilder;
     private final EmailService emailService;
 
     private final SecurityContextService securityContextService;
 
+    private final EntityCache entityCache;
+
 
-    public UserService(UserRepository userRepository, BookService bookService, MailBuilder mailBuilder, EmailService emailService, SecurityContextService securityContextService) {
+    public UserService(UserRepository userRepository, ExchangeRepository exchangeRepository, BookService bookService, MailBuilder mailBuilder, EmailService emailService, SecurityContextService securityContextService, EntityCache entityCache) {
         this.userRepository = userRepository;
+        this.exchangeRepository = exchangeRepository;
         this.bookService = bookService;
         this.mailBuilder = mailBuilder;
         this.emailService = emailService;
         this.securityContextService = securityContextService;
+        this.entityCache = entityCache;
     }
 
     /**
-     * Получает пользователя по его идентификатору.
+     * Получает пользователя по его идентификатору. Пользователь читается через кэш второго уровня
+     * ({@code findById(Long)} выполняет {@code EntityManager.find}, а не запрос).
      * @param userId идентификатор пользователя
      * @return найденный пользователь
      */
     public User getUserById(long userId) {
-        User foundUser = userRepository.findById(userId);
+        return requireFound(userRepository.findById(Long.valueOf(userId)).orElse(null), userId);
+    }
+
+    /**
+     * Получает карточку пользователя: пользователя и идентификаторы его книг и обменов одним запросом,
+     * не загружая коллекции. Адреса читаются отдельным запросом и только когда пользователь смотрит свою карточку.
+     * @param userId идентификатор пользователя
+     * @param viewerId идентификатор текущего пользователя
+     * @return карточка пользователя
+     */
+    public UserDetails getUserDetails(long userId, long viewerId) {
+        User user = getUserById(userId);
+        Map<String, List<Long>> links = userRepository.findLinks(userId).stream()
+                .collect(Collectors.groupingBy(LinkedIdProjection::getKind,
+                        Collectors.mapping(LinkedIdProjection::getId, Collectors.toList())));
+        List<Long> usersWithAccessToMainAddress = links.getOrDefault("MAIN_ADDRESS_ACCESS", List.of());
+        List<String> addressList = viewerId == userId ? userRepository.findAddresses(userId) : null;
+
+        return new UserDetails(user,
+                links.getOrDefault("LIBRARY", List.of()),
+                links.getOrDefault("OFFERED", List.of()),
+                links.getOrDefault("WISHLIST", List.of()),
+                links.getOrDefault("MEMBER1", List.of()),
+                links.getOrDefault("MEMBER2", List.of()),
+                usersWithAccessToMainAddress,
+                addressList,
+                user.getMainAddress(viewerId, usersWithAccessToMainAddress));
+    }
+
+    /**
+     * Проверяет, предлагает ли пользователь книгу для обмена, не загружая список его книг.
+     * @param userId идентификатор пользователя
+     * @param bookId идентификатор книги
+     * @return true, если книга в списке предлагаемых пользователем к обмену
+     */
+    public boolean isBookOfferedByUser(long userId, long bookId) {
+        return userRepository.existsInOfferedBooks(userId, bookId);
+    }
+
+    /**
+     * Проверяет, что пользователь, загруженный одним из графов репозитория, найден.
+     * @param foundUser загруженный пользователь или null
+     * @param userId идентификатор пользователя
+     * @return найденный пользователь
+     */
+    private User requireFound(User foundUser, long userId) {
         if (foundUser == null) {
             throw new IllegalArgumentException("Пользователь с id " + userId + " не найден");
         }
@@ -45,19 +110,58 @@ public class UserService {
         }
     }
 
+    /**
+     * Получает версию пользователя, не загружая самого пользователя.
+     * @param userId идентификатор пользователя
+     * @return версия пользователя или null, если пользователь не найден
+     */
+    public Long getUserVersion(long userId) {
+        return userRepository.findVersionById(userId);
+    }
+
+    /**
+     * Увеличивает версию пользователя, когда меняются связанные с ним данные, которые хранятся не в нём самом (например, обмены).
+     * @param userId идентификатор пользователя
+     */
+    public void touchUser(long userId) {
+        userRepository.incrementVersion(userId);
+        entityCache.evictUser(userId);
+    }
+
+    /**
+     * Сохраняет изменения пользователя и сбрасывает его запись в кэше сущностей.
+     * @param user изменённый пользователь
+     */
+    private void save(User user) {
+        userRepository.save(user);
+        entityCache.evictUser(user.getId());
+    }
+
     /**
      * Удаляет пользователя из базы данных по его идентификатору, отправляет уведомление.
+     * Версии книг из библиотеки и списка желаний пользователя увеличиваются, так как меняются их владельцы и списки желаний.
      * @param userId идентификатор пользователя для удаления
      */
+    @Transactional
     public void deleteUser(long userId) {
-        User foundUser = userRepository.findById(userId);
+        User foundUser = userRepository.findWithOfferedBooksById(userId);
         if (foundUser == null) {
             throw new IllegalArgumentException("Пользователь с id " + userId + " не найден");
         } else {
             EmailData emailData = mailBuilder.buildDeleteUserMessage(foundUser.getEmail(), userId);
             emailService.sendEmail(emailData);
 
+            if (foundUser.getOfferedBooks() != null) {
+                foundUser.getOfferedBooks().forEach(book -> bookService.updateOfferCount(book.getId(), -1));
+            }
+            Set<Long> changedBooks = new LinkedHashSet<>(userRepository.findLibraryBookIds(userId));
+            changedBooks.addAll(userRepository.findWishlistBookIds(userId));
+            if (!changedBooks.isEmpty()) {
+                bookService.touchBooks(changedBooks);
+            }
             userRepository.deleteById(userId);
+            entityCache.evictUser(userId);
+            securityContextService.invalidateUser(userId);
             log.info("Удалён пользователь с id {}", userId);
         }
     }
@@ -72,13 +176,10 @@ public class UserService {
         if (foundUser == null) {
             throw new IllegalArgumentException("Пользователь с id " + userId + " не найден");
         } else {
-            List<User> adminList = userRepository.findByRole(UserRole.ROLE_ADMIN);
-
-            adminList.forEach(admin -> {
-                EmailData emailData = mailBuilder.buildRequestToDeleteUserMessage(admin.getEmail(), userId, reason);
-                emailService.sendEmail(emailData);
-            });
-
+            List<EmailData> emails = userRepository.findEmailsByRole(UserRole.ROLE_ADMIN).stream()
+                    .map(adminEmail -> mailBuilder.buildRequestToDeleteUserMessage(adminEmail, userId, reason))
+                    .toList();
+            emailService.sendEmails(emails);
         }
     }
 
@@ -87,15 +188,17 @@ public class UserService {
      * @param userId идентификатор пользователя
      * @param bookId идентификатор книги для добавления
      */
+    @Transactional
     public void addBookToUserLibrary(long userId, long bookId) {
-        User user = getUserById(userId);
+        getUserById(userId);
 
         Book book = bookService.getBookById(bookId);
 
         if (book != null) {
-            if (!user.getLibrary().contains(book)) {
-                user.getLibrary().add(book);
-                userRepository.save(user);
+            if (!userRepository.existsInLibrary(userId, bookId)) {
+                userRepository.addToLibrary(userId, bookId);
+                touchUser(userId);
+                bookService.touchBook(bookId);
                 log.info("Книга с id {} добавлена в библиотеку пользователя с id {}", bookId, userId);
             } else
                 log.error("Книга уже в библиотеке!");
@@ -103,6 +206,32 @@ public class UserService {
             log.error("Книги не существует!");
     }
 
+    /**
+     * Добавляет несколько книг к библиотеке пользователя в одной транзакции: пользователь загружается один раз,
+     * а связи добавляются одним запросом. Несуществующие книги и книги, которые уже в библиотеке, пропускаются.
+     * @param userId идентификатор пользователя
+     * @param bookIds идентификаторы книг для добавления
+     * @return идентификаторы добавленных книг
+     */
+    @Transactional
+    public List<Long> addBooksToUserLibrary(long userId, Collection<Long> bookIds) {
+        getUserById(userId);
+        if (bookIds.isEmpty()) {
+            return List.of();
+        }
+
+        Set<Long> booksToAdd = new LinkedHashSet<>(bookService.getExistingBookIds(bookIds));
+        userRepository.findLibraryBookIds(userId, bookIds).forEach(booksToAdd::remove);
+
+        if (!booksToAdd.isEmpty()) {
+            userRepository.addAllToLibrary(userId, booksToAdd);
+            touchUser(userId);
+            bookService.touchBooks(booksToAdd);
+        }
+        log.info("В библиотеку пользователя с id {} добавлено книг: {} из {}", userId, booksToAdd.size(), bookIds.size());
+        return List.copyOf(booksToAdd);
+    }
+
     /**
      * Добавляет книгу в библиотеке к тем, которые пользователь готов обменять.
      * Проверяет, не принимает ли эта книга участие в обмене в данный момент.
@@ -110,62 +239,108 @@ public class UserService {
      * @param userId идентификатор пользователя
      * @param bookId идентификатор книги для добавления
      */
+    @Transactional
     public void addBookToOfferedByUser(long userId, long bookId) {
         User user = getUserById(userId);
-        Book book = bookService.getBookById(bookId);
+        if (!bookService.existsBook(bookId)) {
+            throw new IllegalArgumentException("Книга с id " + bookId + " не найдена");
+        }
 
         if (user.getMainAddress(securityContextService.getCurrentAuthId()) == null) {
             log.error("Нельзя предлагать книги для обмена, если не указан основной адрес доставки!");
             return;
         }
 
-        if (book != null) {
-            if (user.getLibrary().contains(book)) {
-                List<Exchange> allUserExchanges = getAllUserExchanges(userId);
-
-                boolean bookInExchange = allUserExchanges.stream()
-                        .anyMatch(ex -> ex.getStatus() == ExchangeStatus.CONFIRMED ||
-                                ex.getStatus() == ExchangeStatus.IN_PROGRESS ||
-                                ex.getStatus() == ExchangeStatus.PROBLEMS &&
-                                        (ex.getExchangedBook1().getId() == bookId || ex.getExchangedBook2().getId() == bookId));
-
-                if (!bookInExchange) {
-                    user.getOfferedBooks().add(book);
-                    userRepository.save(user);
-
-                    List<User> usersWantThisBook = book.getUsersHaveInWishlist();
-
-                    usersWantThisBook.forEach(wisher -> {
-                        EmailData emailData = mailBuilder.buildAvailableFromWishlistMessage(wisher.getEmail(), book.getTitle(), book.getAuthor(), user.getUsername());
-                        emailService.sendEmail(emailData);
-                    });
-
-                    log.info("Книга с id {} в библиотеке пользователя с id {} доступна для обмена", bookId, userId);
-                } else {
-                    log.error("Книга с id {} в библиотеке пользователя с id {} не доступна для обмена! Она принимает участие в другом обмене!", bookId, userId);
-                }
+        if (userRepository.existsInOfferedBooks(userId, bookId)) {
+            log.info("Книга с id {} в библиотеке пользователя с id {} уже доступна для обмена", bookId, userId);
+            return;
+        }
+        if (userRepository.existsInLibrary(userId, bookId)) {
+            if (!isBookInActiveExchange(userId, bookId)) {
+                int added = userRepository.addToOfferedBooks(userId, bookId);
+                touchUser(userId);
+                bookService.updateOfferCount(bookId, added);
+                notifyWishers(List.of(bookId), user.getUsername());
+
+                log.info("Книга с id {} в библиотеке пользователя с id {} доступна для обмена", bookId, userId);
             } else {
-                log.error("Книга с id {} в библиотеке пользователя с id {} не доступна для обмена, т.к. отсутствует в библиотеке!", bookId, userId);
+                log.error("Книга с id {} в библиотеке пользователя с id {} не доступна для обмена! Она принимает участие в другом обмене!", bookId, userId);
             }
         } else {
-            log.error("Книги не существует!");
+            log.error("Книга с id {} в библиотеке пользователя с id {} не доступна для обмена, т.к. отсутствует в библиотеке!", bookId, userId);
         }
     }
 
+    /**
+     * Добавляет несколько книг из библиотеки к тем, которые пользователь готов обменять, в одной транзакции.
+     * Пропускаются книги не из библиотеки, уже предложенные и участвующие в обмене.
+     * Каждый пользователь, у которого добавленные книги есть в списке желаний, получает одно письмо на всю пачку.
+     * @param userId идентификатор пользователя
+     * @param bookIds идентификаторы книг для добавления
+     * @return идентификаторы добавленных книг
+     */
+    @Transactional
+    public List<Long> addBooksToOfferedByUser(long userId, Collection<Long> bookIds) {
+        User user = getUserById(userId);
+
+        if (user.getMainAddress(securityContextService.getCurrentAuthId()) == null) {
+            log.error("Нельзя предлагать книги для обмена, если не указан основной адрес доставки!");
+            return List.of();
+        }
+        if (bookIds.isEmpty()) {
+            return List.of();
+        }
+
+        Set<Long> booksToAdd = new LinkedHashSet<>(userRepository.findLibraryBookIds(userId, bookIds));
+        userRepository.findOfferedBookIds(userId, bookIds).forEach(booksToAdd::remove);
+        exchangeRepository.findBookIdsInExchanges(userId, bookIds, ACTIVE_EXCHANGE_STATUSES).forEach(booksToAdd::remove);
+
+        if (!booksToAdd.isEmpty()) {
+            userRepository.addAllToOfferedBooks(userId, booksToAdd);
+            touchUser(userId);
+            bookService.updateOfferCounts(booksToAdd, 1);
+            notifyWishers(booksToAdd, user.getUsername());
+        }
+        log.info("К предлагаемым для обмена книгам пользователя с id {} добавлено книг: {} из {}", userId, booksToAdd.size(), bookIds.size());
+        return List.copyOf(booksToAdd);
+    }
+
+    /**
+     * Отправляет каждому пользователю, у которого книги есть в списке желаний, одно письмо обо всех этих книгах.
+     * Адреса и книги читаются одним запросом, а письма ставятся в очередь одним пакетом.
+     * @param bookIds идентификаторы книг, ставших доступными для обмена
+     * @param name пользователь, предлагающий книги для обмена
+     */
+    private void notifyWishers(Collection<Long> bookIds, String name) {
+        Map<String, List<WishlistEntryProjection>> entriesByEmail = userRepository.findWishlistEntriesByBookIds(bookIds).stream()
+                .collect(Collectors.groupingBy(WishlistEntryProjection::getEmail, LinkedHashMap::new, Collectors.toList()));
+
+        List<EmailData> emails = entriesByEmail.entrySet().stream()
+                .map(emailEntries -> {
+                    String email = emailEntries.getKey();
+                    List<WishlistEntryProjection> entries = emailEntries.getValue();
+                    return entries.size() == 1
+                            ? mailBuilder.buildAvailableFromWishlistMessage(email, entries.get(0).getTitle(), entries.get(0).getAuthor(), name)
+                            : mailBuilder.buildAvailableFromWishlistMessage(email, entries.stream().map(entry -> entry.getAuthor() + " - " + entry.getTitle()).toList(), name);
+                })
+                .toList();
+        emailService.sendEmails(emails);
+    }
+
 
     /**
      * Удаляет книгу в библиотеке из тех, которые пользователь готов обменять.
      * @param userId идентификатор пользователя
      * @param bookId идентификатор книги для добавления
      */
+    @Transactional
     public void removeBookFromOfferedByUser(long userId, long bookId) {
-        User user = getUserById(userId);
+        getUserById(userId);
 
-        Book book = bookService.getBookById(bookId);
-
-        if (user.getOfferedBooks().contains(book)) {
-            user.getOfferedBooks().remove(book);
-            userRepository.save(user);
+        if (userRepository.existsInOfferedBooks(userId, bookId)) {
+            int removed = userRepository.removeFromOfferedBooks(userId, bookId);
+            touchUser(userId);
+            bookService.updateOfferCount(bookId, -removed);
             log.info("Книга с id {} в библиотеке пользователя с id {} больше не доступна для обмена", bookId, userId);
         }
     }
@@ -176,22 +351,15 @@ public class UserService {
      * @param userId идентификатор пользователя
      * @param bookId идентификатор книги для удаления
      */
+    @Transactional
     public void removeBookFromUserLibrary(long userId, long bookId) {
-        User user = getUserById(userId);
-        Book book = bookService.getBookById(bookId);
+        getUserById(userId);
 
-        if (user.getLibrary().contains(book)) {
-            List<Exchange> allUserExchanges = getAllUserExchanges(userId);
-
-            boolean bookInExchange = allUserExchanges.stream()
-                    .anyMatch(ex -> ex.getStatus() == ExchangeStatus.CONFIRMED ||
-                            ex.getStatus() == ExchangeStatus.IN_PROGRESS ||
-                            ex.getStatus() == ExchangeStatus.PROBLEMS &&
-                                    (ex.getExchangedBook1().getId() == bookId || ex.getExchangedBook2().getId() == bookId));
-
-            if (!bookInExchange) {
-                user.getLibrary().remove(book);
-                userRepository.save(user);
+        if (userRepository.existsInLibrary(userId, bookId)) {
+            if (!isBookInActiveExchange(userId, bookId)) {
+                userRepository.removeFromLibrary(userId, bookId);
+                touchUser(userId);
+                bookService.touchBook(bookId);
                 log.info("Книга с id {} удалена из библиотеки пользователя с id {}", bookId, userId);
             } else {
                 log.error("Книга с id {} не удалена из библиотеки пользователя с id {}! Она принимает участие в обмене!", bookId, userId);
@@ -204,11 +372,12 @@ public class UserService {
      * @param userId идентификатор пользователя
      * @param address адрес для добавления
      */
+    @Transactional
     public void addAddressToUser(long userId, String address) {
-        User user = getUserById(userId);
+        User user = requireFound(userRepository.findWithAddressListById(userId), userId);
         if (user != null) {
             user.getAddressList().add(address);
-            userRepository.save(user);
+            save(user);
             log.info("Адрес {} добавлен в список адресов пользователя с id {}", address, userId);
         }
     }
@@ -218,12 +387,13 @@ public class UserService {
      * @param userId идентификатор пользователя
      * @param address адрес для удаления
      */
+    @Transactional
     public void removeAddressFromUser(long userId, String address) {
-        User user = getUserById(userId);
+        User user = requireFound(userRepository.findWithAddressListById(userId), userId);
         if (user != null) {
             if (user.getAddressList().contains(address)) {
                 user.getAddressList().remove(address);
-                userRepository.save(user);
+                save(user);
                 log.info("Адрес {} удалён из списка адресов пользователя с id {}", address, userId);
             }
         }
@@ -238,7 +408,7 @@ public class UserService {
         User user = getUserById(userId);
         if (user != null) {
             user.setPhoneNumber(newPhone);
-            userRepository.save(user);
+            save(user);
             log.info("Телефонный номер пользователя с id {} изменён на {}", userId, newPhone);
         }
     }
@@ -252,7 +422,7 @@ public class UserService {
         User user = getUserById(userId);
         if (user != null) {
             user.setGender(gender);
-            userRepository.save(user);
+            save(user);
             log.info("Настройка пола пользователя с id {} изменена на {}", userId, gender);
         }
     }
@@ -266,22 +436,37 @@ public class UserService {
         User user = getUserById(userId);
         if (user != null) {
             user.setAvatarLink(newLink);
-            userRepository.save(user);
+            save(user);
             log.info("Ссылка на аватар пользователя с id {} изменена", userId);
         }
     }
 
+    /**
+     * Обновляет способ доставки уведомлений пользователю.
+     * @param userId идентификатор пользователя
+     * @param mode способ доставки: сразу или сводкой
+     */
+    public void updateNotificationMode(long userId, NotificationMode mode) {
+        User user = getUserById(userId);
+        if (user != null) {
+            user.setNotificationMode(mode);
+            save(user);
+            log.info("Способ доставки уведомлений пользователя с id {} изменён на {}", userId, mode);
+        }
+    }
+
     /**
      * Обновляет основной адрес доставки пользователя.
      * @param userId идентификатор пользователя
      * @param index новый адрес доставки из списка адресов
      */
+    @Transactional
     public void updateMainAddress(long userId, int index) {
-        User user = getUserById(userId);
+        User user = requireFound(userRepository.findWithAddressListById(userId), userId);
 
         if (index >= 0 && index < user.getAddressList().size()) {
             user.setMainAddress(user.getAddressList().get(index));
-            userRepository.save(user);
+            save(user);
             log.info("Основной адрес доставки пользователя с id {} изменён на {}", userId, user.getAddressList().get(index));
         }
         else
@@ -289,19 +474,24 @@ public class UserService {
     }
 
     /**
-     * Объединяет в один список все обмены пользователя.
+     * Получает страницу обменов пользователя (в качестве любого из участников).
      * @param userId идентификатор пользователя
-     * @return все обмены пользователя
+     * @param status статус обменов или null, если нужны обмены с любым статусом
+     * @param pageable параметры пагинации
+     * @return страница обменов пользователя
      */
-    public List<Exchange> getAllUserExchanges(long userId) {
-        User user = getUserById(userId);
-        List<Exchange> ex1 = user.getExchangesAsMember1();
-        List<Exchange> ex2 = user.getExchangesAsMember2();
-        List<Exchange> combinedList = new ArrayList<>();
-        combinedList.addAll(ex1);
-        combinedList.addAll(ex2);
+    public Page<Exchange> getAllUserExchanges(long userId, ExchangeStatus status, Pageable pageable) {
+        return exchangeRepository.findByMember(userId, status, pageable);
+    }
 
-        return combinedList;
+    /**
+     * Проверяет, участвует ли книга пользователя в подтверждённом, проходящем или проблемном обмене.
+     * @param userId идентификатор пользователя
+     * @param bookId идентификатор книги
+     * @return true, если книга участвует в таком обмене
+     */
+    private boolean isBookInActiveExchange(long userId, long bookId) {
+        return exchangeRepository.existsByMemberAndBook(userId, bookId, ACTIVE_EXCHANGE_STATUSES);
     }
 
     /**
@@ -321,7 +511,8 @@ public class UserService {
         }
 
         user.setRole(UserRole.ROLE_ADMIN);
-        userRepository.save(user);
+        save(user);
+        securityContextService.invalidateUser(userId);
         log.info("Пользователь с id {} назначен администратором", userId);
     }
 
@@ -342,7 +533,8 @@ public class UserService {
         }
 
         user.setRole(UserRole.ROLE_USER);
-        userRepository.save(user);
+        save(user);
+        securityContextService.invalidateUser(userId);
         log.info("Пользователь с id {} больше не администратор", userId);
     }
 
@@ -364,7 +556,7 @@ public class UserService {
         }
 
         user.setShowContacts(true);
-        userRepository.save(user);
+        save(user);
         log.info("Доступ к контактам разрешен для пользователя с id {}", userId);
     }
 
@@ -386,7 +578,7 @@ public class UserService {
         }
 
         user.setShowContacts(false);
-        userRepository.save(user);
+        save(user);
         log.info("Доступ к контактам запрещён для пользователя с id {}", userId);
     }
 
@@ -400,7 +592,7 @@ public class UserService {
         User user = getUserById(userId);
         if (user != null) {
             user.setPreferences(prefs);
-            userRepository.save(user);
+            save(user);
             log.info("Предпочтения обновлены для пользователя с id {}", userId);
         }
     }
@@ -411,11 +603,12 @@ public class UserService {
      * @param userId      идентификатор пользователя, к чьёму адресу даётся доступ
      * @param userIdToAdd идентификатор пользователя, которому предоставляется доступ к главному адресу
      */
+    @Transactional
     public void addUserWithAccessToMainAddress(long userId, long userIdToAdd) {
-        User user = getUserById(userId);
+        User user = requireFound(userRepository.findWithMainAddressAccessById(userId), userId);
         if (user != null) {
             user.addUserWithAccessToMainAddress(userIdToAdd);
-            userRepository.save(user);
+            save(user);
             log.info("Пользователь {} получил доступ к главному адресу пользователя с id {}", userIdToAdd, userId);
         }
     }
@@ -426,11 +619,12 @@ public class UserService {
      * @param userId      идентификатор пользователя, к чьёму адресу запрещается доступ
      * @param userIdToRemove идентификатор пользователя, которому запрещается доступ к главному адресу
      */
+    @Transactional
     public void removeUserWithAccessToMainAddress(long userId, long userIdToRemove) {
-        User user = getUserById(userId);
+        User user = requireFound(userRepository.findWithMainAddressAccessById(userId), userId);
         if (user != null) {
             user.removeUserWithAccessToMainAddress(userIdToRemove);
-            userRepository.save(user);
+            save(user);
             log.info("Пользователь {} больше не имеет доступа к главному адресу пользователя с id {}", userIdToRemove, userId);
             } else {
             log.warn("Пользователь {} изначально не имел доступа к главному адресу пользователя с id {}", userIdToRemove, userId);
@@ -454,7 +648,8 @@ public class UserService {
         }
 
         user.setRole(UserRole.ROLE_BLOCKED);
-        userRepository.save(user);
+        save(user);
+        securityContextService.invalidateUser(userId);
         log.info("Пользователь с id {} заблокирован", userId);
     }
 
@@ -475,7 +670,8 @@ public class UserService {
         }
 
         user.setRole(UserRole.ROLE_USER);
-        userRepository.save(user);
+        save(user);
+        securityContextService.invalidateUser(userId);
         log.info("Пользователь с id {} разблокирован", userId);
     }
 
@@ -496,7 +692,8 @@ public class UserService {
         }
 
         user.setRole(UserRole.ROLE_ADMIN);
-        userRepository.save(user);
+        save(user);
+        securityContextService.invalidateUser(userId);
         log.info("Пользователь с id {} разблокирован и назначен администратором", userId);
     }
 
@@ -506,14 +703,20 @@ public class UserService {
      * @param userId идентификатор пользователя
      * @param bookId идентификатор книги для добавления
      */
+    @Transactional
     public void addBookToWishlist(long userId, long bookId) {
-        User user = getUserById(userId);
+        getUserById(userId);
         Book book = bookService.getBookById(bookId);
 
         if (book != null) {
-            if (!user.getLibrary().contains(book)) {
-                user.getWishlist().add(book);
-                userRepository.save(user);
+            if (userRepository.existsInWishlist(userId, bookId)) {
+                log.info("Книга с id {} уже в списке желаний пользователя с id {}", bookId, userId);
+                return;
+            }
+            if (!userRepository.existsInLibrary(userId, bookId)) {
+                userRepository.addToWishlist(userId, bookId);
+                touchUser(userId);
+                bookService.touchBook(bookId);
                 log.info("Книга с id {} добавлена в список желаний пользователя с id {}", bookId, userId);
             } else {
                 log.error("Книга с id {} не добавлена в список желаний пользователя с id {}, т.к. уже в библиотеке!", bookId, userId);
@@ -523,19 +726,46 @@ public class UserService {
         }
     }
 
+    /**
+     * Добавляет несколько книг в список желаний пользователя в одной транзакции.
+     * Пропускаются несуществующие книги, книги из библиотеки и книги, которые уже в списке желаний.
+     * @param userId идентификатор пользователя
+     * @param bookIds идентификаторы книг для добавления
+     * @return идентификаторы добавленных книг
+     */
+    @Transactional
+    public List<Long> addBooksToWishlist(long userId, Collection<Long> bookIds) {
+        getUserById(userId);
+        if (bookIds.isEmpty()) {
+            return List.of();
+        }
+
+        Set<Long> booksToAdd = new LinkedHashSet<>(bookService.getExistingBookIds(bookIds));
+        userRepository.findLibraryBookIds(userId, bookIds).forEach(booksToAdd::remove);
+        userRepository.findWishlistBookIds(userId, bookIds).forEach(booksToAdd::remove);
+
+        if (!booksToAdd.isEmpty()) {
+            userRepository.addAllToWishlist(userId, booksToAdd);
+            touchUser(userId);
+            bookService.touchBooks(booksToAdd);
+        }
+        log.info("В список желаний пользователя с id {} добавлено книг: {} из {}", userId, booksToAdd.size(), bookIds.size());
+        return List.copyOf(booksToAdd);
+    }
+
     /**
      * Удаляет книгу в библиотеке из тех, которые пользователь готов обменять.
      * @param userId идентификатор пользователя
      * @param bookId идентификатор книги для добавления
      */
+    @Transactional
     public void removeBookFromWishlist(long userId, long bookId) {
-        User user = getUserById(userId);
-
-        Book book = bookService.getBookById(bookId);
+        getUserById(userId);
 
-        if (user.getWishlist().contains(book)) {
-            user.getWishlist().remove(book);
-            userRepository.save(user);
+        if (userRepository.existsInWishlist(userId, bookId)) {
+            userRepository.removeFromWishlist(userId, bookId);
+            touchUser(userId);
+            bookService.touchBook(bookId);
             log.info("Книга с id {} удалена из списка желаний пользователя с id {}", bookId, userId);
         }
     }
@@ -0,0 +1,10 @@
+package com.spring.vsurin.bookexchange.app;
+
+/**
+ * Запись списка желаний для уведомлений: адрес пользователя и книга, которую он хочет получить.
+ */
+public interface WishlistEntryProjection {
+    String getEmail();
+    String getTitle();
+    String getAuthor();
+}
@@ -2,9 +2,9 @@ package com.spring.vsurin.bookexchange.domain;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
-import java.text.DecimalFormat;
-import java.text.DecimalFormatSymbols;
 import java.time.Year;
 import java.util.List;
 
@@ -12,9 +12,16 @@ import java.util.List;
  * Сущность книги.
  * Каждая книга имеет id, название, автора, издательство,
  * год издания, ISBN, жанр, описание, список пользователей, готовых её обменять, и список оценок (для формирования рейтинга).
+ * Книга и её списки пользователей хранятся в кэше второго уровня.
+ * Списки пользователей загружаются лениво: карточка книги читает только их идентификаторы через {@code BookRepository}.
  */
 @Entity
-@Table(name = "books")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@Table(name = "books", indexes = {
+        @Index(name = "idx_books_available_rating_id", columnList = "book_available, book_rating DESC, book_id"),
+        @Index(name = "uk_books_dedup_key", columnList = "book_dedup_key", unique = true)
+})
 @AllArgsConstructor
 @NoArgsConstructor
 @EqualsAndHashCode(onlyExplicitlyIncluded = true)
@@ -33,7 +40,8 @@ public class Book {
     /**
      * Пользователи, у которых такая книга сейчас в библиотеке.
      */
-    @ManyToMany(mappedBy = "library", fetch = FetchType.EAGER)
+    @ManyToMany(mappedBy = "library", fetch = FetchType.LAZY)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     @Getter
     private List<User> owners;
 
@@ -69,6 +77,15 @@ public class Book {
     @EqualsAndHashCode.Include
     private String isbn;
 
+    /**
+     * Ключ для поиска дубликатов: нормализованные название, автор и ISBN.
+     * Уникален в базе, поэтому одна и та же книга не может быть добавлена дважды, в том числе параллельными запросами.
+     */
+    @Column(name = "book_dedup_key", length = 600)
+    @Getter
+    @Setter
+    private String dedupKey;
+
     /**
      * Жанр книги.
      */
@@ -90,84 +107,90 @@ public class Book {
     /**
      * Пользователи, предлагающие книгу для обмена в данный момент.
      */
-    @ManyToMany(mappedBy = "offeredBooks", fetch = FetchType.EAGER)
+    @ManyToMany(mappedBy = "offeredBooks", fetch = FetchType.LAZY)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     @Getter
     private List<User> usersOfferingForExchange;
 
     /**
      * Пользователи, имеющие эту книгу в списке желаний.
      */
-    @ManyToMany(mappedBy = "wishlist", fetch = FetchType.EAGER)
+    @ManyToMany(mappedBy = "wishlist", fetch = FetchType.LAZY)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     @Getter
     private List<User> usersHaveInWishlist;
 
     /**
-     * Рейтинг книги.
+     * История оценок книги. Загружается только по запросу; рейтинг считается по сумме и количеству оценок.
      */
-    @ElementCollection(fetch = FetchType.EAGER)
+    @ElementCollection(fetch = FetchType.LAZY)
     @CollectionTable(name = "book_marks", joinColumns = @JoinColumn(name = "book_id"))
+    @Column(name = "marks")
     private List<Integer> marks;
 
     /**
-     * Изображение обложки книги в виде массива байтов.
+     * Сумма всех оценок книги.
+     */
+    @Column(name = "book_marks_sum", columnDefinition = "bigint default 0", insertable = false, updatable = false)
+    @Getter
+    private long marksSum;
+
+    /**
+     * Количество оценок книги.
+     */
+    @Column(name = "book_marks_count", columnDefinition = "integer default 0", insertable = false, updatable = false)
+    @Getter
+    private int marksCount;
+
+    /**
+     * SHA-256 хеш изображения обложки книги в хранилище обложек.
      */
-    @Lob
-    @Column(name = "book_cover")
+    @Column(name = "book_cover_hash", length = 64)
     @Getter
     @Setter
-    private byte[] coverImage;
+    private String coverHash;
 
 
     /**
      * Рейтинг книги.
      */
-    @Column(name = "book_rating")
+    @Column(name = "book_rating", updatable = false)
     @Getter
     @Setter
     private double rating;
 
     /**
-     * Возвращает итератор для оценок книги.
-     *
-     * @return итератор для оценок книги
+     * Количество пользователей, предлагающих книгу для обмена в данный момент.
+     * Изменяется только запросами к базе (см. {@code BookRepository.updateOfferCount}), поэтому не записывается при сохранении сущности.
      */
-    public Iterable<Integer> getMarks() {
-        return marks;
-    }
+    @Column(name = "book_offer_count", columnDefinition = "integer default 0", insertable = false, updatable = false)
+    @Getter
+    private int offerCount;
 
     /**
-     * Вычисляет рейтинг книги.
-     *
-     * @return рейтинг книги или 0, если книга не найдена или у неё нет оценок
-     */
-    public double calculateBookRating() {
-        double result = 0;
-            if (marks.isEmpty()) {
-                return 0;
-            }
-            double sum = 0;
-            for (int mark : marks) {
-                sum += mark;
-            }
-            result = sum / marks.size();
-
-        DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance();
-        symbols.setDecimalSeparator('.');
-        DecimalFormat df = new DecimalFormat("#.##", symbols);
-        result = Double.parseDouble(df.format(result));
-
-        return result;
-    }
+     * Предлагает ли книгу для обмена хотя бы один пользователь. Хранится отдельно от счётчика,
+     * чтобы список доступных книг выбирался по равенству и читался из индекса уже в порядке рейтинга.
+     * Изменяется вместе со счётчиком предложений только запросами к базе.
+     */
+    @Column(name = "book_available", columnDefinition = "boolean default false", insertable = false, updatable = false)
+    @Getter
+    private boolean available;
 
     /**
-     * Добавляет оценку книге, обновляет рейтинг.
+     * Версия книги, увеличивается при каждом изменении книги, в том числе запросами к базе. Используется для ETag.
+     */
+    @Version
+    @Column(name = "book_version", columnDefinition = "bigint default 0")
+    @Getter
+    private long version;
+
+    /**
+     * Возвращает итератор для истории оценок книги.
+     * Коллекция загружается лениво, поэтому обращаться к ней нужно внутри сессии.
      *
-     * @param mark   оценка, которую нужно добавить
+     * @return итератор для оценок книги
      */
-    public void addMarkToBook(int mark) {
-        if (mark >= 1 && mark <= 10) {
-            marks.add(mark);
-        }
-        rating = calculateBookRating();
+    public Iterable<Integer> getMarks() {
+        return marks;
     }
-}
\ No newline at end of file
+}
@@ -11,7 +11,10 @@ import java.time.LocalDate;
  * статус обмена и дату создания заявки.
  */
 @Entity
-@Table(name = "exchanges")
+@Table(name = "exchanges", indexes = {
+        @Index(name = "idx_exchanges_member1_status", columnList = "member1, status"),
+        @Index(name = "idx_exchanges_member2_status", columnList = "member2, status")
+})
 @AllArgsConstructor
 @NoArgsConstructor
 @Builder
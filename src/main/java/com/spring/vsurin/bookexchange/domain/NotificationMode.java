@@ -0,0 +1,16 @@
+package com.spring.vsurin.bookexchange.domain;
+
+/**
+ * Способ доставки уведомлений пользователю.
+ */
+public enum NotificationMode {
+    /**
+     * Каждое уведомление отправляется отдельным письмом сразу.
+     */
+    IMMEDIATE,
+
+    /**
+     * Уведомления копятся и отправляются одним письмом-сводкой.
+     */
+    DIGEST;
+}
@@ -0,0 +1,143 @@
+package com.spring.vsurin.bookexchange.domain;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+
+/**
+ * Письмо в очереди отправки (outbox).
+ * Письмо сохраняется в той же транзакции, что и изменение, о котором оно сообщает,
+ * и отправляется позже фоновым обработчиком, поэтому откат изменения отменяет и письмо,
+ * а сбой приложения после фиксации не приводит к его потере.
+ */
+@Entity
+@Table(name = "email_outbox", indexes = {
+        @Index(name = "idx_email_outbox_status_next_attempt", columnList = "outbox_status, outbox_next_attempt_at"),
+        @Index(name = "idx_email_outbox_claim_token", columnList = "outbox_claim_token"),
+        @Index(name = "idx_email_outbox_receiver_status", columnList = "outbox_receiver, outbox_status")
+})
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class OutboxEmail {
+    /**
+     * Уникальный идентификатор письма.
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "outbox_id")
+    @Getter
+    private long id;
+
+    /**
+     * Получатель письма.
+     */
+    @Column(name = "outbox_receiver", nullable = false)
+    @Getter
+    private String receiver;
+
+    /**
+     * Тема письма.
+     */
+    @Column(name = "outbox_subject", nullable = false)
+    @Getter
+    private String subject;
+
+    /**
+     * Текст письма. Длина не ограничивается: в письмо попадает текст пользователя (жалобы, запросы на удаление),
+     * и постановка в очередь не должна отменять действие пользователя из-за длины текста.
+     */
+    @Lob
+    @Column(name = "outbox_message", nullable = false)
+    @Getter
+    private String message;
+
+    /**
+     * Статус письма.
+     */
+    @Enumerated(EnumType.STRING)
+    @Column(name = "outbox_status", nullable = false)
+    @Getter
+    private OutboxEmailStatus status;
+
+    /**
+     * Количество сделанных попыток отправки.
+     */
+    @Column(name = "outbox_attempts", nullable = false)
+    @Getter
+    private int attempts;
+
+    /**
+     * Время, не раньше которого письмо можно отправлять.
+     * Пока письмо отправляется, здесь хранится срок аренды: если обработчик не отчитался до этого времени
+     * (например, приложение упало), письмо снова становится доступным для отправки.
+     */
+    @Column(name = "outbox_next_attempt_at")
+    @Getter
+    private Instant nextAttemptAt;
+
+    /**
+     * Метка обработчика, забравшего письмо на отправку.
+     */
+    @Column(name = "outbox_claim_token")
+    @Getter
+    private String claimToken;
+
+    /**
+     * Текст последней ошибки отправки.
+     */
+    @Column(name = "outbox_last_error", length = 1000)
+    @Getter
+    private String lastError;
+
+    /**
+     * Время постановки письма в очередь.
+     */
+    @Column(name = "outbox_created_at", nullable = false)
+    @Getter
+    private Instant createdAt;
+
+    /**
+     * Создаёт письмо, готовое к отправке.
+     *
+     * @param emailData данные письма
+     * @param now       текущее время
+     * @return письмо в статусе PENDING
+     */
+    public static OutboxEmail pending(EmailData emailData, Instant now) {
+        return of(emailData, OutboxEmailStatus.PENDING, now);
+    }
+
+    /**
+     * Создаёт уведомление, которое будет отправлено в составе сводки.
+     *
+     * @param emailData данные письма
+     * @param now       текущее время
+     * @return письмо в статусе BUFFERED
+     */
+    public static OutboxEmail buffered(EmailData emailData, Instant now) {
+        return of(emailData, OutboxEmailStatus.BUFFERED, now);
+    }
+
+    private static OutboxEmail of(EmailData emailData, OutboxEmailStatus status, Instant now) {
+        return OutboxEmail.builder()
+                .receiver(emailData.getEmailReceiver())
+                .subject(emailData.getEmailSubject())
+                .message(emailData.getEmailMessage())
+                .status(status)
+                .attempts(0)
+                .nextAttemptAt(now)
+                .createdAt(now)
+                .build();
+    }
+
+    /**
+     * Возвращает данные для отправки письма.
+     *
+     * @return данные письма
+     */
+    public EmailData toEmailData() {
+        return new EmailData(receiver, subject, message);
+    }
+}
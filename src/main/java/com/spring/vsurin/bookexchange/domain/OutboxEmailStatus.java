@@ -0,0 +1,26 @@
+package com.spring.vsurin.bookexchange.domain;
+
+/**
+ * Статус письма в очереди отправки.
+ */
+public enum OutboxEmailStatus {
+    /**
+     * Уведомление ждёт объединения в сводку для получателя, выбравшего доставку сводкой.
+     */
+    BUFFERED,
+
+    /**
+     * Письмо ожидает отправки или повторной попытки.
+     */
+    PENDING,
+
+    /**
+     * Письмо отправлено.
+     */
+    SENT,
+
+    /**
+     * Все попытки отправки исчерпаны, письмо больше не отправляется.
+     */
+    DEAD;
+}
@@ -3,25 +3,43 @@ package com.spring.vsurin.bookexchange.domain;
 import jakarta.persistence.*;
 import lombok.*;
 import lombok.extern.slf4j.Slf4j;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.core.user.OAuth2User;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
  * Сущность пользователя.
  * Каждый пользователь имеет id, имя, email,
  * библиотеку, список книг для обмена в данный момент, список адресов и номер телефона.
+ * Все коллекции пользователя загружаются лениво; сценарии, которым нужна коллекция, загружают её
+ * вместе с пользователем через именованный граф. Каждый граф содержит не больше одной коллекции-списка,
+ * чтобы запрос не превращался в декартово произведение коллекций.
+ * Принадлежность книги библиотеке, списку для обмена и списку желаний проверяется и меняется
+ * через {@code UserRepository} по идентификаторам, без загрузки коллекций.
+ * Сам пользователь (без коллекций) хранится в кэше второго уровня.
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Table(name = "users")
+@NamedEntityGraph(name = User.GRAPH_OFFERED_BOOKS, attributeNodes = @NamedAttributeNode("offeredBooks"))
+@NamedEntityGraph(name = User.GRAPH_ADDRESSES, attributeNodes = @NamedAttributeNode("addressList"))
+@NamedEntityGraph(name = User.GRAPH_MAIN_ADDRESS_ACCESS, attributeNodes = @NamedAttributeNode("usersWithAccessToMainAddress"))
 @AllArgsConstructor
 @NoArgsConstructor
 @EqualsAndHashCode(onlyExplicitlyIncluded = true)
 @Builder
 @Slf4j
 public class User {
+    public static final String GRAPH_OFFERED_BOOKS = "User.offeredBooks";
+    public static final String GRAPH_ADDRESSES = "User.addressList";
+    public static final String GRAPH_MAIN_ADDRESS_ACCESS = "User.usersWithAccessToMainAddress";
+
     /**
      * Уникальный идентификатор пользователя в базе.
      */
@@ -58,11 +76,12 @@ public class User {
     /**
      * Библиотека пользователя (книги, которые у него есть).
      */
-    @ManyToMany(fetch = FetchType.EAGER)
+    @ManyToMany(fetch = FetchType.LAZY)
     @JoinTable(
             name = "user_books",
             joinColumns = @JoinColumn(name = "user_id"),
-            inverseJoinColumns = @JoinColumn(name = "book_id")
+            inverseJoinColumns = @JoinColumn(name = "book_id"),
+            indexes = @Index(name = "uk_user_books_user_book", columnList = "user_id, book_id", unique = true)
     )
     @Getter
     private List<Book> library;
@@ -70,11 +89,12 @@ public class User {
     /**
      * Книги, которые пользователь готов обменять.
      */
-    @ManyToMany(fetch = FetchType.EAGER)
+    @ManyToMany(fetch = FetchType.LAZY)
     @JoinTable(
             name = "user_offered_books",
             joinColumns = @JoinColumn(name = "user_id"),
-            inverseJoinColumns = @JoinColumn(name = "book_id")
+            inverseJoinColumns = @JoinColumn(name = "book_id"),
+            indexes = @Index(name = "uk_user_offered_books_user_book", columnList = "user_id, book_id", unique = true)
     )
     @Getter
     private List<Book> offeredBooks;
@@ -82,11 +102,12 @@ public class User {
     /**
      * Книги, которые пользователь хотел бы получить в результате обмена, когда они будут доступны.
      */
-    @ManyToMany(fetch = FetchType.EAGER)
+    @ManyToMany(fetch = FetchType.LAZY)
     @JoinTable(
             name = "user_wishlist",
             joinColumns = @JoinColumn(name = "user_id"),
-            inverseJoinColumns = @JoinColumn(name = "book_id")
+            inverseJoinColumns = @JoinColumn(name = "book_id"),
+            indexes = @Index(name = "uk_user_wishlist_user_book", columnList = "user_id, book_id", unique = true)
     )
     @Getter
     private List<Book> wishlist;
@@ -95,7 +116,7 @@ public class User {
     /**
      * Список адресов проживания пользователя, куда можно доставлять книги при обмене.
      */
-    @ElementCollection(fetch = FetchType.EAGER)
+    @ElementCollection(fetch = FetchType.LAZY)
     @CollectionTable(name = "user_addresses", joinColumns = @JoinColumn(name = "user_id"))
     private List<String> addressList;
 
@@ -109,14 +130,14 @@ public class User {
     /**
      * Список обменов пользователя, как member 1.
      */
-    @OneToMany(mappedBy = "member1", fetch = FetchType.EAGER)
+    @OneToMany(mappedBy = "member1", fetch = FetchType.LAZY)
     @Getter
     private List<Exchange> exchangesAsMember1;
 
     /**
      * Список обменов пользователя, как member 2.
      */
-    @OneToMany(mappedBy = "member2", fetch = FetchType.EAGER)
+    @OneToMany(mappedBy = "member2", fetch = FetchType.LAZY)
     @Getter
     private List<Exchange> exchangesAsMember2;
 
@@ -161,13 +182,36 @@ public class User {
     @Setter
     private String preferences;
 
+    /**
+     * Способ доставки уведомлений пользователю: сразу или сводкой.
+     */
+    @Enumerated(EnumType.STRING)
+    @Column(name = "user_notification_mode")
+    @Setter
+    private NotificationMode notificationMode;
+
     /**
      * Id пользователей, имеющих доступ к главному адресу доставки.
      */
-    @ElementCollection(fetch = FetchType.EAGER)
+    @ElementCollection(fetch = FetchType.LAZY)
     @CollectionTable(name = "users_with_access_to_mainAddress", joinColumns = @JoinColumn(name = "user_id"))
     private List<Long> usersWithAccessToMainAddress;
 
+    /**
+     * Версия пользователя, увеличивается при каждом изменении пользователя и его обменов. Используется для ETag.
+     */
+    @Version
+    @Column(name = "user_version", columnDefinition = "bigint default 0")
+    @Getter
+    private long version;
+
+    /**
+     * Возвращает способ доставки уведомлений; если он не выбран, уведомления отправляются сразу
+     */
+    public NotificationMode getNotificationMode() {
+        return notificationMode == null ? NotificationMode.IMMEDIATE : notificationMode;
+    }
+
     /**
      * Возвращает телефон пользователя, если разрешено
      */
@@ -194,6 +238,16 @@ public class User {
      * Возвращает главный адрес пользователя, если это текущий пользователь или участник обмена с этим пользователем
      */
     public String getMainAddress(long userId) {
+        return getMainAddress(userId, usersWithAccessToMainAddress);
+    }
+
+    /**
+     * Возвращает главный адрес пользователя, проверяя доступ по уже прочитанному списку id, без загрузки коллекции
+     *
+     * @param userId                       Id пользователя, запрашивающего адрес
+     * @param usersWithAccessToMainAddress Id пользователей, имеющих доступ к главному адресу доставки
+     */
+    public String getMainAddress(long userId, Collection<Long> usersWithAccessToMainAddress) {
         if (emailEqualsWithAuth() || usersWithAccessToMainAddress.contains(userId))
             return mainAddress;
         else
@@ -1,34 +1,76 @@
 package com.spring.vsurin.bookexchange.extern.api;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.spring.vsurin.bookexchange.app.BookCursor;
+import com.spring.vsurin.bookexchange.app.BookDetails;
+import com.spring.vsurin.bookexchange.app.BookExportService;
+import com.spring.vsurin.bookexchange.app.BookImportReader;
+import com.spring.vsurin.bookexchange.app.BookImportService;
 import com.spring.vsurin.bookexchange.app.BookService;
+import com.spring.vsurin.bookexchange.app.BookSummaryProjection;
+import com.spring.vsurin.bookexchange.app.CoverThumbnailService;
+import com.spring.vsurin.bookexchange.app.CoverTooLargeException;
+import com.spring.vsurin.bookexchange.app.CursorPage;
 import com.spring.vsurin.bookexchange.domain.Book;
 import com.spring.vsurin.bookexchange.domain.BookGenre;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 @Tag(name = " ", description = "API   ")
 @RestController
 @RequestMapping("/books")
 public class BookController {
 
+    private static final int MAX_SCROLL_SIZE = 100;
+
+    private static final MediaType TEXT_CSV = MediaType.parseMediaType("text/csv");
+
     private final BookService bookService;
 
     private final BookAssembler bookAssembler;
 
+    private final BookSummaryAssembler bookSummaryAssembler;
+
+    private final BookImportService bookImportService;
+
+    private final BookExportService bookExportService;
+
+    private final ObjectMapper objectMapper;
+
+    private final long maxCoverBytes;
+
     @Autowired
-    public BookController(BookService bookService, BookAssembler bookAssembler) {
+    public BookController(BookService bookService, BookAssembler bookAssembler, BookSummaryAssembler bookSummaryAssembler, BookImportService bookImportService, BookExportService bookExportService, ObjectMapper objectMapper,
+                          @Value("${bookexchange.covers.max-bytes:10485760}") long maxCoverBytes) {
         this.bookService = bookService;
         this.bookAssembler = bookAssembler;
+        this.bookSummaryAssembler = bookSummaryAssembler;
+        this.bookImportService = bookImportService;
+        this.bookExportService = bookExportService;
+        this.objectMapper = objectMapper;
+        this.maxCoverBytes = maxCoverBytes;
     }
 
     @Operation(summary = " ", description = "     ")
@@ -43,21 +85,59 @@ public class BookController {
                 .description(bookDTO.getDescription())
                 .owners(new ArrayList<>())
                 .usersOfferingForExchange(new ArrayList<>())
-                .marks((List<Integer>) bookDTO.getMarks())
                 .usersHaveInWishlist(new ArrayList<>())
                 .rating(bookDTO.getRating())
                 .build();
 
         bookService.createBook(newBook);
 
-        return new ResponseEntity<>(bookAssembler.toModel(newBook), HttpStatus.CREATED);
+        return new ResponseEntity<>(bookAssembler.toModel(new BookDetails(newBook, List.of(), List.of(), List.of())), HttpStatus.CREATED);
+    }
+
+    @Operation(summary = " ", description = "    CSV (text/csv,  )  NDJSON (application/x-ndjson)   title, author, publicationYear, isbn, genre, description;  .       NDJSON")
+    @PostMapping(value = "/import", consumes = {"text/csv", MediaType.APPLICATION_NDJSON_VALUE}, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> importBooks(@RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType, InputStream content) {
+        BookImportReader.Format format = TEXT_CSV.includes(contentType) ? BookImportReader.Format.CSV : BookImportReader.Format.NDJSON;
+
+        StreamingResponseBody body = out -> bookImportService.importBooks(content, format, result -> {
+            try {
+                out.write(objectMapper.writeValueAsBytes(result));
+                out.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
     }
 
-    @Operation(summary = "   ID", description = "      ID")
+    @Operation(summary = "  ", description = "    NDJSON (   ,    ID)   HATEOAS;   (include=COVER)    (include=USERS)    ")
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportBooks(@RequestParam(required = false) Set<BookExportService.Include> include) {
+        Set<BookExportService.Include> included = include == null ? Set.of() : include;
+
+        StreamingResponseBody body = out -> bookExportService.exportBooks(included, row -> {
+            try {
+                out.write(objectMapper.writeValueAsBytes(row));
+                out.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    @Operation(summary = "   ID", description = "      ID;   ETag (If-None-Match)   ")
     @GetMapping("/{bookId}")
-    public ResponseEntity<BookDTO> getBookById(@PathVariable long bookId) {
-        Book book = bookService.getBookById(bookId);
-        return ResponseEntity.ok(bookAssembler.toModel(book));
+    public ResponseEntity<BookDTO> getBookById(@PathVariable long bookId, WebRequest webRequest) {
+        Long version = bookService.getBookVersion(bookId);
+        if (version != null && webRequest.checkNotModified(VersionETags.of(bookId, version))) {
+            return null;
+        }
+
+        BookDetails book = bookService.getBookDetails(bookId);
+        return ResponseEntity.ok()
+                .eTag(VersionETags.of(bookId, book.book().getVersion()))
+                .body(bookAssembler.toModel(book));
     }
 
     @Operation(summary = " ", description = "       ID")
@@ -67,31 +147,81 @@ public class BookController {
         return ResponseEntity.noContent().build();
     }
 
-    @Operation(summary = "  ", description = "     ")
+    @Operation(summary = "  ", description = "     ;   ETag (If-None-Match)    ")
     @GetMapping
-    public ResponseEntity<Page<BookDTO>> getAllBooks(Pageable pageable) {
-        Page<BookDTO> booksPage = bookService.getAllBooksInBase(pageable).map(bookAssembler::toModel);
+    public ResponseEntity<Page<BookSummaryDTO>> getAllBooks(Pageable pageable, WebRequest webRequest) {
+        Page<BookSummaryProjection> books = bookService.getAllBooksInBase(pageable);
+        String eTag = VersionETags.of(books);
+        if (webRequest.checkNotModified(eTag)) {
+            return null;
+        }
+
+        return ResponseEntity.ok().eTag(eTag).body(books.map(bookSummaryAssembler::toModel));
+    }
+
+    @Operation(summary = "    ", description = "       (   ID);      ")
+    @GetMapping("/scroll")
+    public ResponseEntity<CursorPage<BookSummaryDTO>> scrollAllBooks(@RequestParam(required = false) String cursor, @RequestParam(defaultValue = "20") int size) {
+        if (size < 1 || size > MAX_SCROLL_SIZE || !BookCursor.isValid(cursor)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        CursorPage<BookSummaryDTO> booksPage = bookService.getAllBooksInBase(BookCursor.decode(cursor), size).map(bookSummaryAssembler::toModel);
         return ResponseEntity.ok(booksPage);
     }
 
-    @Operation(summary = "   ", description = "      ")
+    @Operation(summary = "   ", description = "      ;   ETag (If-None-Match)    ")
     @GetMapping("/genre/{genre}")
-    public ResponseEntity<Page<BookDTO>> searchByGenre(@PathVariable BookGenre genre, Pageable pageable) {
-        Page<BookDTO> booksPage = bookService.searchByGenre(genre, pageable).map(bookAssembler::toModel);
+    public ResponseEntity<Page<BookSummaryDTO>> searchByGenre(@PathVariable BookGenre genre, Pageable pageable, WebRequest webRequest) {
+        Page<BookSummaryProjection> books = bookService.searchByGenre(genre, pageable);
+        String eTag = VersionETags.of(books);
+        if (webRequest.checkNotModified(eTag)) {
+            return null;
+        }
+
+        return ResponseEntity.ok().eTag(eTag).body(books.map(bookSummaryAssembler::toModel));
+    }
+
+    @Operation(summary = "     ", description = "        (   ID)")
+    @GetMapping("/genre/{genre}/scroll")
+    public ResponseEntity<CursorPage<BookSummaryDTO>> scrollByGenre(@PathVariable BookGenre genre, @RequestParam(required = false) String cursor, @RequestParam(defaultValue = "20") int size) {
+        if (size < 1 || size > MAX_SCROLL_SIZE || !BookCursor.isValid(cursor)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        CursorPage<BookSummaryDTO> booksPage = bookService.searchByGenre(genre, BookCursor.decode(cursor), size).map(bookSummaryAssembler::toModel);
         return ResponseEntity.ok(booksPage);
     }
 
     @Operation(summary = "     ", description = "      (  )  ")
     @GetMapping("/search")
-    public ResponseEntity<Page<BookDTO>> searchByTitleOrAuthor(@RequestParam String searchTerm, Pageable pageable) {
-        Page<BookDTO> booksPage = bookService.searchByTitleOrAuthor(searchTerm, pageable).map(bookAssembler::toModel);
+    public ResponseEntity<Page<BookSummaryDTO>> searchByTitleOrAuthor(@RequestParam String searchTerm, Pageable pageable) {
+        Page<BookSummaryDTO> booksPage = bookService.searchByTitleOrAuthor(searchTerm, pageable).map(bookSummaryAssembler::toModel);
+        return ResponseEntity.ok(booksPage);
+    }
+
+    @Operation(summary = "      ", description = "  ,     (  ),   ,  ")
+    @GetMapping("/search/fuzzy")
+    public ResponseEntity<Page<BookSummaryDTO>> fuzzySearchByTitleOrAuthor(@RequestParam String searchTerm, Pageable pageable) {
+        Page<BookSummaryDTO> booksPage = bookService.fuzzySearchByTitleOrAuthor(searchTerm, pageable).map(bookSummaryAssembler::toModel);
         return ResponseEntity.ok(booksPage);
     }
 
     @Operation(summary = "    ", description = "  ,     ")
     @GetMapping("/available-for-exchange")
-    public ResponseEntity<Page<BookDTO>> getAvailableForExchangeBooks(Pageable pageable) {
-        Page<BookDTO> booksPage = bookService.getAvailableForExchangeBooks(pageable).map(bookAssembler::toModel);
+    public ResponseEntity<Page<BookSummaryDTO>> getAvailableForExchangeBooks(Pageable pageable) {
+        Page<BookSummaryDTO> booksPage = bookService.getAvailableForExchangeBooks(pageable).map(bookSummaryAssembler::toModel);
+        return ResponseEntity.ok(booksPage);
+    }
+
+    @Operation(summary = "      ", description = "  ,   ,    (  )")
+    @GetMapping("/available-for-exchange/scroll")
+    public ResponseEntity<CursorPage<BookSummaryDTO>> scrollAvailableForExchangeBooks(@RequestParam(required = false) String cursor, @RequestParam(defaultValue = "20") int size) {
+        if (size < 1 || size > MAX_SCROLL_SIZE || !BookCursor.isValid(cursor)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        CursorPage<BookSummaryDTO> booksPage = bookService.getAvailableForExchangeBooks(BookCursor.decode(cursor), size).map(bookSummaryAssembler::toModel);
         return ResponseEntity.ok(booksPage);
     }
 
@@ -102,6 +232,12 @@ public class BookController {
         return ResponseEntity.ok().build();
     }
 
+    @Operation(summary = "  ", description = "      ID  ")
+    @GetMapping("/{bookId}/marks")
+    public ResponseEntity<Page<Integer>> getBookMarks(@PathVariable long bookId, Pageable pageable) {
+        return ResponseEntity.ok(bookService.getBookMarks(bookId, pageable));
+    }
+
     @Operation(summary = "   ", description = "   ")
     @PutMapping("/{bookId}/description")
     public ResponseEntity<Void> updateDescriptionToBook(@PathVariable long bookId, @RequestBody @Valid BookUpdateDTO updateDTO) {
@@ -109,17 +245,67 @@ public class BookController {
         return ResponseEntity.ok().build();
     }
 
-    @Operation(summary = "  ", description = "     ID")
+    @Operation(summary = "  ", description = "     ID;   size (64, 256  512) -  ,    .     (Range)   ETag (If-None-Match)")
     @GetMapping("/{bookId}/cover")
-    public ResponseEntity<byte[]> getBookCover(@PathVariable long bookId) {
-        byte[] coverImage = bookService.getBookCover(bookId);
-        return ResponseEntity.ok(coverImage);
+    public ResponseEntity<Resource> getBookCover(@PathVariable long bookId, @RequestParam(required = false) Integer size, WebRequest webRequest) {
+        if (size != null && !CoverThumbnailService.THUMBNAIL_SIZES.contains(size)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        String coverHash = bookService.getBookCoverHash(bookId);
+        if (coverHash == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        if (size != null) {
+            Resource thumbnail = bookService.getBookCoverThumbnail(coverHash, size);
+            if (thumbnail != null) {
+                String eTag = "\"" + coverHash + "-" + size + "\"";
+                if (webRequest.checkNotModified(eTag)) {
+                    return null;
+                }
+
+                return ResponseEntity.ok()
+                        .eTag(eTag)
+                        .cacheControl(CacheControl.maxAge(365, TimeUnit.DAYS))
+                        .contentType(MediaType.IMAGE_JPEG)
+                        .body(thumbnail);
+            }
+        }
+
+        String eTag = "\"" + coverHash + "\"";
+        if (webRequest.checkNotModified(eTag)) {
+            return null;
+        }
+
+        Resource cover = bookService.getBookCover(coverHash);
+        if (cover == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        //            
+        CacheControl cacheControl = size == null ? CacheControl.maxAge(365, TimeUnit.DAYS) : CacheControl.noCache();
+        return ResponseEntity.ok()
+                .eTag(eTag)
+                .cacheControl(cacheControl)
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .body(cover);
     }
 
     @Operation(summary = "  ", description = "     ID")
     @PutMapping("/{bookId}/cover")
-    public ResponseEntity<Void> updateCoverToBook(@PathVariable long bookId, @RequestBody byte[] image) {
-        bookService.updateBookCover(bookId, image);
+    public ResponseEntity<Void> updateCoverToBook(@PathVariable long bookId,
+                                                  @RequestHeader(value = HttpHeaders.CONTENT_LENGTH, required = false) Long contentLength,
+                                                  InputStream image) {
+        //     ,   ;  Content-Length   
+        if (contentLength != null && contentLength > maxCoverBytes) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        }
+        try {
+            bookService.updateBookCover(bookId, image);
+        } catch (CoverTooLargeException e) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        }
         return ResponseEntity.ok().build();
     }
 }
@@ -43,7 +43,7 @@ public class BookDTO extends RepresentationModel<BookDTO> {
 
     private List<Long> userIdsHaveInWishlist;
 
-    private Iterable<Integer> marks;
+    private int marksCount;
 
     @Min(0)
     @Max(10)
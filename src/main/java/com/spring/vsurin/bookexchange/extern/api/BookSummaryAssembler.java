@@ -0,0 +1,38 @@
+package com.spring.vsurin.bookexchange.extern.api;
+
+import com.spring.vsurin.bookexchange.app.BookSummaryProjection;
+import org.springframework.hateoas.server.mvc.RepresentationModelAssemblerSupport;
+import org.springframework.stereotype.Component;
+
+import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.linkTo;
+import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.methodOn;
+
+@Component
+public class BookSummaryAssembler extends RepresentationModelAssemblerSupport<BookSummaryProjection, BookSummaryDTO> {
+
+    public BookSummaryAssembler() {
+        super(BookController.class, BookSummaryDTO.class);
+    }
+
+    @Override
+    public BookSummaryDTO toModel(BookSummaryProjection book) {
+        BookSummaryDTO bookDTO = instantiateModel(book);
+
+        bookDTO.setId(book.getId());
+        bookDTO.setTitle(book.getTitle());
+        bookDTO.setAuthor(book.getAuthor());
+        bookDTO.setPublicationYear(book.getPublicationYear());
+        bookDTO.setIsbn(book.getIsbn());
+        bookDTO.setGenre(book.getGenre());
+        bookDTO.setRating(book.getRating());
+        bookDTO.setMarksCount(book.getMarksCount());
+        bookDTO.setOwnersCount(book.getOwnersCount());
+        bookDTO.setOfferCount(book.getOfferCount());
+        bookDTO.setWishlistCount(book.getWishlistCount());
+
+        bookDTO.add(linkTo(methodOn(BookController.class).getBookCover(book.getId(), null, null)).withRel("book_cover"));
+        bookDTO.add(linkTo(methodOn(BookController.class).getBookById(book.getId(), null)).withSelfRel());
+
+        return bookDTO;
+    }
+}
@@ -0,0 +1,33 @@
+package com.spring.vsurin.bookexchange.extern.api;
+
+import com.spring.vsurin.bookexchange.domain.BookGenre;
+import lombok.Data;
+import org.springframework.hateoas.RepresentationModel;
+
+import java.time.Year;
+
+@Data
+public class BookSummaryDTO extends RepresentationModel<BookSummaryDTO> {
+
+    private long id;
+
+    private String title;
+
+    private String author;
+
+    private Year publicationYear;
+
+    private String isbn;
+
+    private BookGenre genre;
+
+    private double rating;
+
+    private int marksCount;
+
+    private int ownersCount;
+
+    private int offerCount;
+
+    private int wishlistCount;
+}
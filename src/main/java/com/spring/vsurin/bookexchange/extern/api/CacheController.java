@@ -0,0 +1,30 @@
+package com.spring.vsurin.bookexchange.extern.api;
+
+import com.spring.vsurin.bookexchange.app.EntityCache;
+import com.spring.vsurin.bookexchange.app.EntityCacheStatistics;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@Tag(name = "Кэш сущностей", description = "API для наблюдения за кэшем книг и пользователей")
+@RestController
+@RequestMapping("/cache")
+public class CacheController {
+
+    private final EntityCache entityCache;
+
+    public CacheController(EntityCache entityCache) {
+        this.entityCache = entityCache;
+    }
+
+    @Operation(summary = "Возвращает показатели кэша", description = "Возвращает число попаданий, промахов и вытеснений по каждой области кэша")
+    @GetMapping("/statistics")
+    public ResponseEntity<List<EntityCacheStatistics>> getStatistics() {
+        return ResponseEntity.ok(entityCache.getStatistics());
+    }
+}
@@ -0,0 +1,28 @@
+package com.spring.vsurin.bookexchange.extern.api;
+
+import com.spring.vsurin.bookexchange.app.EmailDispatchStatistics;
+import com.spring.vsurin.bookexchange.app.EmailOutboxDispatcher;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@Tag(name = "Почта", description = "API для наблюдения за отправкой писем")
+@RestController
+@RequestMapping("/mail")
+public class MailController {
+
+    private final EmailOutboxDispatcher emailOutboxDispatcher;
+
+    public MailController(EmailOutboxDispatcher emailOutboxDispatcher) {
+        this.emailOutboxDispatcher = emailOutboxDispatcher;
+    }
+
+    @Operation(summary = "Возвращает показатели отправки писем", description = "Возвращает глубину очереди, время ожидания отправки и число отложенных, отклонённых и неотправленных писем")
+    @GetMapping("/statistics")
+    public ResponseEntity<EmailDispatchStatistics> getStatistics() {
+        return ResponseEntity.ok(emailOutboxDispatcher.getStatistics());
+    }
+}
@@ -1,14 +1,20 @@
 package com.spring.vsurin.bookexchange.extern.api;
 
+import com.spring.vsurin.bookexchange.app.SecurityContextService;
+import com.spring.vsurin.bookexchange.app.UserDetails;
 import com.spring.vsurin.bookexchange.app.UserService;
 import com.spring.vsurin.bookexchange.domain.Exchange;
-import com.spring.vsurin.bookexchange.domain.User;
+import com.spring.vsurin.bookexchange.domain.ExchangeStatus;
+import com.spring.vsurin.bookexchange.domain.NotificationMode;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 
@@ -20,18 +26,28 @@ public class UserController {
 
     private final UserService userService;
     private final UserAssembler userAssembler;
+    private final SecurityContextService securityContextService;
 
     @Autowired
-    public UserController(UserService userService, UserAssembler userAssembler) {
+    public UserController(UserService userService, UserAssembler userAssembler, SecurityContextService securityContextService) {
         this.userService = userService;
         this.userAssembler = userAssembler;
+        this.securityContextService = securityContextService;
     }
 
-    @Operation(summary = "   ID", description = "      ID")
+    @Operation(summary = "   ID", description = "      ID;   ETag (If-None-Match)   ")
     @GetMapping("/{userId}")
-    public ResponseEntity<UserDTO> getUserById(@PathVariable long userId) {
-        User user = userService.getUserById(userId);
-        return ResponseEntity.ok(userAssembler.toModel(user));
+    public ResponseEntity<UserDTO> getUserById(@PathVariable long userId, WebRequest webRequest) {
+        long viewerId = securityContextService.getCurrentAuthId();
+        Long version = userService.getUserVersion(userId);
+        if (version != null && webRequest.checkNotModified(VersionETags.of(userId, version, viewerId))) {
+            return null;
+        }
+
+        UserDetails user = userService.getUserDetails(userId, viewerId);
+        return ResponseEntity.ok()
+                .eTag(VersionETags.of(userId, user.user().getVersion(), viewerId))
+                .body(userAssembler.toModel(user));
     }
 
     @Operation(summary = " ", description = "    ID")
@@ -55,6 +71,12 @@ public class UserController {
         return ResponseEntity.ok().build();
     }
 
+    @Operation(summary = "    ", description = "        ;    ,      ")
+    @PutMapping("/{userId}/library")
+    public ResponseEntity<List<Long>> addBooksToUserLibrary(@PathVariable long userId, @RequestBody List<Long> bookIds) {
+        return ResponseEntity.ok(userService.addBooksToUserLibrary(userId, bookIds));
+    }
+
     @Operation(summary = "     ", description = "     ")
     @PutMapping("/{userId}/offered-books/{bookId}")
     public ResponseEntity<Void> addBookToOfferedByUser(@PathVariable long userId, @PathVariable long bookId) {
@@ -62,6 +84,12 @@ public class UserController {
         return ResponseEntity.ok().build();
     }
 
+    @Operation(summary = "     ", description = "           ;    ")
+    @PutMapping("/{userId}/offered-books")
+    public ResponseEntity<List<Long>> addBooksToOfferedByUser(@PathVariable long userId, @RequestBody List<Long> bookIds) {
+        return ResponseEntity.ok(userService.addBooksToOfferedByUser(userId, bookIds));
+    }
+
     @Operation(summary = "     ", description = "     ")
     @DeleteMapping("/{userId}/offered-books/{bookId}")
     public ResponseEntity<Void> removeBookFromOfferedByUser(@PathVariable long userId, @PathVariable long bookId) {
@@ -97,10 +125,10 @@ public class UserController {
         return ResponseEntity.ok().build();
     }
 
-    @Operation(summary = "   ", description = "   ")
+    @Operation(summary = "  ", description = "    ;   status      ")
     @GetMapping("/{userId}/exchanges")
-    public ResponseEntity<List<Exchange>> getAllUserExchanges(@PathVariable long userId) {
-        List<Exchange> userExchanges = userService.getAllUserExchanges(userId);
+    public ResponseEntity<Page<Exchange>> getAllUserExchanges(@PathVariable long userId, @RequestParam(required = false) ExchangeStatus status, Pageable pageable) {
+        Page<Exchange> userExchanges = userService.getAllUserExchanges(userId, status, pageable);
         return ResponseEntity.ok(userExchanges);
     }
 
@@ -139,6 +167,13 @@ public class UserController {
         return ResponseEntity.ok().build();
     }
 
+    @Operation(summary = "   ", description = "    (IMMEDIATE)   (DIGEST)")
+    @PutMapping("/{userId}/notification-mode")
+    public ResponseEntity<Void> updateNotificationMode(@PathVariable long userId, @RequestParam NotificationMode mode) {
+        userService.updateNotificationMode(userId, mode);
+        return ResponseEntity.ok().build();
+    }
+
     @Operation(summary = " ", description = " ")
     @PutMapping("/block/{userId}")
     public ResponseEntity<Void> blockUser(@PathVariable long userId) {
@@ -160,6 +195,12 @@ public class UserController {
         return ResponseEntity.ok().build();
     }
 
+    @Operation(summary = "     ", description = "         ;    ")
+    @PutMapping("/{userId}/wishlist")
+    public ResponseEntity<List<Long>> addBooksToWishlist(@PathVariable long userId, @RequestBody List<Long> bookIds) {
+        return ResponseEntity.ok(userService.addBooksToWishlist(userId, bookIds));
+    }
+
     @Operation(summary = "     ", description = "     ")
     @DeleteMapping("/{userId}/wishlist/{bookId}")
     public ResponseEntity<Void> removeBookFromWishlist(@PathVariable long userId, @PathVariable long bookId) {
@@ -1,5 +1,6 @@
 package com.spring.vsurin.bookexchange.extern.api;
 
+import com.spring.vsurin.bookexchange.domain.NotificationMode;
 import com.spring.vsurin.bookexchange.domain.UserGender;
 import com.spring.vsurin.bookexchange.domain.UserRole;
 import jakarta.validation.constraints.*;
@@ -51,5 +52,7 @@ public class UserDTO extends RepresentationModel<UserDTO> {
     @Size(max = 1000)
     private String preferences;
 
+    private NotificationMode notificationMode;
+
     private Iterable<Long> usersWithAccessToMainAddress;
 }
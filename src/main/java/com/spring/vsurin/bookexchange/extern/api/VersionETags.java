@@ -0,0 +1,44 @@
+package com.spring.vsurin.bookexchange.extern.api;
+
+import com.spring.vsurin.bookexchange.app.BookVersionProjection;
+import org.springframework.data.domain.Page;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Построение ETag по версиям сущностей, чтобы проверять актуальность ответа до загрузки самих сущностей.
+ */
+final class VersionETags {
+
+    private VersionETags() {
+    }
+
+    /**
+     * ETag одной сущности.
+     *
+     * @param id      идентификатор сущности
+     * @param version версия сущности
+     * @param variant дополнительные параметры, от которых зависит представление (например, id текущего пользователя)
+     * @return ETag в кавычках
+     */
+    static String of(long id, long version, Object... variant) {
+        StringBuilder eTag = new StringBuilder("\"").append(id).append('-').append(version);
+        for (Object part : variant) {
+            eTag.append('-').append(part);
+        }
+        return eTag.append('"').toString();
+    }
+
+    /**
+     * ETag страницы книг: хеш от идентификаторов и версий книг страницы и общего количества книг.
+     *
+     * @param versions идентификаторы и версии книг страницы
+     * @return ETag в кавычках
+     */
+    static String of(Page<? extends BookVersionProjection> versions) {
+        StringBuilder content = new StringBuilder().append(versions.getTotalElements());
+        versions.forEach(book -> content.append(',').append(book.getId()).append('-').append(book.getVersion()));
+        return "\"" + DigestUtils.md5DigestAsHex(content.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+}
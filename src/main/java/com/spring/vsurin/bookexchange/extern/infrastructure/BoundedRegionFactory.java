@@ -0,0 +1,76 @@
+package com.spring.vsurin.bookexchange.extern.infrastructure;
+
+import com.spring.vsurin.bookexchange.app.EntityCacheStatistics;
+import org.hibernate.boot.spi.SessionFactoryOptions;
+import org.hibernate.cache.cfg.spi.DomainDataRegionBuildingContext;
+import org.hibernate.cache.cfg.spi.DomainDataRegionConfig;
+import org.hibernate.cache.spi.support.DomainDataStorageAccess;
+import org.hibernate.cache.spi.support.RegionFactoryTemplate;
+import org.hibernate.cache.spi.support.StorageAccess;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Фабрика областей кэша второго уровня Hibernate, хранящая данные в памяти процесса.
+ * Каждая область ограничена по числу записей и времени жизни записи.
+ * Область меток времени кэша запросов не ограничивается: её вытеснение приводило бы к устаревшим результатам запросов.
+ */
+public class BoundedRegionFactory extends RegionFactoryTemplate {
+
+    private final int maxEntries;
+    private final long timeToLiveMillis;
+    private final Map<String, BoundedStorageAccess> regions = new ConcurrentHashMap<>();
+
+    public BoundedRegionFactory(int maxEntries, long timeToLiveMillis) {
+        this.maxEntries = maxEntries;
+        this.timeToLiveMillis = timeToLiveMillis;
+    }
+
+    @Override
+    protected DomainDataStorageAccess createDomainDataStorageAccess(DomainDataRegionConfig regionConfig,
+                                                                    DomainDataRegionBuildingContext buildingContext) {
+        return createStorage(regionConfig.getRegionName(), maxEntries, timeToLiveMillis);
+    }
+
+    @Override
+    protected StorageAccess createQueryResultsRegionStorageAccess(String regionName, SessionFactoryImplementor sessionFactory) {
+        return createStorage(regionName, maxEntries, timeToLiveMillis);
+    }
+
+    @Override
+    protected StorageAccess createTimestampsRegionStorageAccess(String regionName, SessionFactoryImplementor sessionFactory) {
+        return createStorage(regionName, Integer.MAX_VALUE, 0);
+    }
+
+    @Override
+    protected void prepareForUse(SessionFactoryOptions settings, Map<String, Object> configValues) {
+    }
+
+    @Override
+    protected void releaseFromUse() {
+        regions.values().forEach(BoundedStorageAccess::release);
+        regions.clear();
+    }
+
+    /**
+     * Возвращает показатели всех областей, упорядоченные по имени области.
+     *
+     * @return показатели областей
+     */
+    public List<EntityCacheStatistics> getStatistics() {
+        return regions.values().stream()
+                .map(BoundedStorageAccess::getStatistics)
+                .sorted(Comparator.comparing(EntityCacheStatistics::region))
+                .toList();
+    }
+
+    private BoundedStorageAccess createStorage(String regionName, int maxEntries, long timeToLiveMillis) {
+        BoundedStorageAccess storage = new BoundedStorageAccess(regionName, maxEntries, timeToLiveMillis);
+        regions.put(regionName, storage);
+        return storage;
+    }
+}
@@ -0,0 +1,101 @@
+package com.spring.vsurin.bookexchange.extern.infrastructure;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.spring.vsurin.bookexchange.app.EntityCacheStatistics;
+import org.hibernate.cache.spi.support.DomainDataStorageAccess;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Хранилище одной области кэша второго уровня Hibernate в памяти процесса.
+ * Записи хранятся в конкурентном кэше Caffeine, поэтому чтения не блокируют друг друга.
+ * При превышении {@code maxEntries} вытесняются редко и давно не читавшиеся записи,
+ * а записи старше {@code timeToLiveMillis} считаются отсутствующими.
+ */
+public class BoundedStorageAccess implements DomainDataStorageAccess {
+
+    private final String region;
+    private final Cache<Object, Object> entries;
+
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * @param region           имя области
+     * @param maxEntries       наибольшее число записей
+     * @param timeToLiveMillis время жизни записи в миллисекундах, 0 - без ограничения
+     */
+    public BoundedStorageAccess(String region, int maxEntries, long timeToLiveMillis) {
+        this.region = region;
+
+        Caffeine<Object, Object> builder = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .executor(Runnable::run)
+                .recordStats()
+                .evictionListener((Object key, Object value, RemovalCause cause) -> {
+                    if (cause == RemovalCause.EXPIRED) {
+                        expirations.increment();
+                    } else if (cause == RemovalCause.SIZE) {
+                        evictions.increment();
+                    }
+                });
+        if (timeToLiveMillis > 0) {
+            builder.expireAfterWrite(Duration.ofMillis(timeToLiveMillis));
+        }
+        this.entries = builder.build();
+    }
+
+    @Override
+    public Object getFromCache(Object key, SharedSessionContractImplementor session) {
+        return entries.getIfPresent(key);
+    }
+
+    @Override
+    public void putIntoCache(Object key, Object value, SharedSessionContractImplementor session) {
+        entries.put(key, value);
+        puts.increment();
+    }
+
+    @Override
+    public boolean contains(Object key) {
+        return entries.asMap().containsKey(key);
+    }
+
+    @Override
+    public void evictData() {
+        invalidations.add(entries.estimatedSize());
+        entries.invalidateAll();
+    }
+
+    @Override
+    public void evictData(Object key) {
+        if (entries.asMap().remove(key) != null) {
+            invalidations.increment();
+        }
+    }
+
+    @Override
+    public void release() {
+        entries.invalidateAll();
+    }
+
+    /**
+     * Возвращает показатели области. Вытеснение в Caffeine выполняется после записи,
+     * поэтому перед подсчётом завершаются отложенные операции обслуживания.
+     *
+     * @return показатели области
+     */
+    public EntityCacheStatistics getStatistics() {
+        entries.cleanUp();
+        CacheStats stats = entries.stats();
+        return new EntityCacheStatistics(region, (int) entries.estimatedSize(), stats.hitCount(), stats.missCount(),
+                puts.sum(), evictions.sum(), expirations.sum(), invalidations.sum());
+    }
+}
@@ -22,6 +22,11 @@ import java.util.*;
 @Component
 public class CustomOAuth2UserService extends DefaultOAuth2UserService {
 
+    /**
+     * Атрибут аутентифицированного пользователя, в котором хранится его идентификатор в базе.
+     */
+    public static final String USER_ID_ATTRIBUTE = "bookexchange_user_id";
+
     private final UserRepository userRepository;
     private final UserService userService;
 
@@ -36,6 +41,7 @@ public class CustomOAuth2UserService extends DefaultOAuth2UserService {
      * создаёт нового пользователя, если он заходит впервые.
      * Если пользователь в аккаунте яндекса добавил свой пол, поменял номер телефона или аватар,
      * то они обновятся и при авторизации в приложении.
+     * Идентификатор пользователя сохраняется в атрибутах, чтобы не искать пользователя по email при каждом запросе.
      *
      * @param userRequest Запрос OAuth2User, содержащий данные пользователя.
      * @return Объект OAuth2User, представляющий аутентифицированного пользователя.
@@ -77,7 +83,7 @@ public class CustomOAuth2UserService extends DefaultOAuth2UserService {
                 userService.updateUserGender(user.getId(), getConstantGenderValue(gender));
         }
 
-        oAuth2User = setRole(oAuth2User, user.getRole().toString());
+        oAuth2User = setRole(oAuth2User, user.getId(), user.getRole().toString());
 
         return oAuth2User;
     }
@@ -117,9 +123,10 @@ public class CustomOAuth2UserService extends DefaultOAuth2UserService {
         return newUser;
     }
 
-    private OAuth2User setRole(OAuth2User user, String role) {
+    private OAuth2User setRole(OAuth2User user, long userId, String role) {
         Map<String, Object> attributes = new HashMap<>(user.getAttributes());
         attributes.put("authorities", role);
+        attributes.put(USER_ID_ATTRIBUTE, userId);
         Collection<? extends GrantedAuthority> authorities = Arrays.asList(new SimpleGrantedAuthority(role));
         return new DefaultOAuth2User(authorities, attributes, "default_email");
     }
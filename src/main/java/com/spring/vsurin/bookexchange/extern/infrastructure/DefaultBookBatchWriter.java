@@ -0,0 +1,66 @@
+package com.spring.vsurin.bookexchange.extern.infrastructure;
+
+import com.spring.vsurin.bookexchange.app.BookBatchWriter;
+import com.spring.vsurin.bookexchange.domain.Book;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+
+@Component
+public class DefaultBookBatchWriter implements BookBatchWriter {
+
+    private static final String INSERT_BOOK = "INSERT INTO books (book_title, book_author, book_year, book_isbn, book_genre, " +
+            "book_description, book_dedup_key, book_rating, book_version) VALUES (?, ?, ?, ?, ?, ?, ?, 0, 0)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public DefaultBookBatchWriter(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Добавляет книги одним пакетом JDBC в одной транзакции и возвращает сгенерированные базой идентификаторы.
+     *
+     * @param books новые книги с заполненным ключом для поиска дубликатов
+     * @return идентификаторы добавленных книг в том же порядке
+     */
+    @Transactional
+    public List<Long> insert(List<Book> books) {
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(connection -> connection.prepareStatement(INSERT_BOOK, new String[]{"book_id"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement statement, int i) throws SQLException {
+                        Book book = books.get(i);
+                        statement.setString(1, book.getTitle());
+                        statement.setString(2, book.getAuthor());
+                        if (book.getPublicationYear() == null) {
+                            statement.setNull(3, Types.INTEGER);
+                        } else {
+                            statement.setInt(3, book.getPublicationYear().getValue());
+                        }
+                        statement.setString(4, book.getIsbn());
+                        statement.setString(5, book.getGenre() == null ? null : book.getGenre().name());
+                        statement.setString(6, book.getDescription());
+                        statement.setString(7, book.getDedupKey());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return books.size();
+                    }
+                }, keyHolder);
+
+        return keyHolder.getKeyList().stream()
+                .map(keys -> ((Number) keys.values().iterator().next()).longValue())
+                .toList();
+    }
+}
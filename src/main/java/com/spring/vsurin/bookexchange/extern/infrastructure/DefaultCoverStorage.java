@@ -0,0 +1,147 @@
+package com.spring.vsurin.bookexchange.extern.infrastructure;
+
+import com.spring.vsurin.bookexchange.app.CoverStorage;
+import com.spring.vsurin.bookexchange.app.CoverTooLargeException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.regex.Pattern;
+
+@Component
+public class DefaultCoverStorage implements CoverStorage {
+
+    private static final Pattern HASH_PATTERN = Pattern.compile("[0-9a-f]{64}");
+
+    private final Path root;
+    private final long maxBytes;
+
+    public DefaultCoverStorage(@Value("${bookexchange.covers.dir:covers}") Path root,
+                               @Value("${bookexchange.covers.max-bytes:10485760}") long maxBytes) {
+        this.root = root;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Сохраняет изображение во временный файл, одновременно считая хеш, и переносит его на место, определяемое хешем:
+     * {@code <root>/ab/cd/abcd...}. Если такое изображение уже есть, временный файл удаляется.
+     * Чтение прерывается, как только размер изображения превысит {@code bookexchange.covers.max-bytes}.
+     *
+     * @param content поток с изображением
+     * @return SHA-256 хеш содержимого в шестнадцатеричном виде
+     * @throws IOException            если изображение не удалось сохранить
+     * @throws CoverTooLargeException если изображение больше допустимого размера
+     */
+    public String store(InputStream content) throws IOException {
+        Files.createDirectories(root);
+        Path tempFile = Files.createTempFile(root, "upload-", ".tmp");
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            try (DigestInputStream digestStream = new DigestInputStream(content, digest)) {
+                copyLimited(digestStream, tempFile);
+            }
+
+            String hash = HexFormat.of().formatHex(digest.digest());
+            Path target = resolve(hash);
+            if (!Files.exists(target)) {
+                Files.createDirectories(target.getParent());
+                Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE);
+            }
+            return hash;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Алгоритм SHA-256 недоступен", e);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Получает изображение по хешу содержимого. Файл читается через FileChannel при отдаче клиенту.
+     *
+     * @param hash хеш содержимого
+     * @return ресурс с изображением или null, если хеш некорректный или изображения нет
+     */
+    public Resource load(String hash) {
+        if (hash == null || !HASH_PATTERN.matcher(hash).matches()) {
+            return null;
+        }
+
+        Path file = resolve(hash);
+        return Files.isRegularFile(file) ? new FileSystemResource(file) : null;
+    }
+
+    /**
+     * Сохраняет уменьшенную копию изображения в файл {@code <hash>-<size>} рядом с оригиналом.
+     * Запись идёт во временный файл, который затем атомарно переносится на место.
+     *
+     * @param hash    хеш содержимого оригинала
+     * @param size    размер уменьшенной копии в пикселях
+     * @param content поток с уменьшенной копией
+     * @throws IOException если копию не удалось сохранить
+     */
+    public void storeRendition(String hash, int size, InputStream content) throws IOException {
+        if (!HASH_PATTERN.matcher(hash).matches()) {
+            throw new IllegalArgumentException("Некорректный хеш обложки: " + hash);
+        }
+
+        Path target = resolveRendition(hash, size);
+        Files.createDirectories(target.getParent());
+        Path tempFile = Files.createTempFile(target.getParent(), "rendition-", ".tmp");
+        try {
+            Files.copy(content, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Получает уменьшенную копию изображения.
+     *
+     * @param hash хеш содержимого оригинала
+     * @param size размер уменьшенной копии в пикселях
+     * @return ресурс с уменьшенной копией или null, если хеш некорректный или копии нет
+     */
+    public Resource loadRendition(String hash, int size) {
+        if (hash == null || !HASH_PATTERN.matcher(hash).matches()) {
+            return null;
+        }
+
+        Path file = resolveRendition(hash, size);
+        return Files.isRegularFile(file) ? new FileSystemResource(file) : null;
+    }
+
+    private void copyLimited(InputStream content, Path target) throws IOException {
+        try (OutputStream out = Files.newOutputStream(target)) {
+            byte[] buffer = new byte[8192];
+            long total = 0;
+            int read;
+            while ((read = content.read(buffer)) != -1) {
+                total += read;
+                if (total > maxBytes) {
+                    throw new CoverTooLargeException(maxBytes);
+                }
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+
+    private Path resolveRendition(String hash, int size) {
+        return resolve(hash).resolveSibling(hash + "-" + size);
+    }
+
+    private Path resolve(String hash) {
+        return root.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash);
+    }
+}
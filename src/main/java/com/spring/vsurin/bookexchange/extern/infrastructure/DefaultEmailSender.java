@@ -0,0 +1,38 @@
+package com.spring.vsurin.bookexchange.extern.infrastructure;
+
+import com.spring.vsurin.bookexchange.app.EmailSender;
+import com.spring.vsurin.bookexchange.domain.EmailData;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailPreparationException;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+
+@Component
+public class DefaultEmailSender implements EmailSender {
+
+    @Value("${spring.mail.username}")
+    private String emailFrom;
+    private final SmtpConnectionPool smtpConnectionPool;
+
+    public DefaultEmailSender(SmtpConnectionPool smtpConnectionPool) {
+        this.smtpConnectionPool = smtpConnectionPool;
+    }
+
+    public void send(EmailData emailData) {
+        MimeMessage mimeMessage = smtpConnectionPool.createMimeMessage();
+        try {
+            MimeMessageHelper message = new MimeMessageHelper(mimeMessage, StandardCharsets.UTF_8.name());
+            message.setFrom(emailFrom);
+            message.setTo(emailData.getEmailReceiver());
+            message.setSubject(emailData.getEmailSubject());
+            message.setText(emailData.getEmailMessage());
+        } catch (MessagingException e) {
+            throw new MailPreparationException("Не удалось подготовить письмо на адрес " + emailData.getEmailReceiver(), e);
+        }
+        smtpConnectionPool.send(mimeMessage);
+    }
+}
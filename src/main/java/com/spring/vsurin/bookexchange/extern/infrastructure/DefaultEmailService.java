@@ -1,34 +1,73 @@
 package com.spring.vsurin.bookexchange.extern.infrastructure;
 
 import com.spring.vsurin.bookexchange.app.EmailService;
+import com.spring.vsurin.bookexchange.app.OutboxEmailRepository;
+import com.spring.vsurin.bookexchange.app.UserRepository;
 import com.spring.vsurin.bookexchange.domain.EmailData;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.mail.MailException;
-import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
+import com.spring.vsurin.bookexchange.domain.NotificationMode;
+import com.spring.vsurin.bookexchange.domain.OutboxEmail;
+import com.spring.vsurin.bookexchange.domain.OutboxEmailStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 @Component
 public class DefaultEmailService implements EmailService {
 
-    @Value("${spring.mail.username}")
-    private String emailFrom;
-    private final JavaMailSender javaMailSender;
+    private static final String INSERT_EMAIL = "INSERT INTO email_outbox (outbox_receiver, outbox_subject, outbox_message, " +
+            "outbox_status, outbox_attempts, outbox_next_attempt_at, outbox_created_at) VALUES (?, ?, ?, ?, 0, ?, ?)";
+
+    private final OutboxEmailRepository outboxEmailRepository;
+    private final UserRepository userRepository;
+    private final JdbcTemplate jdbcTemplate;
 
-    public DefaultEmailService(JavaMailSender javaMailSender) {
-        this.javaMailSender = javaMailSender;
+    public DefaultEmailService(OutboxEmailRepository outboxEmailRepository, UserRepository userRepository, JdbcTemplate jdbcTemplate) {
+        this.outboxEmailRepository = outboxEmailRepository;
+        this.userRepository = userRepository;
+        this.jdbcTemplate = jdbcTemplate;
     }
 
+    @Transactional
     public void sendEmail(EmailData emailData) {
-        try {
-            SimpleMailMessage simpleMailMessage = new SimpleMailMessage();
-            simpleMailMessage.setFrom(emailFrom);
-            simpleMailMessage.setTo(emailData.getEmailReceiver());
-            simpleMailMessage.setSubject(emailData.getEmailSubject());
-            simpleMailMessage.setText(emailData.getEmailMessage());
-            javaMailSender.send(simpleMailMessage);
-        } catch (MailException e) {
-            e.printStackTrace();
+        Instant now = Instant.now();
+        if (userRepository.existsByEmailAndNotificationMode(emailData.getEmailReceiver(), NotificationMode.DIGEST)) {
+            outboxEmailRepository.save(OutboxEmail.buffered(emailData, now));
+        } else {
+            outboxEmailRepository.save(OutboxEmail.pending(emailData, now));
         }
     }
+
+    /**
+     * Ставит письма в очередь одним пакетом JDBC: получатели со сводкой уведомлений определяются одним запросом.
+     *
+     * @param emails данные для отправки сообщений
+     */
+    @Transactional
+    public void sendEmails(List<EmailData> emails) {
+        if (emails.isEmpty()) {
+            return;
+        }
+
+        Set<String> digestReceivers = new HashSet<>(userRepository.findEmailsByNotificationMode(
+                emails.stream().map(EmailData::getEmailReceiver).distinct().toList(), NotificationMode.DIGEST));
+        Timestamp now = Timestamp.from(Instant.now());
+
+        jdbcTemplate.batchUpdate(INSERT_EMAIL, emails, emails.size(), (statement, emailData) -> {
+            OutboxEmailStatus status = digestReceivers.contains(emailData.getEmailReceiver())
+                    ? OutboxEmailStatus.BUFFERED
+                    : OutboxEmailStatus.PENDING;
+            statement.setString(1, emailData.getEmailReceiver());
+            statement.setString(2, emailData.getEmailSubject());
+            statement.setString(3, emailData.getEmailMessage());
+            statement.setString(4, status.name());
+            statement.setTimestamp(5, now);
+            statement.setTimestamp(6, now);
+        });
+    }
 }
@@ -0,0 +1,67 @@
+package com.spring.vsurin.bookexchange.extern.infrastructure;
+
+import com.spring.vsurin.bookexchange.app.EntityCache;
+import com.spring.vsurin.bookexchange.app.EntityCacheStatistics;
+import com.spring.vsurin.bookexchange.domain.Book;
+import com.spring.vsurin.bookexchange.domain.User;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Cache;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+
+/**
+ * Кэш сущностей на основе кэша второго уровня Hibernate в памяти процесса.
+ * Изменения, сделанные через Hibernate, обновляют кэш сами; явный сброс нужен для изменений в обход сессии
+ * и служит точкой, где можно будет рассылать сбросы другим экземплярам приложения.
+ */
+@Component
+public class DefaultEntityCache implements EntityCache {
+
+    private static final List<String> BOOK_USER_LISTS = List.of("owners", "usersOfferingForExchange", "usersHaveInWishlist");
+
+    private final Cache cache;
+    private final BoundedRegionFactory regionFactory;
+
+    public DefaultEntityCache(EntityManagerFactory entityManagerFactory, BoundedRegionFactory regionFactory) {
+        this.cache = entityManagerFactory.getCache().unwrap(Cache.class);
+        this.regionFactory = regionFactory;
+    }
+
+    @Override
+    public void evictBook(long bookId) {
+        afterCommit(() -> {
+            cache.evictEntityData(Book.class, bookId);
+            BOOK_USER_LISTS.forEach(list -> cache.evictCollectionData(Book.class.getName() + "." + list, bookId));
+        });
+    }
+
+    @Override
+    public void evictUser(long userId) {
+        afterCommit(() -> cache.evictEntityData(User.class, userId));
+    }
+
+    @Override
+    public List<EntityCacheStatistics> getStatistics() {
+        return regionFactory.getStatistics();
+    }
+
+    /**
+     * Выполняет сброс после фиксации текущей транзакции, чтобы параллельное чтение не поместило в кэш
+     * прежнее состояние до фиксации изменений, или сразу, если транзакции нет.
+     */
+    private void afterCommit(Runnable eviction) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    eviction.run();
+                }
+            });
+        } else {
+            eviction.run();
+        }
+    }
+}
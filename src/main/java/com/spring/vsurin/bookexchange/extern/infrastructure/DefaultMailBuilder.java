@@ -5,116 +5,162 @@ import com.spring.vsurin.bookexchange.domain.Book;
 import com.spring.vsurin.bookexchange.domain.EmailData;
 import com.spring.vsurin.bookexchange.domain.Request;
 import com.spring.vsurin.bookexchange.domain.User;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Сборщик писем по шаблонам {@link MailTemplate}, разобранным один раз при загрузке класса.
+ * Готовые тексты писем кэшируются по шаблону и аргументам (не больше {@code bookexchange.mail.template-cache-size} текстов,
+ * вытесняются давно не использованные), поэтому при рассылке одного уведомления многим получателям
+ * текст собирается один раз.
+ */
 @Component
 public class DefaultMailBuilder implements MailBuilder {
 
-    public EmailData buildCreateRequestMessage(String receiver, long requestId, Book bookSenderWants) {
-        String emailSubject = "BookExchange - Заявка на обмен";
-        String emailMessage = "Вам отправлена заявка №" + requestId + " на обмен книгами. Отправитель хочет получить у вас книгу " +
-                bookSenderWants.getAuthor() + " - " + bookSenderWants.getTitle() +
-                ". Принять или отклонить заявку можно в приложении BookExchange.";
+    private static final MailTemplate CREATE_REQUEST = MailTemplate.compile("BookExchange - Заявка на обмен",
+            "Вам отправлена заявка №{0} на обмен книгами. Отправитель хочет получить у вас книгу {1} - {2}. " +
+                    "Принять или отклонить заявку можно в приложении BookExchange.");
+    private static final MailTemplate ACCEPT_REQUEST = MailTemplate.compile("BookExchange - Заявка на обмен принята",
+            "Ваша заявка №{0} на обмен книгами принята. Получатель заявки выбрал у вас книгу {1} - {2}.");
+    private static final MailTemplate REJECT_REQUEST = MailTemplate.compile("BookExchange - Заявка на обмен отклонена",
+            "Ваша заявка №{0} на обмен книгами отклонена.");
+    private static final MailTemplate DELETE_USER = MailTemplate.compile("Аккаунт удалён",
+            "Добрый день! Удалён аккаунт пользователя с id {0}");
+    private static final MailTemplate REQUEST_TO_DELETE_USER = MailTemplate.compile("Просьба удалить аккаунт",
+            "Добрый день! Прошу удалить мой аккаунт пользователя с id {0}. Причина удаления: {1}");
+    private static final MailTemplate COMPLAINT = MailTemplate.compile("Жалоба от пользователя",
+            "Предмет жалобы: {0}\nId предмета жалобы: {1}\nТекст жалобы: {2}");
+    private static final MailTemplate UPDATE_TRACK = MailTemplate.compile("BookExchange - Присвоен трек-номер обмену",
+            "Обмену книгами №{0} присвоен трек-номер: {1}.");
+    private static final MailTemplate NO_TRACK = MailTemplate.compile("BookExchange - Обмен без трек-номера",
+            "Обмен книгами №{0} доставляется без трек-номера второго участника.");
+    private static final MailTemplate IN_PROGRESS = MailTemplate.compile("BookExchange - Обмен в процессе доставки",
+            "Обмен книгами №{0} в процессе доставки.");
+    private static final MailTemplate RECEIVE_BOOK = MailTemplate.compile("BookExchange - Участник получил книгу",
+            "Обмен книгами №{0} - второй участник получил книгу.");
+    private static final MailTemplate FINALIZE_EXCHANGE = MailTemplate.compile("BookExchange - Обмен завершён",
+            "Обмен книгами №{0} успешно завершён. До встречи в BookExchange!");
+    private static final MailTemplate PROBLEMS = MailTemplate.compile("BookExchange - Проблемы при обмене",
+            "В процессе обмена книгами №{0} возникли проблемы. Пожалуйста, свяжитесь с его вторым участником. Контакты:\n" +
+                    "Телефон: {1}\nПочта: {2}");
+    private static final MailTemplate CANCEL = MailTemplate.compile("BookExchange - Обмен отменён админом",
+            "Обмен книгами №{0} отменён администратором приложения. Для уточнения подробностей свяжитесь с поддержкой.");
+    private static final MailTemplate AVAILABLE_FROM_WISHLIST = MailTemplate.compile("BookExchange - Книга из списка желаний доступна для обмена",
+            "Книга {0} - {1} из вашего списка желаний доступна для обмена. Её предлагает пользователь {2}.");
+    private static final MailTemplate AVAILABLE_FROM_WISHLIST_MANY = MailTemplate.compile("BookExchange - Книги из списка желаний доступны для обмена",
+            "Книги {0} из вашего списка желаний доступны для обмена. Их предлагает пользователь {1}.");
+
+    private final Map<RenderedBodyKey, String> renderedBodies;
+
+    public DefaultMailBuilder(@Value("${bookexchange.mail.template-cache-size:1000}") int cacheSize) {
+        this.renderedBodies = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<RenderedBodyKey, String> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
 
-        return new EmailData(receiver, emailSubject, emailMessage);
+    public EmailData buildCreateRequestMessage(String receiver, long requestId, Book bookSenderWants) {
+        return build(receiver, CREATE_REQUEST, requestId, bookSenderWants.getAuthor(), bookSenderWants.getTitle());
     }
 
     public EmailData buildAcceptRequestMessage(String receiver, Request relatedRequest) {
-        String emailSubject = "BookExchange - Заявка на обмен принята";
-        String emailMessage = "Ваша заявка №" + relatedRequest.getId() + " на обмен книгами принята. Получатель заявки выбрал у вас книгу " +
-                relatedRequest.getBookReceiverWants().getAuthor() + " - " + relatedRequest.getBookReceiverWants().getTitle() + ".";
-
-        return new EmailData(receiver, emailSubject, emailMessage);
+        Book bookReceiverWants = relatedRequest.getBookReceiverWants();
+        return build(receiver, ACCEPT_REQUEST, relatedRequest.getId(), bookReceiverWants.getAuthor(), bookReceiverWants.getTitle());
     }
 
     public EmailData buildRejectRequestMessage(String receiver, long requestId) {
-        String emailSubject = "BookExchange - Заявка на обмен отклонена";
-        String emailMessage = "Ваша заявка №" + requestId + " на обмен книгами отклонена.";
-
-        return new EmailData(receiver, emailSubject, emailMessage);
+        return build(receiver, REJECT_REQUEST, requestId);
     }
 
     public EmailData buildDeleteUserMessage(String receiver, long userId) {
-        String emailSubject = "Аккаунт удалён";
-        String emailMessage = "Добрый день! Удалён аккаунт пользователя с id " + userId;
-
-        return new EmailData(receiver, emailSubject, emailMessage);
+        return build(receiver, DELETE_USER, userId);
     }
 
     public EmailData buildRequestToDeleteUserMessage(String receiver, long userId, String reason) {
-        String emailSubject = "Просьба удалить аккаунт";
-        String emailMessage = "Добрый день! Прошу удалить мой аккаунт пользователя с id " + userId + ". Причина удаления: " + reason;
-
-        return new EmailData(receiver, emailSubject, emailMessage);
+        return build(receiver, REQUEST_TO_DELETE_USER, userId, reason);
     }
 
     public EmailData buildSendComplaintMessage(String receiver, long subjectId, String stringComplaintSubject, String complaint) {
-        String emailSubject = "Жалоба от пользователя";
-        String emailMessage = "Предмет жалобы: " + stringComplaintSubject + "\n" +
-                "Id предмета жалобы: " + subjectId + "\n" +
-                "Текст жалобы: " + complaint;
-
-        return new EmailData(receiver, emailSubject, emailMessage);
+        return build(receiver, COMPLAINT, stringComplaintSubject, subjectId, complaint);
     }
 
     public EmailData buildUpdateTrackMessage(String receiver, long exchangeId, String track) {
-        String emailSubject = "BookExchange - Присвоен трек-номер обмену";
-        String emailMessage = "Обмену книгами №" + exchangeId + " присвоен трек-номер: " + track + ".";
-
-        return new EmailData(receiver, emailSubject, emailMessage);
+        return build(receiver, UPDATE_TRACK, exchangeId, track);
     }
 
     public EmailData buildNoTrackMessage(String receiver, long exchangeId) {
-        String emailSubject = "BookExchange - Обмен без трек-номера";
-        String emailMessage = "Обмен книгами №" + exchangeId + " доставляется без трек-номера второго участника.";
-
-        return new EmailData(receiver, emailSubject, emailMessage);
+        return build(receiver, NO_TRACK, exchangeId);
     }
 
     public EmailData buildSetInProgressStatusMessage(String receiver, long exchangeId) {
-        String emailSubject = "BookExchange - Обмен в процессе доставки";
-        String emailMessage = "Обмен книгами №" + exchangeId + " в процессе доставки.";
-
-        return new EmailData(receiver, emailSubject, emailMessage);
+        return build(receiver, IN_PROGRESS, exchangeId);
     }
 
     public EmailData buildReceiveBookMessage(String receiver, long exchangeId) {
-        String emailSubject = "BookExchange - Участник получил книгу";
-        String emailMessage = "Обмен книгами №" + exchangeId + " - второй участник получил книгу.";
-
-        return new EmailData(receiver, emailSubject, emailMessage);
+        return build(receiver, RECEIVE_BOOK, exchangeId);
     }
 
     public EmailData buildFinalizeExchangeMessage(String receiver, long exchangeId) {
-        String emailSubject = "BookExchange - Обмен завершён";
-        String emailMessage = "Обмен книгами №" + exchangeId + " успешно завершён. До встречи в BookExchange!";
-
-        return new EmailData(receiver, emailSubject, emailMessage);
+        return build(receiver, FINALIZE_EXCHANGE, exchangeId);
     }
 
     public EmailData buildProblemsMessage(String receiver, long exchangeId, User user) {
-        String emailSubject = "BookExchange - Проблемы при обмене";
-
-        String emailMessage = "В процессе обмена книгами №" + exchangeId + " возникли проблемы. Пожалуйста, свяжитесь с его вторым участником. Контакты:\n" +
-                "Телефон: " + user.getPhoneNumber() + "\n" +
-                "Почта: " + user.getEmail();
-
-        return new EmailData(receiver, emailSubject, emailMessage);
+        return build(receiver, PROBLEMS, exchangeId, user.getPhoneNumber(), user.getEmail());
     }
 
     public EmailData buildCancelMessage(String receiver, long exchangeId) {
-        String emailSubject = "BookExchange - Обмен отменён админом";
+        return build(receiver, CANCEL, exchangeId);
+    }
 
-        String emailMessage = "Обмен книгами №" + exchangeId + " отменён администратором приложения. Для уточнения подробностей свяжитесь с поддержкой.";
+    public EmailData buildAvailableFromWishlistMessage(String receiver, String title, String author, String name) {
+        return build(receiver, AVAILABLE_FROM_WISHLIST, author, title, name);
+    }
 
-        return new EmailData(receiver, emailSubject, emailMessage);
+    public EmailData buildAvailableFromWishlistMessage(String receiver, List<String> books, String name) {
+        return build(receiver, AVAILABLE_FROM_WISHLIST_MANY, String.join(", ", books), name);
     }
 
-    public EmailData buildAvailableFromWishlistMessage(String receiver, String title, String author, String name) {
-        String emailSubject = "BookExchange - Книга из списка желаний доступна для обмена";
+    public EmailData buildDigestMessage(String receiver, List<EmailData> notifications) {
+        String emailSubject = "BookExchange - Сводка уведомлений (" + notifications.size() + ")";
+
+        Map<String, List<String>> messagesBySubject = new LinkedHashMap<>();
+        notifications.forEach(notification -> messagesBySubject
+                .computeIfAbsent(notification.getEmailSubject(), subject -> new ArrayList<>())
+                .add(notification.getEmailMessage()));
+
+        StringBuilder emailMessage = new StringBuilder("Новые уведомления BookExchange:");
+        messagesBySubject.forEach((subject, messages) -> {
+            emailMessage.append("\n\n").append(subject).append(" (").append(messages.size()).append("):");
+            messages.forEach(message -> emailMessage.append("\n- ").append(message));
+        });
 
-        String emailMessage = "Книга " + author + " - " + title + " из вашего списка желаний доступна для обмена. Её предлагает пользователь " + name + ".";
+        return new EmailData(receiver, emailSubject, emailMessage.toString());
+    }
+
+    private EmailData build(String receiver, MailTemplate template, Object... args) {
+        RenderedBodyKey key = new RenderedBodyKey(template, Arrays.asList(args));
+        String body;
+        synchronized (renderedBodies) {
+            body = renderedBodies.get(key);
+        }
+
+        if (body == null) {
+            body = template.render(args);
+            synchronized (renderedBodies) {
+                renderedBodies.put(key, body);
+            }
+        }
+        return new EmailData(receiver, template.getSubject(), body);
+    }
 
-        return new EmailData(receiver, emailSubject, emailMessage);
+    private record RenderedBodyKey(MailTemplate template, List<Object> args) {
     }
 }
@@ -3,22 +3,30 @@ package com.spring.vsurin.bookexchange.extern.infrastructure;
 import com.spring.vsurin.bookexchange.app.SecurityContextService;
 import com.spring.vsurin.bookexchange.app.UserRepository;
 import com.spring.vsurin.bookexchange.domain.User;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.session.SessionInformation;
+import org.springframework.security.core.session.SessionRegistry;
 import org.springframework.security.oauth2.core.user.OAuth2User;
 import org.springframework.stereotype.Component;
 
+@Slf4j
 @Component
 public class DefaultSecurityContextService implements SecurityContextService {
 
     private final UserRepository userRepository;
+    private final SessionRegistry sessionRegistry;
 
-    public DefaultSecurityContextService(UserRepository userRepository) {
+    public DefaultSecurityContextService(UserRepository userRepository, SessionRegistry sessionRegistry) {
         this.userRepository = userRepository;
+        this.sessionRegistry = sessionRegistry;
     }
 
     /**
      * Получает идентификатор текущего аутентифицированного пользователя.
+     * Идентификатор берётся из атрибутов пользователя, сохранённых при входе;
+     * пользователь ищется в базе по email, только если атрибута нет (сеанс открыт до появления атрибута).
      *
      * @return Идентификатор текущего аутентифицированного пользователя
      * @throws IllegalArgumentException если пользователь не аутентифицирован или не найден в базе данных
@@ -27,6 +35,10 @@ public class DefaultSecurityContextService implements SecurityContextService {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         if (authentication != null && authentication.getPrincipal() instanceof OAuth2User) {
             OAuth2User oauth2User = (OAuth2User) authentication.getPrincipal();
+            if (oauth2User.getAttribute(CustomOAuth2UserService.USER_ID_ATTRIBUTE) instanceof Number userId) {
+                return userId.longValue();
+            }
+
             String name = oauth2User.getName();
 
             if (name != null) {
@@ -44,4 +56,20 @@ public class DefaultSecurityContextService implements SecurityContextService {
             throw new IllegalArgumentException("Пользователь не аутентифицирован или аутентификация не проведена через OAuth2");
         }
     }
+
+    /**
+     * Завершает все сеансы пользователя, найденные в реестре сеансов по идентификатору из атрибутов.
+     *
+     * @param userId идентификатор пользователя
+     */
+    public void invalidateUser(long userId) {
+        for (Object principal : sessionRegistry.getAllPrincipals()) {
+            if (principal instanceof OAuth2User oauth2User
+                    && oauth2User.getAttribute(CustomOAuth2UserService.USER_ID_ATTRIBUTE) instanceof Number id
+                    && id.longValue() == userId) {
+                sessionRegistry.getAllSessions(principal, false).forEach(SessionInformation::expireNow);
+                log.info("Сеансы пользователя с id {} завершены", userId);
+            }
+        }
+    }
 }
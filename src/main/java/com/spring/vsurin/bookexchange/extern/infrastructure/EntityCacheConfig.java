@@ -0,0 +1,32 @@
+package com.spring.vsurin.bookexchange.extern.infrastructure;
+
+import jakarta.persistence.SharedCacheMode;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Конфигурация кэша второго уровня Hibernate. Кэшируются только сущности и коллекции,
+ * отмеченные {@link jakarta.persistence.Cacheable}; размер каждой области ограничен
+ * {@code bookexchange.cache.max-entries} записями, время жизни записи - {@code bookexchange.cache.time-to-live} мс.
+ */
+@Configuration
+public class EntityCacheConfig {
+
+    @Bean
+    public BoundedRegionFactory boundedRegionFactory(@Value("${bookexchange.cache.max-entries:10000}") int maxEntries,
+                                                     @Value("${bookexchange.cache.time-to-live:600000}") long timeToLiveMillis) {
+        return new BoundedRegionFactory(maxEntries, timeToLiveMillis);
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer entityCacheCustomizer(BoundedRegionFactory boundedRegionFactory) {
+        return properties -> {
+            properties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, true);
+            properties.put(AvailableSettings.CACHE_REGION_FACTORY, boundedRegionFactory);
+            properties.put(AvailableSettings.JAKARTA_SHARED_CACHE_MODE, SharedCacheMode.ENABLE_SELECTIVE);
+        };
+    }
+}
@@ -0,0 +1,123 @@
+package com.spring.vsurin.bookexchange.extern.infrastructure;
+
+import com.spring.vsurin.bookexchange.app.CoverRenderer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.IIOException;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Построение уменьшенных копий обложек средствами ImageIO в формате JPEG.
+ * Перед декодированием читаются только размеры изображения: изображения больше
+ * {@code bookexchange.covers.max-pixels} пикселей не декодируются, а остальные декодируются с прореживанием
+ * до размера наибольшей копии.
+ */
+@Slf4j
+@Component
+public class ImageIoCoverRenderer implements CoverRenderer {
+
+    private static final String THUMBNAIL_FORMAT = "jpg";
+
+    private final long maxPixels;
+
+    public ImageIoCoverRenderer(@Value("${bookexchange.covers.max-pixels:40000000}") long maxPixels) {
+        this.maxPixels = maxPixels;
+    }
+
+    /**
+     * Строит уменьшенные копии изображения в формате JPEG.
+     *
+     * @param image поток с изображением
+     * @param sizes размеры копий в пикселях по большей стороне
+     * @return копии в том же порядке, что и размеры, или null, если изображение не декодируется или больше допустимого
+     * @throws IOException если изображение не удалось прочитать
+     */
+    public List<byte[]> renderThumbnails(InputStream image, List<Integer> sizes) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(image)) {
+            BufferedImage decoded = input == null ? null : read(input, Collections.max(sizes));
+            if (decoded == null) {
+                return null;
+            }
+
+            List<byte[]> thumbnails = new ArrayList<>(sizes.size());
+            for (int size : sizes) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                ImageIO.write(scale(decoded, size), THUMBNAIL_FORMAT, out);
+                thumbnails.add(out.toByteArray());
+            }
+            return thumbnails;
+        }
+    }
+
+    /**
+     * Декодирует изображение, предварительно проверив его размеры по заголовку.
+     * Каждый step-й пиксель по обеим осям берётся так, чтобы большая сторона осталась не меньше maxSize.
+     *
+     * @return изображение или null, если это не изображение, оно повреждено или больше допустимого
+     */
+    private BufferedImage read(ImageInputStream input, int maxSize) throws IOException {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            log.error("Поток не является изображением");
+            return null;
+        }
+
+        ImageReader reader = readers.next();
+        try {
+            reader.setInput(input, true, true);
+            int width = reader.getWidth(0);
+            int height = reader.getHeight(0);
+            if ((long) width * height > maxPixels) {
+                log.error("Изображение размером {}x{} больше допустимых {} пикселей", width, height, maxPixels);
+                return null;
+            }
+
+            int step = Math.max(1, Math.max(width, height) / maxSize);
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceSubsampling(step, step, 0, 0);
+            return reader.read(0, param);
+        } catch (IIOException e) {
+            log.error("Изображение повреждено и не может быть декодировано", e);
+            return null;
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    /**
+     * Уменьшает изображение так, чтобы большая сторона стала равна size, сохраняя пропорции.
+     * Изображения меньше size не увеличиваются. Прозрачность заменяется белым фоном (JPEG без альфа-канала).
+     */
+    private static BufferedImage scale(BufferedImage image, int size) {
+        double ratio = Math.min(1.0, (double) size / Math.max(image.getWidth(), image.getHeight()));
+        int width = Math.max(1, (int) Math.round(image.getWidth() * ratio));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * ratio));
+
+        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = result.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(image, 0, 0, width, height, Color.WHITE, null);
+        } finally {
+            graphics.dispose();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,84 @@
+package com.spring.vsurin.bookexchange.extern.infrastructure;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Шаблон письма: постоянная тема и текст с подстановками {0}, {1}, ...
+ * Текст разбирается на сегменты один раз при создании шаблона; при выводе сегменты и значения аргументов
+ * дописываются в буфер потока, который переиспользуется между вызовами.
+ * Аргументы выводятся через String.valueOf, без форматирования чисел и экранирования, как при сложении строк.
+ */
+public final class MailTemplate {
+
+    private static final int MAX_RETAINED_BUFFER = 8192;
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(512));
+
+    private final String subject;
+    private final String[] literals;
+    private final int[] arguments;
+
+    private MailTemplate(String subject, String[] literals, int[] arguments) {
+        this.subject = subject;
+        this.literals = literals;
+        this.arguments = arguments;
+    }
+
+    /**
+     * Разбирает шаблон письма.
+     *
+     * @param subject тема письма
+     * @param body    текст письма с подстановками {n}, где n - номер аргумента
+     * @return разобранный шаблон
+     * @throws IllegalArgumentException если подстановка не закрыта или её номер не число
+     */
+    public static MailTemplate compile(String subject, String body) {
+        List<String> literals = new ArrayList<>();
+        List<Integer> arguments = new ArrayList<>();
+
+        int start = 0;
+        int open;
+        while ((open = body.indexOf('{', start)) >= 0) {
+            int close = body.indexOf('}', open);
+            if (close < 0) {
+                throw new IllegalArgumentException("Незакрытая подстановка в шаблоне: " + body);
+            }
+            literals.add(body.substring(start, open));
+            try {
+                arguments.add(Integer.parseInt(body.substring(open + 1, close)));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Некорректная подстановка в шаблоне: " + body, e);
+            }
+            start = close + 1;
+        }
+        literals.add(body.substring(start));
+
+        return new MailTemplate(subject, literals.toArray(String[]::new), arguments.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    /**
+     * Подставляет аргументы в текст письма.
+     *
+     * @param args значения подстановок по номерам
+     * @return текст письма
+     */
+    public String render(Object... args) {
+        StringBuilder buffer = BUFFER.get();
+        buffer.setLength(0);
+
+        buffer.append(literals[0]);
+        for (int i = 0; i < arguments.length; i++) {
+            buffer.append(args[arguments[i]]).append(literals[i + 1]);
+        }
+        String result = buffer.toString();
+
+        if (buffer.capacity() > MAX_RETAINED_BUFFER) {
+            BUFFER.remove();
+        }
+        return result;
+    }
+}
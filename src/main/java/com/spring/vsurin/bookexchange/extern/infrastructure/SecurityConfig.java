@@ -8,6 +8,7 @@ import org.springframework.security.authorization.AuthorizationDecision;
 import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
+import org.springframework.security.core.session.SessionRegistry;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.util.matcher.RequestMatcher;
 
@@ -26,18 +27,20 @@ import static org.springframework.security.web.util.matcher.RequestMatchers.allO
 public class SecurityConfig {
 
     private final WebSecurityConditions webSecurityConditions;
+    private final SessionRegistry sessionRegistry;
 
-    public SecurityConfig(WebSecurityConditions webSecurityConditions) {
+    public SecurityConfig(WebSecurityConditions webSecurityConditions, SessionRegistry sessionRegistry) {
         this.webSecurityConditions = webSecurityConditions;
+        this.sessionRegistry = sessionRegistry;
     }
 
     @Bean
     public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
         http
                 .authorizeHttpRequests((authorize) -> authorize
-                        .requestMatchers("/users/delete/**", "/books/delete/**", "/users/admin/**", "/users/no-admin/**", "/users/block/**", "/users/unblock/**", "/exchanges/cancel/**")
+                        .requestMatchers("/users/delete/**", "/books/delete/**", "/users/admin/**", "/users/no-admin/**", "/users/block/**", "/users/unblock/**", "/exchanges/cancel/**", "/cache/**", "/mail/**")
                         .hasAuthority("ROLE_ADMIN")
-                        .requestMatchers("/users/{userId}/addresses", "/users/{userId}/main-address/**", "/users/enable-show-contacts/{userId}", "/users/disable-show-contacts/{userId}", "/users/{userId}/preferences", "/users/{userId}/wishlist/**", "/users/{userId}/library/**", "/users/{userId}/offered-books/**")
+                        .requestMatchers("/users/{userId}/addresses", "/users/{userId}/main-address/**", "/users/enable-show-contacts/{userId}", "/users/disable-show-contacts/{userId}", "/users/{userId}/preferences", "/users/{userId}/notification-mode", "/users/{userId}/wishlist/**", "/users/{userId}/library/**", "/users/{userId}/offered-books/**")
                         .access((authentication, context) -> {
                             long userId = Long.parseLong(context.getVariables().get("userId"));
                             return new AuthorizationDecision(webSecurityConditions.isCurrentUser(userId));
@@ -45,6 +48,9 @@ public class SecurityConfig {
                         .anyRequest().hasAnyAuthority("ROLE_USER", "ROLE_ADMIN")
                 )
                 .oauth2Login(Customizer.withDefaults())
+                .sessionManagement((session) -> session
+                        .maximumSessions(-1)
+                        .sessionRegistry(sessionRegistry))
                 .csrf((csrf) -> csrf.disable());
         SecurityFilterChain filterChain = http.build();
         log.info("Security filter chain configured successfully");
@@ -0,0 +1,25 @@
+package com.spring.vsurin.bookexchange.extern.infrastructure;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.core.session.SessionRegistry;
+import org.springframework.security.core.session.SessionRegistryImpl;
+import org.springframework.security.web.session.HttpSessionEventPublisher;
+
+/**
+ * Конфигурация реестра сеансов. Реестр позволяет завершить сеансы пользователя,
+ * когда данные, сохранённые при входе (идентификатор и роль), перестают быть актуальными.
+ */
+@Configuration
+public class SessionConfig {
+
+    @Bean
+    public SessionRegistry sessionRegistry() {
+        return new SessionRegistryImpl();
+    }
+
+    @Bean
+    public HttpSessionEventPublisher httpSessionEventPublisher() {
+        return new HttpSessionEventPublisher();
+    }
+}
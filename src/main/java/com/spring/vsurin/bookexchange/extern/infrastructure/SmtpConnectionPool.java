@@ -0,0 +1,214 @@
+package com.spring.vsurin.bookexchange.extern.infrastructure;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пул SMTP-соединений.
+ * Держит не больше {@code bookexchange.mail.pool.size} подключённых и аутентифицированных соединений с почтовым сервером,
+ * так что подключение, STARTTLS и аутентификация выполняются один раз на соединение, а не на каждое письмо.
+ * Свободные соединения выдаются в порядке LIFO: занятыми остаются самые свежие, а простаивающие дольше
+ * {@code bookexchange.mail.pool.idle-timeout} мс закрываются, не дожидаясь, пока их закроет сервер.
+ * Соединение закрывается после {@code bookexchange.mail.pool.max-messages} писем и после любой ошибки отправки.
+ */
+@Slf4j
+@Component
+public class SmtpConnectionPool {
+
+    private final Session session;
+    private final String protocol;
+    private final String host;
+    private final int port;
+    private final String username;
+    private final String password;
+    private final Semaphore permits;
+    private final long idleTimeoutMillis;
+    private final int maxMessagesPerConnection;
+    private final long borrowTimeoutMillis;
+
+    private final Deque<PooledTransport> idle = new ArrayDeque<>();
+
+    public SmtpConnectionPool(JavaMailSenderImpl mailSender,
+                              @Value("${bookexchange.mail.pool.size:4}") int size,
+                              @Value("${bookexchange.mail.pool.idle-timeout:30000}") long idleTimeoutMillis,
+                              @Value("${bookexchange.mail.pool.max-messages:100}") int maxMessagesPerConnection,
+                              @Value("${bookexchange.mail.pool.borrow-timeout:30000}") long borrowTimeoutMillis) {
+        this.session = mailSender.getSession();
+        this.protocol = protocolOf(mailSender);
+        this.host = mailSender.getHost();
+        this.port = mailSender.getPort();
+        this.username = mailSender.getUsername();
+        this.password = mailSender.getPassword();
+        this.permits = new Semaphore(size, true);
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.maxMessagesPerConnection = maxMessagesPerConnection;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+    }
+
+    /**
+     * Создаёт пустое письмо в почтовой сессии пула.
+     *
+     * @return новое письмо
+     */
+    public MimeMessage createMimeMessage() {
+        return new MimeMessage(session);
+    }
+
+    /**
+     * Отправляет письмо через свободное соединение пула.
+     * Если отправка через ранее использованное соединение не удалась (например, сервер закрыл его по простою),
+     * соединение закрывается, и письмо один раз повторно отправляется через новое.
+     *
+     * @param message письмо
+     * @throws MailSendException если письмо не удалось отправить или свободное соединение не появилось за {@code borrow-timeout} мс
+     */
+    public void send(MimeMessage message) {
+        acquire();
+        try {
+            message.saveChanges();
+            PooledTransport connection = pollIdle();
+            if (connection != null) {
+                try {
+                    sendWith(connection, message);
+                    return;
+                } catch (MessagingException e) {
+                    log.warn("Ошибка отправки через ранее открытое SMTP-соединение, письмо будет отправлено через новое: {}", e.getMessage());
+                }
+            }
+
+            sendWith(open(), message);
+        } catch (MessagingException e) {
+            throw new MailSendException("Не удалось отправить письмо", e);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Закрывает соединения, простаивающие дольше {@code idle-timeout} мс.
+     */
+    @Scheduled(fixedDelayString = "${bookexchange.mail.pool.idle-timeout:30000}")
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        List<PooledTransport> expired = new ArrayList<>();
+        synchronized (idle) {
+            Iterator<PooledTransport> oldestFirst = idle.descendingIterator();
+            while (oldestFirst.hasNext()) {
+                PooledTransport connection = oldestFirst.next();
+                if (now - connection.lastUsed < idleTimeoutMillis) {
+                    break;
+                }
+                oldestFirst.remove();
+                expired.add(connection);
+            }
+        }
+        expired.forEach(SmtpConnectionPool::close);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        List<PooledTransport> connections;
+        synchronized (idle) {
+            connections = new ArrayList<>(idle);
+            idle.clear();
+        }
+        connections.forEach(SmtpConnectionPool::close);
+    }
+
+    private void acquire() {
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new MailSendException("Нет свободного SMTP-соединения");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MailSendException("Ожидание SMTP-соединения прервано");
+        }
+    }
+
+    private void sendWith(PooledTransport connection, MimeMessage message) throws MessagingException {
+        try {
+            connection.transport.sendMessage(message, message.getAllRecipients());
+        } catch (MessagingException | RuntimeException e) {
+            close(connection);
+            throw e;
+        }
+
+        connection.sent++;
+        connection.lastUsed = System.currentTimeMillis();
+        if (connection.sent >= maxMessagesPerConnection) {
+            close(connection);
+        } else {
+            synchronized (idle) {
+                idle.offerFirst(connection);
+            }
+        }
+    }
+
+    private PooledTransport pollIdle() {
+        long now = System.currentTimeMillis();
+        while (true) {
+            PooledTransport connection;
+            synchronized (idle) {
+                connection = idle.pollFirst();
+            }
+            if (connection == null || now - connection.lastUsed < idleTimeoutMillis) {
+                return connection;
+            }
+            close(connection);
+        }
+    }
+
+    /**
+     * Протокол выбирается так же, как в JavaMailSenderImpl: явно заданный, затем из свойств сессии, затем smtp.
+     */
+    private static String protocolOf(JavaMailSenderImpl mailSender) {
+        if (mailSender.getProtocol() != null) {
+            return mailSender.getProtocol();
+        }
+        String sessionProtocol = mailSender.getSession().getProperty("mail.transport.protocol");
+        return sessionProtocol != null ? sessionProtocol : JavaMailSenderImpl.DEFAULT_PROTOCOL;
+    }
+
+    private PooledTransport open() throws MessagingException {
+        Transport transport = session.getTransport(protocol);
+        transport.connect(host, port, username, password);
+        log.debug("Открыто SMTP-соединение с {}:{}", host, port);
+        return new PooledTransport(transport);
+    }
+
+    private static void close(PooledTransport connection) {
+        try {
+            connection.transport.close();
+        } catch (MessagingException e) {
+            log.debug("Ошибка при закрытии SMTP-соединения: {}", e.getMessage());
+        }
+    }
+
+    private static final class PooledTransport {
+        private final Transport transport;
+        private int sent;
+        private long lastUsed;
+
+        private PooledTransport(Transport transport) {
+            this.transport = transport;
+        }
+    }
+}
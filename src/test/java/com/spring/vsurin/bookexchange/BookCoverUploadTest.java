@@ -0,0 +1,56 @@
+package com.spring.vsurin.bookexchange;
+
+import com.spring.vsurin.bookexchange.app.BookRepository;
+import com.spring.vsurin.bookexchange.domain.Book;
+import com.spring.vsurin.bookexchange.extern.api.BookController;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.io.ByteArrayInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@SelfSeededTest
+public class BookCoverUploadTest {
+
+    @Autowired
+    private BookController bookController;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Value("${bookexchange.covers.max-bytes}")
+    private long maxCoverBytes;
+
+    @Test
+    public void testChunkedOversizeCoverIsRejected() {
+        Book book = bookRepository.save(TestData.book("Большая обложка").build());
+
+        // Без Content-Length размер известен только после чтения тела
+        ResponseEntity<Void> response = bookController.updateCoverToBook(book.getId(), null,
+                new ByteArrayInputStream(new byte[(int) maxCoverBytes + 1]));
+
+        assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, response.getStatusCode());
+        assertNull(bookRepository.findById(book.getId()).getCoverHash());
+
+        bookRepository.deleteById(book.getId());
+    }
+
+    @Test
+    public void testCoverWithinLimitIsStored() {
+        Book book = bookRepository.save(TestData.book("Обложка").build());
+
+        ResponseEntity<Void> response = bookController.updateCoverToBook(book.getId(), null,
+                new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotNull(bookRepository.findById(book.getId()).getCoverHash());
+
+        bookRepository.deleteById(book.getId());
+    }
+}
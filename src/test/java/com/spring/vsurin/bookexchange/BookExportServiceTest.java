@@ -0,0 +1,79 @@
+package com.spring.vsurin.bookexchange;
+
+import com.spring.vsurin.bookexchange.app.BookExportRow;
+import com.spring.vsurin.bookexchange.app.BookExportService;
+import com.spring.vsurin.bookexchange.app.BookRepository;
+import com.spring.vsurin.bookexchange.app.UserRepository;
+import com.spring.vsurin.bookexchange.domain.Book;
+import com.spring.vsurin.bookexchange.domain.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "bookexchange.books.export-users-chunk-size=1")
+@Transactional
+public class BookExportServiceTest {
+
+    @Autowired
+    private BookExportService bookExportService;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Test
+    public void testExportWithoutIncludes() {
+        Book book = bookRepository.saveAndFlush(TestData.book("Шинель").coverHash("abc").build());
+
+        BookExportRow row = export(Set.of(), book.getId());
+
+        assertEquals("Шинель", row.title());
+        assertEquals(Year.of(2000), row.publicationYear());
+        assertNull(row.coverHash());
+        assertNull(row.ownerIds());
+        assertNull(row.userIdsOfferingForExchange());
+        assertNull(row.userIdsHaveInWishlist());
+    }
+
+    @Test
+    public void testExportWithCoverAndUsers() {
+        Book book = bookRepository.saveAndFlush(TestData.book("Нос").coverHash("def").build());
+        Book otherBook = bookRepository.saveAndFlush(TestData.book("Ревизор").build());
+        User user = TestData.user("export@example.com")
+                .library(new ArrayList<>(List.of(book)))
+                .wishlist(new ArrayList<>(List.of(otherBook)))
+                .build();
+        userRepository.saveAndFlush(user);
+
+        BookExportRow row = export(EnumSet.allOf(BookExportService.Include.class), book.getId());
+        BookExportRow otherRow = export(EnumSet.allOf(BookExportService.Include.class), otherBook.getId());
+
+        assertEquals("def", row.coverHash());
+        assertEquals(List.of(user.getId()), row.ownerIds());
+        assertEquals(List.of(), row.userIdsOfferingForExchange());
+        assertEquals(List.of(), row.userIdsHaveInWishlist());
+        assertEquals(List.of(), otherRow.ownerIds());
+        assertEquals(List.of(user.getId()), otherRow.userIdsHaveInWishlist());
+    }
+
+    private BookExportRow export(Set<BookExportService.Include> include, long bookId) {
+        List<BookExportRow> rows = new ArrayList<>();
+        bookExportService.exportBooks(include, rows::add);
+
+        for (int i = 1; i < rows.size(); i++) {
+            assertTrue(rows.get(i - 1).id() < rows.get(i).id());
+        }
+        return rows.stream().filter(row -> row.id() == bookId).findFirst().orElseThrow();
+    }
+}
@@ -0,0 +1,87 @@
+package com.spring.vsurin.bookexchange;
+
+import com.spring.vsurin.bookexchange.app.BookImportReader;
+import com.spring.vsurin.bookexchange.app.BookImportResult;
+import com.spring.vsurin.bookexchange.app.BookImportService;
+import com.spring.vsurin.bookexchange.app.BookService;
+import com.spring.vsurin.bookexchange.domain.Book;
+import com.spring.vsurin.bookexchange.domain.BookGenre;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.spring.vsurin.bookexchange.app.BookImportResult.Status.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "bookexchange.books.import-batch-size=3")
+@Transactional
+public class BookImportServiceTest {
+
+    @Autowired
+    private BookImportService bookImportService;
+
+    @Autowired
+    private BookService bookService;
+
+    @Test
+    public void testImportCsv() throws IOException {
+        bookService.createBook(Book.builder()
+                .title("Мастер и Маргарита")
+                .author("Михаил Булгаков")
+                .isbn("978-5-17-090630-7")
+                .genre(BookGenre.FICTION)
+                .publicationYear(Year.of(1967))
+                .build());
+
+        String csv = """
+                title,author,publicationYear,isbn,genre,description
+                "Война и мир","Толстой, Лев",1869,978-5-389-06256-6,FICTION,"Роман-\"\"эпопея\"\"\"
+                МАСТЕР И МАРГАРИТА!,Михаил Булгаков,1967,9785170906307,fiction,
+                Война и мир,"Толстой, Лев",1869,978-5-389-06256-6,FICTION,
+                Идиот,Фёдор Достоевский,1869,978-5-04-116669-4,DRAMA,
+                Без автора,,2000,123,FICTION,
+                идиот,Федор Достоевский,1869,978-5-04-116669-4,DRAMA,
+                """;
+
+        List<BookImportResult> results = importBooks(csv, BookImportReader.Format.CSV);
+
+        assertEquals(List.of(IMPORTED, DUPLICATE, DUPLICATE, IMPORTED, INVALID, DUPLICATE), results.stream().map(BookImportResult::status).toList());
+        assertEquals(List.of(2L, 3L, 4L, 5L, 6L, 7L), results.stream().map(BookImportResult::line).toList());
+
+        Book imported = bookService.getBookById(results.get(0).bookId());
+        assertEquals("Толстой, Лев", imported.getAuthor());
+        assertEquals("Роман-\"эпопея\"", imported.getDescription());
+        assertEquals(Year.of(1869), imported.getPublicationYear());
+    }
+
+    @Test
+    public void testImportNdjson() throws IOException {
+        String ndjson = """
+                {"title": "Шинель", "author": "Николай Гоголь", "publicationYear": 1842, "isbn": "978-5-699-12345-6", "genre": "FICTION"}
+                {"title": "Нос", "author": "Николай Гоголь"
+
+                {"title": "Ревизор", "author": "Николай Гоголь", "publicationYear": 1836, "isbn": "978-5-699-65432-1", "genre": "COMEDY"}
+                {"title": "Вий", "author": "Николай Гоголь", "publicationYear": "давно", "isbn": "978-5-699-11111-1", "genre": "HORROR"}
+                """;
+
+        List<BookImportResult> results = importBooks(ndjson, BookImportReader.Format.NDJSON);
+
+        assertEquals(List.of(IMPORTED, INVALID, IMPORTED, INVALID), results.stream().map(BookImportResult::status).toList());
+        assertEquals(List.of(1L, 2L, 4L, 5L), results.stream().map(BookImportResult::line).toList());
+        assertEquals("Ревизор", bookService.getBookById(results.get(2).bookId()).getTitle());
+    }
+
+    private List<BookImportResult> importBooks(String content, BookImportReader.Format format) throws IOException {
+        List<BookImportResult> results = new ArrayList<>();
+        bookImportService.importBooks(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), format, results::add);
+        return results;
+    }
+}
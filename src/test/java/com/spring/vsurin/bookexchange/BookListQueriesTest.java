@@ -0,0 +1,142 @@
+package com.spring.vsurin.bookexchange;
+
+import com.spring.vsurin.bookexchange.app.BookRepository;
+import com.spring.vsurin.bookexchange.app.BookService;
+import com.spring.vsurin.bookexchange.app.BookSummaryProjection;
+import com.spring.vsurin.bookexchange.app.CursorPage;
+import com.spring.vsurin.bookexchange.app.UserRepository;
+import com.spring.vsurin.bookexchange.domain.Book;
+import com.spring.vsurin.bookexchange.domain.BookGenre;
+import com.spring.vsurin.bookexchange.domain.User;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@StatementCountTest
+@Transactional
+public class BookListQueriesTest {
+
+    private static final int BOOKS = 12;
+    private static final int USERS = 3;
+
+    @Autowired
+    private BookService bookService;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private Statistics statistics;
+    private List<Book> books;
+    private User user;
+
+    @BeforeEach
+    public void setUp() {
+        books = new ArrayList<>();
+        for (int i = 0; i < BOOKS; i++) {
+            books.add(bookRepository.save(TestData.book("Книга " + i)
+                    .author("Автор " + i)
+                    .isbn(String.valueOf(i))
+                    .publicationYear(Year.of(2000 + i))
+                    .build()));
+        }
+        for (int i = 0; i < USERS; i++) {
+            user = userRepository.save(TestData.user("list" + i + "@example.com")
+                    .library(new ArrayList<>(books))
+                    .wishlist(new ArrayList<>(books.subList(0, 1)))
+                    .build());
+        }
+        userRepository.flush();
+
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    public void testPageIsLoadedWithPageAndCountQueries() {
+        Page<BookSummaryProjection> page = bookService.getAllBooksInBase(PageRequest.of(0, 5));
+
+        page.forEach(book -> assertEquals(USERS, book.getOwnersCount()));
+        assertEquals(5, page.getNumberOfElements());
+        assertEquals(2, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityLoadCount());
+        assertEquals(0, statistics.getCollectionLoadCount());
+    }
+
+    @Test
+    public void testGenrePageIsLoadedWithPageAndCountQueries() {
+        Page<BookSummaryProjection> page = bookService.searchByGenre(BookGenre.FICTION, PageRequest.of(0, 5, Sort.by("id")));
+
+        assertEquals(USERS, page.getContent().get(0).getWishlistCount());
+        assertEquals(0, page.getContent().get(1).getWishlistCount());
+        assertEquals(2, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityLoadCount());
+    }
+
+    @Test
+    public void testCursorPageIsLoadedWithOneQuery() {
+        CursorPage<BookSummaryProjection> page = bookService.getAllBooksInBase(null, 5);
+
+        assertEquals(5, page.content().size());
+        assertNotNull(page.nextCursor());
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityLoadCount());
+    }
+
+    @Test
+    public void testAvailablePageIsReadInIndexOrder() {
+        String plan = (String) entityManager.createNativeQuery("EXPLAIN SELECT book_id FROM books " +
+                "WHERE book_available = TRUE ORDER BY book_available, book_rating DESC, book_id LIMIT 5 OFFSET 5").getSingleResult();
+
+        assertTrue(plan.contains("IDX_BOOKS_AVAILABLE_RATING_ID"), plan);
+        assertTrue(plan.contains("index sorted"), plan);
+    }
+
+    @Test
+    public void testReconcileRepairsOfferCounts() {
+        long staleBookId = books.get(0).getId();
+        long unaccountedBookId = books.get(1).getId();
+        bookRepository.updateOfferCount(staleBookId, 2);
+        userRepository.addToOfferedBooks(user.getId(), unaccountedBookId);
+
+        bookService.reconcileOfferCounts();
+
+        List<BookSummaryProjection> available = bookService.getAvailableForExchangeBooks(PageRequest.of(0, 5)).getContent();
+        assertEquals(1, available.size());
+        assertEquals(unaccountedBookId, available.get(0).getId());
+        assertEquals(1, available.get(0).getOfferCount());
+    }
+
+    @Test
+    public void testOfferCountDoesNotGoNegative() {
+        long bookId = books.get(0).getId();
+        bookRepository.updateOfferCount(bookId, -1);
+        bookRepository.updateOfferCount(bookId, 1);
+
+        List<BookSummaryProjection> available = bookService.getAvailableForExchangeBooks(PageRequest.of(0, 5)).getContent();
+        assertEquals(1, available.size());
+        assertEquals(1, available.get(0).getOfferCount());
+    }
+}
@@ -0,0 +1,135 @@
+package com.spring.vsurin.bookexchange;
+
+import com.spring.vsurin.bookexchange.app.BookSearchIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.data.domain.PageRequest;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Сравнение задержки нечёткого поиска и поиска по короткому префиксу по индексу с текущим запросом LIKE к таблице книг.
+ * Запускается только явно: mvn test -Dtest=BookSearchBenchmarkTest -Dbenchmark=true
+ * Размеры каталога задаются свойством benchmark.sizes (по умолчанию 100000,1000000,5000000).
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class BookSearchBenchmarkTest {
+
+    private static final String[] AUTHORS = {
+            "Михаил Булгаков", "Фёдор Достоевский", "Лев Толстой", "Антон Чехов", "Николай Гоголь",
+            "Александр Пушкин", "Иван Тургенев", "Борис Пастернак", "Владимир Набоков", "Максим Горький"
+    };
+    private static final String[] TITLE_WORDS = {
+            "мастер", "война", "мир", "идиот", "отцы", "дети", "дар", "мать", "шинель", "дуэль",
+            "бесы", "братья", "снег", "дом", "сад", "вишнёвый", "метель", "повесть", "письма", "остров"
+    };
+    private static final List<String> QUERIES = List.of("Булгакав", "Достаевский", "Тургенив", "вишневый сат", "Набоко");
+    private static final List<String> PREFIX_QUERIES = List.of("м", "в", "мастер м");
+    private static final int REPEATS = 5;
+
+    @Test
+    public void compareFuzzySearchWithLike() throws SQLException {
+        String sizes = System.getProperty("benchmark.sizes", "100000,1000000,5000000");
+        for (int size : Arrays.stream(sizes.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray()) {
+            benchmark(size);
+        }
+    }
+
+    private void benchmark(int size) throws SQLException {
+        BookSearchIndex index = new BookSearchIndex(null);
+
+        try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:benchmark" + size, "sa", "")) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("create table books (id bigint primary key, title varchar(255), author varchar(255))");
+            }
+
+            Random random = new Random(size);
+            try (PreparedStatement insert = connection.prepareStatement("insert into books (id, title, author) values (?, ?, ?)")) {
+                for (long id = 1; id <= size; id++) {
+                    String title = TITLE_WORDS[random.nextInt(TITLE_WORDS.length)] + " " + TITLE_WORDS[random.nextInt(TITLE_WORDS.length)] + " " + id;
+                    String author = AUTHORS[random.nextInt(AUTHORS.length)];
+                    insert.setLong(1, id);
+                    insert.setString(2, title);
+                    insert.setString(3, author);
+                    insert.addBatch();
+                    index.add(id, title, author);
+                    if (id % 10_000 == 0) {
+                        insert.executeBatch();
+                    }
+                }
+                insert.executeBatch();
+            }
+
+            try (PreparedStatement like = connection.prepareStatement(
+                    "select id from books where lower(title) like ? or lower(author) like ? order by id limit 20")) {
+                for (String query : QUERIES) {
+                    long likeNanos = Long.MAX_VALUE;
+                    long fuzzyNanos = Long.MAX_VALUE;
+                    int likeHits = 0;
+                    long fuzzyHits = 0;
+
+                    for (int i = 0; i < REPEATS; i++) {
+                        long start = System.nanoTime();
+                        String pattern = "%" + query.toLowerCase() + "%";
+                        like.setString(1, pattern);
+                        like.setString(2, pattern);
+                        likeHits = 0;
+                        try (ResultSet resultSet = like.executeQuery()) {
+                            while (resultSet.next()) {
+                                likeHits++;
+                            }
+                        }
+                        likeNanos = Math.min(likeNanos, System.nanoTime() - start);
+
+                        start = System.nanoTime();
+                        fuzzyHits = index.fuzzySearch(query, PageRequest.of(0, 20)).getTotalElements();
+                        fuzzyNanos = Math.min(fuzzyNanos, System.nanoTime() - start);
+                    }
+
+                    log.info("Книг: {}, запрос: '{}', LIKE: {} мс ({} найдено), нечёткий поиск: {} мс ({} найдено)",
+                            size, query, likeNanos / 1_000_000, likeHits, fuzzyNanos / 1_000_000, fuzzyHits);
+                    assertFalse(fuzzyHits == 0, "Нечёткий поиск ничего не нашёл по запросу " + query);
+                }
+
+                for (String query : PREFIX_QUERIES) {
+                    long likeNanos = Long.MAX_VALUE;
+                    long prefixNanos = Long.MAX_VALUE;
+                    long prefixHits = 0;
+
+                    for (int i = 0; i < REPEATS; i++) {
+                        long start = System.nanoTime();
+                        String pattern = "%" + query + "%";
+                        like.setString(1, pattern);
+                        like.setString(2, pattern);
+                        try (ResultSet resultSet = like.executeQuery()) {
+                            while (resultSet.next()) {
+                                resultSet.getLong(1);
+                            }
+                        }
+                        likeNanos = Math.min(likeNanos, System.nanoTime() - start);
+
+                        start = System.nanoTime();
+                        prefixHits = index.search(query, PageRequest.of(0, 20)).getTotalElements();
+                        prefixNanos = Math.min(prefixNanos, System.nanoTime() - start);
+                    }
+
+                    log.info("Книг: {}, префикс: '{}', LIKE: {} мс, поиск по индексу: {} мкс ({} найдено)",
+                            size, query, likeNanos / 1_000_000, prefixNanos / 1_000, prefixHits);
+                    assertFalse(prefixHits == 0, "Поиск по префиксу ничего не нашёл по запросу " + query);
+                }
+            }
+        }
+    }
+}
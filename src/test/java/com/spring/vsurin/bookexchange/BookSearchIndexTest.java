@@ -0,0 +1,179 @@
+package com.spring.vsurin.bookexchange;
+
+import com.spring.vsurin.bookexchange.app.BookRepository;
+import com.spring.vsurin.bookexchange.app.BookSearchIndex;
+import com.spring.vsurin.bookexchange.app.BookSearchProjection;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class BookSearchIndexTest {
+
+    @Mock
+    private BookRepository bookRepository;
+
+    @InjectMocks
+    private BookSearchIndex bookSearchIndex;
+
+    @BeforeEach
+    public void setUp() {
+        when(bookRepository.findTop1000ByIdGreaterThanOrderByIdAsc(0)).thenReturn(List.of(
+                projection(1, "Мастер и Маргарита", "Михаил Булгаков"),
+                projection(2, "Белая гвардия", "Михаил Булгаков"),
+                projection(3, "Ёлка и свадьба", "Фёдор Достоевский"),
+                projection(4, "Булгаков. Биография", "Алексей Варламов")
+        ));
+        bookSearchIndex.rebuild();
+    }
+
+    @Test
+    public void testRebuild() {
+        assertTrue(bookSearchIndex.isReady());
+    }
+
+    @Test
+    public void testSearchByAuthor() {
+        Page<Long> result = bookSearchIndex.search("булгаков", PageRequest.of(0, 10));
+
+        assertEquals(3, result.getTotalElements());
+        assertEquals(4L, result.getContent().get(0));
+    }
+
+    @Test
+    public void testSearchByPrefixAndNormalizedText() {
+        Page<Long> result = bookSearchIndex.search("Елка и свад", PageRequest.of(0, 10));
+
+        assertEquals(List.of(3L), result.getContent());
+    }
+
+    @Test
+    public void testSearchAllTermsRequired() {
+        Page<Long> result = bookSearchIndex.search("Белая Маргарита", PageRequest.of(0, 10));
+
+        assertTrue(result.isEmpty());
+    }
+
+    @Test
+    public void testSearchPagination() {
+        Page<Long> result = bookSearchIndex.search("Михаил", PageRequest.of(1, 1));
+
+        assertEquals(2, result.getTotalElements());
+        assertEquals(List.of(2L), result.getContent());
+    }
+
+    @Test
+    public void testAddAndRemove() {
+        bookSearchIndex.add(5, "Собачье сердце", "Михаил Булгаков");
+        assertEquals(List.of(5L), bookSearchIndex.search("сердце", PageRequest.of(0, 10)).getContent());
+
+        bookSearchIndex.remove(5);
+        assertTrue(bookSearchIndex.search("сердце", PageRequest.of(0, 10)).isEmpty());
+    }
+
+    @Test
+    public void testFuzzySearchWithTypo() {
+        Page<Long> result = bookSearchIndex.fuzzySearch("Булгакав", PageRequest.of(0, 10));
+
+        assertEquals(3, result.getTotalElements());
+        assertEquals(4L, result.getContent().get(0));
+    }
+
+    @Test
+    public void testFuzzySearchRanksBestMatchFirst() {
+        Page<Long> result = bookSearchIndex.fuzzySearch("Мастер и Маргорита", PageRequest.of(0, 10));
+
+        assertEquals(1L, result.getContent().get(0));
+    }
+
+    @Test
+    public void testFuzzySearchNoMatches() {
+        assertTrue(bookSearchIndex.fuzzySearch("Толстой", PageRequest.of(0, 10)).isEmpty());
+    }
+
+    @Test
+    public void testFuzzySearchAfterRemove() {
+        bookSearchIndex.remove(3);
+
+        assertTrue(bookSearchIndex.fuzzySearch("Достаевский", PageRequest.of(0, 10)).isEmpty());
+    }
+
+    @Test
+    public void testFuzzySearchAmongTokensWithCommonTrigrams() {
+        String letters = "абвгдежзиклмнопрстуфхцчшщэюя";
+        long bookId = 100;
+        for (char first : letters.toCharArray()) {
+            for (char second : letters.toCharArray()) {
+                bookSearchIndex.add(bookId++, "" + first + second + "ов", "Автор");
+            }
+        }
+
+        Page<Long> result = bookSearchIndex.fuzzySearch("Булгакав", PageRequest.of(0, 10));
+
+        assertEquals(List.of(4L, 1L, 2L), result.getContent().subList(0, 3));
+    }
+
+    @Test
+    public void testFuzzySearchLimitsBooksPerTerm() {
+        for (long bookId = 100; bookId < 2100; bookId++) {
+            bookSearchIndex.add(bookId, "Булгаков", "Автор");
+        }
+
+        Page<Long> result = bookSearchIndex.fuzzySearch("Булгакав", PageRequest.of(0, 10));
+
+        assertEquals(10, result.getNumberOfElements());
+        assertEquals(1000, result.getTotalElements());
+    }
+
+    @Test
+    public void testShortPrefixSearchIsBounded() {
+        for (long bookId = 100; bookId < 2100; bookId++) {
+            bookSearchIndex.add(bookId, "Магия " + bookId, "Автор");
+        }
+
+        Page<Long> result = bookSearchIndex.search("м", PageRequest.of(0, 10));
+
+        assertEquals(10, result.getNumberOfElements());
+        assertEquals(1000, result.getTotalElements());
+    }
+
+    @Test
+    public void testShortPrefixAfterOtherTermsIsExact() {
+        for (long bookId = 100; bookId < 2100; bookId++) {
+            bookSearchIndex.add(bookId, "Магия " + bookId, "Автор");
+        }
+
+        Page<Long> result = bookSearchIndex.search("Булгаков м", PageRequest.of(0, 10));
+
+        assertEquals(List.of(1L, 2L), result.getContent());
+    }
+
+    private BookSearchProjection projection(long id, String title, String author) {
+        return new BookSearchProjection() {
+            @Override
+            public long getId() {
+                return id;
+            }
+
+            @Override
+            public String getTitle() {
+                return title;
+            }
+
+            @Override
+            public String getAuthor() {
+                return author;
+            }
+        };
+    }
+}
@@ -6,13 +6,23 @@ import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.time.Year;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -29,6 +39,21 @@ public class BookServiceTest {
     @Mock
     private SecurityContextService securityContextService;
 
+    @Mock
+    private BookSearchIndex bookSearchIndex;
+
+    @Mock
+    private RatingAccumulator ratingAccumulator;
+
+    @Mock
+    private CoverStorage coverStorage;
+
+    @Mock
+    private CoverThumbnailService coverThumbnailService;
+
+    @Mock
+    private EntityCache entityCache;
+
     @InjectMocks
     private BookService bookService;
 
@@ -48,6 +73,39 @@ public class BookServiceTest {
 
         Book savedBook = bookService.createBook(book);
         assertNotNull(savedBook.getId());
+        assertEquals("test book 4|test author 4|101", savedBook.getDedupKey());
+    }
+
+    @Test
+    public void testCreateDuplicateBook() {
+        Book book = Book.builder()
+                .title("  Мастер и Маргарита!")
+                .author("БУЛГАКОВ, Михаил")
+                .isbn("978-5-17-090630-7")
+                .build();
+
+        when(bookRepository.save(book)).thenThrow(new DataIntegrityViolationException("uk_books_dedup_key"));
+        when(bookRepository.findExistingDedupKeys(Set.of("мастер и маргарита|булгаков михаил|9785170906307")))
+                .thenReturn(Set.of("мастер и маргарита|булгаков михаил|9785170906307"));
+
+        Book result = bookService.createBook(book);
+        assertEquals("мастер и маргарита|булгаков михаил|9785170906307", result.getDedupKey());
+        verify(bookSearchIndex, never()).add(anyLong(), any(), any());
+    }
+
+    @Test
+    public void testCreateBookWithOtherIntegrityViolation() {
+        Book book = Book.builder()
+                .title("Мастер и Маргарита")
+                .author("Булгаков")
+                .genre(BookGenre.ART)
+                .build();
+
+        when(bookRepository.save(book)).thenThrow(new DataIntegrityViolationException("book_title"));
+        when(bookRepository.findExistingDedupKeys(anyCollection())).thenReturn(Set.of());
+
+        assertThrows(RuntimeException.class, () -> bookService.createBook(book));
+        verify(bookSearchIndex, never()).add(anyLong(), any(), any());
     }
 
     @Test
@@ -62,13 +120,21 @@ public class BookServiceTest {
                 .publicationYear(Year.of(2010))
                 .build();
 
-        when(bookRepository.findById(1)).thenReturn(testBook);
+        when(bookRepository.findById(Long.valueOf(1))).thenReturn(Optional.of(testBook));
 
         Book retrievedBook = bookService.getBookById(1);
         assertNotNull(retrievedBook);
         assertEquals(1, retrievedBook.getId());
     }
 
+    @Test
+    public void testGetBookVersion() {
+        when(bookRepository.findVersionById(1)).thenReturn(3L);
+
+        assertEquals(3L, bookService.getBookVersion(1));
+        verify(bookRepository, never()).findById(anyLong());
+    }
+
     @Test
     public void testDeleteBookById() {
         Book testBook = Book.builder()
@@ -92,7 +158,7 @@ public class BookServiceTest {
 
     @Test
     public void testGetBookByIdNull() {
-        when(bookRepository.findById(4)).thenReturn(null);
+        when(bookRepository.findById(Long.valueOf(4))).thenReturn(Optional.empty());
 
         assertThrows(IllegalArgumentException.class, () -> {
             bookService.getBookById(4);
@@ -101,64 +167,108 @@ public class BookServiceTest {
 
     @Test
     public void testGetAllBooksInBase() {
-        List<Book> books = new ArrayList<>();
-        books.add(new Book());
-        books.add(new Book());
-        books.add(new Book());
+        List<BookSummaryProjection> books = new ArrayList<>();
+        books.add(summary(1, 0));
+        books.add(summary(2, 0));
+        books.add(summary(3, 0));
 
-        Page<Book> booksPage = mock(Page.class);
+        Page<BookSummaryProjection> booksPage = mock(Page.class);
         when(booksPage.getContent()).thenReturn(books);
-        when(bookRepository.findAll(any(Pageable.class))).thenReturn(booksPage);
+        when(bookRepository.findSummaries(any(Pageable.class))).thenReturn(booksPage);
 
         Pageable pageable = PageRequest.of(0, 10);
-        Page<Book> resultPage = bookService.getAllBooksInBase(pageable);
+        Page<BookSummaryProjection> resultPage = bookService.getAllBooksInBase(pageable);
         assertEquals(3, resultPage.getContent().size());
     }
 
     @Test
     public void testSearchByGenre() {
-        List<Book> books = new ArrayList<>();
-        books.add(new Book());
+        List<BookSummaryProjection> books = new ArrayList<>();
+        books.add(summary(1, 0));
 
-        Page<Book> booksPage = mock(Page.class);
+        Page<BookSummaryProjection> booksPage = mock(Page.class);
         when(booksPage.getContent()).thenReturn(books);
-        when(bookRepository.findByGenre(eq(BookGenre.FICTION), any(Pageable.class))).thenReturn(booksPage);
+        when(bookRepository.findSummariesByGenre(eq(BookGenre.FICTION), any(Pageable.class))).thenReturn(booksPage);
 
         Pageable pageable = PageRequest.of(0, 10);
-        Page<Book> resultPage = bookService.searchByGenre(BookGenre.FICTION, pageable);
+        Page<BookSummaryProjection> resultPage = bookService.searchByGenre(BookGenre.FICTION, pageable);
         assertEquals(1, resultPage.getContent().size());
     }
 
     @Test
     public void testSearchByTitleOrAuthor() {
-        List<Book> books = new ArrayList<>();
-        books.add(new Book());
-        books.add(new Book());
-        books.add(new Book());
+        List<BookSummaryProjection> books = new ArrayList<>();
+        books.add(summary(1, 0));
+        books.add(summary(2, 0));
+        books.add(summary(3, 0));
 
-        Page<Book> booksPage = mock(Page.class);
+        Page<BookSummaryProjection> booksPage = mock(Page.class);
         when(booksPage.getContent()).thenReturn(books);
-        when(bookRepository.findByTitleContainingIgnoreCaseOrAuthorContainingIgnoreCase(eq("Test Bo"), eq("Test Bo"), any(Pageable.class))).thenReturn(booksPage);
+        when(bookRepository.findSummariesByTitleOrAuthor(eq("Test Bo"), any(Pageable.class))).thenReturn(booksPage);
 
         Pageable pageable = PageRequest.of(0, 10);
-        Page<Book> resultPage = bookService.searchByTitleOrAuthor("Test Bo", pageable);
+        Page<BookSummaryProjection> resultPage = bookService.searchByTitleOrAuthor("Test Bo", pageable);
         assertEquals(3, resultPage.getContent().size());
     }
 
+    @Test
+    public void testSearchByTitleOrAuthorWithIndex() {
+        BookSummaryProjection book1 = summary(1, 0);
+        BookSummaryProjection book2 = summary(2, 0);
+
+        Pageable pageable = PageRequest.of(0, 10);
+        when(bookSearchIndex.isReady()).thenReturn(true);
+        when(bookSearchIndex.search("Test Bo", pageable)).thenReturn(new PageImpl<>(List.of(2L, 1L), pageable, 2));
+        when(bookRepository.findSummariesByIds(List.of(2L, 1L))).thenReturn(List.of(book1, book2));
+
+        Page<BookSummaryProjection> resultPage = bookService.searchByTitleOrAuthor("Test Bo", pageable);
+
+        assertEquals(List.of(book2, book1), resultPage.getContent());
+        assertEquals(2, resultPage.getTotalElements());
+        verify(bookRepository, never()).findSummariesByTitleOrAuthor(anyString(), any(Pageable.class));
+    }
+
     @Test
     public void testGetAvailableForExchangeBooks() {
-        List<Book> books = new ArrayList<>();
-        books.add(new Book());
+        List<BookSummaryProjection> books = new ArrayList<>();
+        books.add(summary(1, 0));
 
-        Page<Book> booksPage = mock(Page.class);
+        Page<BookSummaryProjection> booksPage = mock(Page.class);
         when(booksPage.getContent()).thenReturn(books);
-        when(bookRepository.findBooksWithUsersOfferingForExchange(any(Pageable.class))).thenReturn(booksPage);
+        when(bookRepository.findSummariesOfferedForExchange(any(Pageable.class))).thenReturn(booksPage);
 
         Pageable pageable = PageRequest.of(0, 10);
-        Page<Book> resultPage = bookService.getAvailableForExchangeBooks(pageable);
+        Page<BookSummaryProjection> resultPage = bookService.getAvailableForExchangeBooks(pageable);
         assertEquals(1, resultPage.getContent().size());
     }
 
+    @Test
+    public void testGetAllBooksInBaseByCursor() {
+        List<BookSummaryProjection> books = List.of(summary(4, 0), summary(5, 0), summary(6, 0));
+        when(bookRepository.findSummariesAfter(3, Limit.of(3))).thenReturn(books);
+
+        CursorPage<BookSummaryProjection> resultPage = bookService.getAllBooksInBase(new BookCursor(0, 3), 2);
+        assertEquals(2, resultPage.content().size());
+        assertEquals(5, BookCursor.decode(resultPage.nextCursor()).id());
+    }
+
+    @Test
+    public void testGetAvailableForExchangeBooksByCursorLastPage() {
+        List<BookSummaryProjection> books = List.of(summary(7, 4.5));
+        when(bookRepository.findSummariesOfferedForExchangeAfter(5.0, 2, Limit.of(3))).thenReturn(books);
+
+        CursorPage<BookSummaryProjection> resultPage = bookService.getAvailableForExchangeBooks(BookCursor.decode(new BookCursor(5.0, 2).encode()), 2);
+        assertEquals(1, resultPage.content().size());
+        assertNull(resultPage.nextCursor());
+    }
+
+    @Test
+    public void testDecodeInvalidCursor() {
+        assertFalse(BookCursor.isValid("not-a-cursor"));
+        assertThrows(IllegalArgumentException.class, () -> BookCursor.decode("not-a-cursor"));
+        assertNull(BookCursor.decode(null));
+    }
+
     @Test
     public void testAddMarkToBook() {
         Book testBook = Book.builder()
@@ -183,24 +293,27 @@ public class BookServiceTest {
                 .build();
         testUser.getLibrary().add(testBook);
 
-        when(bookRepository.findById(1)).thenReturn(testBook);
-        when(userRepository.findById(1)).thenReturn(testUser);
+        when(bookRepository.existsById(1L)).thenReturn(true);
+        when(userRepository.existsInLibrary(1, 1)).thenReturn(true);
         when(securityContextService.getCurrentAuthId()).thenReturn(testUser.getId());
 
         bookService.addMarkToBook(1, 5);
         bookService.addMarkToBook(1, 7);
 
-        verify(bookRepository, times(2)).save(any(Book.class));
+        verify(ratingAccumulator).add(1, 5);
+        verify(ratingAccumulator).add(1, 7);
+        verify(bookRepository, times(2)).insertMark(eq(1L), anyInt());
+        verify(bookRepository, never()).findById(anyLong());
+        verify(bookRepository, never()).save(any(Book.class));
+    }
 
-        Book updatedBook = bookService.getBookById(1);
-        Iterable<Integer> marks = updatedBook.getMarks();
-        int count = 0;
-        for (Integer mark : marks) {
-            count++;
-        }
+    @Test
+    public void testAddMarkToMissingBook() {
+        when(bookRepository.existsById(1L)).thenReturn(false);
 
-        assertEquals(6, updatedBook.getRating());
-        assertEquals(2, count);
+        assertThrows(IllegalArgumentException.class, () -> bookService.addMarkToBook(1, 5));
+        verify(bookRepository, never()).insertMark(anyLong(), anyInt());
+        verify(ratingAccumulator, never()).add(anyLong(), anyInt());
     }
 
     @Test
@@ -226,14 +339,16 @@ public class BookServiceTest {
                 .role(UserRole.ROLE_ADMIN)
                 .build();
 
-        when(bookRepository.findById(1)).thenReturn(testBook);
-        when(userRepository.findById(1)).thenReturn(testUser);
+        when(bookRepository.existsById(1L)).thenReturn(true);
+        when(bookRepository.findById(Long.valueOf(1))).thenReturn(Optional.of(testBook));
+        when(userRepository.existsInLibrary(1, 1)).thenReturn(false);
         when(securityContextService.getCurrentAuthId()).thenReturn(testUser.getId());
 
         bookService.addMarkToBook(1, 5);
         bookService.addMarkToBook(1, 7);
 
         verify(bookRepository, times(0)).save(any(Book.class));
+        verify(ratingAccumulator, never()).add(anyLong(), anyInt());
 
         Book updatedBook = bookService.getBookById(1);
         Iterable<Integer> marks = updatedBook.getMarks();
@@ -245,6 +360,15 @@ public class BookServiceTest {
         assertEquals(0, count);
     }
 
+    @Test
+    public void testGetBookMarks() {
+        Pageable pageable = PageRequest.of(0, 10);
+        when(bookRepository.findMarksByBookId(1, pageable)).thenReturn(new PageImpl<>(List.of(5, 7), pageable, 2));
+
+        Page<Integer> marks = bookService.getBookMarks(1, pageable);
+        assertEquals(List.of(5, 7), marks.getContent());
+    }
+
     @Test
     public void testUpdateDescriptionToBook() {
         Book testBook = Book.builder()
@@ -257,7 +381,7 @@ public class BookServiceTest {
                 .publicationYear(Year.of(2010))
                 .build();
 
-        when(bookRepository.findById(1)).thenReturn(testBook);
+        when(bookRepository.findById(Long.valueOf(1))).thenReturn(Optional.of(testBook));
 
         bookService.updateDescriptionToBook(1, "DEEEESC");
 
@@ -267,31 +391,20 @@ public class BookServiceTest {
 
     @Test
     public void testGetBookCover() {
-        byte[] image = new byte[]{1, 2, 3};
+        String coverHash = "a".repeat(64);
+        Resource cover = new ByteArrayResource(new byte[]{1, 2, 3});
+        BookCoverProjection bookCoverProjection = () -> coverHash;
 
-        Book testBook = Book.builder()
-                .id(1)
-                .title("Test Book 4")
-                .author("Test Author 4")
-                .description("Test description")
-                .genre(BookGenre.ART)
-                .isbn("101")
-                .publicationYear(Year.of(2010))
-                .coverImage(image)
-                .build();
+        when(bookRepository.findCoverHashById(1)).thenReturn(bookCoverProjection);
+        when(coverStorage.load(coverHash)).thenReturn(cover);
 
-        BookCoverProjection bookCoverProjection = () -> image;
-
-        when(bookRepository.findById(1)).thenReturn(testBook);
-        when(bookRepository.findCoverImageById(1)).thenReturn(bookCoverProjection);
-
-        byte[] real = bookService.getBookCover(1);
-        assertEquals(image, real);
+        assertEquals(coverHash, bookService.getBookCoverHash(1));
+        assertEquals(cover, bookService.getBookCover(coverHash));
     }
 
 
     @Test
-    public void testUpdateBookCover() {
+    public void testUpdateBookCover() throws IOException {
         Book testBook = Book.builder()
                 .id(1)
                 .title("Test Book 4")
@@ -302,12 +415,22 @@ public class BookServiceTest {
                 .publicationYear(Year.of(2010))
                 .build();
 
-        when(bookRepository.findById(1)).thenReturn(testBook);
+        InputStream newImage = new ByteArrayInputStream(new byte[]{4, 5, 6});
+        when(bookRepository.findById(Long.valueOf(1))).thenReturn(Optional.of(testBook));
+        when(coverStorage.store(newImage)).thenReturn("b".repeat(64));
 
-        byte[] newImage = new byte[]{4, 5, 6};
         bookService.updateBookCover(1, newImage);
         Book updatedBook = bookService.getBookById(1);
 
-        assertEquals(newImage, updatedBook.getCoverImage());
+        assertEquals("b".repeat(64), updatedBook.getCoverHash());
+        verify(bookRepository).save(testBook);
+        verify(coverThumbnailService).generateThumbnails("b".repeat(64));
+    }
+
+    private static BookSummaryProjection summary(long id, double rating) {
+        BookSummaryProjection book = mock(BookSummaryProjection.class);
+        lenient().when(book.getId()).thenReturn(id);
+        lenient().when(book.getRating()).thenReturn(rating);
+        return book;
     }
 }
@@ -1,27 +1,63 @@
 package com.spring.vsurin.bookexchange;
 
+import com.spring.vsurin.bookexchange.app.BookRepository;
+import com.spring.vsurin.bookexchange.app.BookService;
+import com.spring.vsurin.bookexchange.app.RatingAccumulator;
 import com.spring.vsurin.bookexchange.domain.Book;
-import com.spring.vsurin.bookexchange.domain.BookGenre;
 import org.junit.jupiter.api.Test;
-import org.springframework.boot.test.context.SpringBootTest;
-
-import java.time.Year;
-import java.util.ArrayList;
+import org.springframework.beans.factory.annotation.Autowired;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
-@SpringBootTest
+@SelfSeededTest
 public class BookTest {
 
+    @Autowired
+    private BookService bookService;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private RatingAccumulator ratingAccumulator;
+
     @Test
     public void testAddMarkToBookAndCalculateBookRating() {
-        byte[] image = new byte[1];
-        Book book = new Book(1, new ArrayList<>(), "Title", "Author", Year.of(2005), "123", BookGenre.FICTION, "DESC", new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), image, 0);
-        book.addMarkToBook(5);
-        book.addMarkToBook(7);
+        Book book = bookRepository.save(TestData.book("Рейтинг").build());
+        bookService.getBookById(book.getId());
+
+        ratingAccumulator.add(book.getId(), 5);
+        ratingAccumulator.add(book.getId(), 7);
+        ratingAccumulator.flush();
+
+        Book ratedBook = bookService.getBookById(book.getId());
+        assertEquals(6, ratedBook.getRating());
+        assertEquals(12, ratedBook.getMarksSum());
+        assertEquals(2, ratedBook.getMarksCount());
+
+        bookRepository.deleteById(book.getId());
+    }
+
+    @Test
+    public void testBookRatingIsRoundedHalfEven() {
+        Book book = bookRepository.save(TestData.book("Округление").build());
+
+        addMarks(book.getId(), 1, 1, 1, 1, 1, 1, 1, 2);
+        assertEquals(1.12, bookService.getBookById(book.getId()).getRating());
 
-        int expectedResult = 6;
+        addMarks(book.getId(), 1, 1, 1, 2, 2, 2, 2, 2);
+        assertEquals(1.38, bookService.getBookById(book.getId()).getRating());
+
+        addMarks(book.getId(), 1, 1, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2);
+        assertEquals(1.62, bookService.getBookById(book.getId()).getRating());
+
+        bookRepository.deleteById(book.getId());
+    }
 
-        assertEquals(expectedResult, book.calculateBookRating());
+    private void addMarks(long bookId, int... marks) {
+        for (int mark : marks) {
+            ratingAccumulator.add(bookId, mark);
+        }
+        ratingAccumulator.flush();
     }
 }
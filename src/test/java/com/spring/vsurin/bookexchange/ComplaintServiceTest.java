@@ -62,13 +62,14 @@ public class ComplaintServiceTest {
                 .gender(UserGender.MALE)
                 .build();
 
-        when(userRepository.findByRole(UserRole.ROLE_ADMIN)).thenReturn(admins);
+        when(userRepository.findEmailsByRole(UserRole.ROLE_ADMIN)).thenReturn(admins.stream().map(User::getEmail).toList());
         when(userRepository.findById(3)).thenReturn(user);
         when(mailBuilder.buildSendComplaintMessage(anyString(), anyLong(), anyString(), anyString()))
                 .thenReturn(new EmailData("min095@list.ru", "Subject", "Message"));
 
         complaintService.sendComplaint(ComplaintSubject.BOOK, 10, anyString());
 
-        verify(emailService, times(2)).sendEmail(any(EmailData.class));
+        verify(emailService, times(1)).sendEmails(argThat(emails -> emails.size() == 2));
+        verify(emailService, never()).sendEmail(any(EmailData.class));
     }
 }
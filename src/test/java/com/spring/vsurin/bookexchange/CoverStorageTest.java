@@ -0,0 +1,66 @@
+package com.spring.vsurin.bookexchange;
+
+import com.spring.vsurin.bookexchange.extern.infrastructure.DefaultCoverStorage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.Resource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CoverStorageTest {
+
+    @TempDir
+    private Path root;
+
+    @Test
+    public void testStoreAndLoad() throws IOException {
+        DefaultCoverStorage coverStorage = new DefaultCoverStorage(root, 1024);
+        byte[] image = new byte[]{1, 2, 3};
+
+        String hash = coverStorage.store(new ByteArrayInputStream(image));
+        Resource cover = coverStorage.load(hash);
+
+        assertEquals("039058c6f2c0cb492c533b0a4d14ef77cc0f78abccced5287d84a1a2011cfb81", hash);
+        assertNotNull(cover);
+        assertArrayEquals(image, cover.getContentAsByteArray());
+    }
+
+    @Test
+    public void testStoreSameContentOnce() throws IOException {
+        DefaultCoverStorage coverStorage = new DefaultCoverStorage(root, 1024);
+
+        String hash1 = coverStorage.store(new ByteArrayInputStream(new byte[]{4, 5, 6}));
+        String hash2 = coverStorage.store(new ByteArrayInputStream(new byte[]{4, 5, 6}));
+
+        assertEquals(hash1, hash2);
+        try (Stream<Path> files = Files.walk(root)) {
+            assertEquals(1, files.filter(Files::isRegularFile).count());
+        }
+    }
+
+    @Test
+    public void testLoadMissingOrInvalidHash() {
+        DefaultCoverStorage coverStorage = new DefaultCoverStorage(root, 1024);
+
+        assertNull(coverStorage.load("0".repeat(64)));
+        assertNull(coverStorage.load("../../etc/passwd"));
+        assertNull(coverStorage.load(null));
+    }
+
+    @Test
+    public void testStoreRejectsTooLargeContent() throws IOException {
+        DefaultCoverStorage coverStorage = new DefaultCoverStorage(root, 1024);
+
+        assertThrows(IllegalArgumentException.class, () -> coverStorage.store(new ByteArrayInputStream(new byte[1025])));
+
+        try (Stream<Path> files = Files.walk(root)) {
+            assertEquals(0, files.filter(Files::isRegularFile).count());
+        }
+    }
+}
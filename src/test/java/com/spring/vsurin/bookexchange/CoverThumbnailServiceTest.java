@@ -0,0 +1,132 @@
+package com.spring.vsurin.bookexchange;
+
+import com.spring.vsurin.bookexchange.app.CoverStorage;
+import com.spring.vsurin.bookexchange.app.CoverThumbnailService;
+import com.spring.vsurin.bookexchange.app.CoverRenderer;
+import com.spring.vsurin.bookexchange.extern.infrastructure.DefaultCoverStorage;
+import com.spring.vsurin.bookexchange.extern.infrastructure.ImageIoCoverRenderer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.Resource;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class CoverThumbnailServiceTest {
+
+    @TempDir
+    private Path root;
+
+    private CoverThumbnailService coverThumbnailService;
+
+    @AfterEach
+    public void tearDown() {
+        coverThumbnailService.shutdown();
+    }
+
+    @Test
+    public void testGenerateThumbnails() throws Exception {
+        CoverStorage coverStorage = new DefaultCoverStorage(root, 1024 * 1024);
+        coverThumbnailService = new CoverThumbnailService(coverStorage, new ImageIoCoverRenderer(1_000_000), 1, 1024 * 1024);
+        String coverHash = coverStorage.store(new ByteArrayInputStream(png(1000, 500)));
+
+        assertNull(coverThumbnailService.getThumbnail(coverHash, 256));
+        coverThumbnailService.generateThumbnails(coverHash).get();
+
+        for (int size : CoverThumbnailService.THUMBNAIL_SIZES) {
+            Resource thumbnail = coverThumbnailService.getThumbnail(coverHash, size);
+            assertNotNull(thumbnail);
+            try (InputStream in = thumbnail.getInputStream()) {
+                BufferedImage image = ImageIO.read(in);
+                assertEquals(size, image.getWidth());
+                assertEquals(size / 2, image.getHeight());
+            }
+        }
+    }
+
+    @Test
+    public void testGenerateThumbnailsFromSubsampledImage() throws Exception {
+        CoverStorage coverStorage = new DefaultCoverStorage(root, 1024 * 1024);
+        coverThumbnailService = new CoverThumbnailService(coverStorage, new ImageIoCoverRenderer(4_000_000), 1, 1024 * 1024);
+        String coverHash = coverStorage.store(new ByteArrayInputStream(png(2048, 1024)));
+
+        coverThumbnailService.generateThumbnails(coverHash).get();
+
+        for (int size : CoverThumbnailService.THUMBNAIL_SIZES) {
+            try (InputStream in = coverThumbnailService.getThumbnail(coverHash, size).getInputStream()) {
+                BufferedImage image = ImageIO.read(in);
+                assertEquals(size, image.getWidth());
+                assertEquals(size / 2, image.getHeight());
+            }
+        }
+    }
+
+    @Test
+    public void testTooLargeImageIsNotDecoded() throws Exception {
+        CoverStorage coverStorage = spy(new DefaultCoverStorage(root, 1024 * 1024));
+        coverThumbnailService = new CoverThumbnailService(coverStorage, new ImageIoCoverRenderer(1_000_000), 1, 1024 * 1024);
+        String coverHash = coverStorage.store(new ByteArrayInputStream(png(2000, 1000)));
+
+        coverThumbnailService.generateThumbnails(coverHash).get();
+
+        verify(coverStorage, never()).storeRendition(any(), anyInt(), any());
+        assertNull(coverStorage.loadRendition(coverHash, 64));
+    }
+
+    @Test
+    public void testFailedCoverIsNotRebuiltOnRequest() throws Exception {
+        CoverStorage coverStorage = new DefaultCoverStorage(root, 1024 * 1024);
+        CoverRenderer coverRenderer = spy(new ImageIoCoverRenderer(1_000_000));
+        coverThumbnailService = new CoverThumbnailService(coverStorage, coverRenderer, 1, 1024 * 1024);
+        String coverHash = coverStorage.store(new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        coverThumbnailService.generateThumbnails(coverHash).get();
+        assertNull(coverThumbnailService.getThumbnail(coverHash, 64));
+        coverThumbnailService.generateThumbnails(coverHash).get();
+
+        verify(coverRenderer, times(1)).renderThumbnails(any(), any());
+    }
+
+    @Test
+    public void testMissingThumbnailIsRebuiltOnRequest() throws Exception {
+        CoverStorage coverStorage = spy(new DefaultCoverStorage(root, 1024 * 1024));
+        coverThumbnailService = new CoverThumbnailService(coverStorage, new ImageIoCoverRenderer(1_000_000), 1, 1024 * 1024);
+        String coverHash = coverStorage.store(new ByteArrayInputStream(png(300, 300)));
+
+        assertNull(coverThumbnailService.getThumbnail(coverHash, 64));
+
+        verify(coverStorage, timeout(5000)).storeRendition(eq(coverHash), eq(512), any());
+        assertNotNull(coverThumbnailService.getThumbnail(coverHash, 64));
+    }
+
+    @Test
+    public void testThumbnailCacheEvictsLeastRecentlyUsed() throws Exception {
+        CoverStorage coverStorage = spy(new DefaultCoverStorage(root, 1024 * 1024));
+        coverThumbnailService = new CoverThumbnailService(coverStorage, new ImageIoCoverRenderer(1_000_000), 1, 1);
+        coverStorage.storeRendition("a".repeat(64), 64, new ByteArrayInputStream(new byte[]{1}));
+        coverStorage.storeRendition("b".repeat(64), 64, new ByteArrayInputStream(new byte[]{2}));
+
+        coverThumbnailService.getThumbnail("a".repeat(64), 64);
+        coverThumbnailService.getThumbnail("a".repeat(64), 64);
+        verify(coverStorage, times(1)).loadRendition("a".repeat(64), 64);
+
+        coverThumbnailService.getThumbnail("b".repeat(64), 64);
+        coverThumbnailService.getThumbnail("a".repeat(64), 64);
+        verify(coverStorage, times(2)).loadRendition("a".repeat(64), 64);
+    }
+
+    private byte[] png(int width, int height) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB), "png", out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,126 @@
+package com.spring.vsurin.bookexchange;
+
+import com.spring.vsurin.bookexchange.app.EmailDigestCollector;
+import com.spring.vsurin.bookexchange.app.EmailSender;
+import com.spring.vsurin.bookexchange.app.EmailService;
+import com.spring.vsurin.bookexchange.app.MailBuilder;
+import com.spring.vsurin.bookexchange.app.OutboxEmailRepository;
+import com.spring.vsurin.bookexchange.app.UserRepository;
+import com.spring.vsurin.bookexchange.app.UserService;
+import com.spring.vsurin.bookexchange.domain.NotificationMode;
+import com.spring.vsurin.bookexchange.domain.OutboxEmail;
+import com.spring.vsurin.bookexchange.domain.OutboxEmailStatus;
+import com.spring.vsurin.bookexchange.domain.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "bookexchange.mail.dispatch-interval=3600000",
+        "bookexchange.mail.digest-interval=3600000",
+        "bookexchange.mail.digest-window=60000",
+        "bookexchange.mail.digest-max-items=3"
+})
+public class EmailDigestTest {
+
+    private static final String DIGEST_EMAIL = "digest@example.com";
+    private static final String IMMEDIATE_EMAIL = "immediate@example.com";
+
+    @Autowired
+    private EmailService emailService;
+
+    @Autowired
+    private EmailDigestCollector emailDigestCollector;
+
+    @Autowired
+    private MailBuilder mailBuilder;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private OutboxEmailRepository outboxEmailRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @MockBean
+    private EmailSender emailSender;
+
+    private User digestUser;
+    private User immediateUser;
+
+    @BeforeEach
+    public void setUp() {
+        digestUser = userRepository.save(TestData.user(DIGEST_EMAIL).build());
+        immediateUser = userRepository.save(TestData.user(IMMEDIATE_EMAIL).build());
+        userService.updateNotificationMode(digestUser.getId(), NotificationMode.DIGEST);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        outboxEmailRepository.deleteAll();
+        userRepository.deleteById(digestUser.getId());
+        userRepository.deleteById(immediateUser.getId());
+    }
+
+    @Test
+    public void testDigestUserNotificationsAreMergedAfterWindow() {
+        emailService.sendEmail(mailBuilder.buildRejectRequestMessage(DIGEST_EMAIL, 1));
+        emailService.sendEmail(mailBuilder.buildRejectRequestMessage(DIGEST_EMAIL, 2));
+        emailService.sendEmail(mailBuilder.buildCancelMessage(DIGEST_EMAIL, 3));
+        emailService.sendEmail(mailBuilder.buildRejectRequestMessage(IMMEDIATE_EMAIL, 4));
+
+        assertEquals(NotificationMode.DIGEST, userService.getUserById(digestUser.getId()).getNotificationMode());
+        assertEquals(3, outboxEmailRepository.countByStatus(OutboxEmailStatus.BUFFERED));
+        assertEquals(1, outboxEmailRepository.countByStatus(OutboxEmailStatus.PENDING));
+
+        emailDigestCollector.collect();
+        assertEquals(3, outboxEmailRepository.countByStatus(OutboxEmailStatus.BUFFERED));
+
+        jdbcTemplate.update("UPDATE email_outbox SET outbox_created_at = ? WHERE outbox_status = 'BUFFERED'",
+                Timestamp.from(Instant.now().minusSeconds(120)));
+        emailDigestCollector.collect();
+
+        assertEquals(0, outboxEmailRepository.countByStatus(OutboxEmailStatus.BUFFERED));
+        List<OutboxEmail> pending = outboxEmailRepository.findAll().stream()
+                .filter(email -> email.getReceiver().equals(DIGEST_EMAIL))
+                .toList();
+        assertEquals(1, pending.size());
+        assertEquals("BookExchange - Сводка уведомлений (3)", pending.get(0).getSubject());
+        assertTrue(pending.get(0).getMessage().contains("BookExchange - Заявка на обмен отклонена (2):\n- Ваша заявка №1"), pending.get(0).getMessage());
+        assertTrue(pending.get(0).getMessage().contains("BookExchange - Обмен отменён админом (1):"), pending.get(0).getMessage());
+    }
+
+    @Test
+    public void testLargeDigestIsSplit() {
+        for (int i = 1; i <= 5; i++) {
+            emailService.sendEmail(mailBuilder.buildRejectRequestMessage(DIGEST_EMAIL, i));
+        }
+        jdbcTemplate.update("UPDATE email_outbox SET outbox_created_at = ? WHERE outbox_status = 'BUFFERED'",
+                Timestamp.from(Instant.now().minusSeconds(120)));
+
+        emailDigestCollector.collect();
+
+        assertEquals(0, outboxEmailRepository.countByStatus(OutboxEmailStatus.BUFFERED));
+        List<String> subjects = outboxEmailRepository.findAll().stream()
+                .map(OutboxEmail::getSubject)
+                .sorted()
+                .toList();
+        assertEquals(List.of("BookExchange - Сводка уведомлений (2)", "BookExchange - Сводка уведомлений (3)"), subjects);
+    }
+}
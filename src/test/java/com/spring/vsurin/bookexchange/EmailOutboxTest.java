@@ -0,0 +1,168 @@
+package com.spring.vsurin.bookexchange;
+
+import com.spring.vsurin.bookexchange.app.EmailOutboxDispatcher;
+import com.spring.vsurin.bookexchange.app.EmailSender;
+import com.spring.vsurin.bookexchange.app.EmailService;
+import com.spring.vsurin.bookexchange.app.OutboxEmailRepository;
+import com.spring.vsurin.bookexchange.domain.EmailData;
+import com.spring.vsurin.bookexchange.domain.OutboxEmail;
+import com.spring.vsurin.bookexchange.domain.OutboxEmailStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mail.MailSendException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest(properties = {
+        "bookexchange.mail.dispatch-interval=3600000",
+        "bookexchange.mail.max-attempts=2",
+        "bookexchange.mail.backoff-initial=60000",
+        "bookexchange.mail.backoff-max=300000"
+})
+public class EmailOutboxTest {
+
+    @Autowired
+    private EmailService emailService;
+
+    @Autowired
+    private EmailOutboxDispatcher dispatcher;
+
+    @Autowired
+    private OutboxEmailRepository outboxEmailRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @MockBean
+    private EmailSender emailSender;
+
+    @AfterEach
+    public void tearDown() {
+        outboxEmailRepository.deleteAll();
+    }
+
+    @Test
+    public void testEmailIsSentOnlyAfterCommit() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.executeWithoutResult(status -> {
+            emailService.sendEmail(new EmailData("reader@example.com", "Заявка", "Вам пришла заявка"));
+            verify(emailSender, never()).send(any());
+        });
+        transaction.executeWithoutResult(status -> {
+            emailService.sendEmail(new EmailData("reader@example.com", "Отменено", "Это письмо не уйдёт"));
+            status.setRollbackOnly();
+        });
+
+        assertEquals(1, outboxEmailRepository.countByStatus(OutboxEmailStatus.PENDING));
+
+        dispatcher.dispatch().join();
+
+        ArgumentCaptor<EmailData> sent = ArgumentCaptor.forClass(EmailData.class);
+        verify(emailSender).send(sent.capture());
+        assertEquals("reader@example.com", sent.getValue().getEmailReceiver());
+        assertEquals("Вам пришла заявка", sent.getValue().getEmailMessage());
+
+        OutboxEmail email = outboxEmailRepository.findAll().get(0);
+        assertEquals(OutboxEmailStatus.SENT, email.getStatus());
+        assertEquals(1, email.getAttempts());
+        assertNull(email.getClaimToken());
+    }
+
+    @Test
+    public void testFailedEmailIsRetriedWithBackoffThenDeadLettered() {
+        doThrow(new MailSendException("SMTP недоступен")).when(emailSender).send(any());
+        emailService.sendEmail(new EmailData("reader@example.com", "Обмен", "Обмен завершён"));
+
+        Instant before = Instant.now();
+        dispatcher.dispatch().join();
+
+        OutboxEmail email = outboxEmailRepository.findAll().get(0);
+        assertEquals(OutboxEmailStatus.PENDING, email.getStatus());
+        assertEquals(1, email.getAttempts());
+        assertEquals("SMTP недоступен", email.getLastError());
+        assertTrue(email.getNextAttemptAt().isAfter(before.plus(Duration.ofSeconds(59))), email.getNextAttemptAt().toString());
+
+        dispatcher.dispatch().join();
+        verify(emailSender, times(1)).send(any());
+
+        jdbcTemplate.update("UPDATE email_outbox SET outbox_next_attempt_at = ?", Timestamp.from(Instant.now().minusSeconds(1)));
+        dispatcher.dispatch().join();
+
+        email = outboxEmailRepository.findAll().get(0);
+        assertEquals(OutboxEmailStatus.DEAD, email.getStatus());
+        assertEquals(2, email.getAttempts());
+
+        jdbcTemplate.update("UPDATE email_outbox SET outbox_next_attempt_at = ?", Timestamp.from(Instant.now().minusSeconds(1)));
+        dispatcher.dispatch().join();
+        verify(emailSender, times(2)).send(any());
+    }
+
+    @Test
+    public void testAttemptIsNotRecordedAfterEmailIsReclaimed() {
+        emailService.sendEmail(new EmailData("reader@example.com", "Обмен", "Обмен завершён"));
+        // Пока письмо отправляется, аренда истекает и письмо забирает другой обработчик
+        doAnswer(invocation -> jdbcTemplate.update("UPDATE email_outbox SET outbox_claim_token = 'other'"))
+                .when(emailSender).send(any());
+
+        dispatcher.dispatch().join();
+
+        OutboxEmail email = outboxEmailRepository.findAll().get(0);
+        assertEquals(OutboxEmailStatus.PENDING, email.getStatus());
+        assertEquals(0, email.getAttempts());
+        assertEquals("other", email.getClaimToken());
+    }
+
+    @Test
+    public void testLongEmailIsEnqueuedAndSent() {
+        String message = "Текст жалобы. ".repeat(2000);
+        emailService.sendEmail(new EmailData("admin@example.com", "Жалоба", message));
+
+        dispatcher.dispatch().join();
+
+        ArgumentCaptor<EmailData> sent = ArgumentCaptor.forClass(EmailData.class);
+        verify(emailSender).send(sent.capture());
+        assertEquals(message, sent.getValue().getEmailMessage());
+    }
+
+    @Test
+    public void testSentAndExpiredDeadEmailsArePurged() {
+        for (String receiver : List.of("sent@example.com", "old-dead@example.com", "dead@example.com", "pending@example.com")) {
+            emailService.sendEmail(new EmailData(receiver, "Обмен", "Обмен завершён"));
+        }
+        jdbcTemplate.update("UPDATE email_outbox SET outbox_status = 'SENT' WHERE outbox_receiver = 'sent@example.com'");
+        jdbcTemplate.update("UPDATE email_outbox SET outbox_status = 'DEAD' WHERE outbox_receiver LIKE '%dead@example.com'");
+        jdbcTemplate.update("UPDATE email_outbox SET outbox_created_at = ? WHERE outbox_receiver = 'old-dead@example.com'",
+                Timestamp.from(Instant.now().minus(Duration.ofDays(8))));
+
+        dispatcher.purge();
+
+        assertEquals(List.of("dead@example.com", "pending@example.com"),
+                outboxEmailRepository.findAll().stream().map(OutboxEmail::getReceiver).sorted().toList());
+    }
+
+    @Test
+    public void testBackoffDoublesUpToLimit() {
+        assertEquals(60000, dispatcher.backoff(1));
+        assertEquals(120000, dispatcher.backoff(2));
+        assertEquals(240000, dispatcher.backoff(3));
+        assertEquals(300000, dispatcher.backoff(4));
+        assertEquals(300000, dispatcher.backoff(100));
+    }
+}
@@ -0,0 +1,98 @@
+package com.spring.vsurin.bookexchange;
+
+import com.spring.vsurin.bookexchange.app.EmailDispatchStatistics;
+import com.spring.vsurin.bookexchange.app.EmailOutboxDispatcher;
+import com.spring.vsurin.bookexchange.app.EmailRateLimiter;
+import com.spring.vsurin.bookexchange.app.EmailSender;
+import com.spring.vsurin.bookexchange.app.EmailService;
+import com.spring.vsurin.bookexchange.app.OutboxEmailRepository;
+import com.spring.vsurin.bookexchange.domain.EmailData;
+import com.spring.vsurin.bookexchange.domain.OutboxEmail;
+import com.spring.vsurin.bookexchange.domain.OutboxEmailStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest(properties = {
+        "bookexchange.mail.dispatch-interval=3600000",
+        "bookexchange.mail.digest-interval=3600000",
+        "bookexchange.mail.rate.per-second=1",
+        "bookexchange.mail.rate.burst=2"
+})
+public class EmailRateLimitTest {
+
+    @Autowired
+    private EmailService emailService;
+
+    @Autowired
+    private EmailOutboxDispatcher dispatcher;
+
+    @Autowired
+    private OutboxEmailRepository outboxEmailRepository;
+
+    @MockBean
+    private EmailSender emailSender;
+
+    @AfterEach
+    public void tearDown() {
+        outboxEmailRepository.deleteAll();
+    }
+
+    @Test
+    public void testEmailsOverDomainLimitAreDeferredWithoutAttempt() {
+        for (int i = 0; i < 5; i++) {
+            emailService.sendEmail(new EmailData("reader" + i + "@mail.ru", "Книга", "Книга снова доступна"));
+        }
+        emailService.sendEmail(new EmailData("reader@Example.com", "Книга", "Книга снова доступна"));
+
+        Instant before = Instant.now();
+        dispatcher.dispatch().join();
+
+        verify(emailSender, times(3)).send(any());
+
+        List<OutboxEmail> deferred = outboxEmailRepository.findAll().stream()
+                .filter(email -> email.getStatus() == OutboxEmailStatus.PENDING)
+                .toList();
+        assertEquals(3, deferred.size());
+        for (OutboxEmail email : deferred) {
+            assertTrue(email.getReceiver().endsWith("@mail.ru"));
+            assertEquals(0, email.getAttempts());
+            assertNull(email.getClaimToken());
+            assertTrue(email.getNextAttemptAt().isAfter(before), email.getNextAttemptAt().toString());
+        }
+        assertEquals(3, deferred.stream().map(OutboxEmail::getNextAttemptAt).distinct().count());
+
+        dispatcher.dispatch().join();
+        verify(emailSender, times(3)).send(any());
+
+        EmailDispatchStatistics statistics = dispatcher.getStatistics();
+        assertEquals(3, statistics.pending());
+        assertEquals(3, statistics.sent());
+        assertEquals(3, statistics.deferred());
+        assertEquals(0, statistics.rejected());
+        assertEquals(0, statistics.deadLettered());
+        assertEquals(0, statistics.queued());
+    }
+
+    @Test
+    public void testBucketRefillsOverTime() throws InterruptedException {
+        EmailRateLimiter limiter = new EmailRateLimiter(20, 1);
+
+        assertEquals(0, limiter.tryAcquire("reader@mail.ru"));
+        long wait = limiter.tryAcquire("other@MAIL.RU");
+        assertTrue(wait > 0 && wait <= 50, String.valueOf(wait));
+        assertEquals(0, limiter.tryAcquire("reader@gmail.com"));
+
+        Thread.sleep(60);
+        assertEquals(0, limiter.tryAcquire("reader@mail.ru"));
+    }
+}
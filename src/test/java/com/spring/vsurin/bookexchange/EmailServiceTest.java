@@ -1,23 +1,52 @@
 package com.spring.vsurin.bookexchange;
 
+import com.spring.vsurin.bookexchange.app.OutboxEmailRepository;
+import com.spring.vsurin.bookexchange.app.UserRepository;
 import com.spring.vsurin.bookexchange.domain.EmailData;
+import com.spring.vsurin.bookexchange.domain.OutboxEmail;
+import com.spring.vsurin.bookexchange.domain.OutboxEmailStatus;
+import com.spring.vsurin.bookexchange.extern.infrastructure.DefaultEmailSender;
 import com.spring.vsurin.bookexchange.extern.infrastructure.DefaultEmailService;
+import com.spring.vsurin.bookexchange.extern.infrastructure.SmtpConnectionPool;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.mail.SimpleMailMessage;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 public class EmailServiceTest {
 
     @Mock
-    private JavaMailSender javaMailSender;
+    private SmtpConnectionPool smtpConnectionPool;
+
+    @Mock
+    private OutboxEmailRepository outboxEmailRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @InjectMocks
+    private DefaultEmailSender emailSender;
 
     @InjectMocks
     private DefaultEmailService emailService;
@@ -28,8 +57,33 @@ public class EmailServiceTest {
         String subject = "Test Subject";
         String message = "Test Message";
 
-        emailService.sendEmail(new EmailData(address, subject, message));
+        when(smtpConnectionPool.createMimeMessage()).thenReturn(new MimeMessage((Session) null));
+        ReflectionTestUtils.setField(emailSender, "emailFrom", "bookexchange@example.com");
+
+        emailSender.send(new EmailData(address, subject, message));
+
+        verify(smtpConnectionPool).send(any(MimeMessage.class));
+    }
+
+    @Test
+    public void testSendEmail_Enqueued() {
+        emailService.sendEmail(new EmailData("recipient@example.com", "Test Subject", "Test Message"));
+
+        ArgumentCaptor<OutboxEmail> captor = ArgumentCaptor.forClass(OutboxEmail.class);
+        verify(outboxEmailRepository).save(captor.capture());
+        assertEquals("recipient@example.com", captor.getValue().getReceiver());
+        assertEquals(OutboxEmailStatus.PENDING, captor.getValue().getStatus());
+    }
+
+    @Test
+    public void testSendEmails_EnqueuedAsOneBatch() {
+        List<EmailData> emails = List.of(
+                new EmailData("first@example.com", "Test Subject", "First Message"),
+                new EmailData("second@example.com", "Test Subject", "Second Message"));
+        when(userRepository.findEmailsByNotificationMode(anyList(), any())).thenReturn(List.of());
+
+        emailService.sendEmails(emails);
 
-        verify(javaMailSender).send(any(SimpleMailMessage.class));
+        verify(jdbcTemplate).batchUpdate(anyString(), eq(emails), eq(2), any(ParameterizedPreparedStatementSetter.class));
     }
 }
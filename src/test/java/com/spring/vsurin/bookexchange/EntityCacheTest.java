@@ -0,0 +1,122 @@
+package com.spring.vsurin.bookexchange;
+
+import com.spring.vsurin.bookexchange.app.BookRepository;
+import com.spring.vsurin.bookexchange.app.BookService;
+import com.spring.vsurin.bookexchange.app.EntityCache;
+import com.spring.vsurin.bookexchange.app.EntityCacheStatistics;
+import com.spring.vsurin.bookexchange.domain.Book;
+import com.spring.vsurin.bookexchange.extern.infrastructure.BoundedStorageAccess;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@StatementCountTest
+public class EntityCacheTest {
+
+    @Autowired
+    private BookService bookService;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private EntityCache entityCache;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+    private Book book;
+    private Book otherBook;
+
+    @BeforeEach
+    public void setUp() {
+        book = bookRepository.save(TestData.book("Отцы и дети").build());
+        otherBook = bookRepository.save(TestData.book("Дым").build());
+
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        bookRepository.deleteById(book.getId());
+        bookRepository.deleteById(otherBook.getId());
+    }
+
+    @Test
+    public void testSecondReadIsServedFromCache() {
+        bookService.getBookById(book.getId());
+        long statements = statistics.getPrepareStatementCount();
+
+        Book found = bookService.getBookById(book.getId());
+
+        assertEquals("Отцы и дети", found.getTitle());
+        assertEquals(statements, statistics.getPrepareStatementCount());
+        assertTrue(statistics.getSecondLevelCacheHitCount() >= 1, statistics.toString());
+        assertTrue(entityCache.getStatistics().stream()
+                .anyMatch(region -> region.region().equals(Book.class.getName()) && region.hits() >= 1));
+    }
+
+    @Test
+    public void testReadAfterUpdateSeesNewValue() {
+        bookService.getBookById(book.getId());
+
+        bookService.updateDescriptionToBook(book.getId(), "Роман о нигилисте");
+
+        assertEquals("Роман о нигилисте", bookService.getBookById(book.getId()).getDescription());
+    }
+
+    @Test
+    public void testTouchBookKeepsOtherBooksCached() {
+        bookService.getBookById(book.getId());
+        bookService.getBookById(otherBook.getId());
+
+        bookService.touchBook(book.getId());
+        bookService.updateOfferCount(book.getId(), 0);
+        long statements = statistics.getPrepareStatementCount();
+
+        assertEquals("Дым", bookService.getBookById(otherBook.getId()).getTitle());
+        assertEquals(statements, statistics.getPrepareStatementCount());
+
+        Book touched = bookService.getBookById(book.getId());
+        assertEquals(book.getVersion() + 2, touched.getVersion());
+        assertTrue(statistics.getPrepareStatementCount() > statements);
+    }
+
+    @Test
+    public void testStorageIsBoundedAndKeepsFrequentlyReadEntries() {
+        BoundedStorageAccess storage = new BoundedStorageAccess("books", 2, 0);
+        storage.putIntoCache(1L, "первая", null);
+        for (long key = 2; key <= 10; key++) {
+            storage.getFromCache(1L, null);
+            storage.putIntoCache(key, "запись " + key, null);
+        }
+
+        EntityCacheStatistics regionStatistics = storage.getStatistics();
+        assertEquals("первая", storage.getFromCache(1L, null));
+        assertEquals(2, regionStatistics.size());
+        assertEquals(8, regionStatistics.evictions());
+        assertEquals(10, regionStatistics.puts());
+        assertEquals(9, regionStatistics.hits());
+    }
+
+    @Test
+    public void testStorageExpiresEntries() throws InterruptedException {
+        BoundedStorageAccess storage = new BoundedStorageAccess("books", 10, 20);
+        storage.putIntoCache(1L, "первая", null);
+
+        Thread.sleep(50);
+
+        assertNull(storage.getFromCache(1L, null));
+        assertEquals(1, storage.getStatistics().expirations());
+        assertEquals(0, storage.getStatistics().size());
+    }
+}
@@ -0,0 +1,108 @@
+package com.spring.vsurin.bookexchange;
+
+import com.spring.vsurin.bookexchange.app.BookRepository;
+import com.spring.vsurin.bookexchange.app.ExchangeRepository;
+import com.spring.vsurin.bookexchange.app.UserRepository;
+import com.spring.vsurin.bookexchange.app.UserService;
+import com.spring.vsurin.bookexchange.domain.Book;
+import com.spring.vsurin.bookexchange.domain.Exchange;
+import com.spring.vsurin.bookexchange.domain.ExchangeStatus;
+import com.spring.vsurin.bookexchange.domain.User;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@StatementCountTest
+@Transactional
+public class ExchangeQueriesTest {
+
+    private static final int COMPLETED_EXCHANGES = 200;
+    private static final Set<ExchangeStatus> ACTIVE = EnumSet.of(ExchangeStatus.CONFIRMED, ExchangeStatus.IN_PROGRESS, ExchangeStatus.PROBLEMS);
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private ExchangeRepository exchangeRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+    private User user;
+    private User otherUser;
+    private Book activeBook;
+    private Book completedBook;
+
+    @BeforeEach
+    public void setUp() {
+        activeBook = bookRepository.save(TestData.book("Обломов").build());
+        completedBook = bookRepository.save(TestData.book("Обрыв").build());
+        Book otherBook = bookRepository.save(TestData.book("Обыкновенная история").build());
+        user = userRepository.save(TestData.user("exchanges1@example.com").build());
+        otherUser = userRepository.save(TestData.user("exchanges2@example.com").build());
+
+        for (int i = 0; i < COMPLETED_EXCHANGES; i++) {
+            saveExchange(user, otherUser, completedBook, otherBook, ExchangeStatus.COMPLETED);
+        }
+        saveExchange(otherUser, user, otherBook, activeBook, ExchangeStatus.PROBLEMS);
+
+        entityManager.flush();
+        entityManager.clear();
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    public void testActiveExchangeIsFoundWithOneQuery() {
+        assertTrue(exchangeRepository.existsByMemberAndBook(user.getId(), activeBook.getId(), ACTIVE));
+        assertFalse(exchangeRepository.existsByMemberAndBook(user.getId(), completedBook.getId(), ACTIVE));
+
+        assertEquals(2, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityLoadCount());
+    }
+
+    @Test
+    public void testExchangesArePagedAndFilteredByStatus() {
+        Page<Exchange> page = userService.getAllUserExchanges(user.getId(), null, PageRequest.of(0, 20));
+        Page<Exchange> problems = userService.getAllUserExchanges(otherUser.getId(), ExchangeStatus.PROBLEMS, PageRequest.of(0, 20));
+
+        assertEquals(20, page.getNumberOfElements());
+        assertEquals(COMPLETED_EXCHANGES + 1, page.getTotalElements());
+        assertEquals(1, problems.getTotalElements());
+        assertEquals(activeBook.getId(), problems.getContent().get(0).getExchangedBook2().getId());
+        assertEquals(3, statistics.getPrepareStatementCount());
+    }
+
+    private void saveExchange(User member1, User member2, Book book1, Book book2, ExchangeStatus status) {
+        exchangeRepository.save(Exchange.builder()
+                .member1(member1)
+                .member2(member2)
+                .exchangedBook1(book1)
+                .exchangedBook2(book2)
+                .status(status)
+                .build());
+    }
+}
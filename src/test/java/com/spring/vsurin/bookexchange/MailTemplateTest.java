@@ -0,0 +1,65 @@
+package com.spring.vsurin.bookexchange;
+
+import com.spring.vsurin.bookexchange.domain.Book;
+import com.spring.vsurin.bookexchange.domain.BookGenre;
+import com.spring.vsurin.bookexchange.domain.EmailData;
+import com.spring.vsurin.bookexchange.extern.infrastructure.DefaultMailBuilder;
+import com.spring.vsurin.bookexchange.extern.infrastructure.MailTemplate;
+import org.junit.jupiter.api.Test;
+
+import java.time.Year;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MailTemplateTest {
+
+    @Test
+    public void testTemplateRendersArgumentsInAnyOrder() {
+        MailTemplate template = MailTemplate.compile("Тема", "{1} - {0}, {1}: {2}");
+
+        assertEquals("Тема", template.getSubject());
+        assertEquals("Булгаков - Мастер и Маргарита, Булгаков: 1234567", template.render("Мастер и Маргарита", "Булгаков", 1234567L));
+        assertEquals("null - {x}, null: 0", template.render("{x}", null, 0));
+        assertThrows(IllegalArgumentException.class, () -> MailTemplate.compile("Тема", "Заявка №{0"));
+        assertThrows(IllegalArgumentException.class, () -> MailTemplate.compile("Тема", "Заявка №{id}"));
+    }
+
+    @Test
+    public void testBuilderKeepsMessageText() {
+        DefaultMailBuilder mailBuilder = new DefaultMailBuilder(10);
+        Book book = Book.builder()
+                .title("Мастер и Маргарита")
+                .author("Михаил Булгаков")
+                .isbn("978-5-17-090630-1")
+                .genre(BookGenre.FICTION)
+                .publicationYear(Year.of(1967))
+                .build();
+
+        EmailData createRequest = mailBuilder.buildCreateRequestMessage("recipient@example.com", 123, book);
+        EmailData complaint = mailBuilder.buildSendComplaintMessage("admin@example.com", 5, "Книга", "Текст");
+
+        assertEquals("BookExchange - Заявка на обмен", createRequest.getEmailSubject());
+        assertEquals("Вам отправлена заявка №123 на обмен книгами. " +
+                "Отправитель хочет получить у вас книгу Михаил Булгаков - Мастер и Маргарита. " +
+                "Принять или отклонить заявку можно в приложении BookExchange.", createRequest.getEmailMessage());
+        assertEquals("recipient@example.com", createRequest.getEmailReceiver());
+        assertEquals("Предмет жалобы: Книга\nId предмета жалобы: 5\nТекст жалобы: Текст", complaint.getEmailMessage());
+    }
+
+    @Test
+    public void testFanOutRendersSharedBodyOnce() {
+        DefaultMailBuilder mailBuilder = new DefaultMailBuilder(1);
+
+        EmailData first = mailBuilder.buildAvailableFromWishlistMessage("reader1@example.com", "Идиот", "Фёдор Достоевский", "user");
+        EmailData second = mailBuilder.buildAvailableFromWishlistMessage("reader2@example.com", "Идиот", "Фёдор Достоевский", "user");
+
+        assertEquals("reader2@example.com", second.getEmailReceiver());
+        assertSame(first.getEmailMessage(), second.getEmailMessage());
+
+        mailBuilder.buildRejectRequestMessage("reader1@example.com", 1);
+        EmailData afterEviction = mailBuilder.buildAvailableFromWishlistMessage("reader3@example.com", "Идиот", "Фёдор Достоевский", "user");
+
+        assertEquals(first.getEmailMessage(), afterEviction.getEmailMessage());
+        assertNotSame(first.getEmailMessage(), afterEviction.getEmailMessage());
+    }
+}
@@ -0,0 +1,122 @@
+package com.spring.vsurin.bookexchange;
+
+import com.spring.vsurin.bookexchange.app.BookRepository;
+import com.spring.vsurin.bookexchange.app.EntityCache;
+import com.spring.vsurin.bookexchange.app.RatingAccumulator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class RatingAccumulatorTest {
+
+    private static final int WRITERS = 64;
+    private static final int MARKS_PER_WRITER = 5_000;
+    private static final int BOOKS = 4;
+
+    @Mock
+    private BookRepository bookRepository;
+
+    @Mock
+    private EntityCache entityCache;
+
+    private final Map<Long, AtomicLong> storedSums = new ConcurrentHashMap<>();
+    private final Map<Long, AtomicLong> storedCounts = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    public void setUp() {
+        lenient().doAnswer(invocation -> {
+            long bookId = invocation.getArgument(0);
+            storedSums.computeIfAbsent(bookId, id -> new AtomicLong()).addAndGet(invocation.getArgument(1));
+            storedCounts.computeIfAbsent(bookId, id -> new AtomicLong()).addAndGet((int) invocation.getArgument(2));
+            return null;
+        }).when(bookRepository).addMarks(anyLong(), anyLong(), anyInt());
+    }
+
+    @Test
+    public void testNoMarksLostUnderConcurrentWriters() throws Exception {
+        RatingAccumulator ratingAccumulator = new RatingAccumulator(bookRepository, entityCache, 500);
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS);
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Future<?>> writers = new ArrayList<>();
+        for (int w = 0; w < WRITERS; w++) {
+            int writer = w;
+            writers.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < MARKS_PER_WRITER; i++) {
+                    ratingAccumulator.add(1 + (writer + i) % BOOKS, 1 + i % 10);
+                }
+                return null;
+            }));
+        }
+
+        Future<?> flusher = executor.submit(() -> {
+            start.await();
+            for (int i = 0; i < 50; i++) {
+                ratingAccumulator.flush();
+            }
+            return null;
+        });
+
+        start.countDown();
+        for (Future<?> writer : writers) {
+            writer.get();
+        }
+        flusher.get();
+        executor.shutdown();
+        ratingAccumulator.flush();
+
+        long totalCount = storedCounts.values().stream().mapToLong(AtomicLong::get).sum();
+        long totalSum = storedSums.values().stream().mapToLong(AtomicLong::get).sum();
+        assertEquals((long) WRITERS * MARKS_PER_WRITER, totalCount);
+        assertEquals((long) WRITERS * (MARKS_PER_WRITER / 10) * 55, totalSum);
+        for (long bookId = 1; bookId <= BOOKS; bookId++) {
+            assertEquals((long) WRITERS * MARKS_PER_WRITER / BOOKS, storedCounts.get(bookId).get());
+        }
+    }
+
+    @Test
+    public void testFailedFlushIsRetried() {
+        RatingAccumulator ratingAccumulator = new RatingAccumulator(bookRepository, entityCache, 1000);
+        doThrow(new RuntimeException("База недоступна")).doNothing().when(bookRepository).addMarks(anyLong(), anyLong(), anyInt());
+
+        ratingAccumulator.add(1, 5);
+        ratingAccumulator.add(1, 7);
+        ratingAccumulator.flush();
+        ratingAccumulator.flush();
+
+        verify(bookRepository, times(2)).addMarks(1, 12, 2);
+    }
+
+    @Test
+    public void testFlushWhenBatchSizeReached() {
+        RatingAccumulator ratingAccumulator = new RatingAccumulator(bookRepository, entityCache, 2);
+
+        ratingAccumulator.add(1, 5);
+        verify(bookRepository, never()).addMarks(anyLong(), anyLong(), anyInt());
+
+        ratingAccumulator.add(2, 9);
+        verify(bookRepository).addMarks(1, 5, 1);
+        verify(bookRepository).addMarks(2, 9, 1);
+        verify(entityCache).evictBook(1);
+        verify(entityCache).evictBook(2);
+    }
+}
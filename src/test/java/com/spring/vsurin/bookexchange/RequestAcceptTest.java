@@ -0,0 +1,122 @@
+package com.spring.vsurin.bookexchange;
+
+import com.spring.vsurin.bookexchange.app.BookRepository;
+import com.spring.vsurin.bookexchange.app.OutboxEmailRepository;
+import com.spring.vsurin.bookexchange.app.RequestRepository;
+import com.spring.vsurin.bookexchange.app.RequestService;
+import com.spring.vsurin.bookexchange.app.SecurityContextService;
+import com.spring.vsurin.bookexchange.app.UserRepository;
+import com.spring.vsurin.bookexchange.domain.Book;
+import com.spring.vsurin.bookexchange.domain.OutboxEmail;
+import com.spring.vsurin.bookexchange.domain.OutboxEmailStatus;
+import com.spring.vsurin.bookexchange.domain.Request;
+import com.spring.vsurin.bookexchange.domain.RequestStatus;
+import com.spring.vsurin.bookexchange.domain.User;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@StatementCountTest
+@Transactional
+public class RequestAcceptTest {
+
+    @Autowired
+    private RequestService requestService;
+
+    @Autowired
+    private RequestRepository requestRepository;
+
+    @Autowired
+    private OutboxEmailRepository outboxEmailRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @MockBean
+    private SecurityContextService securityContextService;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    public void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    public void testCompetingRequestsAreRejectedWithConstantNumberOfStatements() {
+        List<Request> few = saveCompetingRequests("few", 3);
+        List<Request> many = saveCompetingRequests("many", 30);
+
+        long fewStatements = accept(few.get(0));
+        long manyStatements = accept(many.get(0));
+
+        assertEquals(fewStatements, manyStatements);
+
+        assertEquals(RequestStatus.ACCEPTED, requestRepository.findById(many.get(0).getId()).getStatus());
+        for (Request rejected : many.subList(1, many.size())) {
+            assertEquals(RequestStatus.REJECTED, requestRepository.findById(rejected.getId()).getStatus());
+        }
+
+        List<OutboxEmail> emails = outboxEmailRepository.findAll();
+        assertEquals(few.size() + many.size(), emails.size());
+        assertTrue(emails.stream().allMatch(email -> email.getStatus() == OutboxEmailStatus.PENDING));
+        assertTrue(emails.stream().anyMatch(email -> email.getReceiver().equals("many29@example.com")
+                && email.getMessage().contains(String.valueOf(many.get(29).getId()))));
+    }
+
+    private long accept(Request request) {
+        entityManager.flush();
+        entityManager.clear();
+        statistics.clear();
+
+        requestService.acceptRequest(request.getId(), request.getBookReceiverWants().getId());
+        entityManager.flush();
+        return statistics.getPrepareStatementCount();
+    }
+
+    /**
+     * Создаёт заявки нескольких отправителей на одну книгу; первый отправитель предлагает книгу, выбранную получателем.
+     */
+    private List<Request> saveCompetingRequests(String prefix, int count) {
+        Book wanted = bookRepository.save(TestData.book(prefix + "-wanted").build());
+        Book offered = bookRepository.save(TestData.book(prefix + "-offered").build());
+        User receiver = userRepository.save(TestData.user(prefix + "-receiver@example.com")
+                .offeredBooks(new ArrayList<>(List.of(wanted)))
+                .build());
+
+        List<Request> requests = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            User sender = userRepository.save(TestData.user(prefix + i + "@example.com")
+                    .offeredBooks(i == 0 ? new ArrayList<>(List.of(offered)) : new ArrayList<>())
+                    .build());
+            requests.add(requestRepository.save(Request.builder()
+                    .sender(sender)
+                    .receiver(receiver)
+                    .bookSenderWants(wanted)
+                    .bookReceiverWants(offered)
+                    .status(RequestStatus.ACTUAL)
+                    .build()));
+        }
+        return requests;
+    }
+}
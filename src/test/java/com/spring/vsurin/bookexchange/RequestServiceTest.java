@@ -85,7 +85,8 @@ public class RequestServiceTest {
         SecurityContextHolder.setContext(securityContext);
 
         requestService.acceptRequest(1, 1);
-        verify(emailService, times(2)).sendEmail(any(EmailData.class));
+        verify(emailService, times(1)).sendEmail(any(EmailData.class));
+        verify(emailService, times(1)).sendEmails(argThat(emails -> emails.size() == 1));
 
         assertEquals(RequestStatus.ACCEPTED, requestService.getRequestById(1).getStatus());
         assertEquals(RequestStatus.REJECTED, requestService.getRequestById(2).getStatus());
@@ -110,7 +111,8 @@ public class RequestServiceTest {
         SecurityContextHolder.setContext(securityContext);
 
         requestService.acceptRequest(1, 1);
-        verify(emailService, times(2)).sendEmail(any(EmailData.class));
+        verify(emailService, times(1)).sendEmail(any(EmailData.class));
+        verify(emailService, times(1)).sendEmails(argThat(emails -> emails.size() == 1));
 
         assertEquals(RequestStatus.ACCEPTED, requestService.getRequestById(1).getStatus());
         assertEquals(RequestStatus.ACTUAL, requestService.getRequestById(3).getStatus());
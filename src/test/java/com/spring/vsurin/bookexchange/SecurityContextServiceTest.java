@@ -5,6 +5,7 @@ import com.spring.vsurin.bookexchange.app.UserRepository;
 import com.spring.vsurin.bookexchange.domain.User;
 import com.spring.vsurin.bookexchange.domain.UserGender;
 import com.spring.vsurin.bookexchange.domain.UserRole;
+import com.spring.vsurin.bookexchange.extern.infrastructure.CustomOAuth2UserService;
 import com.spring.vsurin.bookexchange.extern.infrastructure.DefaultSecurityContextService;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
@@ -13,10 +14,18 @@ import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.session.SessionInformation;
+import org.springframework.security.core.session.SessionRegistry;
 import org.springframework.security.oauth2.core.user.OAuth2User;
 
+import java.util.Date;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.mockito.Mockito.when;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
 
 @DataJpaTest
 public class SecurityContextServiceTest {
@@ -36,6 +45,9 @@ public class SecurityContextServiceTest {
     @Mock
     private SecurityContext securityContext;
 
+    @Mock
+    private SessionRegistry sessionRegistry;
+
     @Test
     public void testGetCurrentAuthId() {
         User user = User.builder()
@@ -59,4 +71,32 @@ public class SecurityContextServiceTest {
         Long id = securityContextService.getCurrentAuthId();
         assertEquals(user.getId(), id);
     }
+
+    @Test
+    public void testGetCurrentAuthIdFromAttribute() {
+        when(oauth2User.getAttribute(CustomOAuth2UserService.USER_ID_ATTRIBUTE)).thenReturn(5L);
+        when(authentication.getPrincipal()).thenReturn(oauth2User);
+        when(securityContext.getAuthentication()).thenReturn(authentication);
+        SecurityContextHolder.setContext(securityContext);
+
+        assertEquals(5L, securityContextService.getCurrentAuthId());
+        verify(userRepository, never()).findByEmail(anyString());
+    }
+
+    @Test
+    public void testInvalidateUser() {
+        OAuth2User otherUser = mock(OAuth2User.class);
+        when(oauth2User.getAttribute(CustomOAuth2UserService.USER_ID_ATTRIBUTE)).thenReturn(5L);
+        when(otherUser.getAttribute(CustomOAuth2UserService.USER_ID_ATTRIBUTE)).thenReturn(6L);
+        SessionInformation session = new SessionInformation(oauth2User, "session1", new Date());
+        SessionInformation otherSession = new SessionInformation(otherUser, "session2", new Date());
+        when(sessionRegistry.getAllPrincipals()).thenReturn(List.of(oauth2User, otherUser));
+        when(sessionRegistry.getAllSessions(oauth2User, false)).thenReturn(List.of(session));
+        when(sessionRegistry.getAllSessions(otherUser, false)).thenReturn(List.of(otherSession));
+
+        securityContextService.invalidateUser(5);
+
+        assertTrue(session.isExpired());
+        assertFalse(otherSession.isExpired());
+    }
 }
@@ -0,0 +1,25 @@
+package com.spring.vsurin.bookexchange;
+
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Общая настройка тестов, которые сами создают свои данные через {@link TestData} и не используют {@code @Sql}-скрипты.
+ * Фоновые задачи почты не запускаются во время теста, статистика Hibernate включена для {@link StatementCountTest}.
+ * Все такие тесты используют один контекст, отдельный от тестов с данными из {@code @Sql}-скриптов.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@SpringBootTest(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "bookexchange.mail.dispatch-interval=3600000",
+        "bookexchange.mail.digest-interval=3600000"
+})
+public @interface SelfSeededTest {
+}
@@ -0,0 +1,92 @@
+package com.spring.vsurin.bookexchange;
+
+import com.spring.vsurin.bookexchange.domain.EmailData;
+import com.spring.vsurin.bookexchange.extern.infrastructure.DefaultEmailSender;
+import com.spring.vsurin.bookexchange.extern.infrastructure.SmtpConnectionPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SmtpConnectionPoolTest {
+
+    private SmtpStandIn smtp;
+    private SmtpConnectionPool pool;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        smtp = new SmtpStandIn(0);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        pool.shutdown();
+        smtp.close();
+    }
+
+    @Test
+    public void testConnectionIsReusedAndRecycledAfterMaxMessages() {
+        DefaultEmailSender sender = sender(1000, 3);
+
+        for (int i = 0; i < 7; i++) {
+            sender.send(new EmailData("reader" + i + "@example.com", "Тема", "Письмо " + i));
+        }
+
+        assertEquals(7, smtp.getMessages());
+        assertEquals(3, smtp.getConnections());
+    }
+
+    @Test
+    public void testConnectionIsReplacedAfterError() {
+        DefaultEmailSender sender = sender(1000, 100);
+        sender.send(new EmailData("reader@example.com", "Тема", "Первое письмо"));
+
+        smtp.rejectNext();
+        sender.send(new EmailData("reader@example.com", "Тема", "Второе письмо"));
+
+        assertEquals(2, smtp.getMessages());
+        assertEquals(2, smtp.getConnections());
+    }
+
+    @Test
+    public void testErrorOnNewConnectionIsReported() {
+        DefaultEmailSender sender = sender(1000, 100);
+
+        smtp.rejectNext();
+        assertThrows(MailSendException.class,
+                () -> sender.send(new EmailData("reader@example.com", "Тема", "Отклонённое письмо")));
+
+        assertEquals(0, smtp.getMessages());
+        assertEquals(1, smtp.getConnections());
+    }
+
+    @Test
+    public void testIdleConnectionIsClosed() throws InterruptedException {
+        DefaultEmailSender sender = sender(50, 100);
+        sender.send(new EmailData("reader@example.com", "Тема", "Первое письмо"));
+
+        Thread.sleep(100);
+        pool.evictIdle();
+        sender.send(new EmailData("reader@example.com", "Тема", "Второе письмо"));
+
+        assertEquals(2, smtp.getMessages());
+        assertEquals(2, smtp.getConnections());
+    }
+
+    private DefaultEmailSender sender(long idleTimeoutMillis, int maxMessages) {
+        JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+        mailSender.setHost(smtp.getHost());
+        mailSender.setPort(smtp.getPort());
+        pool = new SmtpConnectionPool(mailSender, 2, idleTimeoutMillis, maxMessages, 1000);
+
+        DefaultEmailSender sender = new DefaultEmailSender(pool);
+        ReflectionTestUtils.setField(sender, "emailFrom", "bookexchange@example.com");
+        return sender;
+    }
+}
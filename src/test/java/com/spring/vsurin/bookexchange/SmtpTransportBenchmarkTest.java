@@ -0,0 +1,100 @@
+package com.spring.vsurin.bookexchange;
+
+import com.spring.vsurin.bookexchange.domain.EmailData;
+import com.spring.vsurin.bookexchange.extern.infrastructure.DefaultEmailSender;
+import com.spring.vsurin.bookexchange.extern.infrastructure.SmtpConnectionPool;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Сравнение пропускной способности отправки писем через пул SMTP-соединений с отправкой через JavaMailSender,
+ * который открывает новое соединение на каждое письмо. Письма принимает SMTP-сервер в памяти ({@link SmtpStandIn}).
+ * Запускается только явно: mvn test -Dtest=SmtpTransportBenchmarkTest -Dbenchmark=true
+ * Количество писем, потоков и задержка установки соединения в мс задаются свойствами
+ * benchmark.messages (по умолчанию 1000), benchmark.threads (4) и benchmark.handshake (20).
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class SmtpTransportBenchmarkTest {
+
+    private static final String EMAIL_FROM = "bookexchange@example.com";
+
+    @Test
+    public void comparePooledTransportWithConnectionPerMessage() throws Exception {
+        int messages = Integer.getInteger("benchmark.messages", 1000);
+        int threads = Integer.getInteger("benchmark.threads", 4);
+        long handshake = Long.getLong("benchmark.handshake", 20);
+
+        try (SmtpStandIn smtp = new SmtpStandIn(handshake)) {
+            JavaMailSenderImpl mailSender = mailSender(smtp);
+            double perMessage = run(messages, threads, email -> {
+                SimpleMailMessage message = new SimpleMailMessage();
+                message.setFrom(EMAIL_FROM);
+                message.setTo(email.getEmailReceiver());
+                message.setSubject(email.getEmailSubject());
+                message.setText(email.getEmailMessage());
+                mailSender.send(message);
+            });
+            assertEquals(messages, smtp.getMessages());
+            int perMessageConnections = smtp.getConnections();
+
+            SmtpConnectionPool pool = new SmtpConnectionPool(mailSender(smtp), threads, 30000, 100, 30000);
+            DefaultEmailSender pooledSender = new DefaultEmailSender(pool);
+            ReflectionTestUtils.setField(pooledSender, "emailFrom", EMAIL_FROM);
+            double pooled;
+            try {
+                pooled = run(messages, threads, pooledSender::send);
+            } finally {
+                pool.shutdown();
+            }
+            assertEquals(2 * messages, smtp.getMessages());
+            int pooledConnections = smtp.getConnections() - perMessageConnections;
+
+            log.info("Писем: {}, потоков: {}, установка соединения: {} мс", messages, threads, handshake);
+            log.info("JavaMailSender: {} писем/с, соединений: {}", String.format("%.1f", perMessage), perMessageConnections);
+            log.info("Пул соединений: {} писем/с, соединений: {}", String.format("%.1f", pooled), pooledConnections);
+            assertTrue(pooled > perMessage);
+        }
+    }
+
+    private static double run(int messages, int threads, Consumer<EmailData> send) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            long start = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < messages; i++) {
+                EmailData email = new EmailData("reader" + i + "@example.com", "BookExchange - Заявка на обмен",
+                        "Вам отправлена заявка №" + i + " на обмен книгами.");
+                futures.add(executor.submit(() -> send.accept(email)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            return messages * 1e9 / (System.nanoTime() - start);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static JavaMailSenderImpl mailSender(SmtpStandIn smtp) {
+        JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+        mailSender.setHost(smtp.getHost());
+        mailSender.setPort(smtp.getPort());
+        mailSender.setDefaultEncoding("UTF-8");
+        return mailSender;
+    }
+}
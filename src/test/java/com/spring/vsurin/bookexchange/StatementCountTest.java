@@ -0,0 +1,19 @@
+package com.spring.vsurin.bookexchange;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Общая настройка тестов, которые считают SQL-запросы через статистику Hibernate.
+ * Фоновые задачи почты не запускаются во время теста и не добавляют запросов в статистику.
+ * Контекст общий с остальными тестами {@link SelfSeededTest}.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@SelfSeededTest
+public @interface StatementCountTest {
+}
@@ -0,0 +1,47 @@
+package com.spring.vsurin.bookexchange;
+
+import com.spring.vsurin.bookexchange.domain.Book;
+import com.spring.vsurin.bookexchange.domain.BookGenre;
+import com.spring.vsurin.bookexchange.domain.User;
+import com.spring.vsurin.bookexchange.domain.UserRole;
+
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Общие заготовки сущностей для интеграционных тестов.
+ * Возвращают билдеры с заполненными обязательными полями, тест дополняет только то, что ему важно.
+ */
+final class TestData {
+
+    private TestData() {
+    }
+
+    /**
+     * Книга с заданным названием; ISBN совпадает с названием, чтобы книги не считались дубликатами.
+     */
+    static Book.BookBuilder book(String title) {
+        return Book.builder()
+                .title(title)
+                .author("Автор")
+                .isbn(title)
+                .genre(BookGenre.FICTION)
+                .publicationYear(Year.of(2000));
+    }
+
+    /**
+     * Пользователь с заданной почтой, пустыми списками книг и одним адресом.
+     */
+    static User.UserBuilder user(String email) {
+        return User.builder()
+                .username(email)
+                .email(email)
+                .role(UserRole.ROLE_USER)
+                .library(new ArrayList<>())
+                .offeredBooks(new ArrayList<>())
+                .wishlist(new ArrayList<>())
+                .addressList(new ArrayList<>(List.of("Москва")))
+                .usersWithAccessToMainAddress(new ArrayList<>());
+    }
+}
@@ -0,0 +1,181 @@
+package com.spring.vsurin.bookexchange;
+
+import com.spring.vsurin.bookexchange.app.BookRepository;
+import com.spring.vsurin.bookexchange.app.BookService;
+import com.spring.vsurin.bookexchange.app.EmailService;
+import com.spring.vsurin.bookexchange.app.SecurityContextService;
+import com.spring.vsurin.bookexchange.app.UserRepository;
+import com.spring.vsurin.bookexchange.app.UserService;
+import com.spring.vsurin.bookexchange.domain.Book;
+import com.spring.vsurin.bookexchange.domain.EmailData;
+import com.spring.vsurin.bookexchange.domain.User;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@StatementCountTest
+@Transactional
+public class UserBatchMutationTest {
+
+    private static final int BOOKS = 20;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private BookService bookService;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @MockBean
+    private EmailService emailService;
+
+    @MockBean
+    private SecurityContextService securityContextService;
+
+    private Statistics statistics;
+    private List<Long> bookIds;
+    private User owner;
+
+    @BeforeEach
+    public void setUp() {
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < BOOKS; i++) {
+            books.add(bookRepository.save(TestData.book("Книга " + i)
+                    .author("Автор " + i)
+                    .isbn(String.valueOf(i))
+                    .build()));
+        }
+        bookIds = books.stream().map(Book::getId).toList();
+
+        owner = userRepository.save(TestData.user("batchOwner@example.com")
+                .mainAddress("Москва")
+                .library(new ArrayList<>(books.subList(0, 1)))
+                .build());
+        owner.addUserWithAccessToMainAddress(owner.getId());
+        userRepository.save(TestData.user("batchWisher1@example.com").wishlist(new ArrayList<>(books.subList(0, 2))).build());
+        userRepository.save(TestData.user("batchWisher2@example.com").wishlist(new ArrayList<>(books.subList(2, 3))).build());
+
+        entityManager.flush();
+        entityManager.clear();
+        when(securityContextService.getCurrentAuthId()).thenReturn(owner.getId());
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    public void testAddBooksToLibraryInOneBatch() {
+        List<Long> requested = new ArrayList<>(bookIds);
+        requested.add(Long.MAX_VALUE);
+
+        List<Long> added = userService.addBooksToUserLibrary(owner.getId(), requested);
+        entityManager.flush();
+
+        assertEquals(bookIds.subList(1, BOOKS), added);
+        assertTrue(statistics.getPrepareStatementCount() <= 8, statistics.toString());
+        assertEquals(0, statistics.getCollectionLoadCount());
+        assertEquals(BOOKS, userRepository.findLibraryBookIds(owner.getId(), bookIds).size());
+    }
+
+    @Test
+    public void testAddBooksToOfferedNotifiesEachWisherOnce() {
+        userService.addBooksToUserLibrary(owner.getId(), bookIds.subList(0, 3));
+
+        List<Long> added = userService.addBooksToOfferedByUser(owner.getId(), bookIds);
+        entityManager.flush();
+
+        assertEquals(bookIds.subList(0, 3), added);
+        assertEquals(3, userRepository.findOfferedBookIds(owner.getId(), bookIds).size());
+        assertEquals(0, statistics.getCollectionStatistics(User.class.getName() + ".library").getLoadCount());
+        assertEquals(0, statistics.getCollectionStatistics(User.class.getName() + ".offeredBooks").getLoadCount());
+
+        ArgumentCaptor<List<EmailData>> emails = ArgumentCaptor.forClass(List.class);
+        verify(emailService, times(1)).sendEmails(emails.capture());
+        verify(emailService, never()).sendEmail(any(EmailData.class));
+        assertEquals(2, emails.getValue().size());
+        assertTrue(emails.getValue().get(0).getEmailMessage().contains("Автор 0 - Книга 0, Автор 1 - Книга 1"));
+        assertTrue(emails.getValue().get(1).getEmailMessage().contains("Автор 2 - Книга 2"));
+
+        assertEquals(List.of(), userService.addBooksToOfferedByUser(owner.getId(), bookIds));
+    }
+
+    @Test
+    public void testAddBooksToWishlistSkipsLibraryBooks() {
+        List<Long> added = userService.addBooksToWishlist(owner.getId(), bookIds.subList(0, 2));
+        entityManager.flush();
+
+        assertEquals(bookIds.subList(1, 2), added);
+        assertEquals(bookIds.subList(1, 2), userRepository.findWishlistBookIds(owner.getId(), bookIds));
+    }
+
+    @Test
+    public void testRepeatedAddsKeepOneJoinRow() {
+        long offeredBook = bookIds.get(0);
+        long wantedBook = bookIds.get(1);
+        long ownedBook = bookIds.get(2);
+
+        userService.addBookToUserLibrary(owner.getId(), ownedBook);
+        userService.addBookToUserLibrary(owner.getId(), ownedBook);
+        userService.addBookToOfferedByUser(owner.getId(), offeredBook);
+        userService.addBookToOfferedByUser(owner.getId(), offeredBook);
+        userService.addBookToWishlist(owner.getId(), wantedBook);
+        userService.addBookToWishlist(owner.getId(), wantedBook);
+        entityManager.flush();
+        entityManager.clear();
+
+        assertEquals(List.of(ownedBook), userRepository.findLibraryBookIds(owner.getId(), List.of(ownedBook)));
+        assertEquals(List.of(offeredBook), userRepository.findOfferedBookIds(owner.getId(), bookIds));
+        assertEquals(List.of(wantedBook), userRepository.findWishlistBookIds(owner.getId(), bookIds));
+        assertEquals(1, bookRepository.findById(offeredBook).getOfferCount());
+
+        assertThrows(DataIntegrityViolationException.class, () -> userRepository.addToLibrary(owner.getId(), ownedBook));
+        assertThrows(DataIntegrityViolationException.class, () -> userRepository.addToOfferedBooks(owner.getId(), offeredBook));
+        assertThrows(DataIntegrityViolationException.class, () -> userRepository.addToWishlist(owner.getId(), wantedBook));
+    }
+
+    @Test
+    public void testDeleteUserChangesVersionsOfTheirBooks() {
+        long libraryBook = bookIds.get(0);
+        long wantedBook = bookIds.get(1);
+        long otherBook = bookIds.get(5);
+        userService.addBookToWishlist(owner.getId(), wantedBook);
+        entityManager.flush();
+        entityManager.clear();
+        long libraryVersion = bookService.getBookVersion(libraryBook);
+        long wantedVersion = bookService.getBookVersion(wantedBook);
+        long otherVersion = bookService.getBookVersion(otherBook);
+
+        userService.deleteUser(owner.getId());
+        entityManager.flush();
+        entityManager.clear();
+
+        assertNotEquals(libraryVersion, bookService.getBookVersion(libraryBook));
+        assertNotEquals(wantedVersion, bookService.getBookVersion(wantedBook));
+        assertEquals(otherVersion, bookService.getBookVersion(otherBook));
+        assertEquals(List.of(), userRepository.findWishlistBookIds(owner.getId()));
+    }
+}
@@ -0,0 +1,171 @@
+package com.spring.vsurin.bookexchange;
+
+import com.spring.vsurin.bookexchange.app.BookDetails;
+import com.spring.vsurin.bookexchange.app.BookRepository;
+import com.spring.vsurin.bookexchange.app.BookService;
+import com.spring.vsurin.bookexchange.app.ExchangeRepository;
+import com.spring.vsurin.bookexchange.app.ExchangeService;
+import com.spring.vsurin.bookexchange.app.UserDetails;
+import com.spring.vsurin.bookexchange.app.UserRepository;
+import com.spring.vsurin.bookexchange.app.UserService;
+import com.spring.vsurin.bookexchange.domain.Book;
+import com.spring.vsurin.bookexchange.domain.Exchange;
+import com.spring.vsurin.bookexchange.domain.ExchangeStatus;
+import com.spring.vsurin.bookexchange.domain.User;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@StatementCountTest
+@Transactional
+public class UserFetchPlanTest {
+
+    private static final int BOOKS = 10;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private ExchangeService exchangeService;
+
+    @Autowired
+    private BookService bookService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private ExchangeRepository exchangeRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+    private List<Book> books;
+    private User user;
+    private User otherUser;
+    private Book newBook;
+    private Exchange exchange;
+
+    @BeforeEach
+    public void setUp() {
+        books = new ArrayList<>();
+        for (int i = 0; i < BOOKS; i++) {
+            books.add(bookRepository.save(TestData.book("Книга " + i).build()));
+        }
+        newBook = bookRepository.save(TestData.book("Новая книга").build());
+
+        user = userRepository.save(TestData.user("fetchPlan1@example.com")
+                .library(new ArrayList<>(books))
+                .offeredBooks(new ArrayList<>(books.subList(0, 2)))
+                .wishlist(new ArrayList<>(List.of(newBook)))
+                .build());
+        otherUser = userRepository.save(TestData.user("fetchPlan2@example.com").library(new ArrayList<>(books)).build());
+        exchange = exchangeRepository.save(Exchange.builder()
+                .member1(user)
+                .member2(otherUser)
+                .exchangedBook1(books.get(0))
+                .exchangedBook2(books.get(1))
+                .status(ExchangeStatus.CONFIRMED)
+                .build());
+
+        entityManager.flush();
+        entityManager.clear();
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    public void testGetUserLoadsNoCollections() {
+        User found = userService.getUserById(user.getId());
+
+        assertEquals("fetchPlan1@example.com", found.getEmail());
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(1, statistics.getEntityLoadCount());
+        assertEquals(0, statistics.getCollectionLoadCount());
+    }
+
+    @Test
+    public void testGetUserDetailsReadsIdsInOneStatement() {
+        UserDetails details = userService.getUserDetails(user.getId(), otherUser.getId());
+
+        assertEquals(books.stream().map(Book::getId).sorted().toList(), details.libraryIds().stream().sorted().toList());
+        assertEquals(2, details.offeredBookIds().size());
+        assertEquals(List.of(newBook.getId()), details.wishlistIds());
+        assertEquals(List.of(exchange.getId()), details.exchangeIdsAsMember1());
+        assertEquals(List.of(), details.exchangeIdsAsMember2());
+        assertNull(details.addressList());
+        assertEquals(2, statistics.getPrepareStatementCount(), statistics.toString());
+        assertEquals(1, statistics.getEntityLoadCount());
+        assertEquals(0, statistics.getCollectionLoadCount());
+    }
+
+    @Test
+    public void testGetOwnUserDetailsReadsAddresses() {
+        UserDetails details = userService.getUserDetails(user.getId(), user.getId());
+
+        assertEquals(List.of("Москва"), details.addressList());
+        assertEquals(3, statistics.getPrepareStatementCount(), statistics.toString());
+        assertEquals(0, statistics.getCollectionLoadCount());
+    }
+
+    @Test
+    public void testGetBookDetailsReadsIdsInOneStatement() {
+        BookDetails details = bookService.getBookDetails(books.get(0).getId());
+
+        assertEquals(List.of(user.getId(), otherUser.getId()), details.ownerIds().stream().sorted().toList());
+        assertEquals(List.of(user.getId()), details.userIdsOfferingForExchange());
+        assertEquals(List.of(), details.userIdsHaveInWishlist());
+        assertEquals(2, statistics.getPrepareStatementCount(), statistics.toString());
+        assertEquals(1, statistics.getEntityLoadCount());
+        assertEquals(0, statistics.getCollectionLoadCount());
+    }
+
+    @Test
+    public void testAddBookToLibraryLoadsNoLibrary() {
+        userService.addBookToUserLibrary(user.getId(), newBook.getId());
+        entityManager.flush();
+
+        assertEquals(2, statistics.getEntityLoadCount());
+        assertEquals(0, statistics.getCollectionStatistics(User.class.getName() + ".library").getLoadCount());
+        assertEquals(0, statistics.getCollectionUpdateCount());
+        assertEquals(0, statistics.getCollectionRecreateCount());
+        assertTrue(userRepository.existsInLibrary(user.getId(), newBook.getId()));
+    }
+
+    @Test
+    public void testAddUserWithAccessToMainAddressLoadsOneCollection() {
+        userService.addUserWithAccessToMainAddress(user.getId(), 42);
+        entityManager.flush();
+
+        assertEquals(1, statistics.getEntityLoadCount());
+        assertEquals(1, statistics.getCollectionLoadCount());
+        assertEquals(3, statistics.getPrepareStatementCount(), statistics.toString());
+    }
+
+    @Test
+    public void testGetExchangeLoadsMembersWithoutCollections() {
+        Exchange found = exchangeService.getExchangeById(exchange.getId());
+
+        assertEquals("fetchPlan2@example.com", found.getMember2().getEmail());
+        assertEquals(1, statistics.getPrepareStatementCount(), statistics.toString());
+        assertEquals(5, statistics.getEntityLoadCount(), statistics.toString());
+        assertEquals(0, statistics.getCollectionLoadCount());
+    }
+}
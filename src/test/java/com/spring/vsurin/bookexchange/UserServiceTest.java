@@ -5,7 +5,11 @@ import com.spring.vsurin.bookexchange.domain.*;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -14,14 +18,20 @@ import org.springframework.security.oauth2.core.user.OAuth2User;
 import java.time.Year;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @DataJpaTest
 public class UserServiceTest {
 
+    @Mock
+    private EntityCache entityCache;
+
     @InjectMocks
     private UserService userService;
 
@@ -31,6 +41,9 @@ public class UserServiceTest {
     @Mock
     private ExchangeService exchangeService;
 
+    @Mock
+    private ExchangeRepository exchangeRepository;
+
     @Mock
     private BookService bookService;
 
@@ -62,7 +75,7 @@ public class UserServiceTest {
                 .gender(UserGender.MALE)
                 .build();
 
-        when(userRepository.findById(1)).thenReturn(user);
+        when(userRepository.findById(Long.valueOf(1))).thenReturn(Optional.of(user));
 
         User retrievedUser = userService.getUserById(1);
         assertNotNull(retrievedUser);
@@ -79,7 +92,7 @@ public class UserServiceTest {
                 .gender(UserGender.MALE)
                 .build();
 
-        when(userRepository.findById(1)).thenReturn(user);
+        when(userRepository.findById(Long.valueOf(1))).thenReturn(Optional.of(user));
 
         assertThrows(IllegalArgumentException.class, () -> {
             userService.getUserById(4);
@@ -97,7 +110,8 @@ public class UserServiceTest {
                 .showContacts(true)
                 .build();
 
-        when(userRepository.findById(1)).thenReturn(user);
+        when(userRepository.findById(Long.valueOf(1))).thenReturn(Optional.of(user));
+        when(userRepository.findWithOfferedBooksById(1)).thenReturn(user);
         when(mailBuilder.buildDeleteUserMessage(anyString(), anyLong()))
                 .thenReturn(new EmailData("min095@list.ru", "Subject", "Message"));
 
@@ -106,6 +120,7 @@ public class UserServiceTest {
         verify(emailService).sendEmail(any(EmailData.class));
 
         verify(userRepository, times(1)).deleteById(1);
+        verify(securityContextService).invalidateUser(1);
     }
 
     @Test
@@ -140,14 +155,15 @@ public class UserServiceTest {
                 .gender(UserGender.MALE)
                 .build();
 
-        when(userRepository.findByRole(UserRole.ROLE_ADMIN)).thenReturn(admins);
+        when(userRepository.findEmailsByRole(UserRole.ROLE_ADMIN)).thenReturn(admins.stream().map(User::getEmail).toList());
         when(userRepository.findById(3)).thenReturn(user);
         when(mailBuilder.buildRequestToDeleteUserMessage(anyString(), anyLong(), anyString()))
                 .thenReturn(new EmailData("min095@list.ru", "Subject", "Message"));
 
         userService.sendRequestToDeleteUser(3, "anyReason");
 
-        verify(emailService, times(2)).sendEmail(any(EmailData.class));
+        verify(emailService, times(1)).sendEmails(argThat(emails -> emails.size() == 2));
+        verify(emailService, never()).sendEmail(any(EmailData.class));
     }
 
     @Test
@@ -172,7 +188,8 @@ public class UserServiceTest {
                 .publicationYear(Year.of(2010))
                 .build();
 
-        when(userRepository.findById(1)).thenReturn(user);
+        when(userRepository.findById(Long.valueOf(1))).thenReturn(Optional.of(user));
+        stubBookLists(List.of(user), List.of(testBook1));
         when(bookService.getBookById(1)).thenReturn(testBook1);
 
         userService.addBookToUserLibrary(1, 1);
@@ -207,7 +224,8 @@ public class UserServiceTest {
                 .publicationYear(Year.of(2010))
                 .build();
 
-        when(userRepository.findById(1)).thenReturn(user);
+        when(userRepository.findById(Long.valueOf(1))).thenReturn(Optional.of(user));
+        stubBookLists(List.of(user), List.of(testBook1));
         when(bookService.getBookById(1)).thenReturn(testBook1);
 
         userService.addBookToUserLibrary(1, 1);
@@ -281,11 +299,13 @@ public class UserServiceTest {
         user.getExchangesAsMember1().add(exchange);
         user2.getExchangesAsMember2().add(exchange);
 
-        when(userRepository.findById(1)).thenReturn(user);
-        when(userRepository.findById(2)).thenReturn(user2);
+        when(userRepository.findById(Long.valueOf(1))).thenReturn(Optional.of(user));
+        stubBookLists(List.of(user, user2), List.of(testBook1, testBook2));
+        when(userRepository.findById(Long.valueOf(2))).thenReturn(Optional.of(user2));
         when(bookService.getBookById(1)).thenReturn(testBook1);
         when(bookService.getBookById(2)).thenReturn(testBook2);
         when((exchangeService.getExchangeById(1))).thenReturn(exchange);
+        when(exchangeRepository.existsByMemberAndBook(eq(1L), eq(1L), anyCollection())).thenReturn(true);
 
         userService.addBookToUserLibrary(1, 1);
         userService.addBookToUserLibrary(2, 2);
@@ -342,9 +362,11 @@ public class UserServiceTest {
                 .publicationYear(Year.of(2010))
                 .build();
 
-        when(userRepository.findById(1)).thenReturn(user);
-        when(userRepository.findById(2)).thenReturn(user2);
+        when(userRepository.findById(Long.valueOf(1))).thenReturn(Optional.of(user));
+        stubBookLists(List.of(user, user2), List.of(testBook1));
+        when(userRepository.findById(Long.valueOf(2))).thenReturn(Optional.of(user2));
         when(bookService.getBookById(1)).thenReturn(testBook1);
+        when(bookService.existsBook(1)).thenReturn(true);
         when(userRepository.findByEmail("min0@list.ru")).thenReturn(user);
         when(oauth2User.getName()).thenReturn("min0@list.ru");
         when(authentication.getPrincipal()).thenReturn(oauth2User);
@@ -353,17 +375,24 @@ public class UserServiceTest {
                 .thenReturn(new EmailData("min095@list.ru", "Subject", "Message"));
         SecurityContextHolder.setContext(securityContext);
 
-        testBook1.getUsersHaveInWishlist().add(user2);
+        WishlistEntryProjection wishlistEntry = mock(WishlistEntryProjection.class);
+        when(wishlistEntry.getEmail()).thenReturn(user2.getEmail());
+        when(wishlistEntry.getTitle()).thenReturn(testBook1.getTitle());
+        when(wishlistEntry.getAuthor()).thenReturn(testBook1.getAuthor());
+        when(userRepository.findWishlistEntriesByBookIds(List.of(1L))).thenReturn(List.of(wishlistEntry));
 
         userService.addBookToWishlist(2, 1);
         userService.addBookToUserLibrary(1, 1);
         userService.addBookToOfferedByUser(1, 1);
+        userService.addBookToOfferedByUser(1, 1);
 
         User updatedUser = userService.getUserById(1);
 
         assertNotNull(updatedUser);
         assertEquals(1, updatedUser.getOfferedBooks().size());
-        verify(emailService, times(1)).sendEmail(any(EmailData.class));
+        verify(emailService, times(1)).sendEmails(argThat(emails -> emails.size() == 1));
+        verify(emailService, never()).sendEmail(any(EmailData.class));
+        verify(bookService, times(1)).updateOfferCount(1, 1);
     }
 
     @Test
@@ -392,8 +421,10 @@ public class UserServiceTest {
                 .publicationYear(Year.of(2010))
                 .build();
 
-        when(userRepository.findById(1)).thenReturn(user);
+        when(userRepository.findById(Long.valueOf(1))).thenReturn(Optional.of(user));
+        stubBookLists(List.of(user), List.of(testBook1));
         when(bookService.getBookById(1)).thenReturn(testBook1);
+        when(bookService.existsBook(1)).thenReturn(true);
         when(userRepository.findByEmail("min0@list.ru")).thenReturn(user);
         when(oauth2User.getName()).thenReturn("min0@list.ru");
         when(authentication.getPrincipal()).thenReturn(oauth2User);
@@ -407,6 +438,7 @@ public class UserServiceTest {
 
         assertNotNull(updatedUser);
         assertEquals(0, updatedUser.getOfferedBooks().size());
+        verify(bookService, never()).updateOfferCount(anyLong(), anyInt());
     }
 
     @Test
@@ -472,11 +504,14 @@ public class UserServiceTest {
         user.getExchangesAsMember1().add(exchange);
         user2.getExchangesAsMember2().add(exchange);
 
-        when(userRepository.findById(1)).thenReturn(user);
-        when(userRepository.findById(2)).thenReturn(user2);
+        when(userRepository.findById(Long.valueOf(1))).thenReturn(Optional.of(user));
+        stubBookLists(List.of(user, user2), List.of(testBook1, testBook2));
+        when(userRepository.findById(Long.valueOf(2))).thenReturn(Optional.of(user2));
         when(bookService.getBookById(1)).thenReturn(testBook1);
+        when(bookService.existsBook(1)).thenReturn(true);
         when(bookService.getBookById(2)).thenReturn(testBook2);
         when((exchangeService.getExchangeById(1))).thenReturn(exchange);
+        when(exchangeRepository.existsByMemberAndBook(eq(1L), eq(1L), anyCollection())).thenReturn(true);
         when(userRepository.findByEmail("min0@list.ru")).thenReturn(user);
         when(oauth2User.getName()).thenReturn("min0@list.ru");
         when(authentication.getPrincipal()).thenReturn(oauth2User);
@@ -520,8 +555,10 @@ public class UserServiceTest {
                 .publicationYear(Year.of(2010))
                 .build();
 
-        when(userRepository.findById(1)).thenReturn(user);
+        when(userRepository.findById(Long.valueOf(1))).thenReturn(Optional.of(user));
+        stubBookLists(List.of(user), List.of(testBook));
         when(bookService.getBookById(1)).thenReturn(testBook);
+        when(bookService.existsBook(1)).thenReturn(true);
         when(userRepository.findByEmail("min0@list.ru")).thenReturn(user);
         when(oauth2User.getName()).thenReturn("min0@list.ru");
         when(authentication.getPrincipal()).thenReturn(oauth2User);
@@ -548,7 +585,8 @@ public class UserServiceTest {
                 .addressList(new ArrayList<>())
                 .build();
 
-        when(userRepository.findById(1)).thenReturn(user);
+        when(userRepository.findById(Long.valueOf(1))).thenReturn(Optional.of(user));
+        when(userRepository.findWithAddressListById(1)).thenReturn(user);
         when(oauth2User.getName()).thenReturn("min0@list.ru");
         when(authentication.getPrincipal()).thenReturn(oauth2User);
         when(securityContext.getAuthentication()).thenReturn(authentication);
@@ -574,7 +612,8 @@ public class UserServiceTest {
                 .addressList(new ArrayList<>())
                 .build();
 
-        when(userRepository.findById(1)).thenReturn(user);
+        when(userRepository.findById(Long.valueOf(1))).thenReturn(Optional.of(user));
+        when(userRepository.findWithAddressListById(1)).thenReturn(user);
         when(oauth2User.getName()).thenReturn("min0@list.ru");
         when(authentication.getPrincipal()).thenReturn(oauth2User);
         when(securityContext.getAuthentication()).thenReturn(authentication);
@@ -603,7 +642,8 @@ public class UserServiceTest {
                 .addressList(new ArrayList<>())
                 .build();
 
-        when(userRepository.findById(1)).thenReturn(user);
+        when(userRepository.findById(Long.valueOf(1))).thenReturn(Optional.of(user));
+        when(userRepository.findWithAddressListById(1)).thenReturn(user);
         when(userRepository.findByEmail("min0@list.ru")).thenReturn(user);
         when(oauth2User.getName()).thenReturn("min0@list.ru");
         when(authentication.getPrincipal()).thenReturn(oauth2User);
@@ -634,7 +674,8 @@ public class UserServiceTest {
                 .addressList(new ArrayList<>())
                 .build();
 
-        when(userRepository.findById(1)).thenReturn(user);
+        when(userRepository.findById(Long.valueOf(1))).thenReturn(Optional.of(user));
+        when(userRepository.findWithAddressListById(1)).thenReturn(user);
         when(userRepository.findByEmail("min0@list.ru")).thenReturn(user);
         when(oauth2User.getName()).thenReturn("min0@list.ru");
         when(authentication.getPrincipal()).thenReturn(oauth2User);
@@ -669,11 +710,15 @@ public class UserServiceTest {
         user.getExchangesAsMember1().add(new Exchange());
         user.getExchangesAsMember2().add(new Exchange());
 
-        when(userRepository.findById(1)).thenReturn(user);
+        Pageable pageable = PageRequest.of(0, 10);
+        List<Exchange> userExchanges = new ArrayList<>(user.getExchangesAsMember1());
+        userExchanges.addAll(user.getExchangesAsMember2());
+        when(userRepository.findById(Long.valueOf(1))).thenReturn(Optional.of(user));
+        when(exchangeRepository.findByMember(1, null, pageable)).thenReturn(new PageImpl<>(userExchanges, pageable, userExchanges.size()));
 
         User updUser2 = userService.getUserById(1);
 
-        assertEquals(2, userService.getAllUserExchanges(updUser2.getId()).size());
+        assertEquals(2, userService.getAllUserExchanges(updUser2.getId(), null, pageable).getTotalElements());
     }
 
     @Test
@@ -686,13 +731,14 @@ public class UserServiceTest {
                 .gender(UserGender.MALE)
                 .build();
 
-        when(userRepository.findById(1)).thenReturn(user);
+        when(userRepository.findById(Long.valueOf(1))).thenReturn(Optional.of(user));
 
         userService.setAdminStatus(1);
 
         User updatedUser = userService.getUserById(1);
         assertNotNull(updatedUser);
         assertEquals(UserRole.ROLE_ADMIN, updatedUser.getRole());
+        verify(securityContextService).invalidateUser(1);
     }
 
     @Test
@@ -705,7 +751,7 @@ public class UserServiceTest {
                 .gender(UserGender.MALE)
                 .build();
 
-        when(userRepository.findById(2)).thenReturn(user);
+        when(userRepository.findById(Long.valueOf(2))).thenReturn(Optional.of(user));
 
         userService.setAdminStatus(2);
 
@@ -724,7 +770,7 @@ public class UserServiceTest {
                 .gender(UserGender.MALE)
                 .build();
 
-        when(userRepository.findById(1)).thenReturn(user);
+        when(userRepository.findById(Long.valueOf(1))).thenReturn(Optional.of(user));
 
         userService.removeAdminStatus(1);
 
@@ -743,7 +789,7 @@ public class UserServiceTest {
                 .gender(UserGender.MALE)
                 .build();
 
-        when(userRepository.findById(1)).thenReturn(user);
+        when(userRepository.findById(Long.valueOf(1))).thenReturn(Optional.of(user));
 
         userService.removeAdminStatus(1);
 
@@ -772,8 +818,8 @@ public class UserServiceTest {
                 .showContacts(true)
                 .build();
 
-        when(userRepository.findById(1)).thenReturn(user);
-        when(userRepository.findById(2)).thenReturn(user2);
+        when(userRepository.findById(Long.valueOf(1))).thenReturn(Optional.of(user));
+        when(userRepository.findById(Long.valueOf(2))).thenReturn(Optional.of(user2));
 
         userService.enableShowContacts(1);
         userService.enableShowContacts(2);
@@ -806,8 +852,8 @@ public class UserServiceTest {
                 .showContacts(true)
                 .build();
 
-        when(userRepository.findById(1)).thenReturn(user);
-        when(userRepository.findById(2)).thenReturn(user2);
+        when(userRepository.findById(Long.valueOf(1))).thenReturn(Optional.of(user));
+        when(userRepository.findById(Long.valueOf(2))).thenReturn(Optional.of(user2));
 
         userService.disableShowContacts(1);
         userService.disableShowContacts(2);
@@ -832,7 +878,7 @@ public class UserServiceTest {
                 .phoneNumber("+79123456789")
                 .build();
 
-        when(userRepository.findById(1)).thenReturn(user);
+        when(userRepository.findById(Long.valueOf(1))).thenReturn(Optional.of(user));
 
         userService.updateUserPhone(1, "+79123456798");
 
@@ -854,7 +900,7 @@ public class UserServiceTest {
                 .avatarLink("Link")
                 .build();
 
-        when(userRepository.findById(1)).thenReturn(user);
+        when(userRepository.findById(Long.valueOf(1))).thenReturn(Optional.of(user));
 
         userService.updateUserAvatarLink(1, "NEW LINK");
 
@@ -877,7 +923,7 @@ public class UserServiceTest {
                 .preferences("one")
                 .build();
 
-        when(userRepository.findById(1)).thenReturn(user);
+        when(userRepository.findById(Long.valueOf(1))).thenReturn(Optional.of(user));
 
         userService.updatePreferencesToUser(1, "two");
 
@@ -900,7 +946,7 @@ public class UserServiceTest {
                 .preferences("one")
                 .build();
 
-        when(userRepository.findById(1)).thenReturn(user);
+        when(userRepository.findById(Long.valueOf(1))).thenReturn(Optional.of(user));
 
         userService.updateUserGender(1, UserGender.FEMALE);
 
@@ -924,7 +970,8 @@ public class UserServiceTest {
                 .usersWithAccessToMainAddress(new ArrayList<>())
                 .build();
 
-        when(userRepository.findById(1)).thenReturn(user);
+        when(userRepository.findById(Long.valueOf(1))).thenReturn(Optional.of(user));
+        when(userRepository.findWithMainAddressAccessById(1)).thenReturn(user);
 
         userService.addUserWithAccessToMainAddress(1, 2);
 
@@ -953,7 +1000,8 @@ public class UserServiceTest {
                 .usersWithAccessToMainAddress(new ArrayList<>())
                 .build();
 
-        when(userRepository.findById(1)).thenReturn(user);
+        when(userRepository.findById(Long.valueOf(1))).thenReturn(Optional.of(user));
+        when(userRepository.findWithMainAddressAccessById(1)).thenReturn(user);
 
         userService.addUserWithAccessToMainAddress(1, 2);
         userService.addUserWithAccessToMainAddress(1, 3);
@@ -1000,8 +1048,8 @@ public class UserServiceTest {
                 .showContacts(true)
                 .build();
 
-        when(userRepository.findById(1)).thenReturn(user);
-        when(userRepository.findById(2)).thenReturn(user2);
+        when(userRepository.findById(Long.valueOf(1))).thenReturn(Optional.of(user));
+        when(userRepository.findById(Long.valueOf(2))).thenReturn(Optional.of(user2));
 
         userService.blockUser(1);
         userService.blockUser(2);
@@ -1034,8 +1082,8 @@ public class UserServiceTest {
                 .showContacts(true)
                 .build();
 
-        when(userRepository.findById(1)).thenReturn(user);
-        when(userRepository.findById(2)).thenReturn(user2);
+        when(userRepository.findById(Long.valueOf(1))).thenReturn(Optional.of(user));
+        when(userRepository.findById(Long.valueOf(2))).thenReturn(Optional.of(user2));
 
         userService.unblockUser(1);
         userService.unblockUser(2);
@@ -1068,8 +1116,8 @@ public class UserServiceTest {
                 .showContacts(true)
                 .build();
 
-        when(userRepository.findById(1)).thenReturn(user);
-        when(userRepository.findById(2)).thenReturn(user2);
+        when(userRepository.findById(Long.valueOf(1))).thenReturn(Optional.of(user));
+        when(userRepository.findById(Long.valueOf(2))).thenReturn(Optional.of(user2));
 
         userService.unblockUserAsAdmin(1);
         userService.unblockUserAsAdmin(2);
@@ -1109,9 +1157,11 @@ public class UserServiceTest {
                 .publicationYear(Year.of(2010))
                 .build();
 
-        when(userRepository.findById(1)).thenReturn(user);
+        when(userRepository.findById(Long.valueOf(1))).thenReturn(Optional.of(user));
+        stubBookLists(List.of(user), List.of(testBook));
         when(bookService.getBookById(1)).thenReturn(testBook);
 
+        userService.addBookToWishlist(1, 1);
         userService.addBookToWishlist(1, 1);
 
         User updatedUser = userService.getUserById(1);
@@ -1146,7 +1196,8 @@ public class UserServiceTest {
                 .publicationYear(Year.of(2010))
                 .build();
 
-        when(userRepository.findById(1)).thenReturn(user);
+        when(userRepository.findById(Long.valueOf(1))).thenReturn(Optional.of(user));
+        stubBookLists(List.of(user), List.of(testBook));
         when(bookService.getBookById(1)).thenReturn(testBook);
 
         userService.addBookToUserLibrary(1, 1);
@@ -1184,7 +1235,8 @@ public class UserServiceTest {
                 .publicationYear(Year.of(2010))
                 .build();
 
-        when(userRepository.findById(1)).thenReturn(user);
+        when(userRepository.findById(Long.valueOf(1))).thenReturn(Optional.of(user));
+        stubBookLists(List.of(user), List.of(testBook));
         when(bookService.getBookById(1)).thenReturn(testBook);
 
         userService.addBookToWishlist(1, 1);
@@ -1194,4 +1246,35 @@ public class UserServiceTest {
         assertNotNull(updatedUser);
         assertEquals(0, updatedUser.getWishlist().size());
     }
-}
\ No newline at end of file
+
+    /**
+     * Связывает проверки и изменения таблиц связи в репозитории пользователей со списками книг пользователей,
+     * чтобы сервис видел те же данные, что и при работе с базой.
+     */
+    private void stubBookLists(List<User> users, List<Book> books) {
+        when(userRepository.existsInLibrary(anyLong(), anyLong())).thenAnswer(invocation -> containsBook(user(users, invocation).getLibrary(), invocation));
+        when(userRepository.existsInOfferedBooks(anyLong(), anyLong())).thenAnswer(invocation -> containsBook(user(users, invocation).getOfferedBooks(), invocation));
+        when(userRepository.existsInWishlist(anyLong(), anyLong())).thenAnswer(invocation -> containsBook(user(users, invocation).getWishlist(), invocation));
+        doAnswer(invocation -> user(users, invocation).getLibrary().add(book(books, invocation))).when(userRepository).addToLibrary(anyLong(), anyLong());
+        doAnswer(invocation -> user(users, invocation).getLibrary().remove(book(books, invocation))).when(userRepository).removeFromLibrary(anyLong(), anyLong());
+        doAnswer(invocation -> user(users, invocation).getOfferedBooks().add(book(books, invocation)) ? 1 : 0).when(userRepository).addToOfferedBooks(anyLong(), anyLong());
+        doAnswer(invocation -> user(users, invocation).getOfferedBooks().remove(book(books, invocation)) ? 1 : 0).when(userRepository).removeFromOfferedBooks(anyLong(), anyLong());
+        doAnswer(invocation -> user(users, invocation).getWishlist().add(book(books, invocation))).when(userRepository).addToWishlist(anyLong(), anyLong());
+        doAnswer(invocation -> user(users, invocation).getWishlist().remove(book(books, invocation))).when(userRepository).removeFromWishlist(anyLong(), anyLong());
+    }
+
+    private static User user(List<User> users, InvocationOnMock invocation) {
+        long userId = invocation.getArgument(0);
+        return users.stream().filter(user -> user.getId() == userId).findFirst().orElseThrow();
+    }
+
+    private static Book book(List<Book> books, InvocationOnMock invocation) {
+        long bookId = invocation.getArgument(1);
+        return books.stream().filter(book -> book.getId() == bookId).findFirst().orElseThrow();
+    }
+
+    private static boolean containsBook(List<Book> books, InvocationOnMock invocation) {
+        long bookId = invocation.getArgument(1);
+        return books != null && books.stream().anyMatch(book -> book.getId() == bookId);
+    }
+}
@@ -15,5 +15,8 @@ INSERT INTO user_wishlist (user_id, book_id) VALUES (1, 2);
 INSERT INTO user_offered_books (user_id, book_id) VALUES (1, 1);
 INSERT INTO user_offered_books (user_id, book_id) VALUES (2, 2);
 
+UPDATE books SET book_offer_count = 1, book_available = true WHERE book_id = 1;
+UPDATE books SET book_offer_count = 1, book_available = true WHERE book_id = 2;
+
 INSERT INTO exchanges (member1, member2, book1, book2, received1, received2) VALUES (1, 2, 1, 2, false, false);
 INSERT INTO exchanges (member1, member2, book1, book2, received1, received2) VALUES (1, 2, 2, 3, false, false);
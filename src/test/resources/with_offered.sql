@@ -12,4 +12,6 @@ INSERT INTO user_books (user_id, book_id) VALUES (2, 1);
 INSERT INTO user_books (user_id, book_id) VALUES (2, 2);
 
 INSERT INTO user_offered_books (user_id, book_id) VALUES (1, 1);
-INSERT INTO user_offered_books (user_id, book_id) VALUES (2, 1);
\ No newline at end of file
+INSERT INTO user_offered_books (user_id, book_id) VALUES (2, 1);
+
+UPDATE books SET book_offer_count = 2, book_available = true WHERE book_id = 1;
\ No newline at end of file
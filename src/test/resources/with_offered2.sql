@@ -14,4 +14,8 @@ INSERT INTO user_books (user_id, book_id) VALUES (3, 2);
 
 INSERT INTO user_offered_books (user_id, book_id) VALUES (1, 1);
 INSERT INTO user_offered_books (user_id, book_id) VALUES (2, 3);
-INSERT INTO user_offered_books (user_id, book_id) VALUES (2, 2);
\ No newline at end of file
+INSERT INTO user_offered_books (user_id, book_id) VALUES (2, 2);
+
+UPDATE books SET book_offer_count = 1, book_available = true WHERE book_id = 1;
+UPDATE books SET book_offer_count = 1, book_available = true WHERE book_id = 2;
+UPDATE books SET book_offer_count = 1, book_available = true WHERE book_id = 3;
\ No newline at end of file
@@ -16,6 +16,10 @@ INSERT INTO user_offered_books (user_id, book_id) VALUES (1, 1);
 INSERT INTO user_offered_books (user_id, book_id) VALUES (2, 3);
 INSERT INTO user_offered_books (user_id, book_id) VALUES (2, 2);
 
+UPDATE books SET book_offer_count = 1, book_available = true WHERE book_id = 1;
+UPDATE books SET book_offer_count = 1, book_available = true WHERE book_id = 2;
+UPDATE books SET book_offer_count = 1, book_available = true WHERE book_id = 3;
+
 INSERT INTO requests (request_sender, request_receiver, request_book_sender_wants, request_status, request_comment) VALUES (1, 2, 3, 'ACTUAL', '   .');
 INSERT INTO requests (request_sender, request_receiver, request_book_sender_wants, request_status, request_comment) VALUES (3, 2, 3, 'ACTUAL', '       .');
 INSERT INTO requests (request_sender, request_receiver, request_book_sender_wants, request_status, request_comment) VALUES (3, 2, 2, 'ACTUAL', '       .');